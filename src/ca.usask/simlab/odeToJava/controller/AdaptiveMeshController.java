@@ -0,0 +1,427 @@
+/* ./controller/AdaptiveMeshController.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.controller;
+
+import java.io.IOException;
+import java.util.Arrays;
+import org.jscience.mathematics.vectors.Float64Vector;
+import ca.usask.simlab.odeToJava.ode.FiniteVolumeRHS;
+import ca.usask.simlab.odeToJava.util.Matrix;
+
+/**
+ * Solve a one-dimensional finite volume problem on a mesh that adapts to
+ * the solution, so steep fronts are resolved without fine cells everywhere.
+ * <p>
+ * The cells come from a uniform base mesh by halving cells up to a maximum
+ * level of refinement. The interval is divided into windows that are solved
+ * one after another, each by its own controller on a fixed mesh. Between
+ * the windows a curvature monitor, the change of the slope across a cell
+ * times its width relative to the range of the solution, decides where the
+ * mesh changes. A cell whose monitor is above the tolerance is halved along
+ * with the cells within a buffer of it, so the front does not leave the fine
+ * cells during the next window, and two halves of a cell whose monitors are
+ * below a quarter of the tolerance are joined. The levels of neighbouring
+ * cells differ by at most one.
+ * <p>
+ * The averages are transferred conservatively: a halved cell gets its
+ * average plus and minus the minmod limited slope, and a joined cell the
+ * mean of its halves, so the integral of the solution is unchanged. The
+ * controllers are created by an IVPControllerFactory for each window, so
+ * their work arrays have the size of the current mesh.
+ * <p>
+ * Marsha J. Berger and Joseph Oliger. "Adaptive mesh refinement for hyperbolic partial differential equations", Journal of Computational Physics, vol 53, pg 484-512, 1984.
+ */
+public class AdaptiveMeshController {
+    /**
+     * The default number of windows.
+     */
+    public static final int DEFAULT_WINDOWS = 100;
+
+    /**
+     * The default tolerance for the monitor.
+     */
+    public static final double DEFAULT_TOLERANCE = 1e-3;
+
+    /**
+     * The default number of cells on each side of a refined cell that are
+     * refined with it.
+     */
+    public static final int DEFAULT_BUFFER = 2;
+
+    private final FiniteVolumeRHS rhs;
+    private final double initial_time;
+    private final double[] initial_values;
+    private final double final_time;
+    private final IVPControllerFactory factory;
+    private final int base_cells;
+    private final int levels;
+    private final double first_edge, last_edge;
+    private int windows;
+    private double tolerance;
+    private int buffer;
+    // the current mesh, each cell is the cell at position among the cells of its level
+    private int cells;
+    private int[] level;
+    private int[] position;
+    private double[] values;
+    // the results of the last run
+    private double[] final_values;
+    private int[] cell_counts;
+
+    /**
+     * Constructor for a solution on an adaptive mesh. The mesh of the RHS
+     * must be the uniform mesh with the most refined cells, and the initial
+     * values are the averages over its cells. The mesh is coarsened where
+     * the initial values allow before the first window.
+     *
+     * @param rhs            The RHS, whose mesh is replaced by the controller.
+     * @param base_cells     The number of cells of the coarsest mesh.
+     * @param initial_time   The initial time.
+     * @param initial_values The averages over the cells of the mesh of the RHS.
+     * @param final_time     The final time to solve to.
+     * @param factory        The factory for the controllers of the windows.
+     */
+    public AdaptiveMeshController(FiniteVolumeRHS rhs, int base_cells, double initial_time, double[] initial_values,
+                                  double final_time, IVPControllerFactory factory) {
+        if (final_time <= initial_time) {
+            throw new IllegalArgumentException("The final time must be after the initial time");
+        }
+        double[] edges = rhs.get_edges();
+        int n = edges.length - 1;
+        if (base_cells < 1 || n % base_cells != 0 || Integer.bitCount(n / base_cells) != 1) {
+            throw new IllegalArgumentException("The cells of the RHS must be the base cells halved the same number of times");
+        }
+        if (initial_values.length != n) {
+            throw new IllegalArgumentException("There must be one initial value for each cell");
+        }
+        double width = (edges[n] - edges[0]) / n;
+        for (int i = 0; i < n; i++) {
+            if (Math.abs(edges[i + 1] - edges[i] - width) > 1e-8 * width) {
+                throw new IllegalArgumentException("The mesh of the RHS must be uniform");
+            }
+        }
+        this.rhs = rhs;
+        this.base_cells = base_cells;
+        this.initial_time = initial_time;
+        this.initial_values = initial_values.clone();
+        this.final_time = final_time;
+        this.factory = factory;
+        levels = Integer.numberOfTrailingZeros(n / base_cells);
+        first_edge = edges[0];
+        last_edge = edges[n];
+        windows = DEFAULT_WINDOWS;
+        tolerance = DEFAULT_TOLERANCE;
+        buffer = DEFAULT_BUFFER;
+    }
+
+    /**
+     * Set the number of windows of equal length, the mesh changes between
+     * the windows.
+     *
+     * @param windows The number of windows.
+     */
+    public void set_windows(int windows) {
+        if (windows < 1) {
+            throw new IllegalArgumentException("At least one window is needed");
+        }
+        this.windows = windows;
+    }
+
+    /**
+     * Get the number of windows.
+     *
+     * @return The number of windows.
+     */
+    public int get_windows() {
+        return windows;
+    }
+
+    /**
+     * Set the tolerance for the monitor, above which cells are refined.
+     *
+     * @param tolerance The tolerance.
+     */
+    public void set_tolerance(double tolerance) {
+        if (!(tolerance > 0.0)) {
+            throw new IllegalArgumentException("The tolerance must be positive");
+        }
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Get the tolerance for the monitor.
+     *
+     * @return The tolerance.
+     */
+    public double get_tolerance() {
+        return tolerance;
+    }
+
+    /**
+     * Set the number of cells on each side of a cell above the tolerance
+     * that are refined with it.
+     *
+     * @param buffer The number of cells.
+     */
+    public void set_buffer(int buffer) {
+        if (buffer < 0) {
+            throw new IllegalArgumentException("The buffer must not be negative");
+        }
+        this.buffer = buffer;
+    }
+
+    /**
+     * Run the solution over all windows.
+     *
+     * @throws IOException If the controllers could not open their output.
+     */
+    public void run() throws IOException {
+        cells = initial_values.length;
+        level = new int[cells];
+        position = new int[cells];
+        for (int i = 0; i < cells; i++) {
+            level[i] = levels;
+            position[i] = i;
+        }
+        values = initial_values.clone();
+        // each pass joins at most one level
+        for (int pass = 0; pass < levels; pass++) {
+            remesh();
+        }
+        cell_counts = new int[windows];
+        for (int window = 0; window < windows; window++) {
+            double start = window == 0 ? initial_time : initial_time + (final_time - initial_time) * window / windows;
+            double end = window == windows - 1 ? final_time : initial_time + (final_time - initial_time) * (window + 1) / windows;
+            rhs.set_mesh(get_edges());
+            cell_counts[window] = cells;
+            IVPController.RunnableSolver solver = factory.create(new IVP(rhs, start, values), end).get_runnable();
+            solver.run();
+            values = Matrix.toDouble(solver.solver.get_final_values());
+            if (window < windows - 1) {
+                remesh();
+            }
+        }
+        final_values = values;
+    }
+
+    /**
+     * The edges of the current mesh.
+     */
+    private double[] get_edges() {
+        int finest = base_cells << levels;
+        double[] edges = new double[cells + 1];
+        for (int i = 0; i < cells; i++) {
+            edges[i] = get_edge(position[i] << (levels - level[i]), finest);
+        }
+        edges[cells] = last_edge;
+        return edges;
+    }
+
+    /**
+     * The edge at the given number of the most refined cells from the first edge.
+     */
+    private double get_edge(int count, int finest) {
+        return count == finest ? last_edge : first_edge + (last_edge - first_edge) * count / finest;
+    }
+
+    /**
+     * The width of a cell relative to a cell of the base mesh.
+     */
+    private double get_width(int cell) {
+        return 1.0 / (1 << level[cell]);
+    }
+
+    /**
+     * Evaluate the monitor, refine and join the cells, and restore the
+     * grading of the levels.
+     */
+    private void remesh() {
+        double[] monitor = get_monitor();
+        boolean[] refine = new boolean[cells];
+        for (int i = 0; i < cells; i++) {
+            if (monitor[i] > tolerance) {
+                for (int j = Math.max(0, i - buffer); j <= Math.min(cells - 1, i + buffer); j++) {
+                    refine[j] = true;
+                }
+            }
+        }
+        int[] new_level = new int[2 * cells];
+        int[] new_position = new int[2 * cells];
+        double[] new_values = new double[2 * cells];
+        int count = 0;
+        for (int i = 0; i < cells; i++) {
+            if (refine[i] && level[i] < levels) {
+                double slope = get_slope(i);
+                for (int half = 0; half < 2; half++) {
+                    new_level[count] = level[i] + 1;
+                    new_position[count] = 2 * position[i] + half;
+                    new_values[count] = values[i] + (half == 0 ? -0.25 : 0.25) * slope * get_width(i);
+                    count++;
+                }
+            } else if (can_join(i, refine, monitor)) {
+                new_level[count] = level[i] - 1;
+                new_position[count] = position[i] / 2;
+                new_values[count] = 0.5 * (values[i] + values[i + 1]);
+                count++;
+                i++;
+            } else {
+                new_level[count] = level[i];
+                new_position[count] = position[i];
+                new_values[count] = values[i];
+                count++;
+            }
+        }
+        set_cells(count, new_level, new_position, new_values);
+        grade();
+    }
+
+    /**
+     * Whether cell i and the next cell are the two halves of a cell that
+     * can be joined without breaking the grading of the old mesh.
+     */
+    private boolean can_join(int i, boolean[] refine, double[] monitor) {
+        if (i + 1 >= cells || level[i] == 0 || level[i + 1] != level[i]
+            || position[i] % 2 != 0 || position[i + 1] != position[i] + 1) {
+            return false;
+        }
+        if (refine[i] || refine[i + 1] || monitor[i] > 0.25 * tolerance || monitor[i + 1] > 0.25 * tolerance) {
+            return false;
+        }
+        return (i == 0 || level[i - 1] <= level[i]) && (i + 2 == cells || level[i + 2] <= level[i]);
+    }
+
+    /**
+     * Halve the cells next to a cell more than one level finer until the
+     * levels of all neighbours differ by at most one.
+     */
+    private void grade() {
+        boolean graded = false;
+        while (!graded) {
+            graded = true;
+            int[] new_level = new int[2 * cells];
+            int[] new_position = new int[2 * cells];
+            double[] new_values = new double[2 * cells];
+            int count = 0;
+            for (int i = 0; i < cells; i++) {
+                boolean coarse = (i > 0 && level[i - 1] > level[i] + 1) || (i + 1 < cells && level[i + 1] > level[i] + 1);
+                if (coarse) {
+                    graded = false;
+                    double slope = get_slope(i);
+                    for (int half = 0; half < 2; half++) {
+                        new_level[count] = level[i] + 1;
+                        new_position[count] = 2 * position[i] + half;
+                        new_values[count] = values[i] + (half == 0 ? -0.25 : 0.25) * slope * get_width(i);
+                        count++;
+                    }
+                } else {
+                    new_level[count] = level[i];
+                    new_position[count] = position[i];
+                    new_values[count] = values[i];
+                    count++;
+                }
+            }
+            set_cells(count, new_level, new_position, new_values);
+        }
+    }
+
+    private void set_cells(int count, int[] new_level, int[] new_position, double[] new_values) {
+        cells = count;
+        level = Arrays.copyOf(new_level, count);
+        position = Arrays.copyOf(new_position, count);
+        values = Arrays.copyOf(new_values, count);
+    }
+
+    /**
+     * The limited slope of cell i, per width of a base cell, zero at the
+     * first and last cell.
+     */
+    private double get_slope(int i) {
+        if (i == 0 || i == cells - 1) {
+            return 0.0;
+        }
+        double before = 0.5 * (get_width(i - 1) + get_width(i));
+        double after = 0.5 * (get_width(i) + get_width(i + 1));
+        return FiniteVolumeRHS.minmod((values[i] - values[i - 1]) / before, (values[i + 1] - values[i]) / after);
+    }
+
+    /**
+     * The change of the slope across each cell times its width, relative to
+     * the range of the solution.
+     */
+    private double[] get_monitor() {
+        double[] monitor = new double[cells];
+        double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < cells; i++) {
+            min = Math.min(min, values[i]);
+            max = Math.max(max, values[i]);
+        }
+        double range = max - min;
+        if (!(range > 0.0)) {
+            return monitor;
+        }
+        for (int i = 1; i < cells - 1; i++) {
+            double before = 0.5 * (get_width(i - 1) + get_width(i));
+            double after = 0.5 * (get_width(i) + get_width(i + 1));
+            double change = (values[i + 1] - values[i]) / after - (values[i] - values[i - 1]) / before;
+            monitor[i] = Math.abs(change) * get_width(i) / range;
+        }
+        monitor[0] = monitor[1];
+        monitor[cells - 1] = monitor[cells - 2];
+        return monitor;
+    }
+
+    /**
+     * Get the solution at the final time after the last run.
+     *
+     * @return The averages over the cells of the final mesh.
+     */
+    public Float64Vector get_final_values() {
+        return Float64Vector.valueOf(final_values);
+    }
+
+    /**
+     * Get the edges of the cells of the final mesh after the last run.
+     *
+     * @return The edges.
+     */
+    public double[] get_final_edges() {
+        return get_edges();
+    }
+
+    /**
+     * Get the number of cells in each window of the last run.
+     *
+     * @return The numbers of cells, one per window.
+     */
+    public int[] get_cell_counts() {
+        return cell_counts.clone();
+    }
+
+    /**
+     * Get the mean number of cells over the windows of the last run.
+     *
+     * @return The mean number of cells.
+     */
+    public double get_mean_cells() {
+        double sum = 0.0;
+        for (int count : cell_counts) {
+            sum += count;
+        }
+        return sum / cell_counts.length;
+    }
+}
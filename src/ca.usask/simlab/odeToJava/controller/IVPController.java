@@ -25,7 +25,20 @@ import java.util.List;
 
 import org.jscience.mathematics.numbers.Float64;
 import org.jscience.mathematics.vectors.Float64Vector;
+import ca.usask.simlab.odeToJava.scheme.AdamsScheme;
+import ca.usask.simlab.odeToJava.scheme.BDFScheme;
 import ca.usask.simlab.odeToJava.scheme.IMEXESDIRKButcherTableau;
+import ca.usask.simlab.odeToJava.scheme.ExtrapolationScheme;
+import ca.usask.simlab.odeToJava.scheme.MultistepScheme;
+import ca.usask.simlab.odeToJava.scheme.RadauIIATableau;
+import ca.usask.simlab.odeToJava.scheme.PDIRKTableau;
+import ca.usask.simlab.odeToJava.scheme.MultirateScheme;
+import ca.usask.simlab.odeToJava.scheme.RKCScheme;
+import ca.usask.simlab.odeToJava.scheme.RushLarsenScheme;
+import ca.usask.simlab.odeToJava.scheme.ExponentialRKTableau;
+import ca.usask.simlab.odeToJava.scheme.RKNTableau;
+import ca.usask.simlab.odeToJava.scheme.LowStorageRKTableau;
+import ca.usask.simlab.odeToJava.scheme.CompositionScheme;
 import ca.usask.simlab.odeToJava.scheme.Scheme;
 import ca.usask.simlab.odeToJava.scheme.ERKButcherTableau;
 import ca.usask.simlab.odeToJava.scheme.ForwardEulerTableau;
@@ -43,12 +56,27 @@ import ca.usask.simlab.odeToJava.modules.io.InterpolatingSolutionWriterModule;
 import ca.usask.simlab.odeToJava.modules.io.writers.CompoundSolutionWriter;
 import ca.usask.simlab.odeToJava.modules.io.writers.DiskWriter;
 import ca.usask.simlab.odeToJava.modules.io.writers.SolutionWriter;
+import ca.usask.simlab.odeToJava.modules.multistep.MultistepModule;
+import ca.usask.simlab.odeToJava.modules.scheme.ExtrapolationModule;
 import ca.usask.simlab.odeToJava.modules.scheme.IMEXESDIRKModule;
+import ca.usask.simlab.odeToJava.modules.scheme.RadauIIAModule;
+import ca.usask.simlab.odeToJava.modules.scheme.PDIRKModule;
+import ca.usask.simlab.odeToJava.modules.scheme.MultirateModule;
+import ca.usask.simlab.odeToJava.modules.scheme.RKCModule;
+import ca.usask.simlab.odeToJava.modules.scheme.ExponentialRKModule;
+import ca.usask.simlab.odeToJava.modules.scheme.RKNModule;
+import ca.usask.simlab.odeToJava.modules.scheme.LowStorageRKModule;
+import ca.usask.simlab.odeToJava.modules.scheme.RushLarsenModule;
+import ca.usask.simlab.odeToJava.modules.scheme.CompositionModule;
 import ca.usask.simlab.odeToJava.modules.scheme.ERKModule;
 import ca.usask.simlab.odeToJava.modules.scheme.ForwardEulerModule;
 import ca.usask.simlab.odeToJava.modules.scheme.StormerVerletModule;
+import ca.usask.simlab.odeToJava.solver.AdamsSolver;
+import ca.usask.simlab.odeToJava.solver.BDFSolver;
 import ca.usask.simlab.odeToJava.solver.ConstantStepSolver;
 import ca.usask.simlab.odeToJava.solver.EmbErrSolver;
+import ca.usask.simlab.odeToJava.solver.ExtrapolationSolver;
+import ca.usask.simlab.odeToJava.solver.MultistepSolver;
 import ca.usask.simlab.odeToJava.solver.PropertySolver;
 import ca.usask.simlab.odeToJava.solver.SdErrSolver;
 import ca.usask.simlab.odeToJava.solver.SolverModule;
@@ -114,6 +142,8 @@ public class IVPController {
     private Float64 amax_normal, amax_rejected, amin, safety, threshold;
     private boolean initial_stepsize_selection;
     private Float64 initial_stepsize;
+    private int threads = 1;
+    private boolean approximate_factorization;
     /**
      * The supported error control methods.
      */
@@ -770,6 +800,43 @@ public class IVPController {
         return initial_stepsize;
     }
 
+    /**
+     * Set the number of threads a solver may use for independent parts of a
+     * step, the rows of an extrapolation tableau or the stages of a PDIRK
+     * method. With more than one thread the RHS must be safe to call from
+     * several threads at once.
+     *
+     * @param threads The number of threads.
+     *
+     * @throws IllegalArgumentException If the number of threads is less than one.
+     */
+    public void set_threads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Get the number of threads a solver may use.
+     *
+     * @return The number of threads.
+     */
+    public int get_threads() {
+        return threads;
+    }
+
+    /**
+     * Set whether the IMEX ESDIRK methods solve their stages with the
+     * approximate factorization of the ODE, which must then be an AdditiveRHS
+     * that implements ApproximateFactorization. The default is false.
+     *
+     * @param approximate_factorization Whether to use the approximate factorization.
+     */
+    public void set_approximate_factorization(boolean approximate_factorization) {
+        this.approximate_factorization = approximate_factorization;
+    }
+
     /**
      * Start the solver running.
      *
@@ -880,11 +947,23 @@ public class IVPController {
             solver.add_solver_module(new ForwardEulerModule());
         } else if (butcher_tableau instanceof StormerVerletTableau) {
             solver.add_solver_module(new StormerVerletModule());
+        } else if (butcher_tableau instanceof CompositionScheme) {
+            solver.add_solver_module(new CompositionModule((CompositionScheme)butcher_tableau));
         }
         else if (butcher_tableau instanceof ERKButcherTableau) {
             solver.add_solver_module(new ERKModule((ERKButcherTableau)butcher_tableau));
         } else if (butcher_tableau instanceof IMEXESDIRKButcherTableau) {
-            solver.add_solver_module(new IMEXESDIRKModule((IMEXESDIRKButcherTableau)butcher_tableau));
+            solver.add_solver_module(get_IMEXESDIRK_module());
+        } else if (butcher_tableau instanceof PDIRKTableau) {
+            solver.add_solver_module(get_PDIRK_module());
+        } else if (butcher_tableau instanceof ExponentialRKTableau) {
+            solver.add_solver_module(new ExponentialRKModule((ExponentialRKTableau)butcher_tableau));
+        } else if (butcher_tableau instanceof RKNTableau) {
+            solver.add_solver_module(new RKNModule((RKNTableau)butcher_tableau));
+        } else if (butcher_tableau instanceof LowStorageRKTableau) {
+            solver.add_solver_module(new LowStorageRKModule((LowStorageRKTableau)butcher_tableau));
+        } else if (butcher_tableau instanceof RushLarsenScheme) {
+            solver.add_solver_module(new RushLarsenModule((RushLarsenScheme)butcher_tableau));
         }
 
         if (initial_stepsize_selection) {
@@ -913,8 +992,11 @@ public class IVPController {
             solver.addStdSolverModule(new ERKModule((ERKButcherTableau)butcher_tableau));
             solver.addErrSolverModule(new ERKModule((ERKButcherTableau)butcher_tableau));
         } else if (butcher_tableau instanceof IMEXESDIRKButcherTableau) {
-            solver.addStdSolverModule(new IMEXESDIRKModule((IMEXESDIRKButcherTableau)butcher_tableau));
-            solver.addErrSolverModule(new IMEXESDIRKModule((IMEXESDIRKButcherTableau)butcher_tableau));
+            solver.addStdSolverModule(get_IMEXESDIRK_module());
+            solver.addErrSolverModule(get_IMEXESDIRK_module());
+        } else if (butcher_tableau instanceof LowStorageRKTableau) {
+            solver.addStdSolverModule(new LowStorageRKModule((LowStorageRKTableau)butcher_tableau));
+            solver.addErrSolverModule(new LowStorageRKModule((LowStorageRKTableau)butcher_tableau));
         }
 
         solver.add_solver_module(get_error_estimator_module());
@@ -933,6 +1015,30 @@ public class IVPController {
         return solver;
     }
 
+    /**
+     * Get the module of an IMEX ESDIRK method with the linear solver chosen
+     * for this controller.
+     *
+     * @return The module for the IMEX ESDIRK method.
+     */
+    private IMEXESDIRKModule get_IMEXESDIRK_module() {
+        IMEXESDIRKModule module = new IMEXESDIRKModule((IMEXESDIRKButcherTableau)butcher_tableau);
+        module.set_approximate_factorization(approximate_factorization);
+        return module;
+    }
+
+    /**
+     * Get the module of a PDIRK method, which computes its stages with the
+     * threads of this controller.
+     *
+     * @return The module for the PDIRK method.
+     */
+    private PDIRKModule get_PDIRK_module() {
+        PDIRKModule module = new PDIRKModule((PDIRKTableau)butcher_tableau);
+        module.set_threads(threads);
+        return module;
+    }
+
     /**
      * Get the module used to set the initial stepsize.
      *
@@ -953,12 +1059,34 @@ public class IVPController {
      *                               or reading from a file.
      */
     private PropertySolver create_embedded_error_control() throws FileNotFoundException, IOException {
+        if (butcher_tableau instanceof MultistepScheme) {
+            return create_multistep_solver();
+        }
+        if (butcher_tableau instanceof ExtrapolationScheme) {
+            return create_extrapolation_solver();
+        }
         EmbErrSolver solver = new EmbErrSolver();
 
         if (butcher_tableau instanceof ERKButcherTableau) {
             solver.add_solver_module(new ERKModule((ERKButcherTableau)butcher_tableau));
         } else if (butcher_tableau instanceof IMEXESDIRKButcherTableau) {
-            solver.add_solver_module(new IMEXESDIRKModule((IMEXESDIRKButcherTableau)butcher_tableau));
+            solver.add_solver_module(get_IMEXESDIRK_module());
+        } else if (butcher_tableau instanceof RadauIIATableau) {
+            solver.add_solver_module(new RadauIIAModule((RadauIIATableau)butcher_tableau, atol, rtol));
+        } else if (butcher_tableau instanceof PDIRKTableau) {
+            solver.add_solver_module(get_PDIRK_module());
+        } else if (butcher_tableau instanceof MultirateScheme) {
+            solver.add_solver_module(new MultirateModule((MultirateScheme)butcher_tableau, atol, rtol));
+        } else if (butcher_tableau instanceof RKCScheme) {
+            solver.add_solver_module(new RKCModule((RKCScheme)butcher_tableau));
+        } else if (butcher_tableau instanceof ExponentialRKTableau) {
+            solver.add_solver_module(new ExponentialRKModule((ExponentialRKTableau)butcher_tableau));
+        } else if (butcher_tableau instanceof RKNTableau) {
+            solver.add_solver_module(new RKNModule((RKNTableau)butcher_tableau));
+        } else if (butcher_tableau instanceof LowStorageRKTableau) {
+            solver.add_solver_module(new LowStorageRKModule((LowStorageRKTableau)butcher_tableau));
+        } else if (butcher_tableau instanceof RushLarsenScheme) {
+            solver.add_solver_module(new RushLarsenModule((RushLarsenScheme)butcher_tableau));
         }
         solver.add_solver_module(get_error_estimator_module());
         solver.add_solver_module(get_stepsize_controller_module());
@@ -976,6 +1104,76 @@ public class IVPController {
         return solver;
     }
 
+    /**
+     * Create a variable-order multistep solver, the error control is part of
+     * the corrector module of the method.
+     *
+     * @return The multistep solver.
+     *
+     * @throws FileNotFoundException If any of the specified input or output files
+     *                               cannot be found.
+     * @throws IOException           If there was an error opening, writing to,
+     *                               or reading from a file.
+     */
+    private PropertySolver create_multistep_solver() throws FileNotFoundException, IOException {
+        MultistepSolver solver;
+        if (butcher_tableau instanceof BDFScheme) {
+            solver = new BDFSolver((BDFScheme)butcher_tableau, atol, rtol, ivp.get_ODE());
+        } else if (butcher_tableau instanceof AdamsScheme) {
+            solver = new AdamsSolver((AdamsScheme)butcher_tableau, atol, rtol, ivp.get_ODE());
+        } else {
+            throw new IllegalStateException("Unknown multistep method.");
+        }
+        MultistepModule module = solver.get_corrector_module();
+        module.set_amax_normal(amax_normal);
+        module.set_amax_rejected(amax_rejected);
+        module.set_amin(amin);
+        module.set_safety(safety);
+
+        // the solver estimates its own initial stepsize if none is given
+        if (!initial_stepsize_selection) {
+            solver.set_initial_stepsize(initial_stepsize);
+        }
+
+        solver.add_solver_module(get_writer_module());
+
+        add_other_modules(solver);
+
+        return solver;
+    }
+
+    /**
+     * Create a variable-order extrapolation solver, the error control is part
+     * of the extrapolation module.
+     *
+     * @return The extrapolation solver.
+     *
+     * @throws FileNotFoundException If any of the specified input or output files
+     *                               cannot be found.
+     * @throws IOException           If there was an error opening, writing to,
+     *                               or reading from a file.
+     */
+    private PropertySolver create_extrapolation_solver() throws FileNotFoundException, IOException {
+        ExtrapolationSolver solver = new ExtrapolationSolver((ExtrapolationScheme)butcher_tableau, atol, rtol, ivp.get_ODE());
+        ExtrapolationModule module = solver.get_extrapolation_module();
+        module.set_amax_normal(amax_normal);
+        module.set_amax_rejected(amax_rejected);
+        module.set_amin(amin);
+        module.set_safety(safety);
+        module.set_threads(threads);
+
+        // the solver estimates its own initial stepsize if none is given
+        if (!initial_stepsize_selection) {
+            solver.set_initial_stepsize(initial_stepsize);
+        }
+
+        solver.add_solver_module(get_writer_module());
+
+        add_other_modules(solver);
+
+        return solver;
+    }
+
     /**
      * Get the error control module.
      */
@@ -989,9 +1187,13 @@ public class IVPController {
             }
             case SPECIAL_EMB_ERROR_CONTROL:
             {
-                if (butcher_tableau instanceof ERKButcherTableau) {
+                if (butcher_tableau instanceof ERKButcherTableau || butcher_tableau instanceof RKCScheme
+                        || butcher_tableau instanceof ExponentialRKTableau || butcher_tableau instanceof RKNTableau
+                        || butcher_tableau instanceof LowStorageRKTableau || butcher_tableau instanceof MultirateScheme
+                        || butcher_tableau instanceof RushLarsenScheme) {
                     module = new EmbErrExplicitPIControllerModule(atol, rtol, ivp.get_ODE());
-                } else if (butcher_tableau instanceof IMEXESDIRKButcherTableau) {
+                } else if (butcher_tableau instanceof IMEXESDIRKButcherTableau || butcher_tableau instanceof RadauIIATableau
+                        || butcher_tableau instanceof PDIRKTableau) {
                     module = new EmbErrImplicitPredictiveControllerModule(atol, rtol, ivp.get_ODE());
                 }
                 break;
@@ -0,0 +1,38 @@
+/* ./controller/IVPControllerFactory.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.controller;
+
+/**
+ * This interface creates configured controllers for pieces of a larger
+ * integration, so a driver such as PararealController can solve many IVPs
+ * with the same method, tolerances and modules.
+ */
+public interface IVPControllerFactory {
+    /**
+     * Create a new controller with its own solver and modules, since the
+     * controllers may be run at the same time in different threads. An RHS
+     * that keeps work arrays is not safe to share between threads, so the
+     * factory may solve a copy of the IVP with its own instance of the ODE.
+     *
+     * @param ivp        The IVP to solve.
+     * @param final_time The final time to solve to.
+     *
+     * @return The controller, ready to run.
+     */
+    public IVPController create(IVP ivp, double final_time);
+}
@@ -0,0 +1,385 @@
+/* ./controller/PararealController.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.controller;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import org.jscience.mathematics.vectors.Float64Vector;
+import ca.usask.simlab.odeToJava.ode.RHS;
+import ca.usask.simlab.odeToJava.util.Matrix;
+import ca.usask.simlab.odeToJava.util.ParallelLoop;
+
+/**
+ * Solve an IVP with the Parareal algorithm, which divides the interval into
+ * time slices and iterates
+ * U_{n+1} = G(U_n^new) + F(U_n^old) - G(U_n^old)
+ * with a cheap coarse propagator G and an accurate fine propagator F. The
+ * fine solves of all slices only need the values from the last iteration, so
+ * they are run in parallel, while the coarse corrections are sequential.
+ * <p>
+ * Both propagators are controllers created by an IVPControllerFactory, for
+ * example the forward Euler method with a large constant step as G and the
+ * Dormand-Prince method with the target tolerances as F. After k iterations
+ * the first k slices have the fine solution, so at most one iteration per
+ * slice is needed and the fine solves of unchanged slices are reused. The
+ * iteration stops when the largest change of the slice boundaries, weighted
+ * by 1 + |U|, is below the tolerance. This only happens in few iterations if
+ * G follows changes of its starting values smoothly; an explicit G whose
+ * stepsize is limited by stiffness does not, and the iteration then runs to
+ * one iteration per slice with more fine solves than the sequential
+ * solution. The RHS must be safe to call from several threads at once when
+ * more than one thread is used.
+ * <p>
+ * Jacques-Louis Lions, Yvon Maday, and Gabriel Turinici. "A parareal in time discretization of PDE's", C. R. Acad. Sci. Paris, vol 332, pg 661-668, 2001.
+ * <p>
+ * Martin Gander and Stefan Vandewalle. "Analysis of the parareal time-parallel time-integration method", SIAM J. Sci. Comput., vol 29, pg 556-578, 2007.
+ */
+public class PararealController {
+    /**
+     * The default number of time slices.
+     */
+    public static final int DEFAULT_SLICES = 8;
+
+    /**
+     * The default tolerance for the change of the slice boundaries.
+     */
+    public static final double DEFAULT_TOLERANCE = 1e-8;
+
+    private final IVP ivp;
+    private final double final_time;
+    private final IVPControllerFactory coarse, fine;
+    private int slices;
+    private int threads;
+    private int max_iterations;
+    private double tolerance;
+    // the results of the last run
+    private double[] times;
+    private double[][] boundary;
+    private List<Double> changes;
+    private boolean converged, sequential;
+    private int fine_solves;
+
+    /**
+     * Constructor for a Parareal solution of an IVP.
+     *
+     * @param ivp        The IVP to solve.
+     * @param final_time The final time to solve to.
+     * @param coarse     The factory for the coarse propagator.
+     * @param fine       The factory for the fine propagator.
+     */
+    public PararealController(IVP ivp, double final_time, IVPControllerFactory coarse, IVPControllerFactory fine) {
+        if (final_time <= ivp.get_initial_time().doubleValue()) {
+            throw new IllegalArgumentException("The final time must be after the initial time");
+        }
+        this.ivp = ivp;
+        this.final_time = final_time;
+        this.coarse = coarse;
+        this.fine = fine;
+        slices = DEFAULT_SLICES;
+        threads = 1;
+        max_iterations = -1;
+        tolerance = DEFAULT_TOLERANCE;
+        changes = new ArrayList<Double>();
+    }
+
+    /**
+     * Set the number of time slices of equal length.
+     *
+     * @param slices The number of time slices.
+     */
+    public void set_slices(int slices) {
+        if (slices < 1) {
+            throw new IllegalArgumentException("At least one time slice is needed");
+        }
+        this.slices = slices;
+    }
+
+    /**
+     * Get the number of time slices.
+     *
+     * @return The number of time slices.
+     */
+    public int get_slices() {
+        return slices;
+    }
+
+    /**
+     * Set the number of threads used for the fine solves, usually the number
+     * of time slices.
+     *
+     * @param threads The number of threads, 1 runs the fine solves in the calling thread only.
+     */
+    public void set_threads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Get the number of threads used for the fine solves.
+     *
+     * @return The number of threads.
+     */
+    public int get_threads() {
+        return threads;
+    }
+
+    /**
+     * Set the maximum number of Parareal iterations, by default the number of
+     * slices, after which the solution is the sequential fine solution.
+     *
+     * @param iterations The maximum number of iterations.
+     */
+    public void set_max_iterations(int iterations) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("The number of iterations must be positive");
+        }
+        max_iterations = iterations;
+    }
+
+    /**
+     * Set the tolerance for the largest change of the slice boundaries,
+     * weighted by 1 + |U|, between two iterations.
+     *
+     * @param tolerance The tolerance.
+     */
+    public void set_tolerance(double tolerance) {
+        if (tolerance < 0.0) {
+            throw new IllegalArgumentException("The tolerance must not be negative");
+        }
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Get the tolerance for the change of the slice boundaries.
+     *
+     * @return The tolerance.
+     */
+    public double get_tolerance() {
+        return tolerance;
+    }
+
+    /**
+     * Run the Parareal iteration.
+     *
+     * @throws IOException If the controllers could not open their output.
+     */
+    public void run() throws IOException {
+        RHS ode = ivp.get_ODE();
+        int n = ode.get_size();
+        int iterations = max_iterations > 0 ? Math.min(max_iterations, slices) : slices;
+        double t0 = ivp.get_initial_time().doubleValue();
+        times = new double[slices + 1];
+        for (int s = 0; s <= slices; s++) {
+            times[s] = s == slices ? final_time : t0 + (final_time - t0) * s / slices;
+        }
+        boundary = new double[slices + 1][];
+        boundary[0] = Matrix.toDouble(ivp.get_initial_values());
+        changes.clear();
+        converged = false;
+        sequential = false;
+        fine_solves = 0;
+
+        // the coarse solution is the starting guess
+        double[][] coarse_values = new double[slices][];
+        for (int s = 0; s < slices; s++) {
+            coarse_values[s] = propagate(coarse, s, boundary[s]);
+            boundary[s + 1] = coarse_values[s];
+        }
+
+        ExecutorService executor = null;
+        if (threads > 1) {
+            executor = ParallelLoop.create_executor("parareal", threads);
+        }
+        try {
+            double[][] fine_values = new double[slices][];
+            double[][] fine_start = new double[slices][];
+            for (int k = 0; k < iterations && !converged; k++) {
+                fine_propagate(executor, fine_start, fine_values);
+
+                // the sequential correction, slices before k already have the fine solution
+                double change = 0.0;
+                for (int s = k; s < slices; s++) {
+                    double[] predicted = propagate(coarse, s, boundary[s]);
+                    double[] corrected = new double[n];
+                    for (int i = 0; i < n; i++) {
+                        corrected[i] = predicted[i] + fine_values[s][i] - coarse_values[s][i];
+                        double weight = 1.0 + Math.abs(corrected[i]);
+                        change = Math.max(change, Math.abs(corrected[i] - boundary[s + 1][i]) / weight);
+                    }
+                    coarse_values[s] = predicted;
+                    boundary[s + 1] = corrected;
+                }
+                changes.add(change);
+                converged = change <= tolerance;
+                sequential = k + 1 == slices;
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Run the fine propagator on every slice whose starting value changed
+     * since its last fine solve.
+     */
+    private void fine_propagate(ExecutorService executor, double[][] fine_start, double[][] fine_values) throws IOException {
+        List<Integer> pending = new ArrayList<Integer>();
+        for (int s = 0; s < slices; s++) {
+            if (fine_start[s] == null || !Arrays.equals(fine_start[s], boundary[s])) {
+                fine_start[s] = boundary[s];
+                pending.add(s);
+            }
+        }
+        fine_solves += pending.size();
+        if (executor == null) {
+            for (int s : pending) {
+                fine_values[s] = propagate(fine, s, fine_start[s]);
+            }
+            return;
+        }
+        List<Future<double[]>> futures = new ArrayList<Future<double[]>>();
+        for (final int s : pending) {
+            final double[] start = fine_start[s];
+            futures.add(executor.submit(new Callable<double[]>() {
+                public double[] call() throws IOException {
+                    return propagate(fine, s, start);
+                }
+            }));
+        }
+        try {
+            for (int j = 0; j < pending.size(); j++) {
+                fine_values[pending.get(j)] = futures.get(j).get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while running the fine propagator", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw ParallelLoop.unchecked(e);
+        }
+    }
+
+    /**
+     * Solve slice s from the given values with a new controller.
+     */
+    private double[] propagate(IVPControllerFactory factory, int s, double[] values) throws IOException {
+        IVP slice = new IVP(ivp.get_ODE(), times[s], values);
+        IVPController.RunnableSolver solver = factory.create(slice, times[s + 1]).get_runnable();
+        solver.run();
+        return Matrix.toDouble(solver.solver.get_final_values());
+    }
+
+    /**
+     * Get the solution at the final time after the last run.
+     *
+     * @return The final values.
+     */
+    public Float64Vector get_final_values() {
+        return Float64Vector.valueOf(boundary[slices]);
+    }
+
+    /**
+     * Get the solution at the start of a time slice, or at the final time for
+     * the slice after the last.
+     *
+     * @param slice The index of the time slice.
+     *
+     * @return The values at the slice boundary.
+     */
+    public Float64Vector get_boundary_values(int slice) {
+        return Float64Vector.valueOf(boundary[slice]);
+    }
+
+    /**
+     * Get the time at the start of a time slice, or the final time for the
+     * slice after the last.
+     *
+     * @param slice The index of the time slice.
+     *
+     * @return The time of the slice boundary.
+     */
+    public double get_boundary_time(int slice) {
+        return times[slice];
+    }
+
+    /**
+     * Get the number of Parareal iterations of the last run.
+     *
+     * @return The number of iterations.
+     */
+    public int get_iterations() {
+        return changes.size();
+    }
+
+    /**
+     * Get the largest weighted change of the slice boundaries in each
+     * iteration of the last run, which shows how fast the iteration converges.
+     *
+     * @return The changes, one per iteration.
+     */
+    public double[] get_boundary_changes() {
+        double[] result = new double[changes.size()];
+        for (int k = 0; k < result.length; k++) {
+            result[k] = changes.get(k);
+        }
+        return result;
+    }
+
+    /**
+     * Whether the change of the slice boundaries in the last iteration of the
+     * last run was below the tolerance.
+     *
+     * @return Whether the iteration converged.
+     */
+    public boolean is_converged() {
+        return converged;
+    }
+
+    /**
+     * Whether the last run took one iteration per slice, so its solution is
+     * the sequential fine solution even if it did not converge, but with more
+     * fine solves than solving sequentially.
+     *
+     * @return Whether the solution is the sequential fine solution.
+     */
+    public boolean is_sequential() {
+        return sequential;
+    }
+
+    /**
+     * Get the number of fine solves of time slices in the last run; the
+     * sequential fine solution uses one per slice.
+     *
+     * @return The number of fine solves.
+     */
+    public int get_fine_solves() {
+        return fine_solves;
+    }
+}
@@ -0,0 +1,442 @@
+/* ./controller/SplittingController.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.controller;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import org.jscience.mathematics.numbers.Float64;
+import org.jscience.mathematics.vectors.Float64Matrix;
+import org.jscience.mathematics.vectors.Float64Vector;
+import ca.usask.simlab.odeToJava.ode.AdditiveRHS;
+import ca.usask.simlab.odeToJava.ode.RHS;
+import ca.usask.simlab.odeToJava.scheme.SplittingScheme;
+import ca.usask.simlab.odeToJava.util.KrylovPhi;
+import ca.usask.simlab.odeToJava.util.LUDecomposition;
+import ca.usask.simlab.odeToJava.util.Matrix;
+import ca.usask.simlab.odeToJava.util.ParallelLoop;
+
+/**
+ * Solve an IVP with an additive RHS f = f1 + f2 by operator splitting with
+ * constant steps.
+ * <p>
+ * Unlike the additive Runge-Kutta methods, which evaluate f1 and f2 together
+ * at every stage, a splitting only needs the flows of f1 and f2 separately,
+ * so each operator can be advanced by the method that suits it best: an
+ * IVPController with its own method and stepsize control, the exponential or
+ * an implicit solve for a linear operator, or a flow known exactly. When an
+ * operator does not couple some blocks of components, such as the reactions
+ * at the points of a grid, the blocks can be advanced in parallel.
+ * <p>
+ * The flows are given as SubFlow objects, most easily built with the static
+ * methods of this class, and composed by a SplittingScheme.
+ * <p>
+ * Robert McLachlan and Reinout Quispel. "Splitting methods", Acta Numerica, vol 11, pg 341-434, 2002.
+ * <p>
+ * Willem Hundsdorfer and Jan Verwer. "Numerical Solution of Time-Dependent Advection-Diffusion-Reaction Equations", 2003, pg 325-337.
+ */
+public class SplittingController {
+    /**
+     * The default number of steps.
+     */
+    public static final int DEFAULT_STEPS = 100;
+
+    private final IVP ivp;
+    private final double final_time;
+    private final SubFlow flow1, flow2;
+    private SplittingScheme splitting;
+    private int steps;
+    private double[] final_values;
+
+    /**
+     * Constructor for a splitting solution of an IVP.
+     *
+     * @param ivp        The IVP to solve, whose ODE is f1 + f2.
+     * @param final_time The final time to solve to.
+     * @param flow1      The flow of f1.
+     * @param flow2      The flow of f2.
+     */
+    public SplittingController(IVP ivp, double final_time, SubFlow flow1, SubFlow flow2) {
+        if (final_time <= ivp.get_initial_time().doubleValue()) {
+            throw new IllegalArgumentException("The final time must be after the initial time");
+        }
+        this.ivp = ivp;
+        this.final_time = final_time;
+        this.flow1 = flow1;
+        this.flow2 = flow2;
+        splitting = SplittingScheme.get_Strang_scheme();
+        steps = DEFAULT_STEPS;
+    }
+
+    /**
+     * Set the splitting method, by default the Strang splitting.
+     *
+     * @param splitting The splitting method.
+     */
+    public void set_splitting(SplittingScheme splitting) {
+        this.splitting = splitting;
+    }
+
+    /**
+     * Get the splitting method.
+     *
+     * @return The splitting method.
+     */
+    public SplittingScheme get_splitting() {
+        return splitting;
+    }
+
+    /**
+     * Set the number of steps of equal length.
+     *
+     * @param steps The number of steps.
+     */
+    public void set_steps(int steps) {
+        if (steps < 1) {
+            throw new IllegalArgumentException("At least one step is needed");
+        }
+        this.steps = steps;
+    }
+
+    /**
+     * Get the number of steps.
+     *
+     * @return The number of steps.
+     */
+    public int get_steps() {
+        return steps;
+    }
+
+    /**
+     * Run the splitting from the initial to the final time.
+     *
+     * @throws IOException If the controllers of the flows could not open their output.
+     */
+    public void run() throws IOException {
+        double t0 = ivp.get_initial_time().doubleValue();
+        double h = (final_time - t0) / steps;
+        double[] a = splitting.get_a();
+        double[] b = splitting.get_b();
+        double[] y = Matrix.toDouble(ivp.get_initial_values());
+        for (int n = 0; n < steps; n++) {
+            double t = t0 + n * h;
+            // the flows of f1 and f2 are at their own times within the step
+            double t1 = t;
+            double t2 = t;
+            for (int i = 0; i < a.length; i++) {
+                if (a[i] != 0.0) {
+                    flow1.advance(t1, a[i] * h, y);
+                    t1 += a[i] * h;
+                }
+                if (b[i] != 0.0) {
+                    flow2.advance(t2, b[i] * h, y);
+                    t2 += b[i] * h;
+                }
+            }
+        }
+        final_values = y;
+    }
+
+    /**
+     * Get the solution at the final time after the last run.
+     *
+     * @return The final values.
+     */
+    public Float64Vector get_final_values() {
+        return Float64Vector.valueOf(final_values);
+    }
+
+    /**
+     * Get the first part f1 of an additive RHS as an RHS of its own.
+     *
+     * @param ode The additive RHS.
+     *
+     * @return The RHS f1.
+     */
+    public static RHS get_f1(final AdditiveRHS ode) {
+        return new RHS() {
+            @Override
+            public int get_size() {
+                return ode.get_size();
+            }
+
+            @Override
+            public Float64Vector f(Float64 t, Float64Vector y) {
+                return ode.f1(t, y);
+            }
+        };
+    }
+
+    /**
+     * Get the second part f2 of an additive RHS as an RHS of its own.
+     *
+     * @param ode The additive RHS.
+     *
+     * @return The RHS f2.
+     */
+    public static RHS get_f2(final AdditiveRHS ode) {
+        return new RHS() {
+            @Override
+            public int get_size() {
+                return ode.get_size();
+            }
+
+            @Override
+            public Float64Vector f(Float64 t, Float64Vector y) {
+                return ode.f2(t, y);
+            }
+
+            @Override
+            public void f(double t, double[] y, double[] yp) {
+                ode.f2(t, y, yp);
+            }
+
+            @Override
+            public Float64Matrix jacobian(Float64 t, Float64Vector y) {
+                return ode.jacobian_f2(t, y);
+            }
+        };
+    }
+
+    /**
+     * Get the flow of an operator that solves each substep with a new
+     * controller from a factory, with the method, tolerances and stepsize
+     * control of that controller.
+     *
+     * @param operator The operator as an RHS, such as from get_f1 or get_f2.
+     * @param factory  The factory for the controllers.
+     *
+     * @return The flow, which only supports forward substeps.
+     */
+    public static SubFlow get_controller_flow(final RHS operator, final IVPControllerFactory factory) {
+        return new SubFlow() {
+            public void advance(double t, double h, double[] y) throws IOException {
+                if (h <= 0.0) {
+                    throw new IllegalArgumentException("A controller flow only supports forward substeps");
+                }
+                IVPController controller = factory.create(new IVP(operator, t, y.clone()), t + h);
+                IVPController.RunnableSolver runnable = controller.get_runnable();
+                runnable.run();
+                Float64Vector values = runnable.solver.get_final_values();
+                for (int i = 0; i < y.length; i++) {
+                    y[i] = values.getValue(i);
+                }
+            }
+        };
+    }
+
+    /**
+     * Get the exact flow of a second part f2 that is linear and autonomous,
+     * f2(y) = A*y + c, as y + h*phi_1(hA)*f2(y) with the Krylov approximation
+     * of phi_1 for the operator from jacobian_f2_operator.
+     *
+     * @param ode The additive RHS with an affine f2.
+     *
+     * @return The flow of f2.
+     */
+    public static SubFlow get_exponential_flow(final AdditiveRHS ode) {
+        final int n = ode.get_size();
+        return new SubFlow() {
+            private KrylovPhi krylov;
+            private final double[] f = new double[n];
+            private final double[] change = new double[n];
+
+            public void advance(double t, double h, double[] y) {
+                if (krylov == null) {
+                    // the operator of an affine f2 does not change
+                    krylov = new KrylovPhi(ode.jacobian_f2_operator(t, y));
+                }
+                ode.f2(t, y, f);
+                for (int i = 0; i < n; i++) {
+                    f[i] *= h;
+                }
+                krylov.evaluate(h, new double[][] {null, f}, 1, change);
+                for (int i = 0; i < n; i++) {
+                    y[i] += change[i];
+                }
+            }
+        };
+    }
+
+    /**
+     * Get the flow of the second part f2 by one step of the L-stable SDIRK
+     * method of order 2 with gamma = 1 - 1/sqrt(2), which damps the stiff
+     * components instead of letting them oscillate as the trapezoidal rule
+     * does. Both stages use the LU decomposition of I - gamma*h*J with the
+     * Jacobian of f2, which is kept while the substep does not change, so the
+     * stages are solved exactly when f2 is linear.
+     * <p>
+     * Roger Alexander. "Diagonally implicit Runge-Kutta methods for stiff O.D.E.'s", SIAM Journal on Numerical Analysis, vol 14, pg 1006-1021, 1977.
+     *
+     * @param ode The additive RHS with a linear f2.
+     *
+     * @return The flow of f2.
+     */
+    public static SubFlow get_implicit_flow(final AdditiveRHS ode) {
+        final int n = ode.get_size();
+        final double gamma = 1.0 - 1.0 / Math.sqrt(2.0);
+        return new SubFlow() {
+            private final LUDecomposition lu = new LUDecomposition(n);
+            private double h_factored = 0.0;
+            private final double[] k1 = new double[n];
+            private final double[] k2 = new double[n];
+            private final double[] stage = new double[n];
+
+            public void advance(double t, double h, double[] y) {
+                if (h != h_factored) {
+                    double[][] jacobian = Matrix.toDouble(ode.jacobian_f2(Float64.valueOf(t), Float64Vector.valueOf(y)));
+                    if (!lu.factor_shifted(gamma * h, jacobian)) {
+                        throw new IllegalStateException("The SDIRK iteration matrix is singular");
+                    }
+                    h_factored = h;
+                }
+                // (I - gamma*h*J)*k1 = f2(y0)
+                ode.f2(t, y, k1);
+                lu.solve(k1);
+                // (I - gamma*h*J)*k2 = f2(y0 + (1 - gamma)*h*k1)
+                for (int i = 0; i < n; i++) {
+                    stage[i] = y[i] + (1.0 - gamma) * h * k1[i];
+                }
+                ode.f2(t + h, stage, k2);
+                lu.solve(k2);
+                for (int i = 0; i < n; i++) {
+                    y[i] += h * ((1.0 - gamma) * k1[i] + gamma * k2[i]);
+                }
+            }
+        };
+    }
+
+    /**
+     * Get the flow of an operator that does not couple the given blocks of
+     * components, such as the reactions at the points of a grid, which
+     * solves every block with its own controller, in parallel.
+     * <p>
+     * The components of the other blocks are held at their values at the
+     * start of the substep, so the flow is exact only when the operator
+     * does not couple the blocks. The operator must be safe to call from
+     * several threads when more than one thread is used.
+     *
+     * @param operator The operator as an RHS.
+     * @param blocks   The components of each block.
+     * @param factory  The factory for the controllers of the blocks.
+     * @param threads  The number of threads, 1 solves the blocks in the calling thread only.
+     *
+     * @return The flow, which only supports forward substeps.
+     */
+    public static SubFlow get_blockwise_flow(final RHS operator, final int[][] blocks,
+                                             final IVPControllerFactory factory, final int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed");
+        }
+        return new SubFlow() {
+            private ThreadPoolExecutor executor;
+
+            public void advance(final double t, final double h, final double[] y) throws IOException {
+                if (h <= 0.0) {
+                    throw new IllegalArgumentException("A controller flow only supports forward substeps");
+                }
+                final double[] start = y.clone();
+                if (threads == 1) {
+                    for (int b = 0; b < blocks.length; b++) {
+                        solve_block(operator, blocks[b], factory, t, h, start, y);
+                    }
+                    return;
+                }
+                if (executor == null) {
+                    // idle threads end on their own since the flow has no end
+                    executor = ParallelLoop.create_executor("splitting", threads);
+                }
+                List<Future<Void>> futures = new ArrayList<Future<Void>>();
+                for (int b = 0; b < blocks.length; b++) {
+                    final int[] block = blocks[b];
+                    futures.add(executor.submit(new Callable<Void>() {
+                        public Void call() throws IOException {
+                            // the blocks write disjoint components of y
+                            solve_block(operator, block, factory, t, h, start, y);
+                            return null;
+                        }
+                    }));
+                }
+                try {
+                    for (Future<Void> future : futures) {
+                        future.get();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while solving the blocks", e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw ParallelLoop.unchecked(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Solve one block of an operator over a substep with the other components
+     * held at their start values, writing the result into y.
+     */
+    private static void solve_block(final RHS operator, final int[] block, IVPControllerFactory factory,
+                                    double t, double h, final double[] start, double[] y) throws IOException {
+        final int n = operator.get_size();
+        double[] initial = new double[block.length];
+        for (int i = 0; i < block.length; i++) {
+            initial[i] = start[block[i]];
+        }
+        RHS block_rhs = new RHS() {
+            private final double[] full_y = start.clone();
+            private final double[] full_yp = new double[n];
+
+            @Override
+            public int get_size() {
+                return block.length;
+            }
+
+            @Override
+            public Float64Vector f(Float64 t, Float64Vector y) {
+                double[] yp = new double[block.length];
+                f(t.doubleValue(), Matrix.toDouble(y), yp);
+                return Float64Vector.valueOf(yp);
+            }
+
+            @Override
+            public void f(double t, double[] y, double[] yp) {
+                for (int i = 0; i < block.length; i++) {
+                    full_y[block[i]] = y[i];
+                }
+                operator.f(t, full_y, full_yp);
+                for (int i = 0; i < block.length; i++) {
+                    yp[i] = full_yp[block[i]];
+                }
+            }
+        };
+        IVPController controller = factory.create(new IVP(block_rhs, t, initial), t + h);
+        IVPController.RunnableSolver runnable = controller.get_runnable();
+        runnable.run();
+        Float64Vector values = runnable.solver.get_final_values();
+        for (int i = 0; i < block.length; i++) {
+            y[block[i]] = values.getValue(i);
+        }
+    }
+}
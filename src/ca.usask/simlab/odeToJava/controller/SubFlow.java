@@ -0,0 +1,41 @@
+/* ./controller/SubFlow.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.controller;
+
+import java.io.IOException;
+
+/**
+ * The flow of one operator of a split RHS, which advances a solution over a
+ * substep with a method suited to that operator alone.
+ * <p>
+ * The flows of SplittingController are built with its factory methods, by
+ * wrapping an IVPController, by the exponential of a linear operator or by
+ * an implicit solve, or written directly when the flow is known exactly.
+ */
+public interface SubFlow {
+    /**
+     * Advance the solution from t to t + h.
+     *
+     * @param t The time at the start of the substep.
+     * @param h The length of the substep, which is negative for compositions with backward substeps.
+     * @param y The solution at t, which is overwritten by the solution at t + h.
+     *
+     * @throws IOException If a controller could not open its output.
+     */
+    public void advance(double t, double h, double[] y) throws IOException;
+}
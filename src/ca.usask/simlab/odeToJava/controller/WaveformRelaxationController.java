@@ -0,0 +1,546 @@
+/* ./controller/WaveformRelaxationController.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.controller;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import org.jscience.mathematics.numbers.Float64;
+import org.jscience.mathematics.vectors.Float64Vector;
+import ca.usask.simlab.odeToJava.modules.io.writers.SolutionWriter;
+import ca.usask.simlab.odeToJava.ode.PartitionedRHS;
+import ca.usask.simlab.odeToJava.ode.RHS;
+import ca.usask.simlab.odeToJava.util.Matrix;
+import ca.usask.simlab.odeToJava.util.ParallelLoop;
+
+/**
+ * Solve an IVP whose components form loosely coupled blocks with Jacobi
+ * waveform relaxation.
+ * <p>
+ * The interval is divided into windows that are solved one after another.
+ * In each sweep over a window every block is integrated over the whole
+ * window by its own controller, with its own steps, while the components of
+ * the other blocks are inputs taken from their trajectories of the last
+ * sweep. The first sweep holds the other blocks constant. The blocks of a
+ * sweep are independent, so they are solved in parallel. The trajectories
+ * are the accepted steps of each solve with the cubic Hermite interpolant
+ * between them. The sweeps stop when the largest change of the trajectories
+ * at the steps, weighted by 1 + |y|, is below the tolerance.
+ * <p>
+ * The inner controllers are created by an IVPControllerFactory for an IVP
+ * whose RHS is the block only. If the RHS implements PartitionedRHS only the
+ * components of the block are evaluated. The RHS must be safe to call from
+ * several threads at once when more than one thread is used.
+ * <p>
+ * Ekachai Lelarasmee, Albert Ruehli, and Alberto Sangiovanni-Vincentelli. "The waveform relaxation method for time-domain analysis of large scale integrated circuits", IEEE Trans. CAD, vol 1, pg 131-145, 1982.
+ * <p>
+ * Martin Gander and Albert Ruehli. "Optimized waveform relaxation methods for RC type circuits", IEEE Trans. Circuits and Systems, vol 51, pg 755-768, 2004.
+ */
+public class WaveformRelaxationController {
+    /**
+     * The default number of windows.
+     */
+    public static final int DEFAULT_WINDOWS = 10;
+
+    /**
+     * The default maximum number of sweeps in a window.
+     */
+    public static final int DEFAULT_MAX_SWEEPS = 20;
+
+    /**
+     * The default tolerance for the change of the trajectories.
+     */
+    public static final double DEFAULT_TOLERANCE = 1e-6;
+
+    private final IVP ivp;
+    private final double final_time;
+    private final int[][] blocks;
+    private final IVPControllerFactory factory;
+    private int windows;
+    private int threads;
+    private int max_sweeps;
+    private double tolerance;
+    // the results of the last run
+    private double[] final_values;
+    private int[] sweeps;
+    private boolean converged;
+    private int block_solves;
+
+    /**
+     * Constructor for a waveform relaxation solution of an IVP.
+     *
+     * @param ivp        The IVP to solve.
+     * @param final_time The final time to solve to.
+     * @param blocks     The components of each block, every component in exactly one block.
+     * @param factory    The factory for the controllers of the blocks.
+     */
+    public WaveformRelaxationController(IVP ivp, double final_time, int[][] blocks, IVPControllerFactory factory) {
+        if (final_time <= ivp.get_initial_time().doubleValue()) {
+            throw new IllegalArgumentException("The final time must be after the initial time");
+        }
+        int n = ivp.get_size();
+        boolean[] seen = new boolean[n];
+        int count = 0;
+        for (int b = 0; b < blocks.length; b++) {
+            for (int i = 0; i < blocks[b].length; i++) {
+                int component = blocks[b][i];
+                if (component < 0 || component >= n || seen[component]) {
+                    throw new IllegalArgumentException("Every component must be in exactly one block");
+                }
+                seen[component] = true;
+                count++;
+            }
+        }
+        if (count != n) {
+            throw new IllegalArgumentException("Every component must be in exactly one block");
+        }
+        this.ivp = ivp;
+        this.final_time = final_time;
+        this.blocks = blocks;
+        this.factory = factory;
+        windows = DEFAULT_WINDOWS;
+        threads = 1;
+        max_sweeps = DEFAULT_MAX_SWEEPS;
+        tolerance = DEFAULT_TOLERANCE;
+    }
+
+    /**
+     * Set the number of windows of equal length.
+     *
+     * @param windows The number of windows.
+     */
+    public void set_windows(int windows) {
+        if (windows < 1) {
+            throw new IllegalArgumentException("At least one window is needed");
+        }
+        this.windows = windows;
+    }
+
+    /**
+     * Get the number of windows.
+     *
+     * @return The number of windows.
+     */
+    public int get_windows() {
+        return windows;
+    }
+
+    /**
+     * Set the number of threads used to solve the blocks.
+     *
+     * @param threads The number of threads, 1 solves the blocks in the calling thread only.
+     */
+    public void set_threads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Get the number of threads used to solve the blocks.
+     *
+     * @return The number of threads.
+     */
+    public int get_threads() {
+        return threads;
+    }
+
+    /**
+     * Set the maximum number of sweeps in a window.
+     *
+     * @param sweeps The maximum number of sweeps.
+     */
+    public void set_max_sweeps(int sweeps) {
+        if (sweeps < 1) {
+            throw new IllegalArgumentException("The number of sweeps must be positive");
+        }
+        max_sweeps = sweeps;
+    }
+
+    /**
+     * Set the tolerance for the largest change of the trajectories, weighted
+     * by 1 + |y|, between two sweeps.
+     *
+     * @param tolerance The tolerance.
+     */
+    public void set_tolerance(double tolerance) {
+        if (tolerance < 0.0) {
+            throw new IllegalArgumentException("The tolerance must not be negative");
+        }
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Get the tolerance for the change of the trajectories.
+     *
+     * @return The tolerance.
+     */
+    public double get_tolerance() {
+        return tolerance;
+    }
+
+    /**
+     * Run the waveform relaxation over all windows.
+     *
+     * @throws IOException If the controllers could not open their output.
+     */
+    public void run() throws IOException {
+        double t0 = ivp.get_initial_time().doubleValue();
+        double[] values = Matrix.toDouble(ivp.get_initial_values());
+        sweeps = new int[windows];
+        converged = true;
+        block_solves = 0;
+
+        ExecutorService executor = null;
+        if (threads > 1) {
+            executor = ParallelLoop.create_executor("waveform", threads);
+        }
+        try {
+            for (int window = 0; window < windows; window++) {
+                double start = window == 0 ? t0 : t0 + (final_time - t0) * window / windows;
+                double end = window == windows - 1 ? final_time : t0 + (final_time - t0) * (window + 1) / windows;
+                values = solve_window(executor, window, start, end, values);
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+        final_values = values;
+    }
+
+    /**
+     * Sweep over one window until the trajectories converge.
+     */
+    private double[] solve_window(ExecutorService executor, int window, double start, double end, double[] values) throws IOException {
+        Waveform[] current = new Waveform[blocks.length];
+        for (int b = 0; b < blocks.length; b++) {
+            current[b] = new Waveform(blocks[b], start, values);
+        }
+        boolean done = false;
+        int sweep = 0;
+        while (!done && sweep < max_sweeps) {
+            Waveform[] next = sweep_blocks(executor, current, start, end, values);
+            double change = 0.0;
+            for (int b = 0; b < blocks.length; b++) {
+                change = Math.max(change, next[b].distance(current[b]));
+            }
+            current = next;
+            sweep++;
+            // a single block does not depend on any other trajectory
+            done = change <= tolerance || blocks.length == 1;
+        }
+        sweeps[window] = sweep;
+        converged = converged && done;
+        double[] result = new double[values.length];
+        for (int b = 0; b < blocks.length; b++) {
+            current[b].end_values(result);
+        }
+        return result;
+    }
+
+    /**
+     * Solve every block over the window with the other blocks given by their
+     * last trajectories, in parallel if there is more than one thread.
+     */
+    private Waveform[] sweep_blocks(ExecutorService executor, final Waveform[] last, final double start, final double end, final double[] values) throws IOException {
+        Waveform[] next = new Waveform[blocks.length];
+        block_solves += blocks.length;
+        if (executor == null) {
+            for (int b = 0; b < blocks.length; b++) {
+                next[b] = solve_block(b, last, start, end, values);
+            }
+            return next;
+        }
+        List<Future<Waveform>> futures = new ArrayList<Future<Waveform>>();
+        for (int b = 0; b < blocks.length; b++) {
+            final int block = b;
+            futures.add(executor.submit(new Callable<Waveform>() {
+                public Waveform call() throws IOException {
+                    return solve_block(block, last, start, end, values);
+                }
+            }));
+        }
+        try {
+            for (int b = 0; b < blocks.length; b++) {
+                next[b] = futures.get(b).get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while solving the blocks", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw ParallelLoop.unchecked(e);
+        }
+        return next;
+    }
+
+    /**
+     * Solve block b over the window and record its trajectory.
+     */
+    private Waveform solve_block(int b, Waveform[] last, double start, double end, double[] values) throws IOException {
+        int[] block = blocks[b];
+        double[] initial = new double[block.length];
+        for (int i = 0; i < block.length; i++) {
+            initial[i] = values[block[i]];
+        }
+        BlockRHS rhs = new BlockRHS(b, last);
+        final Waveform waveform = new Waveform(block);
+        IVPController controller = factory.create(new IVP(rhs, start, initial), end);
+        controller.add_solution_writer(new SolutionWriter() {
+            public void begin() {
+            }
+
+            public void emit(Float64 t, Float64Vector y) {
+                waveform.add(t.doubleValue(), Matrix.toDouble(y));
+            }
+
+            public void end() {
+            }
+        });
+        controller.get_runnable().run();
+        waveform.finish(rhs);
+        return waveform;
+    }
+
+    /**
+     * Get the solution at the final time after the last run.
+     *
+     * @return The final values.
+     */
+    public Float64Vector get_final_values() {
+        return Float64Vector.valueOf(final_values);
+    }
+
+    /**
+     * Get the number of sweeps in each window of the last run.
+     *
+     * @return The number of sweeps, one per window.
+     */
+    public int[] get_sweeps() {
+        return sweeps.clone();
+    }
+
+    /**
+     * Whether every window of the last run met the tolerance within the
+     * maximum number of sweeps.
+     *
+     * @return Whether the sweeps converged.
+     */
+    public boolean is_converged() {
+        return converged;
+    }
+
+    /**
+     * Get the number of block solves in the last run.
+     *
+     * @return The number of block solves.
+     */
+    public int get_block_solves() {
+        return block_solves;
+    }
+
+    /**
+     * The RHS of one block, with the other components interpolated from
+     * their trajectories of the last sweep.
+     */
+    private class BlockRHS extends RHS {
+        private final int[] block;
+        private final Waveform[] inputs;
+        private final int own;
+        private final double[] full_y, full_yp;
+
+        BlockRHS(int own, Waveform[] inputs) {
+            this.own = own;
+            this.block = blocks[own];
+            this.inputs = inputs;
+            int n = ivp.get_size();
+            full_y = new double[n];
+            full_yp = new double[n];
+        }
+
+        @Override
+        public int get_size() {
+            return block.length;
+        }
+
+        @Override
+        public Float64Vector f(Float64 t, Float64Vector y) {
+            double[] yp = new double[block.length];
+            f(t.doubleValue(), Matrix.toDouble(y), yp);
+            return Float64Vector.valueOf(yp);
+        }
+
+        @Override
+        public void f(double t, double[] y, double[] yp) {
+            for (int b = 0; b < inputs.length; b++) {
+                if (b != own) {
+                    inputs[b].evaluate(t, full_y);
+                }
+            }
+            for (int i = 0; i < block.length; i++) {
+                full_y[block[i]] = y[i];
+            }
+            RHS ode = ivp.get_ODE();
+            if (ode instanceof PartitionedRHS) {
+                ((PartitionedRHS) ode).f(t, full_y, full_yp, block, block.length);
+            } else {
+                ode.f(t, full_y, full_yp);
+            }
+            for (int i = 0; i < block.length; i++) {
+                yp[i] = full_yp[block[i]];
+            }
+        }
+    }
+
+    /**
+     * The trajectory of one block, the accepted steps of its solve with the
+     * derivatives there for the cubic Hermite interpolant.
+     */
+    private static class Waveform {
+        private final int[] block;
+        private final List<Double> time_list = new ArrayList<Double>();
+        private final List<double[]> value_list = new ArrayList<double[]>();
+        private double[] times;
+        private double[][] values, derivatives;
+
+        /**
+         * A trajectory that will be recorded from a solve.
+         */
+        Waveform(int[] block) {
+            this.block = block;
+        }
+
+        /**
+         * A constant trajectory with the values of the block at the start of
+         * the window.
+         */
+        Waveform(int[] block, double start, double[] full_values) {
+            this.block = block;
+            times = new double[]{start};
+            values = new double[1][block.length];
+            derivatives = new double[1][block.length];
+            for (int i = 0; i < block.length; i++) {
+                values[0][i] = full_values[block[i]];
+            }
+        }
+
+        void add(double t, double[] y) {
+            if (time_list.isEmpty() || t > time_list.get(time_list.size() - 1)) {
+                time_list.add(t);
+                value_list.add(y);
+            }
+        }
+
+        /**
+         * Store the recorded steps and the derivatives of the block RHS the
+         * trajectory solved.
+         */
+        void finish(RHS rhs) {
+            int count = time_list.size();
+            times = new double[count];
+            values = new double[count][];
+            derivatives = new double[count][block.length];
+            for (int k = 0; k < count; k++) {
+                times[k] = time_list.get(k);
+                values[k] = value_list.get(k);
+                rhs.f(times[k], values[k], derivatives[k]);
+            }
+        }
+
+        /**
+         * Write the trajectory at time t into the components of the block of
+         * a full solution vector.
+         */
+        void evaluate(double t, double[] full) {
+            int last = times.length - 1;
+            if (last == 0 || t <= times[0]) {
+                for (int i = 0; i < block.length; i++) {
+                    full[block[i]] = values[0][i];
+                }
+                return;
+            }
+            if (t >= times[last]) {
+                for (int i = 0; i < block.length; i++) {
+                    full[block[i]] = values[last][i];
+                }
+                return;
+            }
+            // binary search for the step containing t
+            int low = 0;
+            int high = last;
+            while (high - low > 1) {
+                int middle = (low + high) >>> 1;
+                if (times[middle] <= t) {
+                    low = middle;
+                } else {
+                    high = middle;
+                }
+            }
+            double h = times[high] - times[low];
+            double theta = (t - times[low]) / h;
+            double[] y0 = values[low];
+            double[] y1 = values[high];
+            double[] f0 = derivatives[low];
+            double[] f1 = derivatives[high];
+            for (int i = 0; i < block.length; i++) {
+                double difference = y1[i] - y0[i];
+                full[block[i]] = y0[i] + theta * difference + theta * (theta - 1.0)
+                        * ((1.0 - 2.0 * theta) * difference + (theta - 1.0) * h * f0[i] + theta * h * f1[i]);
+            }
+        }
+
+        /**
+         * The largest change from another trajectory at the steps of this one,
+         * weighted by 1 + |y|.
+         */
+        double distance(Waveform other) {
+            double[] full = new double[max_component() + 1];
+            double change = 0.0;
+            for (int k = 0; k < times.length; k++) {
+                other.evaluate(times[k], full);
+                for (int i = 0; i < block.length; i++) {
+                    double y = values[k][i];
+                    change = Math.max(change, Math.abs(y - full[block[i]]) / (1.0 + Math.abs(y)));
+                }
+            }
+            return change;
+        }
+
+        void end_values(double[] full) {
+            for (int i = 0; i < block.length; i++) {
+                full[block[i]] = values[times.length - 1][i];
+            }
+        }
+
+        private int max_component() {
+            int max = 0;
+            for (int i = 0; i < block.length; i++) {
+                max = Math.max(max, block[i]);
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/* ./interpolant/CollocationInterpolant.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.interpolant;
+
+import org.jscience.mathematics.numbers.Float64;
+import org.jscience.mathematics.vectors.Float64Vector;
+
+/**
+ * Interpolates the solution of a collocation method with its collocation
+ * polynomial.
+ * <p>
+ * The stage values are the increments z_i = Y_i - y_0 of the internal stages
+ * as a two-dimensional array of doubles, and the interpolant is the
+ * polynomial through 0 and the z_i at the nodes c_i. It has the stage order
+ * of the method and costs no function evaluations.
+ * <p>
+ * Ernst Hairer and Gerhard Wanner. "Solving Ordinary Differential Equations II, 2nd Edition", pg 121.
+ */
+public class CollocationInterpolant implements Interpolant {
+    private final double[] c;
+
+    /**
+     * Create the interpolant for a collocation method with distinct, nonzero nodes.
+     *
+     * @param c The collocation nodes of the method.
+     */
+    public CollocationInterpolant(double[] c) {
+        this.c = c.clone();
+    }
+
+    /**
+     * Find the weights of the stage increments in the value of the
+     * collocation polynomial at a point, the Lagrange polynomials of the
+     * nodes 0, c_1, ..., c_s evaluated at the point.
+     *
+     * @param c       The collocation nodes of the method.
+     * @param theta   The point relative to the beginning of the step.
+     * @param weights The array that receives one weight for each stage.
+     */
+    public static void weights(double[] c, double theta, double[] weights) {
+        for (int i = 0; i < c.length; i++) {
+            double w = theta / c[i];
+            for (int j = 0; j < c.length; j++) {
+                if (j != i) {
+                    w *= (theta - c[j]) / (c[i] - c[j]);
+                }
+            }
+            weights[i] = w;
+        }
+    }
+
+    /**
+     * Evaluates the interpolant.
+     *
+     * @param y0           The solution at the beginning of the step.
+     * @param y1           The solution at the end of the step.
+     * @param theta        The fractional distance within the current step to find the dense output.
+     * @param dt           The current stepsize.
+     * @param stage_values The increments of the stages.
+     *
+     * @return            The dense output value at the fraction theta within the stepsize.
+     */
+    public Float64Vector evaluate_interpolant(Float64Vector y0, Float64Vector y1, Float64 theta, Float64 dt, Object stage_values) {
+        double[][] z = (double[][]) stage_values;
+        int n = y0.getDimension();
+        double[] w = new double[c.length];
+        weights(c, theta.doubleValue(), w);
+        double[] increment = new double[n];
+        for (int i = 0; i < c.length; i++) {
+            double[] zi = z[i];
+            double wi = w[i];
+            for (int k = 0; k < n; k++) {
+                increment[k] += wi * zi[k];
+            }
+        }
+        return Float64Vector.valueOf(increment);
+    }
+}
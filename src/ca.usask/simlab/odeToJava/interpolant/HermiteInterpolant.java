@@ -0,0 +1,59 @@
+/* ./interpolant/HermiteInterpolant.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.interpolant;
+
+import org.jscience.mathematics.numbers.Float64;
+import org.jscience.mathematics.vectors.Float64Vector;
+
+/**
+ * Interpolates a solution with the cubic Hermite polynomial matching the
+ * solution and its derivative at both ends of the step.
+ * <p>
+ * The stage values are the derivatives {f(t_0, y_0), f(t_1, y_1)} as a
+ * two-dimensional array of doubles. This is a third-order interpolant that
+ * can be used by any method that evaluates the RHS at both ends of the step.
+ * <p>
+ * Ernst Hairer, Syvert Norsett, and Gerhard Wanner. "Solving Order Differential Equations I, 2nd Edition", pg 190.
+ */
+public class HermiteInterpolant implements Interpolant {
+    /**
+     * Evaluates the interpolant.
+     *
+     * @param y0           The solution at the beginning of the step.
+     * @param y1           The solution at the end of the step.
+     * @param theta        The fractional distance within the current step to find the dense output.
+     * @param dt           The current stepsize.
+     * @param stage_values The derivatives at the beginning and end of the step.
+     *
+     * @return            The dense output value at the fraction theta within the stepsize.
+     */
+    public Float64Vector evaluate_interpolant(Float64Vector y0, Float64Vector y1, Float64 theta, Float64 dt, Object stage_values) {
+        double[][] derivatives = (double[][]) stage_values;
+        double[] f0 = derivatives[0];
+        double[] f1 = derivatives[1];
+        double s = theta.doubleValue();
+        double h = dt.doubleValue();
+        int n = y0.getDimension();
+        double[] increment = new double[n];
+        for (int i = 0; i < n; i++) {
+            double difference = y1.getValue(i) - y0.getValue(i);
+            increment[i] = s * difference + s * (s - 1.0) * ((1.0 - 2.0 * s) * difference + (s - 1.0) * h * f0[i] + s * h * f1[i]);
+        }
+        return Float64Vector.valueOf(increment);
+    }
+}
@@ -0,0 +1,62 @@
+/* ./interpolant/NordsieckInterpolant.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.interpolant;
+
+import org.jscience.mathematics.numbers.Float64;
+import org.jscience.mathematics.vectors.Float64Vector;
+
+/**
+ * Interpolates the solution of a multistep method with the polynomial held
+ * in its Nordsieck array.
+ * <p>
+ * The stage values are the Nordsieck array z_j = h^j y^(j)(t_n) / j! at the
+ * end of the step as a two-dimensional array of doubles, with any columns
+ * beyond the current order set to zero. The interpolant has the order of the
+ * method and costs no function evaluations.
+ * <p>
+ * Ernst Hairer, Syvert Norsett, and Gerhard Wanner. "Solving Order Differential Equations I, 2nd Edition", pg 410.
+ */
+public class NordsieckInterpolant implements Interpolant {
+    /**
+     * Evaluates the interpolant.
+     *
+     * @param y0           The solution at the beginning of the step.
+     * @param y1           The solution at the end of the step.
+     * @param theta        The fractional distance within the current step to find the dense output.
+     * @param dt           The current stepsize.
+     * @param stage_values The Nordsieck array at the end of the step.
+     *
+     * @return            The dense output value at the fraction theta within the stepsize.
+     */
+    public Float64Vector evaluate_interpolant(Float64Vector y0, Float64Vector y1, Float64 theta, Float64 dt, Object stage_values) {
+        double[][] z = (double[][]) stage_values;
+        int n = y0.getDimension();
+        // the array is centred at the end of the step
+        double x = theta.doubleValue() - 1.0;
+        double[] increment = new double[n];
+        for (int i = 0; i < n; i++) {
+            // Horner's rule
+            double value = 0.0;
+            for (int j = z.length - 1; j >= 0; j--) {
+                value = value * x + z[j][i];
+            }
+            increment[i] = value - y0.getValue(i);
+        }
+        return Float64Vector.valueOf(increment);
+    }
+}
@@ -0,0 +1,80 @@
+/* ./interpolant/RKNInterpolant.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.interpolant;
+
+import org.jscience.mathematics.numbers.Float64;
+import org.jscience.mathematics.vectors.Float64Vector;
+
+/**
+ * Interpolates the solution of a second-order system q'' = f(t, q) with the
+ * quintic Hermite polynomial matching the positions, the first derivatives,
+ * and the accelerations at both ends of the step.
+ * <p>
+ * The first half of the solution holds the positions, which are interpolated
+ * to order five, and the second half holds the first derivatives, which are
+ * the derivative of the same polynomial and are interpolated to order four.
+ * The stage values are the accelerations {f(t_0, q_0), f(t_1, q_1)} as a
+ * two-dimensional array of doubles.
+ * <p>
+ * Ernst Hairer, Syvert Norsett, and Gerhard Wanner. "Solving Order Differential Equations I, 2nd Edition", pg 190, 295.
+ */
+public class RKNInterpolant implements Interpolant {
+    /**
+     * Evaluates the interpolant.
+     *
+     * @param y0           The solution at the beginning of the step.
+     * @param y1           The solution at the end of the step.
+     * @param theta        The fractional distance within the current step to find the dense output.
+     * @param dt           The current stepsize.
+     * @param stage_values The accelerations at the beginning and end of the step.
+     *
+     * @return            The dense output value at the fraction theta within the stepsize.
+     */
+    public Float64Vector evaluate_interpolant(Float64Vector y0, Float64Vector y1, Float64 theta, Float64 dt, Object stage_values) {
+        double[][] accelerations = (double[][]) stage_values;
+        double[] f0 = accelerations[0];
+        double[] f1 = accelerations[1];
+        double s = theta.doubleValue();
+        double h = dt.doubleValue();
+        double s2 = s * s;
+        double s3 = s2 * s;
+        // the Hermite basis for the difference of the positions, the first
+        // derivatives, and the accelerations at both ends
+        double w_q = s3 * (10.0 - 15.0 * s + 6.0 * s2);
+        double w_p0 = s - s3 * (6.0 - 8.0 * s + 3.0 * s2);
+        double w_p1 = -s3 * (4.0 - 7.0 * s + 3.0 * s2);
+        double w_f0 = s2 * (1.0 - 3.0 * s + 3.0 * s2 - s3) / 2.0;
+        double w_f1 = s3 * (1.0 - 2.0 * s + s2) / 2.0;
+        // and their derivatives
+        double d_q = 30.0 * s2 * (1.0 - 2.0 * s + s2);
+        double d_p0 = -s2 * (18.0 - 32.0 * s + 15.0 * s2);
+        double d_p1 = -s2 * (12.0 - 28.0 * s + 15.0 * s2);
+        double d_f0 = s * (2.0 - 9.0 * s + 12.0 * s2 - 5.0 * s3) / 2.0;
+        double d_f1 = s2 * (3.0 - 8.0 * s + 5.0 * s2) / 2.0;
+        int half = y0.getDimension() / 2;
+        double[] increment = new double[2 * half];
+        for (int i = 0; i < half; i++) {
+            double difference = y1.getValue(i) - y0.getValue(i);
+            double p0 = y0.getValue(i + half);
+            double p1 = y1.getValue(i + half);
+            increment[i] = w_q * difference + h * (w_p0 * p0 + w_p1 * p1) + h * h * (w_f0 * f0[i] + w_f1 * f1[i]);
+            increment[i + half] = d_q * difference / h + d_p0 * p0 + d_p1 * p1 + h * (d_f0 * f0[i] + d_f1 * f1[i]);
+        }
+        return Float64Vector.valueOf(increment);
+    }
+}
@@ -0,0 +1,104 @@
+/* ./modules/io/writers/SnapshotWriter.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.modules.io.writers;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.jscience.mathematics.numbers.Float64;
+import org.jscience.mathematics.vectors.Float64Vector;
+import ca.usask.simlab.odeToJava.util.Matrix;
+
+/**
+ * This class keeps the solutions emitted by a solver in memory as plain
+ * arrays, such as the snapshots for a reduced basis.
+ */
+public class SnapshotWriter implements SolutionWriter {
+    private final List<double[]> snapshots = new ArrayList<double[]>();
+    private final List<Double> times = new ArrayList<Double>();
+    private int interval = 1;
+    private int emitted;
+
+    /**
+     * Keep only every interval-th emitted solution, starting with the first.
+     *
+     * @param interval The number of emitted solutions for each one kept.
+     */
+    public void set_interval(int interval) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("The interval must be positive");
+        }
+        this.interval = interval;
+    }
+
+    @Override
+    public void begin() {
+        emitted = 0;
+    }
+
+    @Override
+    public void emit(Float64 t, Float64Vector y) {
+        if (emitted % interval == 0) {
+            snapshots.add(Matrix.toDouble(y));
+            times.add(t.doubleValue());
+        }
+        emitted++;
+    }
+
+    @Override
+    public void end() {
+    }
+
+    /**
+     * Get the number of solutions kept.
+     *
+     * @return The number of snapshots.
+     */
+    public int get_number_snapshots() {
+        return snapshots.size();
+    }
+
+    /**
+     * Get the solutions kept, over all runs the writer was added to.
+     *
+     * @return The snapshots, one solution in each row.
+     */
+    public double[][] get_snapshots() {
+        return snapshots.toArray(new double[snapshots.size()][]);
+    }
+
+    /**
+     * Get the times of the solutions kept.
+     *
+     * @return The times of the snapshots.
+     */
+    public double[] get_times() {
+        double[] result = new double[times.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = times.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Forget the solutions kept.
+     */
+    public void clear() {
+        snapshots.clear();
+        times.clear();
+    }
+}
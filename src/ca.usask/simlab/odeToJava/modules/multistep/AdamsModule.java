@@ -0,0 +1,107 @@
+/* ./modules/multistep/AdamsModule.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.modules.multistep;
+
+import org.jscience.mathematics.numbers.Float64;
+import org.jscience.mathematics.vectors.Float64Vector;
+import ca.usask.simlab.odeToJava.ode.RHS;
+import ca.usask.simlab.odeToJava.scheme.AdamsScheme;
+import ca.usask.simlab.odeToJava.solver.PropertySolver;
+import ca.usask.simlab.odeToJava.util.Matrix;
+
+/**
+ * A module for the corrector of the variable-order Adams-Bashforth-Moulton
+ * methods in PECE mode.
+ * <p>
+ * The Adams-Bashforth prediction is evaluated once and corrected with the
+ * Adams-Moulton formula, and after an accepted step the RHS is evaluated
+ * again at the corrected solution to update the derivative in the history.
+ * A step therefore costs two evaluations of the RHS whatever the order,
+ * which makes the method attractive for nonstiff problems with an expensive
+ * RHS. The error estimate is Milne's device applied to the difference of
+ * the predicted and corrected solutions.
+ * <p>
+ * Ernst Hairer, Syvert Norsett, and Gerhard Wanner. "Solving Order Differential Equations I, 2nd Edition", pg 360-361, 409-417.
+ * <p>
+ * Lawrence F. Shampine and Marilyn K. Gordon. "Computer Solution of Ordinary Differential Equations: The Initial Value Problem", 1975.
+ */
+public class AdamsModule extends MultistepModule {
+    private final AdamsScheme adams;
+    // the corrected solution, its derivative, and the change of the derivative
+    private double[] fy, delta;
+
+    /**
+     * Constructor that sets up the module with user-specified uniform tolerances.
+     *
+     * @param scheme  The Adams family.
+     * @param history The module holding the history of the method.
+     * @param atol    The absolute tolerance used for all variables.
+     * @param rtol    The relative tolerance used for all variables.
+     * @param ode     The ODE that is being solved.
+     */
+    public AdamsModule(AdamsScheme scheme, NordsieckHistoryModule history, double atol, double rtol, RHS ode) {
+        this(scheme, history, Matrix.fill(Float64.valueOf(atol), ode.get_size()), Matrix.fill(Float64.valueOf(rtol), ode.get_size()), ode);
+    }
+
+    /**
+     * Constructor that sets up the module with user-specified component-wise tolerances.
+     *
+     * @param scheme  The Adams family.
+     * @param history The module holding the history of the method.
+     * @param atol    A vector of absolute tolerances.
+     * @param rtol    A vector of relative tolerances.
+     * @param ode     The ODE that is being solved.
+     */
+    public AdamsModule(AdamsScheme scheme, NordsieckHistoryModule history, Float64Vector atol, Float64Vector rtol, RHS ode) {
+        super(scheme, history, atol, rtol, ode);
+        adams = scheme;
+    }
+
+    @Override
+    protected void begin_corrector(PropertySolver solver) {
+        fy = new double[n];
+        delta = new double[n];
+    }
+
+    @Override
+    protected boolean correct(double t, double dt, int q, double[][] zp, double[] weight, double[] e) {
+        // e = l_0*(h*f(t, y_pred) - z_1) with l scaled so that l_0 = 1
+        double l0 = adams.get_gamma(q - 1);
+        double[] y_predicted = zp[0];
+        double[] z1 = zp[1];
+        ode.f(t, y_predicted, fy);
+        for (int i = 0; i < n; i++) {
+            e[i] = l0 * (dt * fy[i] - z1[i]);
+            if (Double.isNaN(e[i]) || Double.isInfinite(e[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected void complete_step(double t, double dt, int q, double[] l) {
+        // the final evaluation at the corrected solution
+        double[][] z = history.get_array();
+        ode.f(t, z[0], fy);
+        for (int i = 0; i < n; i++) {
+            delta[i] = dt * fy[i] - z[1][i];
+        }
+        history.update_derivative(l, delta);
+    }
+}
@@ -0,0 +1,205 @@
+/* ./modules/multistep/BDFModule.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.modules.multistep;
+
+import java.util.Arrays;
+
+import org.jscience.mathematics.numbers.Float64;
+import org.jscience.mathematics.vectors.Float64Vector;
+import ca.usask.simlab.odeToJava.ode.NewtonIterationMatrix;
+import ca.usask.simlab.odeToJava.ode.RHS;
+import ca.usask.simlab.odeToJava.scheme.BDFScheme;
+import ca.usask.simlab.odeToJava.solver.PropertySolver;
+import ca.usask.simlab.odeToJava.util.Matrix;
+
+/**
+ * A module for the corrector of the variable-order BDF and NDF methods.
+ * <p>
+ * The corrector equation h*f(t_n, y_pred + e) = z_1 + c*e is solved with a
+ * simplified Newton iteration. The Jacobian and the decomposition of the
+ * iteration matrix are kept between steps and refreshed only when they are
+ * old, when gamma = h/c has changed significantly, or when the iteration fails
+ * to converge, so a typical step costs a few RHS evaluations and
+ * back-substitutions. When the iteration matrix was decomposed with a
+ * different gamma the Newton updates are scaled to compensate.
+ * <p>
+ * Ernst Hairer and Gerhard Wanner. "Solving Ordinary Differential Equations II, 2nd Edition", pg 118-123, 246-251.
+ * <p>
+ * Alan C. Hindmarsh et al. "SUNDIALS: Suite of nonlinear and differential/algebraic equation solvers", ACM TOMS, vol 31, pg 363-396, 2005.
+ */
+public class BDFModule extends MultistepModule {
+    /**
+     * The default maximum number of Newton iterations in a step.
+     */
+    public static final int DEFAULT_MAX_ITERATIONS = 4;
+
+    // the convergence test in the weighted norm
+    private static final double NEWTON_TOLERANCE = 0.2;
+    // the smallest rate of convergence carried to the next step
+    private static final double RATE_DECAY = 0.3;
+
+    private final BDFScheme bdf;
+    private NewtonIterationMatrix matrix;
+    private int max_iterations;
+    private int max_jacobian_age;
+    private double rate;
+    // work arrays
+    private double[] y, fy, delta;
+
+    /**
+     * Constructor that sets up the module with user-specified uniform tolerances.
+     *
+     * @param scheme  The BDF or NDF family.
+     * @param history The module holding the history of the method.
+     * @param atol    The absolute tolerance used for all variables.
+     * @param rtol    The relative tolerance used for all variables.
+     * @param ode     The ODE that is being solved.
+     */
+    public BDFModule(BDFScheme scheme, NordsieckHistoryModule history, double atol, double rtol, RHS ode) {
+        this(scheme, history, Matrix.fill(Float64.valueOf(atol), ode.get_size()), Matrix.fill(Float64.valueOf(rtol), ode.get_size()), ode);
+    }
+
+    /**
+     * Constructor that sets up the module with user-specified component-wise tolerances.
+     *
+     * @param scheme  The BDF or NDF family.
+     * @param history The module holding the history of the method.
+     * @param atol    A vector of absolute tolerances.
+     * @param rtol    A vector of relative tolerances.
+     * @param ode     The ODE that is being solved.
+     */
+    public BDFModule(BDFScheme scheme, NordsieckHistoryModule history, Float64Vector atol, Float64Vector rtol, RHS ode) {
+        super(scheme, history, atol, rtol, ode);
+        bdf = scheme;
+        max_iterations = DEFAULT_MAX_ITERATIONS;
+        max_jacobian_age = NewtonIterationMatrix.DEFAULT_MAX_JACOBIAN_AGE;
+    }
+
+    /**
+     * Set the maximum number of Newton iterations in a step.
+     *
+     * @param iterations The maximum number of iterations.
+     */
+    public void set_max_iterations(int iterations) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("The number of iterations must be positive");
+        }
+        max_iterations = iterations;
+    }
+
+    /**
+     * Set the number of steps a Jacobian may be used before it is re-evaluated.
+     *
+     * @param steps The maximum age of the Jacobian in steps.
+     */
+    public void set_max_jacobian_age(int steps) {
+        if (steps < 1) {
+            throw new IllegalArgumentException("Maximum Jacobian age must be positive");
+        }
+        max_jacobian_age = steps;
+    }
+
+    /**
+     * Get the Jacobian and iteration matrix of the current integration, for
+     * example to read the number of evaluations and decompositions.
+     *
+     * @return The iteration matrix, or null before the module has started.
+     */
+    public NewtonIterationMatrix get_iteration_matrix() {
+        return matrix;
+    }
+
+    @Override
+    protected void begin_corrector(PropertySolver solver) {
+        matrix = new NewtonIterationMatrix(ode);
+        matrix.set_max_jacobian_age(max_jacobian_age);
+        rate = 1.0;
+        y = new double[n];
+        fy = new double[n];
+        delta = new double[n];
+    }
+
+    @Override
+    protected boolean correct(double t, double dt, int q, double[][] zp, double[] weight, double[] e) {
+        double c = bdf.get_corrector_coefficient(q);
+        double gamma = dt / c;
+        int decompositions = matrix.get_decompositions();
+        boolean usable = matrix.prepare(t, zp[0], gamma);
+        while (true) {
+            if (matrix.get_decompositions() != decompositions) {
+                // a new iteration matrix has an unknown rate of convergence
+                rate = 1.0;
+                decompositions = matrix.get_decompositions();
+            }
+            if (usable && iterate(t, gamma, c, zp, weight, e)) {
+                return true;
+            }
+            if (matrix.is_jacobian_current()) {
+                return false;
+            }
+            // try again with a fresh Jacobian
+            usable = matrix.refresh(t, zp[0], gamma);
+        }
+    }
+
+    private boolean iterate(double t, double gamma, double c, double[][] zp, double[] weight, double[] e) {
+        double[] y_predicted = zp[0];
+        double[] z1 = zp[1];
+        double ratio = gamma / matrix.get_factored_gamma();
+        double scale = 2.0 / (1.0 + ratio);
+        double previous = 0.0;
+        Arrays.fill(e, 0.0);
+        for (int m = 0; m < max_iterations; m++) {
+            for (int i = 0; i < n; i++) {
+                y[i] = y_predicted[i] + e[i];
+            }
+            ode.f(t, y, fy);
+            for (int i = 0; i < n; i++) {
+                delta[i] = gamma * fy[i] - z1[i] / c - e[i];
+            }
+            matrix.solve(delta);
+            if (ratio != 1.0) {
+                for (int i = 0; i < n; i++) {
+                    delta[i] *= scale;
+                }
+            }
+            double norm = 0.0;
+            for (int i = 0; i < n; i++) {
+                e[i] += delta[i];
+                double scaled = delta[i] * weight[i];
+                norm += scaled * scaled;
+            }
+            norm = Math.sqrt(norm / n);
+            if (Double.isNaN(norm) || Double.isInfinite(norm)) {
+                return false;
+            }
+            if (m > 0) {
+                rate = Math.max(RATE_DECAY * rate, norm / previous);
+            }
+            if (norm * Math.min(1.0, rate) <= NEWTON_TOLERANCE) {
+                return true;
+            }
+            // give up if the iteration is diverging
+            if (m > 0 && norm > 2.0 * previous) {
+                return false;
+            }
+            previous = norm;
+        }
+        return false;
+    }
+}
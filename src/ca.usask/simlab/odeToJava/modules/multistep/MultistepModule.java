@@ -0,0 +1,399 @@
+/* ./modules/multistep/MultistepModule.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.modules.multistep;
+
+import org.jscience.mathematics.numbers.Float64;
+import org.jscience.mathematics.vectors.Float64Vector;
+import ca.usask.simlab.odeToJava.modules.errorControl.BaseErrControllerModule;
+import ca.usask.simlab.odeToJava.ode.RHS;
+import ca.usask.simlab.odeToJava.property.PropertyHolder;
+import ca.usask.simlab.odeToJava.scheme.MultistepScheme;
+import ca.usask.simlab.odeToJava.solver.PropertySolver;
+
+/**
+ * An abstract module for the corrector of a variable-order multistep method
+ * in Nordsieck form, including its error control and order selection.
+ * <p>
+ * The error estimate of a multistep method comes from the difference e
+ * between the corrected and predicted solution, so the corrector, the error
+ * test, and the choice of the next stepsize and order cannot be separated
+ * into the usual estimator and controller modules. The tolerances and the
+ * limits on the change of stepsize are handled as in the other error
+ * controllers.
+ * <p>
+ * After q + 1 steps at the same order and stepsize the errors at orders q - 1,
+ * q, and q + 1 are estimated and the order allowing the largest step is
+ * used. A failed error test reduces the stepsize and after repeated failures
+ * also the order.
+ * <p>
+ * Ernst Hairer, Syvert Norsett, and Gerhard Wanner. "Solving Order Differential Equations I, 2nd Edition", pg 409-417.
+ * <p>
+ * Lawrence F. Shampine and Mark W. Reichelt. "The MATLAB ODE suite", SIAM Journal on Scientific Computing, vol 18, pg 1-22, 1997.
+ */
+public abstract class MultistepModule extends BaseErrControllerModule {
+    // do not bother changing the stepsize by less than this factor
+    private static final double MIN_CHANGE = 1.1;
+    // the biases against the current, lower, and higher orders
+    private static final double BIAS = 1.2;
+    private static final double BIAS_LOWER = 1.3;
+    private static final double BIAS_HIGHER = 1.4;
+    // the reduction after a failed corrector iteration
+    private static final double ETA_CONVERGENCE_FAILURE = 0.25;
+
+    /**
+     * The family of methods.
+     */
+    protected final MultistepScheme scheme;
+
+    /**
+     * The module holding the Nordsieck array.
+     */
+    protected final NordsieckHistoryModule history;
+
+    /**
+     * The ODE being solved.
+     */
+    protected RHS ode;
+
+    /**
+     * The number of components of the ODE.
+     */
+    protected int n;
+
+    // the tolerances and the weights of the current step
+    private double[] atol_values, rtol_values, weight;
+    // the current and previous corrections
+    private double[] e, e_previous;
+    // the Nordsieck array of the step for the dense output, before any change of order
+    private double[][] stage_values;
+    private boolean e_previous_valid;
+    // the coefficients of each order
+    private double[][] l, increase, decrease;
+    private double[] error_constant, lower_error_constant, higher_error_constant;
+    private int steps_at_order;
+    private int failures;
+
+    /**
+     * Constructor that sets up the module with user-specified component-wise tolerances.
+     *
+     * @param scheme  The family of multistep methods.
+     * @param history The module holding the history of the method.
+     * @param atol    A vector of absolute tolerances.
+     * @param rtol    A vector of relative tolerances.
+     * @param ode     The ODE that is being solved.
+     */
+    public MultistepModule(MultistepScheme scheme, NordsieckHistoryModule history, Float64Vector atol, Float64Vector rtol, RHS ode) {
+        super(atol, rtol, ode);
+        if (history.get_max_order() < scheme.get_max_order()) {
+            throw new IllegalArgumentException("The history cannot hold the maximum order of the scheme");
+        }
+        this.scheme = scheme;
+        this.history = history;
+        // the required properties for the initial conditions
+        require_property("initialTime");
+        require_property("initialValues");
+        require_property("finalTime");
+        require_property("nordsieckArray");
+        require_property("methodOrder");
+        // the supplied properties from the integration
+        supply_property("finalValues");
+        supply_property("stageValues");
+        // the supplied properties related to the method
+        supply_property("scheme");
+        supply_property("schemeOrder");
+        supply_property("embOrder");
+        // the supplied properties related to the error control
+        supply_property("stepAccepted");
+        supply_property("nextStepSize");
+        supply_property("absoluteTolerances");
+        supply_property("relativeTolerances");
+        supply_property("aMax");
+        supply_property("aMin");
+    }
+
+    @Override
+    public void begin_stepping(PropertySolver solver, PropertyHolder properties) {
+        // set the properties related to the method
+        properties.set_property("scheme", scheme);
+        properties.set_property("schemeOrder", scheme.get_scheme_order());
+        properties.set_property("embOrder", scheme.get_emb_order());
+        // set properties that may be needed elsewhere
+        properties.set_property("absoluteTolerances", get_atol());
+        properties.set_property("relativeTolerances", get_rtol());
+        properties.set_property("aMax", get_amax_normal());
+        properties.set_property("aMin", get_amin());
+
+        ode = solver.get_ODE();
+        n = ode.get_size();
+        atol_values = get_atol_value();
+        rtol_values = get_rtol_value();
+        weight = new double[n];
+        e = new double[n];
+        e_previous = new double[n];
+        e_previous_valid = false;
+        stage_values = null;
+        steps_at_order = 0;
+        failures = 0;
+
+        // tabulate the coefficients so nothing is allocated while stepping
+        int max_order = scheme.get_max_order();
+        l = new double[max_order + 1][];
+        increase = new double[max_order + 1][];
+        decrease = new double[max_order + 1][];
+        error_constant = new double[max_order + 1];
+        lower_error_constant = new double[max_order + 1];
+        higher_error_constant = new double[max_order + 1];
+        for (int q = 1; q <= max_order; q++) {
+            l[q] = scheme.get_l(q);
+            error_constant[q] = scheme.get_error_constant(q);
+            if (q > 1) {
+                decrease[q] = scheme.get_order_decrease_coefficients(q);
+                lower_error_constant[q] = scheme.get_lower_error_constant(q);
+            }
+            if (q < max_order) {
+                increase[q] = scheme.get_order_increase_coefficients(q);
+                higher_error_constant[q] = scheme.get_higher_error_constant(q);
+            }
+        }
+        begin_corrector(solver);
+    }
+
+    /**
+     * Prepare the corrector for a new integration.
+     *
+     * @param solver The solver this module is running in.
+     */
+    protected abstract void begin_corrector(PropertySolver solver);
+
+    /**
+     * Solve the corrector equation for the difference between the corrected
+     * and predicted solution.
+     *
+     * @param t      The time at the end of the step.
+     * @param dt     The stepsize.
+     * @param q      The current order.
+     * @param zp     The predicted Nordsieck array.
+     * @param weight The weights of the norm used for convergence tests.
+     * @param e      The array that receives the difference.
+     *
+     * @return false if the corrector did not converge.
+     */
+    protected abstract boolean correct(double t, double dt, int q, double[][] zp, double[] weight, double[] e);
+
+    /**
+     * Finish an accepted step after the Nordsieck array has been corrected,
+     * before the order is changed. By default this does nothing.
+     *
+     * @param t  The time at the end of the step.
+     * @param dt The stepsize.
+     * @param q  The order of the step.
+     * @param l  The correction vector used for the step.
+     */
+    protected void complete_step(double t, double dt, int q, double[] l) {
+    }
+
+    /**
+     * Finds the weighted root-mean-square norm used by the error tests.
+     *
+     * @param v      The vector to find the norm of.
+     * @param weight The reciprocals of the tolerances of each component.
+     *
+     * @return The weighted norm of the vector.
+     */
+    protected static double weighted_norm(double[] v, double[] weight) {
+        double sum = 0.0;
+        for (int i = 0; i < v.length; i++) {
+            double scaled = v[i] * weight[i];
+            sum += scaled * scaled;
+        }
+        return Math.sqrt(sum / v.length);
+    }
+
+    @Override
+    public void step(PropertyHolder step) {
+        double t0 = step.getFloat64Property("initialTime").doubleValue();
+        double t1 = step.getFloat64Property("finalTime").doubleValue();
+        double dt = t1 - t0;
+        int q = history.get_order();
+        double[][] zp = history.get_predicted_array();
+        double[] y0 = history.get_array()[0];
+        for (int i = 0; i < n; i++) {
+            double scale = Math.max(Math.abs(y0[i]), Math.abs(zp[0][i]));
+            weight[i] = 1.0 / (atol_values[i] + rtol_values[i] * scale);
+        }
+
+        boolean accepted = false;
+        double eta;
+        double err = 0.0;
+        if (!correct(t1, dt, q, zp, weight, e)) {
+            eta = ETA_CONVERGENCE_FAILURE;
+        } else {
+            err = error_constant[q] * weighted_norm(e, weight);
+            accepted = err <= 1.0;
+            eta = 1.0 / (BIAS * Math.pow(err, 1.0 / (q + 1)) + 1e-6);
+        }
+
+        if (accepted) {
+            failures = 0;
+            history.accept(l[q], e);
+            complete_step(t1, dt, q, l[q]);
+            // the dense output needs the polynomial of this step, which a
+            // change of order would alter
+            copy_stage_values();
+            eta = select_order(q, err);
+            step.set_property("finalValues", Float64Vector.valueOf(stage_values[0]));
+            step.set_property("stageValues", stage_values);
+        } else {
+            failures++;
+            // the history is unchanged by a rejected step
+            copy_stage_values();
+            eta = Math.max(get_amin_value(), Math.min(0.9, eta));
+            // the higher derivatives are probably unreliable, so lower the order
+            if (failures >= 2 && q > 1) {
+                history.decrease_order(decrease[q]);
+            }
+            steps_at_order = 0;
+            e_previous_valid = false;
+            step.set_property("finalValues", Float64Vector.valueOf(zp[0]));
+            step.set_property("stageValues", stage_values);
+        }
+        set_step_accepted(accepted);
+        Float64 next_stepsize = Float64.valueOf(eta * dt);
+        set_next_stepsize(next_stepsize);
+        step.set_property("stepAccepted", accepted);
+        step.set_property("nextStepSize", next_stepsize);
+    }
+
+    /**
+     * Copy the accepted Nordsieck array to the array handed to the dense output.
+     */
+    private void copy_stage_values() {
+        double[][] z = history.get_array();
+        if (stage_values == null) {
+            stage_values = new double[z.length][n];
+        }
+        for (int j = 0; j < z.length; j++) {
+            System.arraycopy(z[j], 0, stage_values[j], 0, n);
+        }
+    }
+
+    /**
+     * Choose the order and the stepsize ratio after an accepted step.
+     */
+    private double select_order(int q, double err) {
+        double eta = 1.0;
+        steps_at_order++;
+        if (steps_at_order > q) {
+            // only consider changes after q + 1 steps with the same order and stepsize
+            double eta_q = 1.0 / (BIAS * Math.pow(err, 1.0 / (q + 1)) + 1e-6);
+            double eta_lower = 0.0;
+            double eta_higher = 0.0;
+            if (q > 1) {
+                double err_lower = lower_error_constant[q] * weighted_norm(history.get_array()[q], weight);
+                eta_lower = 1.0 / (BIAS_LOWER * Math.pow(err_lower, 1.0 / q) + 1e-6);
+            }
+            if (q < scheme.get_max_order() && e_previous_valid) {
+                double sum = 0.0;
+                for (int i = 0; i < n; i++) {
+                    double scaled = (e[i] - e_previous[i]) * weight[i];
+                    sum += scaled * scaled;
+                }
+                double err_higher = higher_error_constant[q] * Math.sqrt(sum / n);
+                eta_higher = 1.0 / (BIAS_HIGHER * Math.pow(err_higher, 1.0 / (q + 2)) + 1e-6);
+            }
+            double eta_best = Math.max(eta_q, Math.max(eta_lower, eta_higher));
+            if (eta_best >= MIN_CHANGE) {
+                if (eta_best == eta_higher) {
+                    history.increase_order(increase[q], e);
+                } else if (eta_best == eta_lower) {
+                    history.decrease_order(decrease[q]);
+                }
+                eta = Math.min(eta_best, get_amax_value());
+                steps_at_order = 0;
+            }
+        }
+        if (eta == 1.0) {
+            System.arraycopy(e, 0, e_previous, 0, n);
+            e_previous_valid = true;
+        } else {
+            e_previous_valid = false;
+        }
+        return eta;
+    }
+
+    /**
+     * Estimate a starting stepsize from the tolerances and two evaluations of
+     * the RHS, assuming the method starts at order one. The module must have
+     * been started.
+     * <p>
+     * Ernst Hairer, Syvert Norsett, and Gerhard Wanner. "Solving Order Differential Equations I, 2nd Edition", pg 169.
+     *
+     * @param t0 The initial time.
+     * @param tf The final time.
+     * @param y0 The initial values.
+     *
+     * @return The estimated initial stepsize.
+     */
+    public double estimate_initial_stepsize(double t0, double tf, double[] y0) {
+        int size = y0.length;
+        double[] atol = get_atol_value();
+        double[] rtol = get_rtol_value();
+        double[] w = new double[size];
+        double[] f0 = new double[size];
+        double[] f1 = new double[size];
+        double[] y1 = new double[size];
+        for (int i = 0; i < size; i++) {
+            w[i] = 1.0 / (atol[i] + rtol[i] * Math.abs(y0[i]));
+        }
+        ode.f(t0, y0, f0);
+        double d0 = weighted_norm(y0, w);
+        double d1 = weighted_norm(f0, w);
+        double span = Math.abs(tf - t0);
+        double h0;
+        if (d0 < 1e-5 || d1 < 1e-5) {
+            h0 = 1e-6;
+        } else {
+            h0 = 0.01 * d0 / d1;
+        }
+        h0 = Math.min(h0, span);
+        for (int i = 0; i < size; i++) {
+            y1[i] = y0[i] + h0 * f0[i];
+        }
+        ode.f(t0 + h0, y1, f1);
+        for (int i = 0; i < size; i++) {
+            f1[i] -= f0[i];
+        }
+        double d2 = weighted_norm(f1, w) / h0;
+        double h1;
+        if (Math.max(d1, d2) <= 1e-15) {
+            h1 = Math.max(1e-6, h0 * 1e-3);
+        } else {
+            h1 = Math.sqrt(0.01 / Math.max(d1, d2));
+        }
+        return Math.min(Math.min(100 * h0, h1), span);
+    }
+
+    /**
+     * Get the current order of the method.
+     *
+     * @return The current order.
+     */
+    public int get_order() {
+        return history.get_order();
+    }
+}
@@ -0,0 +1,273 @@
+/* ./modules/multistep/NordsieckHistoryModule.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.modules.multistep;
+
+import java.util.Arrays;
+
+import org.jscience.mathematics.vectors.Float64Vector;
+import ca.usask.simlab.odeToJava.ode.RHS;
+import ca.usask.simlab.odeToJava.property.PropertyHolder;
+import ca.usask.simlab.odeToJava.solver.PropertySolver;
+import ca.usask.simlab.odeToJava.solver.SolverModule;
+
+/**
+ * A module that manages the history of a multistep method as a Nordsieck
+ * array.
+ * <p>
+ * At the beginning of each step the accepted array is rescaled if the
+ * stepsize has changed and then predicted to the end of the step with the
+ * Pascal matrix. The prediction is kept in separate storage, so nothing has to
+ * be undone when the corrector module rejects the step. The corrector module
+ * calls back into this module to accept a step and to change the order.
+ * <p>
+ * The arrays have room for the maximum order plus one, and columns beyond the
+ * current order are kept at zero so the accepted array can be handed directly
+ * to a NordsieckInterpolant.
+ * <p>
+ * Ernst Hairer, Syvert Norsett, and Gerhard Wanner. "Solving Order Differential Equations I, 2nd Edition", pg 409-417.
+ */
+public class NordsieckHistoryModule extends SolverModule {
+    private final int max_order;
+    private RHS ode;
+    private int n;
+    // the accepted and predicted arrays
+    private double[][] z, zp;
+    private int order;
+    // the stepsize the accepted array is scaled with
+    private double h;
+    private boolean started;
+
+    /**
+     * The default constructor for this module.
+     *
+     * @param max_order The maximum order of the method using the history.
+     */
+    public NordsieckHistoryModule(int max_order) {
+        if (max_order < 1) {
+            throw new IllegalArgumentException("The maximum order must be positive");
+        }
+        this.max_order = max_order;
+        // the required properties for the initial conditions
+        require_property("initialTime");
+        require_property("initialValues");
+        require_property("finalTime");
+        // the supplied properties for the corrector
+        supply_property("nordsieckArray");
+        supply_property("methodOrder");
+    }
+
+    @Override
+    public void begin_stepping(PropertySolver solver, PropertyHolder properties) {
+        ode = solver.get_ODE();
+        n = ode.get_size();
+        z = new double[max_order + 2][n];
+        zp = new double[max_order + 2][n];
+        order = 1;
+        started = false;
+    }
+
+    @Override
+    public void step(PropertyHolder step) {
+        double t0 = step.getFloat64Property("initialTime").doubleValue();
+        double dt = step.getFloat64Property("finalTime").doubleValue() - t0;
+        if (!started) {
+            // start at order one with the solution and its derivative
+            Float64Vector initial_values = step.get_Float64Vector_property("initialValues");
+            double[] y0 = z[0];
+            for (int i = 0; i < n; i++) {
+                y0[i] = initial_values.getValue(i);
+            }
+            ode.f(t0, y0, z[1]);
+            for (int i = 0; i < n; i++) {
+                z[1][i] *= dt;
+            }
+            h = dt;
+            started = true;
+        } else if (dt != h) {
+            rescale(dt / h);
+        }
+        predict();
+        step.set_property("nordsieckArray", zp);
+        step.set_property("methodOrder", order);
+    }
+
+    /**
+     * Rescale the accepted array to a new stepsize, z_j = eta^j*z_j.
+     *
+     * @param eta The ratio of the new stepsize to the old one.
+     */
+    public void rescale(double eta) {
+        double factor = 1.0;
+        for (int j = 1; j <= order; j++) {
+            factor *= eta;
+            double[] zj = z[j];
+            for (int i = 0; i < n; i++) {
+                zj[i] *= factor;
+            }
+        }
+        h *= eta;
+    }
+
+    private void predict() {
+        for (int j = 0; j <= order; j++) {
+            System.arraycopy(z[j], 0, zp[j], 0, n);
+        }
+        // clear anything left over from a higher order
+        for (int j = order + 1; j < zp.length; j++) {
+            Arrays.fill(zp[j], 0.0);
+        }
+        // multiply by the Pascal matrix with repeated additions
+        for (int k = 0; k < order; k++) {
+            for (int j = order; j > k; j--) {
+                double[] low = zp[j - 1];
+                double[] high = zp[j];
+                for (int i = 0; i < n; i++) {
+                    low[i] += high[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Accept the step by correcting the predicted array, z = z_pred + l*e.
+     *
+     * @param l The correction vector of the method at the current order.
+     * @param e The difference between the corrected and predicted solutions.
+     */
+    public void accept(double[] l, double[] e) {
+        for (int j = 0; j <= order; j++) {
+            double[] zj = zp[j];
+            double lj = l[j];
+            for (int i = 0; i < n; i++) {
+                zj[i] += lj * e[i];
+            }
+        }
+        double[][] temp = z;
+        z = zp;
+        zp = temp;
+    }
+
+    /**
+     * Change the derivative of the accepted array by delta without changing
+     * the solution, z_j = z_j + l_j/l_1*delta for j = 1..q. With the vector l
+     * of the Adams methods the past derivatives are also kept.
+     *
+     * @param l     The correction vector of the method at the current order.
+     * @param delta The change of h*y' at the end of the step.
+     */
+    public void update_derivative(double[] l, double[] delta) {
+        for (int j = 1; j <= order; j++) {
+            double[] zj = z[j];
+            double lj = l[j] / l[1];
+            for (int i = 0; i < n; i++) {
+                zj[i] += lj * delta[i];
+            }
+        }
+    }
+
+    /**
+     * Raise the order of the accepted array by one, z_j = z_j + c_j*e.
+     *
+     * @param c The coefficients of the change for the current order.
+     * @param e The correction of the step that was just accepted.
+     */
+    public void increase_order(double[] c, double[] e) {
+        if (order >= max_order) {
+            throw new IllegalStateException("Already at the maximum order");
+        }
+        order++;
+        for (int j = 0; j <= order; j++) {
+            double[] zj = z[j];
+            double cj = c[j];
+            for (int i = 0; i < n; i++) {
+                zj[i] += cj * e[i];
+            }
+        }
+    }
+
+    /**
+     * Lower the order of the accepted array by one, z_j = z_j - c_j*z_q.
+     *
+     * @param c The coefficients of the change for the current order.
+     */
+    public void decrease_order(double[] c) {
+        if (order <= 1) {
+            throw new IllegalStateException("Already at order one");
+        }
+        double[] zq = z[order];
+        for (int j = 0; j < order; j++) {
+            double[] zj = z[j];
+            double cj = c[j];
+            if (cj != 0.0) {
+                for (int i = 0; i < n; i++) {
+                    zj[i] -= cj * zq[i];
+                }
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            zq[i] = 0.0;
+        }
+        order--;
+    }
+
+    /**
+     * Get the current order.
+     *
+     * @return The order of the array.
+     */
+    public int get_order() {
+        return order;
+    }
+
+    /**
+     * Get the largest order the array can hold.
+     *
+     * @return The maximum order.
+     */
+    public int get_max_order() {
+        return max_order;
+    }
+
+    /**
+     * Get the stepsize the accepted array is scaled with.
+     *
+     * @return The stepsize.
+     */
+    public double get_stepsize() {
+        return h;
+    }
+
+    /**
+     * Get the accepted array, which must not be modified by the caller.
+     *
+     * @return The accepted Nordsieck array.
+     */
+    public double[][] get_array() {
+        return z;
+    }
+
+    /**
+     * Get the predicted array for the current step, which must not be
+     * modified by the caller.
+     *
+     * @return The predicted Nordsieck array.
+     */
+    public double[][] get_predicted_array() {
+        return zp;
+    }
+}
@@ -0,0 +1,190 @@
+/* ./modules/scheme/AdaptiveStormerVerletModule.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.modules.scheme;
+
+import org.jscience.mathematics.numbers.Float64;
+import org.jscience.mathematics.vectors.Float64Vector;
+import ca.usask.simlab.odeToJava.ode.RHS;
+import ca.usask.simlab.odeToJava.ode.SeparableRHS;
+import ca.usask.simlab.odeToJava.ode.StepDensity;
+import ca.usask.simlab.odeToJava.property.PropertyHolder;
+import ca.usask.simlab.odeToJava.scheme.Scheme;
+import ca.usask.simlab.odeToJava.scheme.StormerVerletTableau;
+import ca.usask.simlab.odeToJava.solver.PropertySolver;
+import ca.usask.simlab.odeToJava.solver.SolverModule;
+
+/**
+ * Module to implement the explicit, time-reversible, variable-step
+ * Stormer-Verlet method for a separable Hamiltonian.
+ * <p>
+ * The stepsize is epsilon/rho, where the auxiliary variable rho follows the
+ * step density G(q, p) with the symmetric updates
+ * rho_(n+1/2) = rho_n + epsilon*G(q_n, p_n)/2 and
+ * rho_(n+1) = rho_(n+1/2) + epsilon*G(q_(n+1), p_(n+1))/2, so the method stays
+ * reversible and keeps the good long-time behaviour of the constant-step
+ * method. The stepsize of the first step is the one given by the solver, and
+ * afterwards the module supplies the stepsize of the following step, so it is
+ * meant to be used with the SymmetricVariableStepsizeSolver.
+ * <p>
+ * A step evaluates the force once and the step density once, and nothing is
+ * allocated except the final values handed back to the solver. Subclasses can
+ * use a different symmetric basic method, such as one that is specialized for
+ * a particular problem, by overriding the basic step.
+ * <p>
+ * Ernst Hairer, Gustaf Söderlind. "Explicit, time reversible, adaptive step size control", SIAM Journal of Scientific Computing, vol 26, pg 1838-1851, 2005.
+ * Ernst Hairer, Christian Lubich, and Gerhard Wanner. "Geometric Numerical Integration: Structure-preserving algorithms for ordinary differential", 2002, pg 303-310.
+ */
+public class AdaptiveStormerVerletModule extends SolverModule {
+    protected RHS ode;
+    protected final StepDensity density;
+    protected final double epsilon;
+    private SeparableRHS separable;
+    private int half;
+    // the positions and momenta, the force at the positions, and the velocity
+    private double[] q, p, force, velocity;
+    private boolean force_current;
+    // the auxiliary variable and the step density at the end of the last step
+    private double rho, g;
+    private boolean started;
+    private double t1_last;
+
+    /**
+     * The default constructor for this module.
+     *
+     * @param density The step density G(q, p).
+     * @param epsilon The stepsize in the transformed time.
+     */
+    public AdaptiveStormerVerletModule(StepDensity density, double epsilon) {
+        if (!(epsilon > 0.0)) {
+            throw new IllegalArgumentException("The stepsize in the transformed time must be positive");
+        }
+        // the required properties for the initial conditions
+        require_property("initialTime");
+        require_property("initialValues");
+        require_property("finalTime");
+        // the supplied properties from the integration
+        supply_property("finalValues");
+        supply_property("stageValues");
+        // the supplied properties related to the method
+        supply_property("scheme");
+        supply_property("schemeOrder");
+        // these are here for the purposes of the step controller
+        supply_property("stepAccepted");
+        supply_property("nextStepSize");
+
+        this.density = density;
+        this.epsilon = epsilon;
+    }
+
+    @Override
+    public void begin_stepping(PropertySolver solver, PropertyHolder properties) {
+        Scheme tableau = new StormerVerletTableau();
+        // set the properties related to the method
+        properties.set_property("scheme", tableau);
+        properties.set_property("schemeOrder", tableau.get_scheme_order());
+
+        ode = solver.get_ODE();
+        separable = ode instanceof SeparableRHS ? (SeparableRHS) ode : null;
+        half = ode.get_size() / 2;
+        q = new double[half];
+        p = new double[half];
+        force = new double[half];
+        velocity = new double[half];
+        force_current = false;
+        started = false;
+    }
+
+    @Override
+    public void step(PropertyHolder step) {
+        double t0 = step.getFloat64Property("initialTime").doubleValue();
+        Float64Vector y0 = step.get_Float64Vector_property("initialValues");
+
+        // the kept force and step density are only valid if this step
+        // continues the last one
+        boolean continued = started && t0 == t1_last;
+        for (int i = 0; i < half; i++) {
+            double qi = y0.getValue(i);
+            double pi = y0.getValue(i + half);
+            continued = continued && q[i] == qi && p[i] == pi;
+            q[i] = qi;
+            p[i] = pi;
+        }
+        force_current = force_current && continued;
+
+        double rho_half;
+        if (continued) {
+            rho_half = rho + epsilon * g / 2.0;
+        } else {
+            // start from the stepsize given by the solver
+            double t1 = step.getFloat64Property("finalTime").doubleValue();
+            g = density.evaluate(q, p);
+            rho_half = epsilon / (t1 - t0);
+            rho = rho_half - epsilon * g / 2.0;
+        }
+        if (!(rho_half > 0.0)) {
+            throw new IllegalStateException("The step density made the stepsize negative, use a smaller epsilon");
+        }
+        double dt = epsilon / rho_half;
+
+        basic_step(t0, dt, q, p);
+        g = density.evaluate(q, p);
+        rho = rho_half + epsilon * g / 2.0;
+        started = true;
+        t1_last = t0 + dt;
+
+        double[] y1 = new double[2 * half];
+        System.arraycopy(q, 0, y1, 0, half);
+        System.arraycopy(p, 0, y1, half, half);
+        step.set_property("finalValues", Float64Vector.valueOf(y1));
+        step.set_property("stageValues", Float64.ZERO);
+        step.set_property("stepAccepted", true);
+        // the stepsize of the next step, so the solver time follows the method
+        step.set_property("nextStepSize", Float64.valueOf(epsilon / (rho + epsilon * g / 2.0)));
+    }
+
+    /**
+     * Advance the positions and momenta in place with one step of the basic
+     * method, by default the kick-drift-kick Stormer-Verlet method.
+     *
+     * @param t The time at the beginning of the step.
+     * @param h The stepsize of the step.
+     * @param q The positions.
+     * @param p The momenta.
+     */
+    protected void basic_step(double t, double h, double[] q, double[] p) {
+        if (separable == null) {
+            throw new IllegalStateException("The Stormer-Verlet method needs a SeparableRHS");
+        }
+        double h_half = h / 2.0;
+        if (!force_current) {
+            separable.force(t, q, force);
+        }
+        for (int i = 0; i < half; i++) {
+            p[i] += h_half * force[i];
+        }
+        separable.velocity(t + h_half, p, velocity);
+        for (int i = 0; i < half; i++) {
+            q[i] += h * velocity[i];
+        }
+        separable.force(t + h, q, force);
+        force_current = true;
+        for (int i = 0; i < half; i++) {
+            p[i] += h_half * force[i];
+        }
+    }
+}
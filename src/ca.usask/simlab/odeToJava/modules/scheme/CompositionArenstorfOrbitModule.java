@@ -0,0 +1,49 @@
+/* ./modules/scheme/CompositionArenstorfOrbitModule.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.modules.scheme;
+
+import ca.usask.simlab.odeToJava.scheme.CompositionScheme;
+
+/**
+ * Module to implement a composition of the Stormer-Verlet method for an
+ * "Arenstorf" 3-body problem.
+ * <p>
+ * The Hamiltonian of the problem in the rotating frame is not separable, but
+ * the Stormer-Verlet method of StormerVerletArenstorfOrbitModule is still
+ * explicit and symmetric, so it can be composed to a higher order.
+ * <p>
+ * Ernst Hairer, Christian Lubich, and Gerhard Wanner. "Geometric Numerical Integration: Structure-preserving algorithms for ordinary differential", 2002, pg 39-45.
+ */
+public class CompositionArenstorfOrbitModule extends CompositionModule {
+    private final StormerVerletArenstorfOrbitModule basic;
+
+    /**
+     * The default constructor for this module.
+     *
+     * @param scheme The coefficients of the composition.
+     */
+    public CompositionArenstorfOrbitModule(CompositionScheme scheme) {
+        super(scheme);
+        basic = new StormerVerletArenstorfOrbitModule();
+    }
+
+    @Override
+    protected void basic_step(double t, double h, double[] q, double[] p) {
+        basic.advance(q, p, h);
+    }
+}
@@ -0,0 +1,153 @@
+/* ./modules/scheme/CompositionModule.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.modules.scheme;
+
+import org.jscience.mathematics.numbers.Float64;
+import org.jscience.mathematics.vectors.Float64Vector;
+import ca.usask.simlab.odeToJava.ode.RHS;
+import ca.usask.simlab.odeToJava.ode.SeparableRHS;
+import ca.usask.simlab.odeToJava.property.PropertyHolder;
+import ca.usask.simlab.odeToJava.scheme.CompositionScheme;
+import ca.usask.simlab.odeToJava.solver.PropertySolver;
+import ca.usask.simlab.odeToJava.solver.SolverModule;
+
+/**
+ * Module to implement a composition of the Stormer-Verlet method for a
+ * separable Hamiltonian.
+ * <p>
+ * Each stage is a kick-drift-kick step of the Stormer-Verlet method with the
+ * stepsize gamma_i*h. Only the forces are evaluated for the kicks and only the
+ * velocities for the drifts, and the force at the end of a stage is the force
+ * at the beginning of the next one, so a step costs one force evaluation per
+ * stage. The force at the end of a step is kept for the next step.
+ * <p>
+ * Subclasses can compose a different symmetric basic method of order 2 by
+ * overriding the basic step.
+ * <p>
+ * Ernst Hairer, Christian Lubich, and Gerhard Wanner. "Geometric Numerical Integration: Structure-preserving algorithms for ordinary differential", 2002, pg 7, 39-45.
+ */
+public class CompositionModule extends SolverModule {
+    protected RHS ode;
+    protected final CompositionScheme scheme;
+    private SeparableRHS separable;
+    private int half;
+    // the positions and momenta, the force at the positions, and the velocity
+    private double[] q, p, force, velocity;
+    private boolean force_current;
+    private double t1_last;
+
+    /**
+     * The default constructor for this module.
+     *
+     * @param scheme The coefficients of the composition.
+     */
+    public CompositionModule(CompositionScheme scheme) {
+        // the required properties for the initial conditions
+        require_property("initialTime");
+        require_property("initialValues");
+        require_property("finalTime");
+        // the supplied properties from the integration
+        supply_property("finalValues");
+        supply_property("stageValues");
+        // the supplied properties related to the method
+        supply_property("scheme");
+        supply_property("schemeOrder");
+
+        this.scheme = scheme;
+    }
+
+    @Override
+    public void begin_stepping(PropertySolver solver, PropertyHolder properties) {
+        // set the properties related to the method
+        properties.set_property("scheme", scheme);
+        properties.set_property("schemeOrder", scheme.get_scheme_order());
+
+        ode = solver.get_ODE();
+        separable = ode instanceof SeparableRHS ? (SeparableRHS) ode : null;
+        half = ode.get_size() / 2;
+        q = new double[half];
+        p = new double[half];
+        force = new double[half];
+        velocity = new double[half];
+        force_current = false;
+    }
+
+    @Override
+    public void step(PropertyHolder step) {
+        double t0 = step.getFloat64Property("initialTime").doubleValue();
+        Float64Vector y0 = step.get_Float64Vector_property("initialValues");
+        double t1 = step.getFloat64Property("finalTime").doubleValue();
+        double h = t1 - t0;
+
+        // the kept force is only valid if this step continues the last one
+        boolean continued = force_current && t0 == t1_last;
+        for (int i = 0; i < half; i++) {
+            double qi = y0.getValue(i);
+            double pi = y0.getValue(i + half);
+            continued = continued && q[i] == qi;
+            q[i] = qi;
+            p[i] = pi;
+        }
+        force_current = continued;
+
+        double[] gamma = scheme.get_gamma();
+        double t = t0;
+        for (int stage = 0; stage < gamma.length; stage++) {
+            basic_step(t, gamma[stage] * h, q, p);
+            t += gamma[stage] * h;
+        }
+        t1_last = t1;
+
+        double[] y1 = new double[2 * half];
+        System.arraycopy(q, 0, y1, 0, half);
+        System.arraycopy(p, 0, y1, half, half);
+        step.set_property("finalValues", Float64Vector.valueOf(y1));
+        step.set_property("stageValues", Float64.ZERO);
+    }
+
+    /**
+     * Advance the positions and momenta in place with one step of the basic
+     * method, by default the kick-drift-kick Stormer-Verlet method.
+     *
+     * @param t The time at the beginning of the step.
+     * @param h The stepsize of the step, which may be negative.
+     * @param q The positions.
+     * @param p The momenta.
+     */
+    protected void basic_step(double t, double h, double[] q, double[] p) {
+        if (separable == null) {
+            throw new IllegalStateException("A composition of the Stormer-Verlet method needs a SeparableRHS");
+        }
+        double h_half = h / 2.0;
+        if (!force_current) {
+            separable.force(t, q, force);
+        }
+        for (int i = 0; i < half; i++) {
+            p[i] += h_half * force[i];
+        }
+        separable.velocity(t + h_half, p, velocity);
+        for (int i = 0; i < half; i++) {
+            q[i] += h * velocity[i];
+        }
+        separable.force(t + h, q, force);
+        force_current = true;
+        for (int i = 0; i < half; i++) {
+            p[i] += h_half * force[i];
+        }
+    }
+}
@@ -0,0 +1,471 @@
+/* ./modules/scheme/ExponentialRKModule.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.modules.scheme;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jscience.mathematics.numbers.Float64;
+import org.jscience.mathematics.vectors.Float64Vector;
+import ca.usask.simlab.odeToJava.ode.AdditiveRHS;
+import ca.usask.simlab.odeToJava.ode.RHS;
+import ca.usask.simlab.odeToJava.property.PropertyHolder;
+import ca.usask.simlab.odeToJava.scheme.ExponentialRKTableau;
+import ca.usask.simlab.odeToJava.scheme.ExponentialRKTableau.PhiTerm;
+import ca.usask.simlab.odeToJava.solver.PropertySolver;
+import ca.usask.simlab.odeToJava.solver.SolverModule;
+import ca.usask.simlab.odeToJava.util.KrylovPhi;
+import ca.usask.simlab.odeToJava.util.LinearOperator;
+import ca.usask.simlab.odeToJava.util.Matrix;
+import ca.usask.simlab.odeToJava.util.PhiFunctions;
+
+/**
+ * A module that calls an exponential Runge-Kutta method.
+ * <p>
+ * The RHS is split as f(t, y) = L*y + N(t, y) and only the phi functions of
+ * the linear part are needed. For an AdditiveRHS, L is the Jacobian of the
+ * stiff part f2; otherwise it is the Jacobian of the whole RHS. Whatever is
+ * not linear is kept in N, so the split does not have to be exact. For
+ * exponential Rosenbrock methods L is re-evaluated at the beginning of every
+ * step, otherwise it is evaluated once at the initial values.
+ * <p>
+ * Exponential Rosenbrock methods also linearize in time. With the partial
+ * derivative v = df/dt at the beginning of the step, the stages and the
+ * solution gain the term c^2*h^2*phi_2(c*hL)*v and the remainder loses c*h*v,
+ * which is the method applied to the problem with t as an extra component.
+ * Without this the methods lose their order on non-autonomous problems.
+ * <p>
+ * Small systems store L as a dense matrix and form the matrices phi_k(sigma*hL)
+ * by scaling and squaring. These are kept for the last few values of sigma*h,
+ * so repeated stepsizes, fixed stepsizes, and the fractional stages of ETDRK4
+ * do not evaluate them again. Large systems use L only through its products
+ * with vectors and apply the phi functions with Krylov subspaces.
+ * <p>
+ * Marlis Hochbruck and Alexander Ostermann. "Exponential integrators", Acta Numerica, vol 19, pg 209-286, 2010.
+ */
+public class ExponentialRKModule extends SolverModule {
+    /**
+     * The default size above which the phi functions are applied with Krylov subspaces.
+     */
+    public static final int DEFAULT_DENSE_LIMIT = 200;
+
+    /**
+     * The default number of stepsizes for which the dense phi functions are kept.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 8;
+
+    // the ODE
+    private RHS ode;
+    private int n;
+    // coefficients and properties of the method
+    private final ExponentialRKTableau tableau;
+    private int dense_limit;
+    private int max_phi;
+    private int krylov_dimension;
+    private double krylov_tolerance;
+    // the linear part as a dense matrix or an operator
+    private double[][] matrix;
+    private LinearOperator operator;
+    private KrylovPhi krylov;
+    private Map<Double, double[][][]> phi_cache;
+    private int phi_evaluations, krylov_products;
+    // the stages, the differences of the nonlinear parts, and work arrays
+    private double[] y0, y1, y1_emb, work, combination;
+    // the time derivative at the beginning of the step and h times it
+    private double[] time_derivative, time_term;
+    // the coefficients of the method including the terms of the time derivative
+    private PhiTerm[][] stage_terms;
+    private PhiTerm[] solution_terms, emb_terms;
+    private double[][] stages, differences, terms;
+    // the work arrays of combine and of the dense phi functions
+    private double[][] vectors, scaled;
+    private boolean[] done;
+    private double[][] derivatives;
+    private double t0_last, t1_last;
+    private boolean have_last;
+
+    /**
+     * The default constructor for this module.
+     *
+     * @param tableau The exponential Runge-Kutta method.
+     */
+    public ExponentialRKModule(ExponentialRKTableau tableau) {
+        // the required properties for the initial conditions
+        require_property("initialTime");
+        require_property("initialValues");
+        require_property("finalTime");
+        // the supplied properties from the integration
+        supply_property("finalValues");
+        supply_property("finalValuesEmb");
+        supply_property("stageValues");
+        // the supplied properties related to the method
+        supply_property("scheme");
+        supply_property("schemeOrder");
+        supply_property("embOrder");
+
+        this.tableau = tableau;
+        dense_limit = DEFAULT_DENSE_LIMIT;
+        krylov_dimension = KrylovPhi.DEFAULT_MAX_DIMENSION;
+        krylov_tolerance = KrylovPhi.DEFAULT_TOLERANCE;
+    }
+
+    /**
+     * Set the size above which the phi functions are applied with Krylov
+     * subspaces instead of being formed as dense matrices.
+     *
+     * @param size The largest system that uses dense matrices, 0 to always use Krylov subspaces.
+     */
+    public void set_dense_limit(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("The size must not be negative");
+        }
+        dense_limit = size;
+    }
+
+    /**
+     * Set the maximum dimension of the Krylov subspaces.
+     *
+     * @param dimension The maximum dimension.
+     */
+    public void set_krylov_dimension(int dimension) {
+        if (dimension < 2) {
+            throw new IllegalArgumentException("The dimension must be at least two");
+        }
+        krylov_dimension = dimension;
+    }
+
+    /**
+     * Set the relative tolerance of the Krylov approximations.
+     *
+     * @param tolerance The relative tolerance.
+     */
+    public void set_krylov_tolerance(double tolerance) {
+        if (tolerance <= 0.0) {
+            throw new IllegalArgumentException("The tolerance must be positive");
+        }
+        krylov_tolerance = tolerance;
+    }
+
+    /**
+     * Get the number of times the dense phi functions were formed.
+     *
+     * @return The number of evaluations, not counting those found in the cache.
+     */
+    public int get_phi_evaluations() {
+        return phi_evaluations;
+    }
+
+    /**
+     * Get the number of products with the linear part in the Krylov subspaces.
+     *
+     * @return The number of products, or 0 if dense matrices are used.
+     */
+    public int get_krylov_products() {
+        return krylov == null ? krylov_products : krylov_products + krylov.get_products();
+    }
+
+    @Override
+    public void begin_stepping(PropertySolver solver, PropertyHolder properties) {
+        // set the properties related to the method
+        properties.set_property("scheme", tableau);
+        properties.set_property("schemeOrder", tableau.get_scheme_order());
+        properties.set_property("embOrder", tableau.get_emb_order());
+
+        ode = solver.get_ODE();
+        n = ode.get_size();
+        int s = tableau.get_number_stages();
+        y0 = new double[n];
+        y1 = new double[n];
+        y1_emb = new double[n];
+        work = new double[n];
+        combination = new double[n];
+        stages = new double[s][n];
+        differences = new double[s][n];
+        // the time derivative of an exponential Rosenbrock method needs phi_2
+        max_phi = tableau.is_rosenbrock() ? Math.max(2, tableau.get_max_phi()) : tableau.get_max_phi();
+        terms = new double[max_phi + 1][n];
+        vectors = new double[max_phi + 1][];
+        derivatives = new double[2][n];
+        double[] c = tableau.get_c();
+        stage_terms = new PhiTerm[s][];
+        for (int i = 1; i < s; i++) {
+            stage_terms[i] = with_time_term(tableau.get_a(i), c[i]);
+        }
+        solution_terms = with_time_term(tableau.get_b(), 1.0);
+        emb_terms = with_time_term(tableau.get_b_emb(), 1.0);
+        int longest = Math.max(solution_terms.length, emb_terms.length);
+        for (int i = 1; i < s; i++) {
+            longest = Math.max(longest, stage_terms[i].length);
+        }
+        done = new boolean[longest];
+        scaled = null;
+        if (tableau.is_rosenbrock()) {
+            time_derivative = new double[n];
+            time_term = new double[n];
+        } else {
+            time_derivative = null;
+            time_term = null;
+        }
+        matrix = null;
+        operator = null;
+        krylov = null;
+        phi_cache = new LinkedHashMap<Double, double[][][]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Double, double[][][]> eldest) {
+                return size() > DEFAULT_CACHE_SIZE;
+            }
+        };
+        phi_evaluations = 0;
+        krylov_products = 0;
+        have_last = false;
+    }
+
+    @Override
+    public void step(PropertyHolder step) {
+        double t0 = step.getFloat64Property("initialTime").doubleValue();
+        Float64Vector initial_values = step.get_Float64Vector_property("initialValues");
+        double t1 = step.getFloat64Property("finalTime").doubleValue();
+        double h = t1 - t0;
+
+        boolean accepted = have_last && t0 == t1_last;
+        boolean repeated = have_last && t0 == t0_last;
+        if (accepted) {
+            // the final derivative of the last step is the first one here
+            double[] temp = derivatives[0];
+            derivatives[0] = derivatives[1];
+            derivatives[1] = temp;
+        }
+        if (!repeated) {
+            for (int i = 0; i < n; i++) {
+                y0[i] = initial_values.getValue(i);
+            }
+            if (!accepted) {
+                ode.f(t0, y0, derivatives[0]);
+            }
+            if ((operator == null && matrix == null) || tableau.is_rosenbrock()) {
+                linearize(t0);
+            }
+        }
+        double[] f0 = derivatives[0];
+        double[] f1 = derivatives[1];
+        if (time_term != null) {
+            for (int j = 0; j < n; j++) {
+                time_term[j] = h * time_derivative[j];
+            }
+        }
+
+        // the stages and the differences of the nonlinear part
+        double[] c = tableau.get_c();
+        for (int i = 1; i < c.length; i++) {
+            double[] stage = stages[i];
+            combine(stage_terms[i], h, f0, stage);
+            for (int j = 0; j < n; j++) {
+                stage[j] = y0[j] + h * stage[j];
+                combination[j] = stage[j] - y0[j];
+            }
+            double[] difference = differences[i];
+            ode.f(t0 + c[i] * h, stage, difference);
+            apply(combination, work);
+            for (int j = 0; j < n; j++) {
+                difference[j] -= f0[j] + work[j];
+            }
+            if (time_term != null) {
+                for (int j = 0; j < n; j++) {
+                    difference[j] -= c[i] * time_term[j];
+                }
+            }
+        }
+
+        combine(solution_terms, h, f0, y1);
+        combine(emb_terms, h, f0, y1_emb);
+        for (int i = 0; i < n; i++) {
+            y1[i] = y0[i] + h * y1[i];
+            y1_emb[i] = y0[i] + h * y1_emb[i];
+        }
+        ode.f(t1, y1, f1);
+        t0_last = t0;
+        t1_last = t1;
+        have_last = true;
+
+        step.set_property("finalValues", Float64Vector.valueOf(y1));
+        step.set_property("finalValuesEmb", Float64Vector.valueOf(y1_emb));
+        step.set_property("stageValues", derivatives);
+    }
+
+    /**
+     * Add the term c^2*phi_2(c*hL) applied to h*v to a coefficient of an
+     * exponential Rosenbrock method, where the source -1 stands for h*v.
+     */
+    private PhiTerm[] with_time_term(PhiTerm[] coefficient, double node) {
+        if (!tableau.is_rosenbrock() || node == 0.0) {
+            return coefficient;
+        }
+        PhiTerm[] terms = new PhiTerm[coefficient.length + 1];
+        System.arraycopy(coefficient, 0, terms, 0, coefficient.length);
+        terms[coefficient.length] = new PhiTerm(-1, node * node, 2, node);
+        return terms;
+    }
+
+    /**
+     * Evaluate the linear part at the current values, which also empties
+     * the cache of phi functions. For an exponential Rosenbrock method the
+     * time derivative is evaluated as well.
+     */
+    private void linearize(double t0) {
+        boolean dense = n <= dense_limit;
+        phi_cache.clear();
+        if (ode instanceof AdditiveRHS && !tableau.is_rosenbrock()) {
+            AdditiveRHS additive = (AdditiveRHS) ode;
+            if (dense) {
+                matrix = Matrix.toDouble(additive.jacobian_f2(Float64.valueOf(t0), Float64Vector.valueOf(y0)));
+            } else {
+                operator = additive.jacobian_f2_operator(t0, y0);
+            }
+        } else {
+            if (dense) {
+                matrix = Matrix.toDouble(ode.jacobian(Float64.valueOf(t0), Float64Vector.valueOf(y0)));
+            } else {
+                operator = ode.jacobian_operator(t0, y0);
+            }
+        }
+        if (time_derivative != null) {
+            ode.time_derivative(t0, y0, derivatives[0], time_derivative);
+        }
+        if (!dense) {
+            if (krylov != null) {
+                krylov_products += krylov.get_products();
+            }
+            krylov = new KrylovPhi(operator);
+            krylov.set_max_dimension(krylov_dimension);
+            krylov.set_tolerance(krylov_tolerance);
+        }
+    }
+
+    /**
+     * Apply the linear part to a vector.
+     */
+    private void apply(double[] x, double[] result) {
+        if (matrix != null) {
+            for (int i = 0; i < n; i++) {
+                double[] row = matrix[i];
+                double sum = 0.0;
+                for (int j = 0; j < n; j++) {
+                    sum += row[j] * x[j];
+                }
+                result[i] = sum;
+            }
+        } else {
+            operator.apply(x, result);
+        }
+    }
+
+    /**
+     * Evaluate a coefficient of the method applied to the stages,
+     * sum alpha*phi_k(sigma*hL)*v, grouping the terms by sigma.
+     */
+    private void combine(PhiTerm[] coefficient, double h, double[] f0, double[] result) {
+        for (int i = 0; i < n; i++) {
+            result[i] = 0.0;
+        }
+        for (int m = 0; m < coefficient.length; m++) {
+            done[m] = false;
+        }
+        for (int first = 0; first < coefficient.length; first++) {
+            if (done[first]) {
+                continue;
+            }
+            double fraction = coefficient[first].fraction;
+            for (int k = 0; k < vectors.length; k++) {
+                vectors[k] = null;
+            }
+            int p = 0;
+            for (int m = first; m < coefficient.length; m++) {
+                PhiTerm term = coefficient[m];
+                if (term.fraction != fraction) {
+                    continue;
+                }
+                done[m] = true;
+                double[] source;
+                if (term.source < 0) {
+                    source = time_term;
+                } else {
+                    source = term.source == 0 ? f0 : differences[term.source];
+                }
+                double[] vector = vectors[term.k];
+                if (vector == null) {
+                    vector = terms[term.k];
+                    for (int i = 0; i < n; i++) {
+                        vector[i] = 0.0;
+                    }
+                    vectors[term.k] = vector;
+                }
+                for (int i = 0; i < n; i++) {
+                    vector[i] += term.weight * source[i];
+                }
+                p = Math.max(p, term.k);
+            }
+            evaluate(fraction * h, vectors, p, combination);
+            for (int i = 0; i < n; i++) {
+                result[i] += combination[i];
+            }
+        }
+    }
+
+    /**
+     * Evaluate phi_0(hL)*v[0] + ... + phi_p(hL)*v[p], where null vectors are zero.
+     */
+    private void evaluate(double h, double[][] v, int p, double[] result) {
+        if (krylov != null) {
+            krylov.evaluate(h, v, p, result);
+            return;
+        }
+        Double key = Double.valueOf(h);
+        double[][][] phi = phi_cache.get(key);
+        if (phi == null) {
+            if (scaled == null) {
+                scaled = new double[n][n];
+            }
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    scaled[i][j] = h * matrix[i][j];
+                }
+            }
+            phi = PhiFunctions.phi(scaled, max_phi);
+            phi_evaluations++;
+            phi_cache.put(key, phi);
+        }
+        for (int i = 0; i < n; i++) {
+            result[i] = 0.0;
+        }
+        for (int k = 0; k <= p; k++) {
+            double[] vk = v[k];
+            if (vk == null) {
+                continue;
+            }
+            double[][] phik = phi[k];
+            for (int i = 0; i < n; i++) {
+                double[] row = phik[i];
+                double sum = 0.0;
+                for (int j = 0; j < n; j++) {
+                    sum += row[j] * vk[j];
+                }
+                result[i] += sum;
+            }
+        }
+    }
+}
@@ -0,0 +1,622 @@
+/* ./modules/scheme/ExtrapolationModule.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.modules.scheme;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import org.jscience.mathematics.numbers.Float64;
+import org.jscience.mathematics.vectors.Float64Vector;
+import ca.usask.simlab.odeToJava.modules.errorControl.BaseErrControllerModule;
+import ca.usask.simlab.odeToJava.ode.NewtonIterationMatrix;
+import ca.usask.simlab.odeToJava.ode.RHS;
+import ca.usask.simlab.odeToJava.property.PropertyHolder;
+import ca.usask.simlab.odeToJava.scheme.ExtrapolationScheme;
+import ca.usask.simlab.odeToJava.solver.PropertySolver;
+import ca.usask.simlab.odeToJava.util.Matrix;
+import ca.usask.simlab.odeToJava.util.ParallelLoop;
+
+/**
+ * A module for an extrapolation method, including its error control and the
+ * selection of the number of rows of the tableau.
+ * <p>
+ * The error estimate of row j is the difference between T_{j,j} and
+ * T_{j,j-1}, and each row gives an optimal stepsize H_j. The row that
+ * minimizes the work per unit step A_j/H_j, where A_j counts the evaluations
+ * of the RHS needed for rows 0..j, is used as the target for the next step.
+ * A step is accepted in the row before the target, the target, or the row
+ * after it, and is rejected early if the error of the previous rows shows
+ * that it will not converge, as in ODEX and SEULEX.
+ * <p>
+ * The rows of the first column of the tableau are independent, so if more
+ * than one thread is used they are computed in parallel up to the row after
+ * the target. The rows are assigned to the threads largest first, each to
+ * the thread with the least work so far, which balances the load even though
+ * row j costs n_j evaluations. The RHS must then be safe to call from
+ * several threads at once. With a single thread the rows are computed one
+ * at a time and only as far as needed.
+ * <p>
+ * The linearly implicit Euler variant evaluates the Jacobian and the partial
+ * derivative df/dt once per step and decomposes I - (H/n_j)J for each row.
+ * Each substep solves (I - hJ)d = h*f(t_i, y_i) + h^2*df/dt, which is the
+ * method applied to the problem with t as an extra component, as in SEULEX.
+ * Without the time derivative the substeps are not consistent with the
+ * linearization on non-autonomous problems and the extrapolation needs many
+ * more rows. The Jacobian is held by a NewtonIterationMatrix, so an ODE with
+ * a block-diagonal Jacobian has only its blocks evaluated and decomposed, and
+ * the coupling between the blocks is left out of J. The dense output is the
+ * cubic Hermite interpolant, so it is only third order.
+ * <p>
+ * Ernst Hairer, Syvert Norsett, and Gerhard Wanner. "Solving Order Differential Equations I, 2nd Edition", pg 233-241.
+ * <p>
+ * Ernst Hairer and Gerhard Wanner. "Solving Ordinary Differential Equations II, 2nd Edition", pg 139-144.
+ * <p>
+ * Thomas Rauber and Gudula Runger. "Load balancing schemes for extrapolation methods", Concurrency: Practice and Experience, vol 9, pg 181-202, 1997.
+ */
+public class ExtrapolationModule extends BaseErrControllerModule {
+    // the safety factor of ODEX for the error, the one for the optimal stepsize is set with set_safety
+    private static final double SAFETY_ERROR = 0.65;
+    // the default safety factor for the optimal stepsize, as in ODEX
+    public static final double DEFAULT_SAFETY_STEP = 0.94;
+    // the increase of the stepsize is limited to this factor to the power of the exponent of the row
+    private static final double MAX_INCREASE = 50.0;
+    // the order is lowered or raised if this reduces the work per unit step by these factors
+    private static final double PREFER_LOWER = 0.8;
+    private static final double PREFER_HIGHER = 0.9;
+    // the linearly implicit Euler method is given more room before a step is abandoned, as in SEULEX
+    private static final double STIFF_MONITOR_SLACK = 2.0;
+    // the cost of a Jacobian and a decomposition in evaluations of the RHS
+    private static final double JACOBIAN_WORK = 5.0;
+    private static final double DECOMPOSITION_WORK = 1.0;
+
+    private final ExtrapolationScheme scheme;
+    private int threads;
+
+    private RHS ode;
+    private int n;
+    private int rows;
+    private double[] atol_values, rtol_values;
+    // table[j] receives T_{j,1}, and after row j is extrapolated table[0] holds T_{j,j}
+    private double[][] table;
+    private boolean[] singular;
+    // the error, optimal stepsize ratio, and cumulative work of each row
+    private double[] err, optimal, work;
+    private int target;
+    private int computed;
+    private boolean last_rejected;
+    private double[] y0, f0, f1;
+    private NewtonIterationMatrix matrix;
+    private double[] time_derivative;
+    private double step_t0, step_dt;
+    private boolean have_last;
+    private double t0_last, t1_last;
+    private Worker[] workers;
+    private ExecutorService executor;
+
+    /**
+     * Constructor that sets up the module with user-specified uniform tolerances.
+     *
+     * @param scheme The extrapolation family.
+     * @param atol   The absolute tolerance used for all variables.
+     * @param rtol   The relative tolerance used for all variables.
+     * @param ode    The ODE that is being solved.
+     */
+    public ExtrapolationModule(ExtrapolationScheme scheme, double atol, double rtol, RHS ode) {
+        this(scheme, Matrix.fill(Float64.valueOf(atol), ode.get_size()), Matrix.fill(Float64.valueOf(rtol), ode.get_size()), ode);
+    }
+
+    /**
+     * Constructor that sets up the module with user-specified component-wise tolerances.
+     *
+     * @param scheme The extrapolation family.
+     * @param atol   A vector of absolute tolerances.
+     * @param rtol   A vector of relative tolerances.
+     * @param ode    The ODE that is being solved.
+     */
+    public ExtrapolationModule(ExtrapolationScheme scheme, Float64Vector atol, Float64Vector rtol, RHS ode) {
+        super(atol, rtol, ode);
+        this.scheme = scheme;
+        threads = 1;
+        set_safety(DEFAULT_SAFETY_STEP);
+        // the required properties for the initial conditions
+        require_property("initialTime");
+        require_property("initialValues");
+        require_property("finalTime");
+        // the supplied properties from the integration
+        supply_property("finalValues");
+        supply_property("stageValues");
+        // the supplied properties related to the method
+        supply_property("scheme");
+        supply_property("schemeOrder");
+        supply_property("embOrder");
+        // the supplied properties related to the error control
+        supply_property("stepAccepted");
+        supply_property("nextStepSize");
+        supply_property("absoluteTolerances");
+        supply_property("relativeTolerances");
+        supply_property("aMax");
+        supply_property("aMin");
+    }
+
+    /**
+     * Set the safety factor applied to the optimal stepsize of each row. The
+     * error of a row is also compared with a fraction of the tolerance, so the
+     * default of ODEX, 0.94, is larger than for the embedded methods.
+     *
+     * @param safety The value of safety factor to set.
+     */
+    @Override
+    public void set_safety(Float64 safety) {
+        super.set_safety(safety);
+    }
+
+    /**
+     * Set the number of threads used to compute the rows of the tableau,
+     * which takes effect when the integration starts. With more than one
+     * thread the RHS must be safe to call from several threads at once.
+     *
+     * @param threads The number of threads, 1 computes the rows in the calling thread only.
+     */
+    public void set_threads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Get the number of threads used to compute the rows of the tableau.
+     *
+     * @return The number of threads.
+     */
+    public int get_threads() {
+        return threads;
+    }
+
+    @Override
+    public void begin_stepping(PropertySolver solver, PropertyHolder properties) {
+        // set the properties related to the method
+        properties.set_property("scheme", scheme);
+        properties.set_property("schemeOrder", scheme.get_scheme_order());
+        properties.set_property("embOrder", scheme.get_emb_order());
+        // set properties that may be needed elsewhere
+        properties.set_property("absoluteTolerances", get_atol());
+        properties.set_property("relativeTolerances", get_rtol());
+        properties.set_property("aMax", get_amax_normal());
+        properties.set_property("aMin", get_amin());
+
+        ode = solver.get_ODE();
+        n = ode.get_size();
+        rows = scheme.get_max_rows();
+        atol_values = get_atol_value();
+        rtol_values = get_rtol_value();
+        table = new double[rows][n];
+        singular = new boolean[rows];
+        err = new double[rows];
+        optimal = new double[rows];
+        work = new double[rows];
+        y0 = new double[n];
+        f0 = new double[n];
+        f1 = new double[n];
+        matrix = scheme.is_linearly_implicit() ? new NewtonIterationMatrix(ode) : null;
+        time_derivative = scheme.is_linearly_implicit() ? new double[n] : null;
+        have_last = false;
+        last_rejected = false;
+
+        // the cumulative work of the rows, the first evaluation is shared by all rows
+        for (int j = 0; j < rows; j++) {
+            double row_work = scheme.get_substeps(j);
+            if (scheme.is_linearly_implicit()) {
+                row_work += DECOMPOSITION_WORK;
+            }
+            work[j] = j == 0 ? row_work + 1.0 : work[j - 1] + row_work;
+        }
+        if (scheme.is_linearly_implicit()) {
+            for (int j = 0; j < rows; j++) {
+                work[j] += JACOBIAN_WORK;
+            }
+        }
+
+        // the initial target row depends on the tolerance
+        double rtol = rtol_values[0];
+        int k = (int) (-Math.log10(rtol + 1e-16) * 0.6 + 1.5);
+        target = Math.max(1, Math.min(rows - 2, k - 1));
+
+        workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker();
+        }
+        if (threads > 1) {
+            executor = ParallelLoop.create_executor("extrapolation", threads - 1);
+        }
+    }
+
+    @Override
+    public void end_stepping() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    @Override
+    public void step(PropertyHolder step) {
+        double t0 = step.getFloat64Property("initialTime").doubleValue();
+        double t1 = step.getFloat64Property("finalTime").doubleValue();
+        double dt = t1 - t0;
+        Float64Vector initial_values = step.get_Float64Vector_property("initialValues");
+        boolean accepted = have_last && t0 == t1_last;
+        boolean repeated = have_last && t0 == t0_last;
+        for (int i = 0; i < n; i++) {
+            y0[i] = initial_values.getValue(i);
+        }
+        if (accepted) {
+            // the derivative at the end of the last step starts this one
+            double[] swap = f0;
+            f0 = f1;
+            f1 = swap;
+        } else if (!repeated) {
+            ode.f(t0, y0, f0);
+        }
+        if (scheme.is_linearly_implicit() && !repeated) {
+            matrix.evaluate(t0, y0);
+            ode.time_derivative(t0, y0, f0, time_derivative);
+        }
+        step_t0 = t0;
+        step_dt = dt;
+        computed = 0;
+
+        // build the tableau row by row until the step converges or is hopeless
+        int accept_row = -1;
+        int last_row = 0;
+        boolean failed = false;
+        for (int j = 0; j <= target + 1; j++) {
+            if (j >= computed) {
+                compute_rows(j, executor == null ? j : target + 1);
+            }
+            if (singular[j]) {
+                failed = true;
+                break;
+            }
+            extrapolate(j);
+            last_row = j;
+            if (j == 0) {
+                continue;
+            }
+            estimate_error(j);
+            if (j < target - 1) {
+                continue;
+            }
+            if (err[j] <= 1.0) {
+                accept_row = j;
+                break;
+            }
+            if (j == target + 1 || err[j] > convergence_bound(j)) {
+                break;
+            }
+        }
+
+        double ratio;
+        if (accept_row >= 0) {
+            int kc = accept_row;
+            int k_new = kc;
+            if (kc >= 2 && work[kc - 1] / optimal[kc - 1] < PREFER_LOWER * work[kc] / optimal[kc]) {
+                k_new = kc - 1;
+            } else if (!last_rejected
+                       && (kc == 1 || kc >= target && work[kc] / optimal[kc] < PREFER_HIGHER * work[kc - 1] / optimal[kc - 1])) {
+                // the lowest row is always left, as in ODEX
+                k_new = kc + 1;
+            }
+            k_new = Math.min(k_new, rows - 2);
+            if (k_new > kc) {
+                ratio = optimal[kc] * work[k_new] / work[kc];
+            } else {
+                ratio = optimal[k_new];
+            }
+            ratio = Math.min(ratio, last_rejected ? get_amax_rejected_value() : get_amax_normal_value());
+            target = k_new;
+
+            ode.f(t1, table[0], f1);
+            step.set_property("finalValues", Float64Vector.valueOf(table[0]));
+            step.set_property("stageValues", new double[][]{f0, f1});
+        } else {
+            if (failed) {
+                ratio = get_amin_value();
+            } else if (last_row < target) {
+                // abandoned before the target row, so keep the order and
+                // reduce the stepsize by the predicted error of the target row
+                double predicted = err[last_row];
+                for (int q = last_row + 1; q <= target; q++) {
+                    predicted /= Math.pow((double) scheme.get_substeps(q) / scheme.get_substeps(0), scheme.get_expansion_power());
+                }
+                ratio = Math.min(stepsize_ratio(predicted, target), 1.0);
+            } else {
+                int k_new = target;
+                if (k_new >= 2 && work[k_new - 1] / optimal[k_new - 1] < PREFER_LOWER * work[k_new] / optimal[k_new]) {
+                    k_new--;
+                }
+                ratio = Math.min(optimal[k_new], 1.0);
+                target = k_new;
+            }
+            step.set_property("finalValues", initial_values);
+            // the dense output reads the stage values even of rejected steps
+            step.set_property("stageValues", new double[][]{f0, f0});
+        }
+        ratio = Math.max(ratio, get_amin_value());
+        last_rejected = accept_row < 0;
+        have_last = true;
+        t0_last = t0;
+        t1_last = t1;
+
+        set_step_accepted(accept_row >= 0);
+        Float64 next_stepsize = Float64.valueOf(ratio * dt);
+        set_next_stepsize(next_stepsize);
+        step.set_property("stepAccepted", accept_row >= 0);
+        step.set_property("nextStepSize", next_stepsize);
+    }
+
+    /**
+     * Compute the first column of the tableau for a range of rows, in
+     * parallel if there is more than one thread.
+     */
+    private void compute_rows(int from, int to) {
+        if (executor == null || from == to) {
+            for (int j = from; j <= to; j++) {
+                workers[0].compute_row(j);
+            }
+        } else {
+            for (int i = 0; i < threads; i++) {
+                workers[i].count = 0;
+                workers[i].load = 0.0;
+            }
+            // assign the most expensive rows first, each to the least loaded thread
+            for (int j = to; j >= from; j--) {
+                Worker least = workers[0];
+                for (int i = 1; i < threads; i++) {
+                    if (workers[i].load < least.load) {
+                        least = workers[i];
+                    }
+                }
+                least.assigned[least.count++] = j;
+                least.load += scheme.get_substeps(j);
+            }
+            Future<?>[] futures = new Future<?>[threads];
+            for (int i = 1; i < threads; i++) {
+                if (workers[i].count > 0) {
+                    futures[i] = executor.submit(workers[i]);
+                }
+            }
+            workers[0].call();
+            try {
+                for (int i = 1; i < threads; i++) {
+                    if (futures[i] != null) {
+                        futures[i].get();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while computing the extrapolation tableau", e);
+            } catch (ExecutionException e) {
+                throw ParallelLoop.unchecked(e);
+            }
+        }
+        computed = to + 1;
+    }
+
+    /**
+     * Extrapolate row j in place with the Aitken-Neville algorithm, before
+     * this table[l] holds T_{j-1,j-l} and afterwards T_{j,j-l+1}.
+     */
+    private void extrapolate(int j) {
+        int power = scheme.get_expansion_power();
+        for (int l = j; l > 0; l--) {
+            double ratio = (double) scheme.get_substeps(j) / scheme.get_substeps(l - 1);
+            double factor = 1.0 / (Math.pow(ratio, power) - 1.0);
+            double[] upper = table[l - 1];
+            double[] lower = table[l];
+            for (int i = 0; i < n; i++) {
+                upper[i] = lower[i] + (lower[i] - upper[i]) * factor;
+            }
+        }
+    }
+
+    /**
+     * Estimate the error of row j and the optimal stepsize ratio it gives.
+     */
+    private void estimate_error(int j) {
+        double[] high = table[0];
+        double[] low = table[1];
+        double sum = 0.0;
+        for (int i = 0; i < n; i++) {
+            double scale = atol_values[i] + rtol_values[i] * Math.max(Math.abs(y0[i]), Math.abs(high[i]));
+            double scaled = (high[i] - low[i]) / scale;
+            sum += scaled * scaled;
+        }
+        err[j] = Math.sqrt(sum / n);
+        optimal[j] = stepsize_ratio(err[j], j);
+    }
+
+    /**
+     * Find the ratio of the optimal to the current stepsize from the error
+     * estimate of row j.
+     */
+    private double stepsize_ratio(double error, int j) {
+        if (!(error < Double.MAX_VALUE)) {
+            return get_amin_value();
+        }
+        double exponent = 1.0 / (scheme.get_column_order(j - 1) + 1);
+        double ratio = get_safety_value() / Math.pow(error / SAFETY_ERROR, exponent);
+        // the higher rows may increase the stepsize less, as in ODEX
+        double amax = Math.min(get_amax_normal_value(), Math.pow(MAX_INCREASE, exponent));
+        return Math.max(get_amin_value(), Math.min(ratio, amax));
+    }
+
+    /**
+     * Find the largest error in row j that can still be expected to converge
+     * by the row after the target.
+     */
+    private double convergence_bound(int j) {
+        double bound = 1.0;
+        for (int q = j + 1; q <= target + 1; q++) {
+            bound *= Math.pow((double) scheme.get_substeps(q) / scheme.get_substeps(0), scheme.get_expansion_power());
+            if (scheme.is_linearly_implicit()) {
+                bound *= STIFF_MONITOR_SLACK;
+            }
+        }
+        return bound;
+    }
+
+    /**
+     * Estimate a starting stepsize from the tolerances and two evaluations of
+     * the RHS, assuming the order of the initial target row. The module must
+     * have been started.
+     * <p>
+     * Ernst Hairer, Syvert Norsett, and Gerhard Wanner. "Solving Order Differential Equations I, 2nd Edition", pg 169.
+     *
+     * @param t0 The initial time.
+     * @param tf The final time.
+     * @param y0 The initial values.
+     *
+     * @return The estimated initial stepsize.
+     */
+    public double estimate_initial_stepsize(double t0, double tf, double[] y0) {
+        int size = y0.length;
+        double[] w = new double[size];
+        double[] d = new double[size];
+        double[] y1 = new double[size];
+        double[] g0 = new double[size];
+        for (int i = 0; i < size; i++) {
+            w[i] = 1.0 / (atol_values[i] + rtol_values[i] * Math.abs(y0[i]));
+        }
+        ode.f(t0, y0, g0);
+        double d0 = weighted_norm(y0, w);
+        double d1 = weighted_norm(g0, w);
+        double span = Math.abs(tf - t0);
+        double h0;
+        if (d0 < 1e-5 || d1 < 1e-5) {
+            h0 = 1e-6;
+        } else {
+            h0 = 0.01 * d0 / d1;
+        }
+        h0 = Math.min(h0, span);
+        for (int i = 0; i < size; i++) {
+            y1[i] = y0[i] + h0 * g0[i];
+        }
+        ode.f(t0 + h0, y1, d);
+        for (int i = 0; i < size; i++) {
+            d[i] -= g0[i];
+        }
+        double d2 = weighted_norm(d, w) / h0;
+        double h1;
+        if (Math.max(d1, d2) <= 1e-15) {
+            h1 = Math.max(1e-6, h0 * 1e-3);
+        } else {
+            h1 = Math.pow(0.01 / Math.max(d1, d2), 1.0 / (scheme.get_column_order(target) + 1));
+        }
+        return Math.min(Math.min(100 * h0, h1), span);
+    }
+
+    private static double weighted_norm(double[] v, double[] weight) {
+        double sum = 0.0;
+        for (int i = 0; i < v.length; i++) {
+            double scaled = v[i] * weight[i];
+            sum += scaled * scaled;
+        }
+        return Math.sqrt(sum / v.length);
+    }
+
+    /**
+     * Get the row of the tableau the next step is expected to converge in.
+     *
+     * @return The target row, starting from 0.
+     */
+    public int get_target_row() {
+        return target;
+    }
+
+    /**
+     * The rows of the first column assigned to one thread, with the storage
+     * for the substeps.
+     */
+    private class Worker implements Callable<Object> {
+        int[] assigned = new int[rows];
+        int count;
+        double load;
+        private final double[] a = new double[n];
+        private final double[] b = new double[n];
+        private final double[] f = new double[n];
+        private final NewtonIterationMatrix.Decomposition lu = scheme.is_linearly_implicit() ? matrix.create_decomposition() : null;
+
+        public Object call() {
+            for (int k = 0; k < count; k++) {
+                compute_row(assigned[k]);
+            }
+            return null;
+        }
+
+        /**
+         * Compute T_{j,1} with n_j substeps of the basic method.
+         */
+        void compute_row(int j) {
+            int steps = scheme.get_substeps(j);
+            double h = step_dt / steps;
+            singular[j] = false;
+            if (scheme.is_linearly_implicit()) {
+                if (!lu.factor(h)) {
+                    singular[j] = true;
+                    return;
+                }
+                System.arraycopy(y0, 0, a, 0, n);
+                for (int s = 0; s < steps; s++) {
+                    if (s == 0) {
+                        System.arraycopy(f0, 0, f, 0, n);
+                    } else {
+                        ode.f(step_t0 + s * h, a, f);
+                    }
+                    for (int i = 0; i < n; i++) {
+                        f[i] = h * (f[i] + h * time_derivative[i]);
+                    }
+                    lu.solve(f);
+                    for (int i = 0; i < n; i++) {
+                        a[i] += f[i];
+                    }
+                }
+                System.arraycopy(a, 0, table[j], 0, n);
+            } else {
+                // the explicit midpoint rule started with an Euler step
+                double[] previous = a;
+                double[] current = b;
+                for (int i = 0; i < n; i++) {
+                    previous[i] = y0[i];
+                    current[i] = y0[i] + h * f0[i];
+                }
+                for (int s = 1; s < steps; s++) {
+                    ode.f(step_t0 + s * h, current, f);
+                    for (int i = 0; i < n; i++) {
+                        previous[i] += 2.0 * h * f[i];
+                    }
+                    double[] swap = previous;
+                    previous = current;
+                    current = swap;
+                }
+                System.arraycopy(current, 0, table[j], 0, n);
+            }
+        }
+    }
+}
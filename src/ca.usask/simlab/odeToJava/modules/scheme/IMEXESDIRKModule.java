@@ -23,10 +23,13 @@ import org.jscience.mathematics.vectors.Float64Vector;
 import ca.usask.simlab.odeToJava.scheme.ARKButcherTableau;
 import ca.usask.simlab.odeToJava.scheme.IMEXESDIRKButcherTableau;
 import ca.usask.simlab.odeToJava.ode.AdditiveRHS;
+import ca.usask.simlab.odeToJava.ode.ApproximateFactorization;
+import ca.usask.simlab.odeToJava.ode.BlockDiagonalJacobian;
 import ca.usask.simlab.odeToJava.ode.RHS;
 import ca.usask.simlab.odeToJava.property.PropertyHolder;
 import ca.usask.simlab.odeToJava.solver.PropertySolver;
 import ca.usask.simlab.odeToJava.solver.SolverModule;
+import ca.usask.simlab.odeToJava.util.BlockLUDecomposition;
 import ca.usask.simlab.odeToJava.util.Matrix;
 
 /**
@@ -34,6 +37,11 @@ import ca.usask.simlab.odeToJava.util.Matrix;
  * arbitrary explicit and implicit-ESDIRK (explicit diagonally
  * implicit Runge-Kutta method) Butcher tableaux.
  * <p>
+ * When the ODE implements BlockDiagonalJacobian, only the blocks of the
+ * Jacobian are evaluated and decomposed. With an approximate factorization,
+ * the stages are solved with the factors of an ODE that implements
+ * ApproximateFactorization, such as the lines of a grid, one after another.
+ * <p>
  * Christopher A. Kennedy, Mark H. Carpenter. "Additive Runge-Kutta schemes for convection-diffusion-reaction equations.". Applied numerical mathematics, vol 44, pg 139-181, 2003.
  * <p>
  * Sebastiano Boscarino. "On an accurate third order implicit-explicit Runge–Kutta method for stiff problems", Applied Numerical Mathematics, vol 59, pg 1515-1528, 2009.
@@ -44,6 +52,13 @@ public class IMEXESDIRKModule extends SolverModule {
     protected Float64Matrix jacobian;
     protected Float64Matrix identity; 
     private boolean additive;
+    // the blocks of the Jacobian if the ODE has a block-diagonal Jacobian
+    private int[][] blocks;
+    private double[][][] block_jacobian;
+    private BlockLUDecomposition block_lu;
+    // whether to solve with the factors of the Jacobian of f2
+    private boolean approximate_factorization;
+    private ApproximateFactorization factors;
     // coefficients and properties of the method
     protected ARKButcherTableau tableau; 
     protected Float64Matrix a_explicit, a_implicit;
@@ -96,6 +111,17 @@ public class IMEXESDIRKModule extends SolverModule {
         fsal = tableau.get_tableau_one().is_FSAL() && tableau.get_tableau_two().is_FSAL();
     }
 
+    /**
+     * Set whether to replace the iteration matrix by the approximate
+     * factorization of the ODE, which must be an AdditiveRHS that implements
+     * ApproximateFactorization. The default is false.
+     *
+     * @param approximate_factorization Whether to use the approximate factorization.
+     */
+    public void set_approximate_factorization(boolean approximate_factorization) {
+        this.approximate_factorization = approximate_factorization;
+    }
+
     @Override
     public void begin_stepping(PropertySolver solver, PropertyHolder properties) {
         // set the properties related to the method
@@ -106,7 +132,23 @@ public class IMEXESDIRKModule extends SolverModule {
         ode = (RHS) solver.get_ODE();
         additive = ode instanceof AdditiveRHS;
 
-        identity = Matrix.eye(solver.get_ODE().get_size());
+        if (approximate_factorization) {
+            if (!additive || !(ode instanceof ApproximateFactorization)) {
+                throw new IllegalArgumentException("The approximate factorization needs an AdditiveRHS that implements ApproximateFactorization.");
+            }
+            factors = (ApproximateFactorization) ode;
+            blocks = null;
+        } else if (ode instanceof BlockDiagonalJacobian) {
+            blocks = ((BlockDiagonalJacobian) ode).get_jacobian_blocks();
+            block_jacobian = new double[blocks.length][][];
+            for (int b = 0; b < blocks.length; b++) {
+                block_jacobian[b] = new double[blocks[b].length][blocks[b].length];
+            }
+            block_lu = new BlockLUDecomposition(blocks);
+        } else {
+            blocks = null;
+            identity = Matrix.eye(solver.get_ODE().get_size());
+        }
         // initialize the stage values
         k_explicit = new Float64Vector[s_explicit];
         k_implicit = new Float64Vector[s_implicit]; 
@@ -125,11 +167,22 @@ public class IMEXESDIRKModule extends SolverModule {
         Float64Vector ynew = Float64Vector.valueOf(new double[y0.getDimension()]);
         
         // the first explicit stages, the Jacobian needs to be evaluated here
-        jacobian = ode.jacobian(t0, y0);
+        Float64Matrix newton = null;
+        double gamma = adt_implicit.get(1, 1).doubleValue();
+        if (blocks != null) {
+            double[] values = Matrix.toDouble(y0);
+            for (int b = 0; b < blocks.length; b++) {
+                ((BlockDiagonalJacobian) ode).jacobian_block(t0.doubleValue(), values, b, block_jacobian[b]);
+            }
+            // the blocks of the newton direction, SDIRK has same direction for all stages
+            block_lu.factor_shifted(gamma, block_jacobian);
+        } else if (!approximate_factorization) {
+            jacobian = ode.jacobian(t0, y0);
+            // find the newton direction, SDIRK has same direction for all stages
+            newton = identity.minus(jacobian.times(adt_implicit.get(1, 1)));
+        }
         k_explicit[0] = evaluate_fnonlinear(t0, y0);
         k_implicit[0] = evaluate_flinear(t0, y0);
-        // find the newton direction, SDIRK has same direction for all stages
-        Float64Matrix newton = identity.minus(jacobian.times(adt_implicit.get(1, 1)));
         for (int i = 1; i < s_implicit; i++) {
             // evaluate the explicit method
             ynew = Matrix.fill(Float64.ZERO, ynew.getDimension());
@@ -137,7 +190,17 @@ public class IMEXESDIRKModule extends SolverModule {
                 ynew = k_implicit[j].times(adt_implicit.get(i, j)).plus(k_explicit[j].times(adt_explicit.get(i, j))).plus(ynew);
             }
             Float64Vector fn = evaluate_flinear(t0.plus(cdt.get(i)), y0.plus(ynew));
-            k_implicit[i] = Float64Vector.valueOf(newton.solve(fn));
+            if (approximate_factorization) {
+                double[] direction = Matrix.toDouble(fn);
+                solve_factors(gamma, direction);
+                k_implicit[i] = Float64Vector.valueOf(direction);
+            } else if (blocks != null) {
+                double[] direction = Matrix.toDouble(fn);
+                block_lu.solve(direction);
+                k_implicit[i] = Float64Vector.valueOf(direction);
+            } else {
+                k_implicit[i] = Float64Vector.valueOf(newton.solve(fn));
+            }
             ynew = ynew.plus(k_implicit[i].times(adt_implicit.get(1, 1)))
 ;
             k_explicit[i] = evaluate_fnonlinear(t0.plus(cdt.get(i)), y0.plus(ynew));
@@ -155,6 +218,15 @@ public class IMEXESDIRKModule extends SolverModule {
         step.set_property("stageValues", stage_values);
     }
 
+    /**
+     * Solve with all factors of the approximate factorization in turn.
+     */
+    private void solve_factors(double gamma, double[] b) {
+        for (int f = 0; f < factors.get_number_factors(); f++) {
+            factors.solve_factor(f, gamma, b);
+        }
+    }
+
     /**
      * Evaluate the linear part of the ODE.
      * 
@@ -170,6 +242,10 @@ public class IMEXESDIRKModule extends SolverModule {
     protected Float64Vector evaluate_flinear(Float64 t, Float64Vector y) {
         if (additive) {
             return ((AdditiveRHS) ode).f2(t, y);
+        } else if (blocks != null) {
+            double[] linear = new double[y.getDimension()];
+            BlockLUDecomposition.multiply(blocks, block_jacobian, Matrix.toDouble(y), linear);
+            return Float64Vector.valueOf(linear);
         } else {
             return jacobian.times(y);
         }
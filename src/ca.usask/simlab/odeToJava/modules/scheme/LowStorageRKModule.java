@@ -0,0 +1,214 @@
+/* ./modules/scheme/LowStorageRKModule.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.modules.scheme;
+
+import org.jscience.mathematics.numbers.Float64;
+import org.jscience.mathematics.vectors.Float64Vector;
+import ca.usask.simlab.odeToJava.ode.RHS;
+import ca.usask.simlab.odeToJava.property.PropertyHolder;
+import ca.usask.simlab.odeToJava.scheme.LowStorageRKTableau;
+import ca.usask.simlab.odeToJava.solver.PropertySolver;
+import ca.usask.simlab.odeToJava.solver.SolverModule;
+
+/**
+ * A module that calls an explicit Runge-Kutta method in the low-storage 2N
+ * or 3S* form.
+ * <p>
+ * In the 2N form the module keeps the solution U and the register dU, the
+ * value of the RHS that is being added to the register, and, when the method
+ * has an embedded method, the register of the difference between the two
+ * solutions. In the 3S* form it keeps the three registers and the value of
+ * the RHS, and the embedded solution is formed from the registers at the
+ * end of the step. The memory of the module is three or four vectors of the
+ * size of the ODE whatever the number of stages, where the Runge-Kutta
+ * module keeps every stage. The initial values given by the solver are not
+ * modified, so rejected steps are repeated from them.
+ * <p>
+ * J. H. Williamson. "Low-storage Runge-Kutta schemes", Journal of Computational Physics, vol 35, pg 48-56, 1980.
+ * <p>
+ * David I. Ketcheson. "Runge-Kutta methods with minimum storage implementations", Journal of Computational Physics, vol 229, pg 1763-1773, 2010.
+ */
+public class LowStorageRKModule extends SolverModule {
+    private final LowStorageRKTableau tableau;
+    private RHS ode;
+    private int n;
+    // the solution, the register, the RHS, and the difference of the
+    // main and embedded solutions, in the 2N form
+    private double[] u, du, f, error;
+    // the running sum and the initial values, in the 3S* form
+    private double[] sum, initial;
+    // the difference of the main and embedded weights
+    private double[] b_difference;
+
+    /**
+     * The default constructor for this module.
+     *
+     * @param tableau The coefficients of the low-storage method.
+     */
+    public LowStorageRKModule(LowStorageRKTableau tableau) {
+        // the required properties for the initial conditions
+        require_property("initialTime");
+        require_property("initialValues");
+        require_property("finalTime");
+        // the supplied properties from the integration
+        supply_property("finalValues");
+        supply_property("finalValuesEmb");
+        supply_property("stageValues");
+        // the supplied properties related to the method
+        supply_property("scheme");
+        supply_property("schemeOrder");
+        supply_property("embOrder");
+
+        this.tableau = tableau;
+        if (tableau.has_emb() && !tableau.is_three_register()) {
+            double[] b = tableau.get_b();
+            double[] b_emb = tableau.get_b_emb();
+            b_difference = new double[b.length];
+            for (int i = 0; i < b.length; i++) {
+                b_difference[i] = b[i] - b_emb[i];
+            }
+        }
+    }
+
+    @Override
+    public void begin_stepping(PropertySolver solver, PropertyHolder properties) {
+        // set the properties related to the method
+        properties.set_property("scheme", tableau);
+        properties.set_property("schemeOrder", tableau.get_scheme_order());
+        properties.set_property("embOrder", tableau.get_emb_order());
+
+        ode = solver.get_ODE();
+        n = ode.get_size();
+        u = new double[n];
+        f = new double[n];
+        if (tableau.is_three_register()) {
+            sum = new double[n];
+            initial = new double[n];
+            du = null;
+            error = null;
+        } else {
+            du = new double[n];
+            error = tableau.has_emb() ? new double[n] : null;
+        }
+    }
+
+    @Override
+    public void step(PropertyHolder step) {
+        double t0 = step.getFloat64Property("initialTime").doubleValue();
+        Float64Vector y0 = step.get_Float64Vector_property("initialValues");
+        double t1 = step.getFloat64Property("finalTime").doubleValue();
+        double h = t1 - t0;
+
+        for (int k = 0; k < n; k++) {
+            u[k] = y0.getValue(k);
+        }
+        if (tableau.is_three_register()) {
+            step_three_register(t0, h, step);
+            return;
+        }
+        double[] A = tableau.get_A();
+        double[] B = tableau.get_B();
+        double[] c = tableau.get_c();
+        for (int i = 0; i < A.length; i++) {
+            ode.f(t0 + c[i] * h, u, f);
+            double a_i = A[i];
+            double b_i = B[i];
+            if (a_i == 0.0) {
+                // the register is started again
+                for (int k = 0; k < n; k++) {
+                    du[k] = h * f[k];
+                    u[k] += b_i * du[k];
+                }
+            } else {
+                for (int k = 0; k < n; k++) {
+                    du[k] = a_i * du[k] + h * f[k];
+                    u[k] += b_i * du[k];
+                }
+            }
+            if (error != null) {
+                double weight = h * b_difference[i];
+                if (i == 0) {
+                    for (int k = 0; k < n; k++) {
+                        error[k] = weight * f[k];
+                    }
+                } else if (weight != 0.0) {
+                    for (int k = 0; k < n; k++) {
+                        error[k] += weight * f[k];
+                    }
+                }
+            }
+        }
+
+        step.set_property("finalValues", Float64Vector.valueOf(u));
+        if (error != null) {
+            for (int k = 0; k < n; k++) {
+                error[k] = u[k] - error[k];
+            }
+            step.set_property("finalValuesEmb", Float64Vector.valueOf(error));
+        }
+        step.set_property("stageValues", Float64.ZERO);
+    }
+
+    /**
+     * Take a step in the 3S* form, with S1 in u, S2 in sum and S3 in initial.
+     */
+    private void step_three_register(double t0, double h, PropertyHolder step) {
+        double[] gamma1 = tableau.get_gamma1();
+        double[] gamma2 = tableau.get_gamma2();
+        double[] gamma3 = tableau.get_gamma3();
+        double[] beta = tableau.get_beta();
+        double[] delta = tableau.get_delta();
+        double[] c = tableau.get_c();
+        int s = beta.length;
+        System.arraycopy(u, 0, initial, 0, n);
+        for (int k = 0; k < n; k++) {
+            sum[k] = 0.0;
+        }
+        for (int i = 0; i < s; i++) {
+            double d_i = delta[i];
+            if (d_i != 0.0) {
+                for (int k = 0; k < n; k++) {
+                    sum[k] += d_i * u[k];
+                }
+            }
+            ode.f(t0 + c[i] * h, u, f);
+            double g1 = gamma1[i];
+            double g2 = gamma2[i];
+            double g3 = gamma3[i];
+            double b_i = h * beta[i];
+            for (int k = 0; k < n; k++) {
+                u[k] = g1 * u[k] + g2 * sum[k] + g3 * initial[k] + b_i * f[k];
+            }
+        }
+
+        step.set_property("finalValues", Float64Vector.valueOf(u));
+        if (tableau.has_emb()) {
+            double total = 0.0;
+            for (int i = 0; i < delta.length; i++) {
+                total += delta[i];
+            }
+            double d_s = delta[s];
+            double d_initial = delta[s + 1];
+            for (int k = 0; k < n; k++) {
+                sum[k] = (sum[k] + d_s * u[k] + d_initial * initial[k]) / total;
+            }
+            step.set_property("finalValuesEmb", Float64Vector.valueOf(sum));
+        }
+        step.set_property("stageValues", Float64.ZERO);
+    }
+}
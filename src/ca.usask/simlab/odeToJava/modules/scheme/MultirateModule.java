@@ -0,0 +1,443 @@
+/* ./modules/scheme/MultirateModule.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.modules.scheme;
+
+import org.jscience.mathematics.vectors.Float64Vector;
+import ca.usask.simlab.odeToJava.modules.errorControl.BaseErrControllerModule;
+import ca.usask.simlab.odeToJava.ode.PartitionedRHS;
+import ca.usask.simlab.odeToJava.ode.RHS;
+import ca.usask.simlab.odeToJava.property.PropertyHolder;
+import ca.usask.simlab.odeToJava.scheme.ERKButcherTableau;
+import ca.usask.simlab.odeToJava.scheme.MultirateScheme;
+import ca.usask.simlab.odeToJava.solver.PropertySolver;
+import ca.usask.simlab.odeToJava.solver.SolverModule;
+import ca.usask.simlab.odeToJava.util.Matrix;
+
+/**
+ * A module that calls a multirate method, refining the step only for the
+ * components whose local error is too large.
+ * <p>
+ * Level l covers the step with 2^l substeps of the explicit Runge-Kutta
+ * method for its active components. The values and derivatives at the
+ * substep boundaries are kept for each level, so a component that is not
+ * active is interpolated from the last level that computed it. A component
+ * stays active at the next level if its scaled local error is larger than
+ * half in any substep, so the components that are not refined keep a margin
+ * for the coupling errors. If the RHS implements PartitionedRHS only the
+ * active components are evaluated, otherwise the full RHS is evaluated and
+ * the multirate method saves no work.
+ * <p>
+ * The components that finish on a coarser level were first computed with
+ * the stages of the fast components from that level, which are inaccurate
+ * and may even be unstable. After the refinement each coarser level is
+ * therefore computed again with the faster components interpolated from
+ * their finest levels, and the change of each component is added to its
+ * error estimate so that a strong coupling reduces the step.
+ * <p>
+ * The final values of each component come from its finest level, and the
+ * difference to the embedded solution is its largest local error estimate
+ * there, so the usual embedded error controllers choose the step for the
+ * slow components. A component that fails at the finest level rejects the
+ * step. When more than a fraction of the components are fast, and the RHS
+ * has not named them, the step is not refined and is rejected instead.
+ * <p>
+ * Valeriu Savcenco, Willem Hundsdorfer, and Jan Verwer. "A multirate time stepping strategy for stiff ordinary differential equations", BIT Numerical Mathematics, vol 47, pg 137-155, 2007.
+ */
+public class MultirateModule extends SolverModule {
+    // a component is refined if its error is above this fraction of the tolerance
+    private static final double REFINE_FRACTION = 0.5;
+    // related to the ODE
+    private RHS ode;
+    private PartitionedRHS partitioned;
+    private int n;
+    private Float64Vector atol, rtol;
+    private double[] atol_values, rtol_values;
+    private int[] fast_components;
+    // coefficients and properties of the method
+    private final MultirateScheme scheme;
+    private final double[][] a;
+    private final double[] b, e, c;
+    private final int s, levels;
+    private final boolean fsal;
+    // the values and derivatives at the substep boundaries of each level
+    private double[][][] node_y, node_f;
+    private int[] owner;
+    private double[] error, level_error, coupled;
+    // the active components of a level
+    private int[] active, next_active;
+    private int active_count;
+    private boolean[] is_active;
+    // work arrays
+    private double[][] k;
+    private double[] y0, f0, f1, w, full;
+    private double step_t0, step_dt;
+    private long component_evaluations;
+    // the bookkeeping of the last step
+    private double t0_last, t1_last;
+    private boolean have_last;
+
+    /**
+     * Constructor for this SolverModule using the default tolerances to
+     * choose the fast components.
+     *
+     * @param scheme The multirate method.
+     */
+    public MultirateModule(MultirateScheme scheme) {
+        this(scheme, null, null);
+    }
+
+    /**
+     * Constructor for this SolverModule, the tolerances should be the same as
+     * those of the error controller.
+     *
+     * @param scheme The multirate method.
+     * @param atol   A vector of absolute tolerances.
+     * @param rtol   A vector of relative tolerances.
+     */
+    public MultirateModule(MultirateScheme scheme, Float64Vector atol, Float64Vector rtol) {
+        // the required properties for the initial conditions
+        require_property("initialTime");
+        require_property("initialValues");
+        require_property("finalTime");
+        // the supplied properties from the integration
+        supply_property("finalValues");
+        supply_property("finalValuesEmb");
+        supply_property("stageValues");
+        // the supplied properties related to the method
+        supply_property("scheme");
+        supply_property("schemeOrder");
+        supply_property("embOrder");
+
+        this.scheme = scheme;
+        this.atol = atol;
+        this.rtol = rtol;
+        ERKButcherTableau tableau = scheme.get_tableau();
+        a = Matrix.toDouble(tableau.get_A());
+        b = Matrix.toDouble(tableau.get_b());
+        c = Matrix.toDouble(tableau.get_c());
+        double[] b_embedded = Matrix.toDouble(tableau.get_bemb());
+        s = b.length;
+        e = new double[s];
+        for (int j = 0; j < s; j++) {
+            e[j] = b[j] - b_embedded[j];
+        }
+        levels = scheme.get_levels();
+        // the last stage is the derivative at the end of the step if it is evaluated at the solution
+        boolean last_stage = c[s - 1] == 1.0 && b[s - 1] == 0.0;
+        for (int j = 0; j < s - 1; j++) {
+            last_stage = last_stage && a[s - 1][j] == b[j];
+        }
+        fsal = last_stage;
+    }
+
+    /**
+     * Get the number of evaluations of single components of the RHS, where
+     * an evaluation of the full RHS counts as one per component.
+     *
+     * @return The number of component evaluations.
+     */
+    public long get_component_evaluations() {
+        return component_evaluations;
+    }
+
+    @Override
+    public void begin_stepping(PropertySolver solver, PropertyHolder properties) {
+        // set the properties related to the method
+        properties.set_property("scheme", scheme);
+        properties.set_property("schemeOrder", scheme.get_scheme_order());
+        properties.set_property("embOrder", scheme.get_emb_order());
+
+        ode = solver.get_ODE();
+        n = ode.get_size();
+        partitioned = ode instanceof PartitionedRHS ? (PartitionedRHS) ode : null;
+        fast_components = partitioned != null ? partitioned.get_fast_components() : null;
+        if (atol == null) {
+            atol = Matrix.fill(BaseErrControllerModule.DEFAULT_ATOL, n);
+        }
+        if (rtol == null) {
+            rtol = Matrix.fill(BaseErrControllerModule.DEFAULT_RTOL, n);
+        }
+        atol_values = Matrix.toDouble(atol);
+        rtol_values = Matrix.toDouble(rtol);
+
+        node_y = new double[levels + 1][][];
+        node_f = new double[levels + 1][][];
+        for (int l = 0; l <= levels; l++) {
+            node_y[l] = new double[(1 << l) + 1][n];
+            node_f[l] = new double[(1 << l) + 1][n];
+        }
+        owner = new int[n];
+        error = new double[n];
+        level_error = new double[n];
+        coupled = new double[n];
+        active = new int[n];
+        next_active = new int[n];
+        is_active = new boolean[n];
+        k = new double[s][n];
+        y0 = new double[n];
+        f0 = new double[n];
+        f1 = new double[n];
+        w = new double[n];
+        full = partitioned == null ? new double[n] : null;
+        component_evaluations = 0;
+        have_last = false;
+    }
+
+    @Override
+    public void step(PropertyHolder step) {
+        double t0 = step.getFloat64Property("initialTime").doubleValue();
+        double dt = step.getFloat64Property("finalTime").doubleValue() - t0;
+        Float64Vector initial_values = step.get_Float64Vector_property("initialValues");
+        boolean accepted = have_last && t0 == t1_last;
+        boolean repeated = have_last && t0 == t0_last;
+        for (int i = 0; i < n; i++) {
+            y0[i] = initial_values.getValue(i);
+        }
+        if (accepted) {
+            // the derivative at the end of the last step starts this one
+            double[] swap = f0;
+            f0 = f1;
+            f1 = swap;
+        } else if (!repeated) {
+            ode.f(t0, y0, f0);
+            component_evaluations += n;
+        }
+        step_t0 = t0;
+        step_dt = dt;
+
+        // take the step for all components
+        active_count = n;
+        for (int i = 0; i < n; i++) {
+            active[i] = i;
+            owner[i] = 0;
+        }
+        run_level(0);
+        System.arraycopy(level_error, 0, error, 0, n);
+        int level = 0;
+        choose_active(level);
+        if (fast_components == null && active_count > scheme.get_max_fast_fraction() * n) {
+            active_count = 0;
+        }
+        // refine the components that are too fast for the step
+        while (active_count > 0 && level < levels) {
+            level++;
+            run_level(level);
+            for (int m = 0; m < active_count; m++) {
+                int i = active[m];
+                owner[i] = level;
+                error[i] = level_error[i];
+            }
+            choose_active(level);
+        }
+        // the coarser levels used the stages of the fast components from
+        // their own steps, so compute them again from the refined values
+        for (int l = 0; l < level; l++) {
+            recompute_level(l);
+        }
+
+        double[] y1 = new double[n];
+        double[] y1_emb = new double[n];
+        for (int i = 0; i < n; i++) {
+            int o = owner[i];
+            y1[i] = node_y[o][1 << o][i];
+            y1_emb[i] = y1[i] - error[i];
+        }
+        if (level == 0) {
+            System.arraycopy(node_f[0][1], 0, f1, 0, n);
+        } else {
+            ode.f(t0 + dt, y1, f1);
+            component_evaluations += n;
+        }
+        t0_last = t0;
+        t1_last = t0 + dt;
+        have_last = true;
+
+        step.set_property("finalValues", Float64Vector.valueOf(y1));
+        step.set_property("finalValuesEmb", Float64Vector.valueOf(y1_emb));
+        step.set_property("stageValues", new double[][]{f0, f1});
+    }
+
+    /**
+     * Step the components owned by a level again with all other components
+     * interpolated from their own levels. The change of each component is
+     * the error from the coupling to the coarse values of the faster
+     * components, which is added to its error estimate.
+     */
+    private void recompute_level(int level) {
+        int steps = 1 << level;
+        active_count = 0;
+        for (int i = 0; i < n; i++) {
+            is_active[i] = owner[i] == level;
+            if (is_active[i]) {
+                active[active_count++] = i;
+                coupled[i] = node_y[level][steps][i];
+            }
+        }
+        if (active_count == 0) {
+            return;
+        }
+        run_level(level);
+        for (int m = 0; m < active_count; m++) {
+            int i = active[m];
+            error[i] = Math.abs(level_error[i]) + Math.abs(node_y[level][steps][i] - coupled[i]);
+        }
+    }
+
+    /**
+     * Find the active components of the level after the given one, those with
+     * a scaled error larger than one and at the first level those named by
+     * the RHS.
+     */
+    private void choose_active(int level) {
+        int count = 0;
+        for (int m = 0; m < active_count; m++) {
+            int i = active[m];
+            double y_level = node_y[level][1 << level][i];
+            double scale = atol_values[i] + rtol_values[i] * Math.max(Math.abs(y0[i]), Math.abs(y_level));
+            boolean fast = Math.abs(level_error[i]) > REFINE_FRACTION * scale;
+            if (level == 0 && fast_components != null) {
+                fast = false;
+            }
+            if (fast) {
+                next_active[count++] = i;
+            }
+        }
+        if (level == 0 && fast_components != null) {
+            for (int m = 0; m < fast_components.length; m++) {
+                next_active[count++] = fast_components[m];
+            }
+        }
+        int[] swap = active;
+        active = next_active;
+        next_active = swap;
+        active_count = count;
+        for (int i = 0; i < n; i++) {
+            is_active[i] = false;
+        }
+        for (int m = 0; m < active_count; m++) {
+            is_active[active[m]] = true;
+        }
+    }
+
+    /**
+     * Step the active components through the substeps of a level, the other
+     * components are interpolated from the levels that last computed them.
+     */
+    private void run_level(int level) {
+        int steps = 1 << level;
+        double h = step_dt / steps;
+        double[][] ys = node_y[level];
+        double[][] fs = node_f[level];
+        for (int m = 0; m < active_count; m++) {
+            int i = active[m];
+            ys[0][i] = y0[i];
+            fs[0][i] = f0[i];
+            level_error[i] = 0.0;
+        }
+        for (int step = 0; step < steps; step++) {
+            double tau = step_t0 + step * h;
+            double[] y_start = ys[step];
+            for (int m = 0; m < active_count; m++) {
+                int i = active[m];
+                k[0][i] = fs[step][i];
+            }
+            for (int j = 1; j < s; j++) {
+                double[] aj = a[j];
+                for (int m = 0; m < active_count; m++) {
+                    int i = active[m];
+                    double sum = 0.0;
+                    for (int q = 0; q < j; q++) {
+                        sum += aj[q] * k[q][i];
+                    }
+                    w[i] = y_start[i] + h * sum;
+                }
+                evaluate(level, tau + c[j] * h, k[j]);
+            }
+            double[] y_end = ys[step + 1];
+            for (int m = 0; m < active_count; m++) {
+                int i = active[m];
+                double sum = 0.0;
+                double estimate = 0.0;
+                for (int q = 0; q < s; q++) {
+                    sum += b[q] * k[q][i];
+                    estimate += e[q] * k[q][i];
+                }
+                y_end[i] = y_start[i] + h * sum;
+                estimate *= h;
+                if (Math.abs(estimate) > Math.abs(level_error[i])) {
+                    level_error[i] = estimate;
+                }
+            }
+            // the derivative at the end of the substep starts the next one
+            if (fsal) {
+                for (int m = 0; m < active_count; m++) {
+                    int i = active[m];
+                    fs[step + 1][i] = k[s - 1][i];
+                }
+            } else {
+                for (int m = 0; m < active_count; m++) {
+                    int i = active[m];
+                    w[i] = y_end[i];
+                }
+                evaluate(level, tau + h, fs[step + 1]);
+            }
+        }
+    }
+
+    /**
+     * Evaluate the active components at the stage values in w, interpolating
+     * the other components first.
+     */
+    private void evaluate(int level, double t, double[] result) {
+        if (active_count < n) {
+            for (int i = 0; i < n; i++) {
+                if (!is_active[i]) {
+                    w[i] = interpolate(i, t);
+                }
+            }
+        }
+        if (partitioned != null) {
+            partitioned.f(t, w, result, active, active_count);
+            component_evaluations += active_count;
+        } else {
+            ode.f(t, w, full);
+            component_evaluations += n;
+            for (int m = 0; m < active_count; m++) {
+                int i = active[m];
+                result[i] = full[i];
+            }
+        }
+    }
+
+    /**
+     * The cubic Hermite interpolant of component i on the level that last
+     * computed it.
+     */
+    private double interpolate(int i, double t) {
+        int level = owner[i];
+        int steps = 1 << level;
+        double h = step_dt / steps;
+        double x = (t - step_t0) / h;
+        int m = Math.max(0, Math.min((int) x, steps - 1));
+        double theta = x - m;
+        double y_left = node_y[level][m][i];
+        double difference = node_y[level][m + 1][i] - y_left;
+        return y_left + theta * difference + theta * (theta - 1.0)
+                * ((1.0 - 2.0 * theta) * difference + (theta - 1.0) * h * node_f[level][m][i] + theta * h * node_f[level][m + 1][i]);
+    }
+}
@@ -0,0 +1,416 @@
+/* ./modules/scheme/PDIRKModule.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.modules.scheme;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import org.jscience.mathematics.vectors.Float64Vector;
+import ca.usask.simlab.odeToJava.interpolant.CollocationInterpolant;
+import ca.usask.simlab.odeToJava.ode.NewtonIterationMatrix;
+import ca.usask.simlab.odeToJava.ode.RHS;
+import ca.usask.simlab.odeToJava.property.PropertyHolder;
+import ca.usask.simlab.odeToJava.scheme.PDIRKTableau;
+import ca.usask.simlab.odeToJava.solver.PropertySolver;
+import ca.usask.simlab.odeToJava.solver.SolverModule;
+import ca.usask.simlab.odeToJava.util.ParallelLoop;
+
+/**
+ * A module that calls a parallel diagonally-implicit iterated Runge-Kutta
+ * (PDIRK) method.
+ * <p>
+ * Each iteration updates every stage with its own matrix I - h*d_i*J, which
+ * is decomposed once per stepsize, and uses only the derivatives of the
+ * previous iteration, so the stages of an iteration are independent. If more
+ * than one thread is used the stages are divided between the threads, each
+ * with the decompositions of its own stages, and the threads meet once per
+ * iteration. The RHS must then be safe to call from several threads at once.
+ * <p>
+ * The Jacobian is evaluated at the start of every step and kept when a step
+ * is repeated with a smaller stepsize. It is held by a NewtonIterationMatrix,
+ * so an ODE with a block-diagonal Jacobian has only its blocks evaluated and
+ * decomposed. The starting values of the stages are extrapolated from the
+ * collocation polynomial of the last accepted step, as in RADAU5, or are y_0
+ * on the first step. With a fixed number of iterations
+ * the error left in the stiff components is about the error of the starting
+ * values divided by h*lambda, so starting from y_0 it does not decrease with
+ * the stepsize and the stepsize is cut until the components are no longer
+ * stiff. A step uses one evaluation of the RHS at y_0, s for the
+ * extrapolated starting values, and s for every iteration but the last.
+ * <p>
+ * The error estimate is that of RADAU5 with the matrix of the last stage,
+ * which needs no further decomposition, as described in PDIRKTableau. On
+ * the first step and after a rejected step it is filtered once more with
+ * f(y_0 + err) in place of f(y_0), which takes one more evaluation. It is
+ * returned as finalValues - finalValuesEmb so the usual embedded error
+ * controllers can be used, and a singular stage matrix sets the final
+ * values to NaN, which the error controllers treat as a rejected step.
+ * <p>
+ * Ernst Hairer and Gerhard Wanner. "Solving Ordinary Differential Equations II, 2nd Edition", pg 118-124.
+ * <p>
+ * P.J. van der Houwen and B.P. Sommeijer. "Iterated Runge-Kutta methods on parallel computers", SIAM J. Sci. Stat. Comput., vol 12, pg 1000-1028, 1991.
+ */
+public class PDIRKModule extends SolverModule {
+    // related to the ODE
+    private RHS ode;
+    private int n;
+    // coefficients and properties of the method
+    private final PDIRKTableau tableau;
+    private final double[][] a;
+    private final double[] c, d, e;
+    private final int stages, iterations;
+    private int threads;
+    // the state of the current step
+    private NewtonIterationMatrix matrix;
+    private double[][] y, f, f_next, z;
+    private double[] y0, f0, weights;
+    // the work arrays of the solution and the error estimate
+    private double[] y1, y1_emb, error, delta, shifted;
+    private double step_t0, step_dt, factored_dt;
+    private boolean singular;
+    // the bookkeeping of the last step
+    private double t0_last, t1_last, h_last;
+    private boolean have_last;
+    // the stage increments of the last two steps, for the starting values
+    private double[][] z_last, z_previous;
+    private double h_previous;
+    private boolean have_previous, attempted;
+    // the stages of each thread
+    private Worker[] workers;
+    private ExecutorService executor;
+
+    /**
+     * Constructor for this SolverModule.
+     *
+     * @param tableau The PDIRK method.
+     */
+    public PDIRKModule(PDIRKTableau tableau) {
+        // the required properties for the initial conditions
+        require_property("initialTime");
+        require_property("initialValues");
+        require_property("finalTime");
+        // the supplied properties from the integration
+        supply_property("finalValues");
+        supply_property("finalValuesEmb");
+        supply_property("stageValues");
+        // the supplied properties related to the method
+        supply_property("scheme");
+        supply_property("schemeOrder");
+        supply_property("embOrder");
+
+        this.tableau = tableau;
+        a = tableau.get_A_values();
+        c = tableau.get_c_values();
+        d = tableau.get_D_values();
+        e = tableau.get_error_weights();
+        stages = tableau.get_number_stages();
+        iterations = tableau.get_iterations();
+        threads = 1;
+    }
+
+    /**
+     * Set the number of threads used to compute the stages. More threads than
+     * stages are not used, and with more than one thread the RHS must be safe
+     * to call from several threads at once.
+     *
+     * @param threads The number of threads, 1 computes the stages in the calling thread only.
+     */
+    public void set_threads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Get the number of threads used to compute the stages.
+     *
+     * @return The number of threads.
+     */
+    public int get_threads() {
+        return threads;
+    }
+
+    @Override
+    public void begin_stepping(PropertySolver solver, PropertyHolder properties) {
+        // set the properties related to the method
+        properties.set_property("scheme", tableau);
+        properties.set_property("schemeOrder", tableau.get_scheme_order());
+        properties.set_property("embOrder", tableau.get_emb_order());
+
+        ode = solver.get_ODE();
+        n = ode.get_size();
+        y = new double[stages][n];
+        f = new double[stages][n];
+        f_next = new double[stages][n];
+        z = new double[stages][n];
+        z_last = new double[stages][n];
+        z_previous = new double[stages][n];
+        y0 = new double[n];
+        f0 = new double[n];
+        weights = new double[stages];
+        y1 = new double[n];
+        y1_emb = new double[n];
+        error = new double[n];
+        delta = new double[n];
+        shifted = new double[n];
+        matrix = new NewtonIterationMatrix(ode);
+        have_last = false;
+        have_previous = false;
+        attempted = false;
+
+        // deal the stages to the threads in turn
+        int used = Math.min(threads, stages);
+        workers = new Worker[used];
+        for (int w = 0; w < used; w++) {
+            int count = (stages - w + used - 1) / used;
+            int[] assigned = new int[count];
+            for (int k = 0; k < count; k++) {
+                assigned[k] = w + k * used;
+            }
+            workers[w] = new Worker(assigned);
+        }
+        if (used > 1) {
+            executor = ParallelLoop.create_executor("pdirk", used - 1);
+        }
+    }
+
+    @Override
+    public void end_stepping() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    @Override
+    public void step(PropertyHolder step) {
+        double t0 = step.getFloat64Property("initialTime").doubleValue();
+        double t1 = step.getFloat64Property("finalTime").doubleValue();
+        double dt = t1 - t0;
+        Float64Vector initial_values = step.get_Float64Vector_property("initialValues");
+
+        // a repeated step keeps the starting derivative and the Jacobian
+        boolean repeated = have_last && t0 == t0_last;
+        if (have_last && t0 == t1_last) {
+            double[][] swap = z_previous;
+            z_previous = z_last;
+            z_last = swap;
+            h_previous = h_last;
+            have_previous = true;
+        }
+        if (!repeated) {
+            for (int i = 0; i < n; i++) {
+                y0[i] = initial_values.getValue(i);
+            }
+            ode.f(t0, y0, f0);
+            matrix.evaluate(t0, y0);
+            factored_dt = Double.NaN;
+        }
+        t0_last = t0;
+        have_last = true;
+        step_t0 = t0;
+        step_dt = dt;
+
+        if (repeated && attempted) {
+            // interpolate the stages of the rejected attempt
+            starting_values(z_last, dt / h_last, 0.0);
+            run_iteration(0);
+        } else if (have_previous) {
+            starting_values(z_previous, dt / h_previous, 1.0);
+            run_iteration(0);
+        } else {
+            for (int j = 0; j < stages; j++) {
+                System.arraycopy(y0, 0, y[j], 0, n);
+                System.arraycopy(f0, 0, f[j], 0, n);
+            }
+        }
+        singular = false;
+        for (int k = 1; k <= iterations && !singular; k++) {
+            run_iteration(k);
+            double[][] swap = f;
+            f = f_next;
+            f_next = swap;
+        }
+        factored_dt = singular ? Double.NaN : dt;
+
+        if (singular) {
+            // signal the error controller to reject the step
+            Arrays.fill(y1, Double.NaN);
+            Arrays.fill(y1_emb, Double.NaN);
+        } else {
+            System.arraycopy(y[stages - 1], 0, y1, 0, n);
+            for (int j = 0; j < stages; j++) {
+                for (int i = 0; i < n; i++) {
+                    z[j][i] = y[j][i] - y0[i];
+                }
+            }
+            // the error estimate, solved with the decomposition of the last stage
+            double gamma0 = d[stages - 1];
+            for (int i = 0; i < n; i++) {
+                double sum = 0.0;
+                for (int j = 0; j < stages; j++) {
+                    sum += e[j] * z[j][i];
+                }
+                delta[i] = sum;
+                error[i] = gamma0 * dt * f0[i] + sum;
+            }
+            int used = workers.length;
+            NewtonIterationMatrix.Decomposition last = workers[(stages - 1) % used].lu[(stages - 1) / used];
+            last.solve(error);
+            if (!have_previous || repeated) {
+                // f(y_0) holds the stiff transients of the errors of earlier
+                // steps, which the estimate does not damp, so evaluate it
+                // again at y_0 + err as RADAU5 does after a rejected step
+                for (int i = 0; i < n; i++) {
+                    shifted[i] = y0[i] + error[i];
+                }
+                ode.f(t0, shifted, error);
+                for (int i = 0; i < n; i++) {
+                    error[i] = gamma0 * dt * error[i] + delta[i];
+                }
+                last.solve(error);
+            }
+            for (int i = 0; i < n; i++) {
+                y1_emb[i] = y1[i] - error[i];
+            }
+            for (int j = 0; j < stages; j++) {
+                System.arraycopy(z[j], 0, z_last[j], 0, n);
+            }
+            h_last = dt;
+        }
+        attempted = !singular;
+        t1_last = t1;
+        step.set_property("finalValues", Float64Vector.valueOf(y1));
+        step.set_property("finalValuesEmb", Float64Vector.valueOf(y1_emb));
+        step.set_property("stageValues", z);
+    }
+
+    /**
+     * Find the starting values of the stages from the collocation polynomial
+     * of an earlier step, which starts at the fraction offset of that step
+     * and whose stepsize is this one divided by ratio.
+     */
+    private void starting_values(double[][] source, double ratio, double offset) {
+        for (int j = 0; j < stages; j++) {
+            CollocationInterpolant.weights(c, offset + c[j] * ratio, weights);
+            double[] yj = y[j];
+            for (int i = 0; i < n; i++) {
+                double sum = y0[i];
+                if (offset != 0.0) {
+                    // the polynomial is relative to the beginning of its step
+                    sum -= source[stages - 1][i];
+                }
+                for (int k = 0; k < stages; k++) {
+                    sum += weights[k] * source[k][i];
+                }
+                yj[i] = sum;
+            }
+        }
+    }
+
+    /**
+     * Compute iteration k of all stages, in parallel if there is more than
+     * one thread. Iteration 0 only evaluates the derivatives of the starting
+     * values.
+     */
+    private void run_iteration(int k) {
+        for (int w = 0; w < workers.length; w++) {
+            workers[w].iteration = k;
+        }
+        if (executor == null) {
+            workers[0].call();
+            return;
+        }
+        Future<?>[] futures = new Future<?>[workers.length];
+        for (int w = 1; w < workers.length; w++) {
+            futures[w] = executor.submit(workers[w]);
+        }
+        workers[0].call();
+        try {
+            for (int w = 1; w < workers.length; w++) {
+                futures[w].get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while computing the PDIRK stages", e);
+        } catch (ExecutionException e) {
+            throw ParallelLoop.unchecked(e);
+        }
+    }
+
+    /**
+     * The stages assigned to one thread, with a decomposition for each of
+     * them.
+     */
+    private class Worker implements Callable<Object> {
+        final int[] assigned;
+        final NewtonIterationMatrix.Decomposition[] lu;
+        final double[] residual = new double[n];
+        int iteration;
+
+        Worker(int[] assigned) {
+            this.assigned = assigned;
+            lu = new NewtonIterationMatrix.Decomposition[assigned.length];
+            for (int k = 0; k < assigned.length; k++) {
+                lu[k] = matrix.create_decomposition();
+            }
+        }
+
+        public Object call() {
+            for (int k = 0; k < assigned.length; k++) {
+                int j = assigned[k];
+                if (iteration == 0) {
+                    ode.f(step_t0 + c[j] * step_dt, y[j], f[j]);
+                    continue;
+                }
+                if (iteration == 1 && step_dt != factored_dt && !lu[k].factor(d[j] * step_dt)) {
+                    singular = true;
+                    return null;
+                }
+                compute_stage(j, lu[k]);
+            }
+            return null;
+        }
+
+        /**
+         * Update stage j with its decomposed matrix and evaluate the
+         * derivative unless this is the last iteration.
+         */
+        void compute_stage(int j, NewtonIterationMatrix.Decomposition decomposition) {
+            double[] aj = a[j];
+            double[] yj = y[j];
+            for (int i = 0; i < n; i++) {
+                double sum = 0.0;
+                for (int l = 0; l < stages; l++) {
+                    sum += aj[l] * f[l][i];
+                }
+                residual[i] = y0[i] + step_dt * sum - yj[i];
+            }
+            decomposition.solve(residual);
+            for (int i = 0; i < n; i++) {
+                yj[i] += residual[i];
+            }
+            if (iteration < iterations) {
+                ode.f(step_t0 + c[j] * step_dt, yj, f_next[j]);
+            }
+        }
+    }
+}
@@ -0,0 +1,348 @@
+/* ./modules/scheme/RKCModule.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.modules.scheme;
+
+import org.jscience.mathematics.vectors.Float64Vector;
+import ca.usask.simlab.odeToJava.ode.RHS;
+import ca.usask.simlab.odeToJava.property.PropertyHolder;
+import ca.usask.simlab.odeToJava.scheme.RKCScheme;
+import ca.usask.simlab.odeToJava.solver.PropertySolver;
+import ca.usask.simlab.odeToJava.solver.SolverModule;
+
+/**
+ * A module that calls the second-order Runge-Kutta-Chebyshev method with the
+ * number of stages chosen for stability each step.
+ * <p>
+ * The spectral radius of the Jacobian is estimated with a nonlinear power
+ * iteration that uses only evaluations of the RHS, starting from the
+ * eigenvector found last time. It is re-estimated every few accepted steps
+ * and after a rejected step. The stages are computed with the three-term
+ * recurrence of the Chebyshev polynomials, so only a fixed number of vectors
+ * is stored however many stages are used.
+ * <p>
+ * Ben P. Sommeijer, Lawrence F. Shampine, and Jan G. Verwer. "RKC: An explicit solver for parabolic PDEs", Journal of Computational and Applied Mathematics, vol 88, pg 315-326, 1997.
+ */
+public class RKCModule extends SolverModule {
+    /**
+     * The default number of accepted steps after which the spectral radius is re-estimated.
+     */
+    public static final int DEFAULT_RADIUS_INTERVAL = 25;
+
+    // limits of the power iteration
+    private static final int MAX_POWER_ITERATIONS = 50;
+    private static final double POWER_TOLERANCE = 0.01;
+    // the estimate is increased by this factor to be safe
+    private static final double RADIUS_SAFETY = 1.2;
+    private static final double UROUND = 1e-16;
+
+    // the ODE
+    private RHS ode;
+    private int n;
+    // coefficients and properties of the method
+    private final RKCScheme scheme;
+    private int radius_interval;
+    // the spectral radius, its eigenvector, and when it was estimated
+    private double radius;
+    private double[] eigenvector;
+    private int steps_since_radius;
+    private boolean radius_current;
+    // the stages of the recurrence, the derivatives at both ends are kept for
+    // the error estimate, the interpolant, and the next step
+    private double[] y0, yj, yjm1, yjm2, fjm1, v;
+    private double[][] derivatives;
+    private double t0_last, t1_last;
+    private boolean have_last;
+    private int stages, evaluations;
+
+    /**
+     * The default constructor for this module.
+     *
+     * @param scheme The Runge-Kutta-Chebyshev family.
+     */
+    public RKCModule(RKCScheme scheme) {
+        // the required properties for the initial conditions
+        require_property("initialTime");
+        require_property("initialValues");
+        require_property("finalTime");
+        // the supplied properties from the integration
+        supply_property("finalValues");
+        supply_property("finalValuesEmb");
+        supply_property("stageValues");
+        // the supplied properties related to the method
+        supply_property("scheme");
+        supply_property("schemeOrder");
+        supply_property("embOrder");
+
+        this.scheme = scheme;
+        radius_interval = DEFAULT_RADIUS_INTERVAL;
+    }
+
+    /**
+     * Set the number of accepted steps after which the spectral radius is re-estimated.
+     *
+     * @param steps The number of steps.
+     */
+    public void set_radius_interval(int steps) {
+        if (steps < 1) {
+            throw new IllegalArgumentException("The interval must be positive");
+        }
+        radius_interval = steps;
+    }
+
+    /**
+     * Get the current estimate of the spectral radius of the Jacobian.
+     *
+     * @return The estimate, including a safety factor.
+     */
+    public double get_spectral_radius() {
+        return radius;
+    }
+
+    /**
+     * Get the number of stages used in the last step.
+     *
+     * @return The number of stages.
+     */
+    public int get_number_stages() {
+        return stages;
+    }
+
+    /**
+     * Get the number of RHS evaluations used to estimate the spectral radius.
+     *
+     * @return The number of evaluations.
+     */
+    public int get_radius_evaluations() {
+        return evaluations;
+    }
+
+    @Override
+    public void begin_stepping(PropertySolver solver, PropertyHolder properties) {
+        // set the properties related to the method
+        properties.set_property("scheme", scheme);
+        properties.set_property("schemeOrder", scheme.get_scheme_order());
+        properties.set_property("embOrder", scheme.get_emb_order());
+
+        ode = solver.get_ODE();
+        n = ode.get_size();
+        y0 = new double[n];
+        yj = new double[n];
+        yjm1 = new double[n];
+        yjm2 = new double[n];
+        fjm1 = new double[n];
+        v = new double[n];
+        eigenvector = null;
+        derivatives = new double[2][n];
+        have_last = false;
+        radius_current = false;
+        evaluations = 0;
+    }
+
+    @Override
+    public void step(PropertyHolder step) {
+        double t0 = step.getFloat64Property("initialTime").doubleValue();
+        Float64Vector initial_values = step.get_Float64Vector_property("initialValues");
+        double t1 = step.getFloat64Property("finalTime").doubleValue();
+        double h = t1 - t0;
+
+        boolean accepted = have_last && t0 == t1_last;
+        boolean repeated = have_last && t0 == t0_last;
+        if (accepted) {
+            // the final derivative of the last step is the first one here
+            double[] temp = derivatives[0];
+            derivatives[0] = derivatives[1];
+            derivatives[1] = temp;
+            steps_since_radius++;
+            radius_current = false;
+        }
+        if (!repeated) {
+            for (int i = 0; i < n; i++) {
+                y0[i] = initial_values.getValue(i);
+            }
+            if (!accepted) {
+                ode.f(t0, y0, derivatives[0]);
+            }
+        }
+        double[] f0 = derivatives[0];
+        double[] f1 = derivatives[1];
+
+        if (eigenvector == null || steps_since_radius >= radius_interval || (repeated && !radius_current)) {
+            estimate_radius(t0, f0);
+        }
+        stages = scheme.get_number_stages(h * radius);
+        integrate(t0, h, f0);
+
+        // the final derivative and the error estimate
+        double[] y1 = new double[n];
+        double[] y1_emb = new double[n];
+        System.arraycopy(yjm1, 0, y1, 0, n);
+        ode.f(t1, y1, f1);
+        for (int i = 0; i < n; i++) {
+            double error = (12.0 * (y0[i] - y1[i]) + 6.0 * h * (f0[i] + f1[i])) / 15.0;
+            y1_emb[i] = y1[i] - error;
+        }
+        t0_last = t0;
+        t1_last = t1;
+        have_last = true;
+
+        step.set_property("finalValues", Float64Vector.valueOf(y1));
+        step.set_property("finalValuesEmb", Float64Vector.valueOf(y1_emb));
+        step.set_property("stageValues", derivatives);
+    }
+
+    /**
+     * Take a step with the current number of stages, leaving the result in yjm1.
+     */
+    private void integrate(double t0, double h, double[] f0) {
+        int s = stages;
+        double w0 = 1.0 + scheme.get_damping() / (s * s);
+        double temp1 = w0 * w0 - 1.0;
+        double temp2 = Math.sqrt(temp1);
+        double arg = s * Math.log(w0 + temp2);
+        double w1 = Math.sinh(arg) * temp1 / (Math.cosh(arg) * s * temp2 - w0 * Math.sinh(arg));
+        double bjm1 = 1.0 / (4.0 * w0 * w0);
+        double bjm2 = bjm1;
+
+        // the first stage
+        double mus = w1 * bjm1;
+        for (int i = 0; i < n; i++) {
+            yjm2[i] = y0[i];
+            yjm1[i] = y0[i] + h * mus * f0[i];
+        }
+        double thjm2 = 0.0;
+        double thjm1 = mus;
+        double zjm1 = w0;
+        double zjm2 = 1.0;
+        double dzjm1 = 1.0;
+        double dzjm2 = 0.0;
+        double d2zjm1 = 0.0;
+        double d2zjm2 = 0.0;
+
+        // the remaining stages from the recurrence of the Chebyshev polynomials
+        for (int j = 2; j <= s; j++) {
+            double zj = 2.0 * w0 * zjm1 - zjm2;
+            double dzj = 2.0 * w0 * dzjm1 - dzjm2 + 2.0 * zjm1;
+            double d2zj = 2.0 * w0 * d2zjm1 - d2zjm2 + 4.0 * dzjm1;
+            double bj = d2zj / (dzj * dzj);
+            double ajm1 = 1.0 - zjm1 * bjm1;
+            double mu = 2.0 * w0 * bj / bjm1;
+            double nu = -bj / bjm2;
+            mus = mu * w1 / w0;
+            ode.f(t0 + h * thjm1, yjm1, fjm1);
+            double hmus = h * mus;
+            double hgamma = -h * mus * ajm1;
+            double weight0 = 1.0 - mu - nu;
+            for (int i = 0; i < n; i++) {
+                yj[i] = weight0 * y0[i] + mu * yjm1[i] + nu * yjm2[i] + hmus * fjm1[i] + hgamma * f0[i];
+            }
+            double thj = mu * thjm1 + nu * thjm2 + mus * (1.0 - ajm1);
+            // shift the data for the next stage
+            double[] temp = yjm2;
+            yjm2 = yjm1;
+            yjm1 = yj;
+            yj = temp;
+            thjm2 = thjm1;
+            thjm1 = thj;
+            bjm2 = bjm1;
+            bjm1 = bj;
+            zjm2 = zjm1;
+            zjm1 = zj;
+            dzjm2 = dzjm1;
+            dzjm1 = dzj;
+            d2zjm2 = d2zjm1;
+            d2zjm1 = d2zj;
+        }
+    }
+
+    /**
+     * Estimate the spectral radius with a nonlinear power iteration on
+     * differences of the RHS around y0.
+     */
+    private void estimate_radius(double t0, double[] f0) {
+        if (eigenvector == null) {
+            eigenvector = new double[n];
+            System.arraycopy(f0, 0, eigenvector, 0, n);
+        }
+        double ynorm = norm(y0);
+        double vnorm = norm(eigenvector);
+        double dynorm;
+        if (ynorm != 0.0 && vnorm != 0.0) {
+            dynorm = ynorm * Math.sqrt(UROUND);
+            for (int i = 0; i < n; i++) {
+                v[i] = y0[i] + eigenvector[i] * (dynorm / vnorm);
+            }
+        } else if (ynorm != 0.0) {
+            dynorm = ynorm * Math.sqrt(UROUND);
+            for (int i = 0; i < n; i++) {
+                v[i] = y0[i] * (1.0 + Math.sqrt(UROUND));
+            }
+        } else if (vnorm != 0.0) {
+            dynorm = UROUND;
+            for (int i = 0; i < n; i++) {
+                v[i] = eigenvector[i] * (dynorm / vnorm);
+            }
+        } else {
+            dynorm = UROUND;
+            for (int i = 0; i < n; i++) {
+                v[i] = dynorm;
+            }
+        }
+
+        // fjm1 is free to use as work storage here
+        double[] fv = fjm1;
+        double sigma = 0.0;
+        for (int iteration = 1; iteration <= MAX_POWER_ITERATIONS; iteration++) {
+            ode.f(t0, v, fv);
+            evaluations++;
+            double dfnorm = 0.0;
+            for (int i = 0; i < n; i++) {
+                double d = fv[i] - f0[i];
+                dfnorm += d * d;
+            }
+            dfnorm = Math.sqrt(dfnorm);
+            double sigma_last = sigma;
+            sigma = dfnorm / dynorm;
+            radius = RADIUS_SAFETY * sigma;
+            if (iteration >= 2 && Math.abs(sigma - sigma_last) <= POWER_TOLERANCE * Math.max(sigma, UROUND)) {
+                break;
+            }
+            if (dfnorm != 0.0) {
+                for (int i = 0; i < n; i++) {
+                    v[i] = y0[i] + (fv[i] - f0[i]) * (dynorm / dfnorm);
+                }
+            } else {
+                // perturb a component to get out of the null space
+                int index = iteration % n;
+                v[index] = y0[index] - (v[index] - y0[index]);
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            eigenvector[i] = v[i] - y0[i];
+        }
+        steps_since_radius = 0;
+        radius_current = true;
+    }
+
+    private double norm(double[] x) {
+        double sum = 0.0;
+        for (int i = 0; i < n; i++) {
+            sum += x[i] * x[i];
+        }
+        return Math.sqrt(sum);
+    }
+}
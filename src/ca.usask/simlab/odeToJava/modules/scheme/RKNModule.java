@@ -0,0 +1,201 @@
+/* ./modules/scheme/RKNModule.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.modules.scheme;
+
+import org.jscience.mathematics.vectors.Float64Vector;
+import ca.usask.simlab.odeToJava.ode.RHS;
+import ca.usask.simlab.odeToJava.ode.SecondOrderRHS;
+import ca.usask.simlab.odeToJava.property.PropertyHolder;
+import ca.usask.simlab.odeToJava.scheme.RKNTableau;
+import ca.usask.simlab.odeToJava.solver.PropertySolver;
+import ca.usask.simlab.odeToJava.solver.SolverModule;
+
+/**
+ * A module that calls an explicit Runge-Kutta-Nystrom method for a
+ * second-order system q'' = f(t, q).
+ * <p>
+ * The stages only hold positions and only the accelerations are evaluated,
+ * so the linear combinations have half the length of those of a Runge-Kutta
+ * method for the first-order system. The acceleration at the end of a step is
+ * used for the dense output and is the first stage of the next step, which is
+ * free for methods with the FSAL property and otherwise costs the same as
+ * evaluating the first stage. When a rejected step is repeated with a
+ * different stepsize the first stage is kept.
+ * <p>
+ * Ernst Hairer, Syvert Norsett, and Gerhard Wanner. "Solving Order Differential Equations I, 2nd Edition", pg 283-301.
+ */
+public class RKNModule extends SolverModule {
+    private final RKNTableau tableau;
+    private SecondOrderRHS ode;
+    private int half;
+    // the positions and first derivatives at the beginning of the step
+    private double[] q0, p0;
+    // the stage positions, the accelerations of the stages, and the
+    // acceleration at the end of the step if it is not the last stage
+    private double[] stage;
+    private double[][] accelerations;
+    private double[] end_acceleration;
+    // the accelerations at the ends of the step for the interpolant
+    private double[][] ends;
+    private double t0_last, t1_last;
+    private boolean have_last;
+
+    /**
+     * The default constructor for this module.
+     *
+     * @param tableau The coefficients of the Runge-Kutta-Nystrom method.
+     */
+    public RKNModule(RKNTableau tableau) {
+        // the required properties for the initial conditions
+        require_property("initialTime");
+        require_property("initialValues");
+        require_property("finalTime");
+        // the supplied properties from the integration
+        supply_property("finalValues");
+        supply_property("finalValuesEmb");
+        supply_property("stageValues");
+        // the supplied properties related to the method
+        supply_property("scheme");
+        supply_property("schemeOrder");
+        supply_property("embOrder");
+
+        this.tableau = tableau;
+    }
+
+    @Override
+    public void begin_stepping(PropertySolver solver, PropertyHolder properties) {
+        // set the properties related to the method
+        properties.set_property("scheme", tableau);
+        properties.set_property("schemeOrder", tableau.get_scheme_order());
+        properties.set_property("embOrder", tableau.get_emb_order());
+
+        RHS rhs = solver.get_ODE();
+        if (!(rhs instanceof SecondOrderRHS)) {
+            throw new IllegalArgumentException("A Runge-Kutta-Nystrom method needs a SecondOrderRHS");
+        }
+        ode = (SecondOrderRHS) rhs;
+        half = ode.get_size() / 2;
+        q0 = new double[half];
+        p0 = new double[half];
+        stage = new double[half];
+        accelerations = new double[tableau.get_number_stages()][half];
+        end_acceleration = tableau.is_FSAL() ? null : new double[half];
+        ends = new double[2][];
+        have_last = false;
+    }
+
+    @Override
+    public void step(PropertyHolder step) {
+        double t0 = step.getFloat64Property("initialTime").doubleValue();
+        Float64Vector initial_values = step.get_Float64Vector_property("initialValues");
+        double t1 = step.getFloat64Property("finalTime").doubleValue();
+        double h = t1 - t0;
+        int s = accelerations.length;
+
+        boolean accepted = have_last && t0 == t1_last;
+        boolean repeated = have_last && t0 == t0_last;
+        if (accepted) {
+            // the final acceleration of the last step is the first one here
+            double[] temp = accelerations[0];
+            if (end_acceleration == null) {
+                accelerations[0] = accelerations[s - 1];
+                accelerations[s - 1] = temp;
+            } else {
+                accelerations[0] = end_acceleration;
+                end_acceleration = temp;
+            }
+        }
+        if (!repeated) {
+            for (int i = 0; i < half; i++) {
+                q0[i] = initial_values.getValue(i);
+                p0[i] = initial_values.getValue(i + half);
+            }
+            if (!accepted) {
+                ode.acceleration(t0, q0, accelerations[0]);
+            }
+        }
+
+        // the stages
+        double[][] a = tableau.get_A();
+        double[] c = tableau.get_c();
+        double h2 = h * h;
+        for (int i = 1; i < s; i++) {
+            for (int k = 0; k < half; k++) {
+                stage[k] = 0.0;
+            }
+            double[] a_i = a[i];
+            for (int j = 0; j < i; j++) {
+                if (a_i[j] != 0.0) {
+                    double[] f_j = accelerations[j];
+                    for (int k = 0; k < half; k++) {
+                        stage[k] += a_i[j] * f_j[k];
+                    }
+                }
+            }
+            double ch = c[i] * h;
+            for (int k = 0; k < half; k++) {
+                stage[k] = q0[k] + ch * p0[k] + h2 * stage[k];
+            }
+            ode.acceleration(t0 + ch, stage, accelerations[i]);
+        }
+
+        double[] y1 = new double[2 * half];
+        combine(tableau.get_b_bar(), tableau.get_b(), h, y1);
+        double[] f1;
+        if (end_acceleration == null) {
+            f1 = accelerations[s - 1];
+        } else {
+            f1 = end_acceleration;
+            System.arraycopy(y1, 0, stage, 0, half);
+            ode.acceleration(t1, stage, f1);
+        }
+        if (tableau.has_emb()) {
+            double[] y1_emb = new double[2 * half];
+            combine(tableau.get_b_bar_emb(), tableau.get_b_emb(), h, y1_emb);
+            step.set_property("finalValuesEmb", Float64Vector.valueOf(y1_emb));
+        }
+        t0_last = t0;
+        t1_last = t1;
+        have_last = true;
+
+        ends[0] = accelerations[0];
+        ends[1] = f1;
+        step.set_property("finalValues", Float64Vector.valueOf(y1));
+        step.set_property("stageValues", ends);
+    }
+
+    // the solution q_0 + h*p_0 + h^2*sum(bbar_i*f_i), p_0 + h*sum(b_i*f_i),
+    // where the positions are the first half of the result
+    private void combine(double[] b_bar, double[] b, double h, double[] result) {
+        for (int i = 0; i < accelerations.length; i++) {
+            double[] f_i = accelerations[i];
+            double weight_q = h * b_bar[i];
+            double weight_p = b[i];
+            if (weight_q != 0.0 || weight_p != 0.0) {
+                for (int k = 0; k < half; k++) {
+                    result[k] += weight_q * f_i[k];
+                    result[k + half] += weight_p * f_i[k];
+                }
+            }
+        }
+        for (int k = 0; k < half; k++) {
+            result[k] = q0[k] + h * (p0[k] + result[k]);
+            result[k + half] = p0[k] + h * result[k + half];
+        }
+    }
+}
@@ -0,0 +1,551 @@
+/* ./modules/scheme/RadauIIAModule.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.modules.scheme;
+
+import java.util.Arrays;
+
+import org.jscience.mathematics.vectors.Float64Vector;
+import ca.usask.simlab.odeToJava.interpolant.CollocationInterpolant;
+import ca.usask.simlab.odeToJava.modules.errorControl.BaseErrControllerModule;
+import ca.usask.simlab.odeToJava.ode.NewtonIterationMatrix;
+import ca.usask.simlab.odeToJava.ode.RHS;
+import ca.usask.simlab.odeToJava.property.PropertyHolder;
+import ca.usask.simlab.odeToJava.scheme.RadauIIATableau;
+import ca.usask.simlab.odeToJava.solver.PropertySolver;
+import ca.usask.simlab.odeToJava.solver.SolverModule;
+import ca.usask.simlab.odeToJava.util.ComplexLUDecomposition;
+import ca.usask.simlab.odeToJava.util.Matrix;
+
+/**
+ * A module that calls the fully implicit three-stage Radau IIA method in the
+ * manner of RADAU5.
+ * <p>
+ * The stage equations are solved with a simplified Newton iteration in the
+ * variables W = inverse(T)*Z, which decouples the 3n x 3n linear systems into
+ * one real and one complex system of size n. The Jacobian is kept while the
+ * iteration converges quickly and the decompositions are kept while the
+ * stepsize does not change much. The starting values are extrapolated from
+ * the collocation polynomial of the last accepted step.
+ * <p>
+ * The error estimate (gamma/h*I - J)^(-1)*(f(y_0) + sum e_i*z_i/h) is returned
+ * as finalValues - finalValuesEmb so the usual embedded error controller can
+ * be used with the embedded order 3. When the Newton iteration does not
+ * converge the final values are set to NaN, which the error controllers
+ * treat as a rejected step.
+ * <p>
+ * Ernst Hairer and Gerhard Wanner. "Solving Ordinary Differential Equations II, 2nd Edition", pg 118-127.
+ */
+public class RadauIIAModule extends SolverModule {
+    /**
+     * The default maximum number of Newton iterations in a step.
+     */
+    public static final int DEFAULT_MAX_ITERATIONS = 7;
+
+    /**
+     * The default rate of convergence below which the Jacobian is kept for
+     * the next step.
+     */
+    public static final double DEFAULT_JACOBIAN_RATE = 0.001;
+
+    /**
+     * The default relative change in the stepsize that causes new decompositions.
+     */
+    public static final double DEFAULT_STEPSIZE_THRESHOLD = 0.2;
+
+    // a diverging iteration
+    private static final double MAX_RATE = 0.99;
+    private static final double UROUND = 1e-16;
+
+    // related to the ODE
+    private RHS ode;
+    private int n;
+    private Float64Vector atol, rtol;
+    private double[] atol_values, rtol_values;
+    private double newton_tolerance;
+    // coefficients and properties of the method
+    private final RadauIIATableau tableau;
+    private final double[] c, e;
+    private final double[][] t, t_inverse;
+    private final double gamma, alpha, beta;
+    // the linear algebra
+    private NewtonIterationMatrix matrix;
+    private ComplexLUDecomposition complex_lu;
+    // the complex decompositions of the blocks if the Jacobian is block diagonal
+    private ComplexLUDecomposition[] complex_blocks;
+    private double[] block_re, block_im;
+    private int decompositions;
+    private int max_iterations;
+    private int max_jacobian_age;
+    private double jacobian_rate;
+    private double stepsize_threshold;
+    private double faccon;
+    // the stage increments and their transformations
+    private double[][] z, w, f, z_last, z_previous;
+    private double[] y0, f0, y, scale, error, delta_re, delta_im, weights;
+    // the history used to extrapolate the starting values
+    private double t0_last, t1_last, h_last, h_previous;
+    private boolean have_last, have_previous;
+
+    /**
+     * Constructor for this SolverModule using the default tolerances for the
+     * Newton iteration.
+     *
+     * @param tableau The Radau IIA method.
+     */
+    public RadauIIAModule(RadauIIATableau tableau) {
+        this(tableau, null, null);
+    }
+
+    /**
+     * Constructor for this SolverModule, the tolerances should be the same as
+     * those of the error controller.
+     *
+     * @param tableau The Radau IIA method.
+     * @param atol    A vector of absolute tolerances.
+     * @param rtol    A vector of relative tolerances.
+     */
+    public RadauIIAModule(RadauIIATableau tableau, Float64Vector atol, Float64Vector rtol) {
+        // the required properties for the initial conditions
+        require_property("initialTime");
+        require_property("initialValues");
+        require_property("finalTime");
+        // the supplied properties from the integration
+        supply_property("finalValues");
+        supply_property("finalValuesEmb");
+        supply_property("stageValues");
+        // the supplied properties related to the method
+        supply_property("scheme");
+        supply_property("schemeOrder");
+        supply_property("embOrder");
+
+        this.tableau = tableau;
+        this.atol = atol;
+        this.rtol = rtol;
+        c = tableau.get_c_values();
+        e = tableau.get_error_weights();
+        t = tableau.get_T();
+        t_inverse = tableau.get_T_inverse();
+        gamma = tableau.get_gamma();
+        alpha = tableau.get_alpha();
+        beta = tableau.get_beta();
+        max_iterations = DEFAULT_MAX_ITERATIONS;
+        max_jacobian_age = NewtonIterationMatrix.DEFAULT_MAX_JACOBIAN_AGE;
+        jacobian_rate = DEFAULT_JACOBIAN_RATE;
+        stepsize_threshold = DEFAULT_STEPSIZE_THRESHOLD;
+    }
+
+    /**
+     * Set the maximum number of Newton iterations in a step.
+     *
+     * @param iterations The maximum number of iterations.
+     */
+    public void set_max_iterations(int iterations) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("The number of iterations must be positive");
+        }
+        max_iterations = iterations;
+    }
+
+    /**
+     * Set the number of steps a Jacobian may be used before it is re-evaluated.
+     *
+     * @param steps The maximum age of the Jacobian in steps.
+     */
+    public void set_max_jacobian_age(int steps) {
+        if (steps < 1) {
+            throw new IllegalArgumentException("Maximum Jacobian age must be positive");
+        }
+        max_jacobian_age = steps;
+    }
+
+    /**
+     * Set the rate of convergence of the Newton iteration below which the
+     * Jacobian is kept for the next step. Larger values evaluate fewer Jacobians.
+     *
+     * @param rate The rate of convergence.
+     */
+    public void set_jacobian_rate(double rate) {
+        if (rate < 0.0) {
+            throw new IllegalArgumentException("The rate must not be negative");
+        }
+        jacobian_rate = rate;
+    }
+
+    /**
+     * Set the relative change in the stepsize that causes the iteration
+     * matrices to be decomposed again.
+     *
+     * @param threshold The relative change in the stepsize.
+     */
+    public void set_stepsize_threshold(double threshold) {
+        if (threshold < 0.0) {
+            throw new IllegalArgumentException("The threshold must not be negative");
+        }
+        stepsize_threshold = threshold;
+    }
+
+    /**
+     * Get the Jacobian and real iteration matrix of the current integration,
+     * for example to read the number of evaluations and decompositions.
+     *
+     * @return The iteration matrix, or null before the module has started.
+     */
+    public NewtonIterationMatrix get_iteration_matrix() {
+        return matrix;
+    }
+
+    @Override
+    public void begin_stepping(PropertySolver solver, PropertyHolder properties) {
+        // set the properties related to the method
+        properties.set_property("scheme", tableau);
+        properties.set_property("schemeOrder", tableau.get_scheme_order());
+        properties.set_property("embOrder", tableau.get_emb_order());
+
+        ode = solver.get_ODE();
+        n = ode.get_size();
+        if (atol == null) {
+            atol = Matrix.fill(BaseErrControllerModule.DEFAULT_ATOL, n);
+        }
+        if (rtol == null) {
+            rtol = Matrix.fill(BaseErrControllerModule.DEFAULT_RTOL, n);
+        }
+        atol_values = Matrix.toDouble(atol);
+        rtol_values = Matrix.toDouble(rtol);
+        double rtol_min = Double.MAX_VALUE;
+        for (int i = 0; i < rtol_values.length; i++) {
+            rtol_min = Math.min(rtol_min, rtol_values[i]);
+        }
+        newton_tolerance = Math.max(10.0 * UROUND / rtol_min, Math.min(0.03, Math.sqrt(rtol_min)));
+
+        matrix = new NewtonIterationMatrix(ode);
+        matrix.set_max_jacobian_age(max_jacobian_age);
+        matrix.set_gamma_threshold(stepsize_threshold);
+        int[][] blocks = matrix.get_blocks();
+        if (blocks != null) {
+            complex_lu = null;
+            complex_blocks = new ComplexLUDecomposition[blocks.length];
+            int largest = 0;
+            for (int b = 0; b < blocks.length; b++) {
+                complex_blocks[b] = new ComplexLUDecomposition(blocks[b].length);
+                largest = Math.max(largest, blocks[b].length);
+            }
+            block_re = new double[largest];
+            block_im = new double[largest];
+        } else {
+            complex_lu = new ComplexLUDecomposition(n);
+            complex_blocks = null;
+        }
+        decompositions = 0;
+        faccon = 1.0;
+
+        int s = c.length;
+        z = new double[s][n];
+        w = new double[s][n];
+        f = new double[s][n];
+        z_last = new double[s][n];
+        z_previous = new double[s][n];
+        y0 = new double[n];
+        f0 = new double[n];
+        y = new double[n];
+        scale = new double[n];
+        error = new double[n];
+        delta_re = new double[n];
+        delta_im = new double[n];
+        weights = new double[s];
+        have_last = false;
+        have_previous = false;
+    }
+
+    @Override
+    public void step(PropertyHolder step) {
+        double t0 = step.getFloat64Property("initialTime").doubleValue();
+        Float64Vector initial_values = step.get_Float64Vector_property("initialValues");
+        double dt = step.getFloat64Property("finalTime").doubleValue() - t0;
+
+        // find out what happened to the last step
+        boolean repeated = have_last && t0 == t0_last;
+        if (have_last && t0 == t1_last) {
+            double[][] temp = z_previous;
+            z_previous = z_last;
+            z_last = temp;
+            h_previous = h_last;
+            have_previous = true;
+        }
+        if (!repeated) {
+            for (int i = 0; i < n; i++) {
+                y0[i] = initial_values.getValue(i);
+            }
+            ode.f(t0, y0, f0);
+        }
+        for (int i = 0; i < n; i++) {
+            scale[i] = atol_values[i] + rtol_values[i] * Math.abs(y0[i]);
+        }
+
+        boolean converged = prepare(t0, dt);
+        if (converged) {
+            starting_values(dt);
+            converged = iterate(t0, dt);
+            if (!converged && !matrix.is_jacobian_current()) {
+                // try again with a fresh Jacobian
+                matrix.refresh(t0, y0, dt / gamma);
+                if (factor_complex()) {
+                    starting_values(dt);
+                    converged = iterate(t0, dt);
+                }
+            }
+        }
+
+        double[] y1 = new double[n];
+        double[] y1_emb = new double[n];
+        if (converged) {
+            int s = c.length;
+            for (int i = 0; i < n; i++) {
+                y1[i] = y0[i] + z[s - 1][i];
+            }
+            estimate_error(t0, dt, !have_previous || repeated);
+            for (int i = 0; i < n; i++) {
+                y1_emb[i] = y1[i] - error[i];
+            }
+            for (int j = 0; j < s; j++) {
+                System.arraycopy(z[j], 0, z_last[j], 0, n);
+            }
+        } else {
+            // signal the error controller to reject the step
+            Arrays.fill(y1, Double.NaN);
+            Arrays.fill(y1_emb, Double.NaN);
+            faccon = 1.0;
+        }
+        t0_last = t0;
+        t1_last = converged ? t0 + dt : Double.NaN;
+        h_last = dt;
+        have_last = true;
+
+        step.set_property("finalValues", Float64Vector.valueOf(y1));
+        step.set_property("finalValuesEmb", Float64Vector.valueOf(y1_emb));
+        step.set_property("stageValues", z_last);
+    }
+
+    /**
+     * Make the real and complex iteration matrices usable for the stepsize.
+     */
+    private boolean prepare(double t0, double dt) {
+        if (!matrix.prepare(t0, y0, dt / gamma)) {
+            return false;
+        }
+        if (matrix.get_decompositions() != decompositions) {
+            return factor_complex();
+        }
+        return true;
+    }
+
+    /**
+     * Decompose the complex iteration matrix with the Jacobian and stepsize
+     * of the real one.
+     */
+    private boolean factor_complex() {
+        decompositions = matrix.get_decompositions();
+        // sigma = h/(alpha + i*beta)
+        double h = matrix.get_factored_gamma() * gamma;
+        double denominator = alpha * alpha + beta * beta;
+        if (complex_blocks != null) {
+            double[][][] block_jacobian = matrix.get_block_jacobian();
+            for (int b = 0; b < complex_blocks.length; b++) {
+                if (!complex_blocks[b].factor_shifted(h * alpha / denominator, -h * beta / denominator, block_jacobian[b])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return complex_lu.factor_shifted(h * alpha / denominator, -h * beta / denominator, matrix.get_jacobian());
+    }
+
+    /**
+     * Solve with the complex iteration matrix, overwriting the right hand side.
+     */
+    private void solve_complex(double[] b_re, double[] b_im) {
+        if (complex_blocks == null) {
+            complex_lu.solve(b_re, b_im);
+            return;
+        }
+        int[][] blocks = matrix.get_blocks();
+        for (int b = 0; b < blocks.length; b++) {
+            int[] block = blocks[b];
+            for (int i = 0; i < block.length; i++) {
+                block_re[i] = b_re[block[i]];
+                block_im[i] = b_im[block[i]];
+            }
+            complex_blocks[b].solve(block_re, block_im);
+            for (int i = 0; i < block.length; i++) {
+                b_re[block[i]] = block_re[i];
+                b_im[block[i]] = block_im[i];
+            }
+        }
+    }
+
+    /**
+     * Extrapolate the collocation polynomial of the last accepted step to
+     * find the starting values of the stage increments.
+     */
+    private void starting_values(double dt) {
+        int s = c.length;
+        if (!have_previous) {
+            for (int j = 0; j < s; j++) {
+                Arrays.fill(z[j], 0.0);
+                Arrays.fill(w[j], 0.0);
+            }
+            return;
+        }
+        double ratio = dt / h_previous;
+        double[] last = z_previous[s - 1];
+        for (int j = 0; j < s; j++) {
+            CollocationInterpolant.weights(c, 1.0 + c[j] * ratio, weights);
+            double[] zj = z[j];
+            for (int i = 0; i < n; i++) {
+                double sum = -last[i];
+                for (int k = 0; k < s; k++) {
+                    sum += weights[k] * z_previous[k][i];
+                }
+                zj[i] = sum;
+            }
+        }
+        transform(t_inverse, z, w);
+    }
+
+    /**
+     * Multiply the stage vectors by a 3 x 3 matrix, to = m*from.
+     */
+    private void transform(double[][] m, double[][] from, double[][] to) {
+        int s = c.length;
+        for (int j = 0; j < s; j++) {
+            double[] mj = m[j];
+            double[] target = to[j];
+            for (int i = 0; i < n; i++) {
+                double sum = 0.0;
+                for (int k = 0; k < s; k++) {
+                    sum += mj[k] * from[k][i];
+                }
+                target[i] = sum;
+            }
+        }
+    }
+
+    /**
+     * The simplified Newton iteration in the transformed variables.
+     */
+    private boolean iterate(double t0, double dt) {
+        int s = c.length;
+        double h_factored = matrix.get_factored_gamma() * gamma;
+        double denominator = alpha * alpha + beta * beta;
+        double sigma_re = h_factored * alpha / denominator;
+        double sigma_im = -h_factored * beta / denominator;
+        double previous = 0.0;
+        faccon = Math.pow(Math.max(faccon, UROUND), 0.8);
+        for (int m = 0; m < max_iterations; m++) {
+            for (int j = 0; j < s; j++) {
+                double[] zj = z[j];
+                for (int i = 0; i < n; i++) {
+                    y[i] = y0[i] + zj[i];
+                }
+                ode.f(t0 + c[j] * dt, y, f[j]);
+            }
+            double norm = 0.0;
+            for (int i = 0; i < n; i++) {
+                // the residuals inverse(T)*F - Lambda*W/h
+                double f1 = t_inverse[0][0] * f[0][i] + t_inverse[0][1] * f[1][i] + t_inverse[0][2] * f[2][i];
+                double f2 = t_inverse[1][0] * f[0][i] + t_inverse[1][1] * f[1][i] + t_inverse[1][2] * f[2][i];
+                double f3 = t_inverse[2][0] * f[0][i] + t_inverse[2][1] * f[1][i] + t_inverse[2][2] * f[2][i];
+                double r1 = f1 - gamma * w[0][i] / dt;
+                double r2 = f2 - (alpha * w[1][i] - beta * w[2][i]) / dt;
+                double r3 = f3 - (beta * w[1][i] + alpha * w[2][i]) / dt;
+                error[i] = h_factored / gamma * r1;
+                delta_re[i] = sigma_re * r2 - sigma_im * r3;
+                delta_im[i] = sigma_re * r3 + sigma_im * r2;
+            }
+            matrix.solve(error);
+            solve_complex(delta_re, delta_im);
+            for (int i = 0; i < n; i++) {
+                double d1 = error[i] / scale[i];
+                double d2 = delta_re[i] / scale[i];
+                double d3 = delta_im[i] / scale[i];
+                norm += d1 * d1 + d2 * d2 + d3 * d3;
+                w[0][i] += error[i];
+                w[1][i] += delta_re[i];
+                w[2][i] += delta_im[i];
+            }
+            norm = Math.sqrt(norm / (s * n));
+            if (Double.isNaN(norm) || Double.isInfinite(norm)) {
+                return false;
+            }
+            double rate = 0.0;
+            if (m > 0) {
+                rate = norm / previous;
+                if (rate >= MAX_RATE) {
+                    return false;
+                }
+                faccon = rate / (1.0 - rate);
+                // give up early if the iteration will not converge in time
+                if (faccon * norm * Math.pow(rate, max_iterations - 1 - m) > newton_tolerance) {
+                    return false;
+                }
+            }
+            transform(t, w, z);
+            if (faccon * norm <= newton_tolerance) {
+                // keep the Jacobian only if the iteration converged quickly
+                if (rate > jacobian_rate) {
+                    matrix.expire_jacobian();
+                }
+                return true;
+            }
+            previous = norm;
+        }
+        return false;
+    }
+
+    /**
+     * Find the error estimate, refining it with one more evaluation of the
+     * RHS on the first step and after rejections.
+     */
+    private void estimate_error(double t0, double dt, boolean refine) {
+        double h_factored = matrix.get_factored_gamma() * gamma;
+        for (int i = 0; i < n; i++) {
+            double sum = e[0] * z[0][i] + e[1] * z[1][i] + e[2] * z[2][i];
+            delta_re[i] = sum / dt;
+            error[i] = h_factored / gamma * (f0[i] + delta_re[i]);
+        }
+        matrix.solve(error);
+        if (refine && rms(error) >= 1.0) {
+            for (int i = 0; i < n; i++) {
+                y[i] = y0[i] + error[i];
+            }
+            ode.f(t0, y, error);
+            for (int i = 0; i < n; i++) {
+                error[i] = h_factored / gamma * (error[i] + delta_re[i]);
+            }
+            matrix.solve(error);
+        }
+    }
+
+    private double rms(double[] v) {
+        double sum = 0.0;
+        for (int i = 0; i < n; i++) {
+            double scaled = v[i] / scale[i];
+            sum += scaled * scaled;
+        }
+        return Math.sqrt(sum / n);
+    }
+}
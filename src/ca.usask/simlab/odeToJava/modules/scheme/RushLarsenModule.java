@@ -0,0 +1,175 @@
+/* ./modules/scheme/RushLarsenModule.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.modules.scheme;
+
+import org.jscience.mathematics.numbers.Float64;
+import org.jscience.mathematics.vectors.Float64Vector;
+import ca.usask.simlab.odeToJava.ode.GatingRHS;
+import ca.usask.simlab.odeToJava.ode.PartitionedRHS;
+import ca.usask.simlab.odeToJava.ode.RHS;
+import ca.usask.simlab.odeToJava.property.PropertyHolder;
+import ca.usask.simlab.odeToJava.scheme.RushLarsenScheme;
+import ca.usask.simlab.odeToJava.solver.PropertySolver;
+import ca.usask.simlab.odeToJava.solver.SolverModule;
+
+/**
+ * A module that calls a Rush-Larsen method, which updates the gating
+ * variables of a GatingRHS with the exponential and the other components
+ * with an explicit Runge-Kutta method.
+ * <p>
+ * When the RHS is also a PartitionedRHS only the components that are not
+ * gating variables are evaluated, since the gating variables only need
+ * their steady states and time constants. The evaluations at the start of a
+ * step are kept when a rejected step is repeated with a smaller stepsize.
+ */
+public class RushLarsenModule extends SolverModule {
+    private final RushLarsenScheme scheme;
+    private RHS ode;
+    private GatingRHS gating;
+    private PartitionedRHS partitioned;
+    private int n;
+    // the gating variables and the other components
+    private int[] gates, others;
+    // the start of the step, its derivatives and gating rates, the midpoint
+    // and its derivatives and gating rates, and the two solutions
+    private double[] y0, f0, y_inf0, tau0, y_mid, f_mid, y_inf_mid, tau_mid, y1, y1_emb;
+    // the last step, to tell repeated steps
+    private boolean have_last;
+    private double t0_last;
+
+    /**
+     * The default constructor for this module.
+     *
+     * @param scheme The Rush-Larsen method.
+     */
+    public RushLarsenModule(RushLarsenScheme scheme) {
+        // the required properties for the initial conditions
+        require_property("initialTime");
+        require_property("initialValues");
+        require_property("finalTime");
+        // the supplied properties from the integration
+        supply_property("finalValues");
+        supply_property("finalValuesEmb");
+        supply_property("stageValues");
+        // the supplied properties related to the method
+        supply_property("scheme");
+        supply_property("schemeOrder");
+        supply_property("embOrder");
+
+        this.scheme = scheme;
+    }
+
+    @Override
+    public void begin_stepping(PropertySolver solver, PropertyHolder properties) {
+        // set the properties related to the method
+        properties.set_property("scheme", scheme);
+        properties.set_property("schemeOrder", scheme.get_scheme_order());
+        properties.set_property("embOrder", scheme.get_emb_order());
+
+        ode = solver.get_ODE();
+        if (!(ode instanceof GatingRHS)) {
+            throw new IllegalArgumentException("A Rush-Larsen method needs an RHS with gating variables");
+        }
+        gating = (GatingRHS) ode;
+        partitioned = ode instanceof PartitionedRHS ? (PartitionedRHS) ode : null;
+        n = ode.get_size();
+        gates = gating.get_gating_components();
+        boolean[] is_gate = new boolean[n];
+        for (int i = 0; i < gates.length; i++) {
+            is_gate[gates[i]] = true;
+        }
+        others = new int[n - gates.length];
+        for (int i = 0, m = 0; i < n; i++) {
+            if (!is_gate[i]) {
+                others[m++] = i;
+            }
+        }
+        y0 = new double[n];
+        f0 = new double[n];
+        y_inf0 = new double[gates.length];
+        tau0 = new double[gates.length];
+        y_mid = new double[n];
+        f_mid = new double[n];
+        y_inf_mid = new double[gates.length];
+        tau_mid = new double[gates.length];
+        y1 = new double[n];
+        y1_emb = new double[n];
+        have_last = false;
+    }
+
+    @Override
+    public void step(PropertyHolder step) {
+        double t0 = step.getFloat64Property("initialTime").doubleValue();
+        Float64Vector initial = step.get_Float64Vector_property("initialValues");
+        double t1 = step.getFloat64Property("finalTime").doubleValue();
+        double h = t1 - t0;
+
+        boolean repeated = have_last && t0 == t0_last;
+        if (!repeated) {
+            for (int k = 0; k < n; k++) {
+                y0[k] = initial.getValue(k);
+            }
+            evaluate(t0, y0, f0, y_inf0, tau0);
+        }
+        have_last = true;
+        t0_last = t0;
+
+        if (scheme.get_order() == 1) {
+            advance(h, y0, f0, y_inf0, tau0, y1);
+            step.set_property("finalValues", Float64Vector.valueOf(y1));
+        } else {
+            // the method of order 1 over the whole step is the embedded solution
+            advance(h, y0, f0, y_inf0, tau0, y1_emb);
+            // and over half the step gives the midpoint
+            advance(0.5 * h, y0, f0, y_inf0, tau0, y_mid);
+            evaluate(t0 + 0.5 * h, y_mid, f_mid, y_inf_mid, tau_mid);
+            advance(h, y0, f_mid, y_inf_mid, tau_mid, y1);
+            step.set_property("finalValues", Float64Vector.valueOf(y1));
+            step.set_property("finalValuesEmb", Float64Vector.valueOf(y1_emb));
+        }
+        step.set_property("stageValues", Float64.ZERO);
+    }
+
+    /**
+     * Evaluate the derivatives of the components that are not gating
+     * variables and the rates of the gating variables.
+     */
+    private void evaluate(double t, double[] y, double[] f, double[] y_inf, double[] tau) {
+        if (partitioned != null) {
+            partitioned.f(t, y, f, others, others.length);
+        } else {
+            ode.f(t, y, f);
+        }
+        gating.gating_rates(t, y, y_inf, tau);
+    }
+
+    /**
+     * Advance from y over h with the given derivatives and rates, the gating
+     * variables with the exponential and the others with an Euler step.
+     */
+    private void advance(double h, double[] y, double[] f, double[] y_inf, double[] tau, double[] result) {
+        for (int i = 0; i < gates.length; i++) {
+            int k = gates[i];
+            result[k] = y_inf[i] + (y[k] - y_inf[i]) * Math.exp(-h / tau[i]);
+        }
+        for (int i = 0; i < others.length; i++) {
+            int k = others[i];
+            result[k] = y[k] + h * f[k];
+        }
+    }
+}
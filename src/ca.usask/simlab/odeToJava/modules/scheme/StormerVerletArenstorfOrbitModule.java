@@ -70,48 +70,53 @@ public class StormerVerletArenstorfOrbitModule extends SolverModule {
         Float64Vector y0_full = step.get_Float64Vector_property("initialValues");
         double dt = step.getFloat64Property("finalTime").minus(t0).doubleValue();
         // the problem variables
-        double[] q0 = new double[2];
-        double[] p0 = new double[2];
-        double[] qp = new double[2];
-        double[] pp = new double[2];
-        double[] q_half = new double[2];
-        double[] p_half = new double[2];
-        double[] p_half_intermediate = new double[2];
-        double[] q1_intermediate = new double[2];
-        double[] q1 = new double[2];
-        double[] p1 = new double[2];
+        double[] q = new double[2];
+        double[] p = new double[2];
         // the final values to give back to the ODE
         double[] y1_full = new double[4];
         // extract the position and first and derivative
-        q0[0] = y0_full.getValue(0);
-        q0[1] = y0_full.getValue(1);
-        p0[0] = y0_full.getValue(2);
-        p0[1] = y0_full.getValue(3);
+        q[0] = y0_full.getValue(0);
+        q[1] = y0_full.getValue(1);
+        p[0] = y0_full.getValue(2);
+        p[1] = y0_full.getValue(3);
+        advance(q, p, dt);
+        // pack the vectors
+        y1_full[0] = q[0];
+        y1_full[1] = q[1];
+        y1_full[2] = p[0];
+        y1_full[3] = p[1];
+        step.set_property("finalValues", Float64Vector.valueOf(y1_full));
+    }
+
+    /**
+     * Take one step of the method, updating the position and momentum in
+     * place without allocating any temporaries.
+     *
+     * @param q  The position, q_0 on entry and q_1 on return.
+     * @param p  The momentum, p_0 on entry and p_1 on return.
+     * @param dt The stepsize.
+     */
+    public void advance(double[] q, double[] p, double dt) {
         // half the stepsize
         double dtb2 = dt/2.0;
-        double denominator = 1.0 + (dt*dt)/4.0; 
+        double denominator = 1.0 + (dt*dt)/4.0;
         // the first formula
-        qp = fqp_partial(q0,p0);
-        p_half_intermediate[0] = p0[0] - dtb2*qp[0];
-        p_half_intermediate[1] = p0[1] - dtb2*qp[1];
-        p_half[0] = (p_half_intermediate[0] + dtb2*p_half_intermediate[1])/denominator;
-        p_half[1] = (-dtb2*p_half_intermediate[0] + p_half_intermediate[1])/denominator;
+        double d0 = Math.pow(Math.pow((q[0]+mu), 2.0) + q[1]*q[1], 1.5);
+        double d1 = Math.pow(Math.pow((q[0]-muhat), 2.0) + q[1]*q[1], 1.5);
+        double p_half_intermediate0 = p[0] - dtb2*(muhat*(q[0]+mu)/d0 + mu*(q[0]-muhat)/d1);
+        double p_half_intermediate1 = p[1] - dtb2*(muhat*q[1]/d0 + mu*q[1]/d1);
+        double p_half0 = (p_half_intermediate0 + dtb2*p_half_intermediate1)/denominator;
+        double p_half1 = (-dtb2*p_half_intermediate0 + p_half_intermediate1)/denominator;
         // the second formula
-        pp = fpp(q0,p_half);
-        q1_intermediate[0] = q0[0] + dtb2*pp[0];
-        q1_intermediate[1] = q0[1] + dtb2*pp[1];
-        q1[0] = (q1_intermediate[0] + dtb2*q1_intermediate[1])/denominator;
-        q1[1] = (-dtb2*q1_intermediate[0] + q1_intermediate[1])/denominator;
+        double q1_intermediate0 = q[0] + dtb2*(2.0*p_half0 + q[1]);
+        double q1_intermediate1 = q[1] + dtb2*(2.0*p_half1 - q[0]);
+        q[0] = (q1_intermediate0 + dtb2*q1_intermediate1)/denominator;
+        q[1] = (-dtb2*q1_intermediate0 + q1_intermediate1)/denominator;
         // the third formula
-        qp = fqp(q1,p_half);
-        p1[0] = p_half[0] - dtb2*qp[0];
-        p1[1] = p_half[1] - dtb2*qp[1];
-        // pack the vectors
-        y1_full[0] = q1[0];
-        y1_full[1] = q1[1];
-        y1_full[2] = p1[0];
-        y1_full[3] = p1[1];
-        step.set_property("finalValues", Float64Vector.valueOf(y1_full));
+        d0 = Math.pow(Math.pow((q[0]+mu), 2.0) + q[1]*q[1], 1.5);
+        d1 = Math.pow(Math.pow((q[0]-muhat), 2.0) + q[1]*q[1], 1.5);
+        p[0] = p_half0 - dtb2*(-p_half1 + muhat*(q[0]+mu)/d0 + mu*(q[0]-muhat)/d1);
+        p[1] = p_half1 - dtb2*(p_half0 + muhat*q[1]/d0 + mu*q[1]/d1);
     }
 
     // the function for the first derivative of position
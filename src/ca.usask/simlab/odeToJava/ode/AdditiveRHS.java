@@ -18,7 +18,9 @@
 package ca.usask.simlab.odeToJava.ode;
 
 import org.jscience.mathematics.numbers.Float64;
+import org.jscience.mathematics.vectors.Float64Matrix;
 import org.jscience.mathematics.vectors.Float64Vector;
+import ca.usask.simlab.odeToJava.util.LinearOperator;
 
 /**
  * Represents an ordinary differential equation with a two-additive RHS.
@@ -57,4 +59,67 @@ public abstract class AdditiveRHS extends RHS {
      *          given solution value.  
      */
     public abstract Float64Vector f2(Float64 t, Float64Vector y);
+
+    /**
+     * Evaluates the second part of the vector field on plain arrays, storing
+     * the derivatives in yp.
+     * <p>
+     * By default it wraps the arrays and calls f2.
+     *
+     * @param t  The solution time to do the evaluation.
+     * @param y  The solution to use in the RHS evaluation.
+     * @param yp The array that receives the value of f2.
+     */
+    public void f2(double t, double[] y, double[] yp) {
+        Float64Vector value = f2(Float64.valueOf(t), Float64Vector.valueOf(y));
+        for (int i = 0; i < yp.length; i++) {
+            yp[i] = value.getValue(i);
+        }
+    }
+
+    /**
+     * The Jacobian of the second part of the vector field f2, which is the
+     * linear operator used by exponential integrators.
+     *
+     * @param t The solution time to evaluate the Jacobian at.
+     * @param y The solution values to evaluate the Jacobian with.
+     *
+     * @return The Jacobian of f2 at the given time and solution values.
+     */
+    public Float64Matrix jacobian_f2(Float64 t, Float64Vector y) {
+        // calculates the Jacobian of f2 with a finite difference method by default
+        final AdditiveRHS ode = this;
+        return Jacobian.finiteDifference(new RHS() {
+            @Override
+            public int get_size() {
+                return ode.get_size();
+            }
+
+            @Override
+            public Float64Vector f(Float64 t, Float64Vector y) {
+                return ode.f2(t, y);
+            }
+        }, t, y);
+    }
+
+    /**
+     * The Jacobian of the second part of the vector field f2 as an operator
+     * that is only applied to vectors.
+     * <p>
+     * By default the products are forward differences of f2 along the
+     * vector, which are exact up to rounding when f2 is linear.
+     *
+     * @param t The solution time to evaluate the Jacobian at.
+     * @param y The solution values to evaluate the Jacobian with.
+     *
+     * @return The Jacobian of f2 as an operator, which does not depend on later changes to y.
+     */
+    public LinearOperator jacobian_f2_operator(final double t, double[] y) {
+        return new FiniteDifferenceOperator(y) {
+            @Override
+            protected void evaluate(double[] y, double[] result) {
+                f2(t, y, result);
+            }
+        };
+    }
 }
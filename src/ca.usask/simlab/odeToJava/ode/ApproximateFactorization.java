@@ -0,0 +1,52 @@
+/* ./ode/ApproximateFactorization.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.ode;
+
+/**
+ * This interface is implemented by an AdditiveRHS where the Jacobian of f2
+ * is a sum J_1 + ... + J_m of factors that are each cheap to solve with,
+ * such as the second differences along each direction of a grid, so implicit
+ * methods can replace the iteration matrix I - gamma*J by the approximate
+ * factorization (I - gamma*J_1)...(I - gamma*J_m).
+ * <p>
+ * The factorization differs from the iteration matrix by terms of order
+ * gamma^2, so it only changes how well the stage equations are solved and
+ * not the consistency of the method. For the directions of a grid each
+ * factor is a set of independent tridiagonal systems along the lines of
+ * the grid, as in the alternating direction implicit methods.
+ * <p>
+ * Willem Hundsdorfer and Jan Verwer. "Numerical Solution of Time-Dependent Advection-Diffusion-Reaction Equations", Springer, 2003.
+ */
+public interface ApproximateFactorization {
+    /**
+     * Get the number of factors of the Jacobian of f2.
+     *
+     * @return The number of factors.
+     */
+    public int get_number_factors();
+
+    /**
+     * Solve (I - gamma*J_i) x = b with one factor of the Jacobian of f2,
+     * overwriting the right hand side.
+     *
+     * @param factor The factor.
+     * @param gamma  The factor multiplying the Jacobian.
+     * @param b      The right hand side on entry and the solution on exit.
+     */
+    public void solve_factor(int factor, double gamma, double[] b);
+}
@@ -0,0 +1,50 @@
+/* ./ode/BlockDiagonalJacobian.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.ode;
+
+/**
+ * This interface is implemented by an RHS whose Jacobian is block diagonal
+ * after a permutation, such as an array of uncoupled cells, an ensemble of
+ * independent systems or a compartment model, so implicit methods can
+ * decompose the blocks separately instead of the full matrix.
+ * <p>
+ * The blocks may also leave out a weak coupling between them, in which case
+ * the Newton iterations of implicit methods converge more slowly, since they
+ * only use the blocks in their iteration matrices.
+ */
+public interface BlockDiagonalJacobian {
+    /**
+     * Get the components of each block, where every component of the RHS is
+     * in exactly one block. The blocks must not change during an integration.
+     *
+     * @return The indices of the components of each block.
+     */
+    public int[][] get_jacobian_blocks();
+
+    /**
+     * Evaluate one block of the Jacobian. This must be safe to call from
+     * several threads for different blocks.
+     *
+     * @param t      The solution time to evaluate the Jacobian at.
+     * @param y      The full solution vector.
+     * @param block  The block, an index into get_jacobian_blocks().
+     * @param result The matrix that receives the derivatives of the components
+     *               of the block with respect to each other, in the order of the block.
+     */
+    public void jacobian_block(double t, double[] y, int block, double[][] result);
+}
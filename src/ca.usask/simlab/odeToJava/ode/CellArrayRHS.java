@@ -0,0 +1,311 @@
+/* ./ode/CellArrayRHS.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.ode;
+
+import org.jscience.mathematics.numbers.Float64;
+import org.jscience.mathematics.vectors.Float64Matrix;
+import org.jscience.mathematics.vectors.Float64Vector;
+import ca.usask.simlab.odeToJava.util.LinearOperator;
+import ca.usask.simlab.odeToJava.util.Matrix;
+import ca.usask.simlab.odeToJava.util.ParallelLoop;
+
+/**
+ * A strand of cells of a cell model that are coupled through the diffusion
+ * of the membrane potential, such as a fibre of cardiac tissue, with no-flux
+ * boundaries at both ends.
+ * <p>
+ * The variables are stored as a structure of arrays: variable k of cell i is
+ * at index k*cells + i. f1 is the model of all cells, which only couples the
+ * variables of a cell with each other, and f2 is the diffusion, which only
+ * couples the potentials of neighbouring cells. The Jacobian is therefore
+ * the blocks of the cells plus a tridiagonal matrix on the potentials, and
+ * both are available on their own through cell_jacobian and
+ * jacobian_f2_operator. As a BlockDiagonalJacobian the blocks are the cells,
+ * with the diagonal of the diffusion but without the coupling of
+ * neighbouring potentials.
+ * <p>
+ * The cells can be evaluated by several threads, each taking a contiguous
+ * range of cells.
+ */
+public class CellArrayRHS extends AdditiveRHS implements BlockDiagonalJacobian {
+    // the fewest cells for each thread, below which the threads cost more than they save
+    private static final int MIN_CELLS_PER_THREAD = 256;
+
+    private CellModel model;
+    private int cells;
+    private int variables;
+    private int potential;
+    private double coupling;
+    private ParallelLoop loop = new ParallelLoop("cells");
+
+    /**
+     * The constructor for the strand.
+     *
+     * @param model    The model of every cell, which must be safe to call from
+     *                 several threads if more than one thread is used.
+     * @param cells    The number of cells.
+     * @param coupling The coupling of neighbouring potentials, the diffusion
+     *                 coefficient divided by the square of the cell spacing.
+     */
+    public CellArrayRHS(CellModel model, int cells, double coupling) {
+        if (cells < 1) {
+            throw new IllegalArgumentException("At least one cell is needed");
+        }
+        this.model = model;
+        this.cells = cells;
+        this.coupling = coupling;
+        variables = model.get_number_variables();
+        potential = model.get_potential_variable();
+    }
+
+    @Override
+    public int get_size() {
+        return variables * cells;
+    }
+
+    /**
+     * Get the model of the cells.
+     *
+     * @return The cell model.
+     */
+    public CellModel get_model() {
+        return model;
+    }
+
+    /**
+     * Get the number of cells.
+     *
+     * @return The number of cells.
+     */
+    public int get_number_cells() {
+        return cells;
+    }
+
+    /**
+     * Get the coupling of neighbouring potentials.
+     *
+     * @return The diffusion coefficient divided by the square of the cell spacing.
+     */
+    public double get_coupling() {
+        return coupling;
+    }
+
+    /**
+     * Set the number of threads that evaluate the cells. Each thread is only
+     * used when it has enough cells to be worth it.
+     *
+     * @param threads The number of threads, 1 evaluates the cells in the calling thread only.
+     */
+    public void set_threads(int threads) {
+        loop.set_threads(threads);
+    }
+
+    /**
+     * Get the number of threads that evaluate the cells.
+     *
+     * @return The number of threads.
+     */
+    public int get_threads() {
+        return loop.get_threads();
+    }
+
+    /**
+     * Get the initial values with every cell at rest.
+     *
+     * @return The resting values of the cells in the layout of the strand.
+     */
+    public double[] get_initial_values() {
+        double[] rest = model.get_resting_values();
+        double[] y = new double[get_size()];
+        for (int k = 0; k < variables; k++) {
+            for (int i = 0; i < cells; i++) {
+                y[k * cells + i] = rest[k];
+            }
+        }
+        return y;
+    }
+
+    /**
+     * Get the index of a variable of a cell.
+     *
+     * @param variable The variable of the cell model.
+     * @param cell     The cell.
+     * @return The index of the variable in the solution.
+     */
+    public int get_index(int variable, int cell) {
+        return variable * cells + cell;
+    }
+
+    @Override
+    public Float64Vector f(Float64 t, Float64Vector y) {
+        double[] yp = new double[get_size()];
+        f(t.doubleValue(), Matrix.toDouble(y), yp);
+        return Float64Vector.valueOf(yp);
+    }
+
+    @Override
+    public void f(double t, double[] y, double[] yp) {
+        f1(t, y, yp);
+        add_diffusion(y, yp);
+    }
+
+    @Override
+    public Float64Vector f1(Float64 t, Float64Vector y) {
+        double[] yp = new double[get_size()];
+        f1(t.doubleValue(), Matrix.toDouble(y), yp);
+        return Float64Vector.valueOf(yp);
+    }
+
+    /**
+     * Evaluates the models of the cells on plain arrays, storing the
+     * derivatives in yp.
+     *
+     * @param t  The solution time to do the evaluation.
+     * @param y  The solution to use in the RHS evaluation.
+     * @param yp The array that receives the value of f1.
+     */
+    public void f1(final double t, final double[] y, final double[] yp) {
+        loop.run(cells, MIN_CELLS_PER_THREAD, new ParallelLoop.Body() {
+            public void run(int from, int to) {
+                // the ranges write disjoint components of yp
+                model.f(t, y, yp, cells, from, to);
+            }
+        });
+    }
+
+    @Override
+    public Float64Vector f2(Float64 t, Float64Vector y) {
+        double[] yp = new double[get_size()];
+        f2(t.doubleValue(), Matrix.toDouble(y), yp);
+        return Float64Vector.valueOf(yp);
+    }
+
+    @Override
+    public void f2(double t, double[] y, double[] yp) {
+        for (int i = 0; i < yp.length; i++) {
+            yp[i] = 0.0;
+        }
+        add_diffusion(y, yp);
+    }
+
+    /**
+     * Add the diffusion of the potentials, with no flux through the ends of
+     * the strand.
+     */
+    private void add_diffusion(double[] y, double[] yp) {
+        int v = potential * cells;
+        if (cells == 1) {
+            return;
+        }
+        yp[v] += coupling * (y[v + 1] - y[v]);
+        for (int i = 1; i < cells - 1; i++) {
+            yp[v + i] += coupling * (y[v + i - 1] - 2.0 * y[v + i] + y[v + i + 1]);
+        }
+        yp[v + cells - 1] += coupling * (y[v + cells - 2] - y[v + cells - 1]);
+    }
+
+    @Override
+    public LinearOperator jacobian_f2_operator(double t, double[] y) {
+        // f2 is linear so its Jacobian does not depend on y
+        return new LinearOperator() {
+            public int get_size() {
+                return CellArrayRHS.this.get_size();
+            }
+
+            public void apply(double[] x, double[] result) {
+                f2(0.0, x, result);
+            }
+        };
+    }
+
+    @Override
+    public Float64Matrix jacobian_f2(Float64 t, Float64Vector y) {
+        double[][] jac = new double[get_size()][get_size()];
+        add_diffusion_jacobian(jac);
+        return Float64Matrix.valueOf(jac);
+    }
+
+    /**
+     * The dense Jacobian, assembled from the blocks of the cells and the
+     * diffusion, which is only sensible for short strands.
+     */
+    @Override
+    public Float64Matrix jacobian(Float64 t, Float64Vector y) {
+        double[] values = Matrix.toDouble(y);
+        double[][] jac = new double[get_size()][get_size()];
+        double[][] block = new double[variables][variables];
+        for (int i = 0; i < cells; i++) {
+            model.jacobian(t.doubleValue(), values, cells, i, block);
+            for (int k = 0; k < variables; k++) {
+                for (int l = 0; l < variables; l++) {
+                    jac[k * cells + i][l * cells + i] = block[k][l];
+                }
+            }
+        }
+        add_diffusion_jacobian(jac);
+        return Float64Matrix.valueOf(jac);
+    }
+
+    /**
+     * Evaluate the Jacobian of the model of one cell with respect to its own
+     * variables, which is one diagonal block of the Jacobian of f1.
+     *
+     * @param t     The solution time to evaluate the Jacobian at.
+     * @param y     The solution values to evaluate the Jacobian with.
+     * @param cell  The cell.
+     * @param block The matrix that receives the Jacobian of the cell.
+     */
+    public void cell_jacobian(double t, double[] y, int cell, double[][] block) {
+        model.jacobian(t, y, cells, cell, block);
+    }
+
+    public int[][] get_jacobian_blocks() {
+        int[][] blocks = new int[cells][variables];
+        for (int i = 0; i < cells; i++) {
+            for (int k = 0; k < variables; k++) {
+                blocks[i][k] = k * cells + i;
+            }
+        }
+        return blocks;
+    }
+
+    public void jacobian_block(double t, double[] y, int block, double[][] result) {
+        model.jacobian(t, y, cells, block, result);
+        // the diagonal of the diffusion, the coupling to the neighbours is left out
+        if (block > 0) {
+            result[potential][potential] -= coupling;
+        }
+        if (block < cells - 1) {
+            result[potential][potential] -= coupling;
+        }
+    }
+
+    private void add_diffusion_jacobian(double[][] jac) {
+        int v = potential * cells;
+        for (int i = 0; i < cells; i++) {
+            if (i > 0) {
+                jac[v + i][v + i - 1] += coupling;
+                jac[v + i][v + i] -= coupling;
+            }
+            if (i < cells - 1) {
+                jac[v + i][v + i + 1] += coupling;
+                jac[v + i][v + i] -= coupling;
+            }
+        }
+    }
+}
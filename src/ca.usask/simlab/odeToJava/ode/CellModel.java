@@ -0,0 +1,101 @@
+/* ./ode/CellModel.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.ode;
+
+import ca.usask.simlab.odeToJava.util.Etc;
+
+/**
+ * A model of a single cell, such as the ionic model of a cardiac myocyte,
+ * that is evaluated for many cells at once by CellArrayRHS.
+ * <p>
+ * The cells are stored as a structure of arrays: variable k of cell i is at
+ * index k*cells + i, so each variable of all cells is contiguous and the
+ * model is evaluated in one loop over the cells.
+ */
+public abstract class CellModel {
+    /**
+     * Get the number of variables of one cell.
+     *
+     * @return The number of variables.
+     */
+    public abstract int get_number_variables();
+
+    /**
+     * Get the variable that is the membrane potential, through which the
+     * cells are coupled.
+     *
+     * @return The index of the membrane potential among the variables.
+     */
+    public abstract int get_potential_variable();
+
+    /**
+     * Get the values of the variables of a cell at rest.
+     *
+     * @return The resting values.
+     */
+    public abstract double[] get_resting_values();
+
+    /**
+     * Evaluate the model for a range of cells. The model must be safe to
+     * call from several threads for different ranges.
+     *
+     * @param t     The solution time to do the evaluation.
+     * @param y     The variables of all cells.
+     * @param yp    The array that receives the derivatives of the cells in the range.
+     * @param cells The number of cells, the stride between the variables.
+     * @param from  The first cell of the range.
+     * @param to    The cell after the last cell of the range.
+     */
+    public abstract void f(double t, double[] y, double[] yp, int cells, int from, int to);
+
+    /**
+     * Evaluate the Jacobian of the model of one cell with respect to its own
+     * variables.
+     * <p>
+     * By default the Jacobian is found with forward differences of the model
+     * of the cell alone.
+     *
+     * @param t     The solution time to evaluate the Jacobian at.
+     * @param y     The variables of all cells.
+     * @param cells The number of cells, the stride between the variables.
+     * @param cell  The cell.
+     * @param block The matrix that receives the Jacobian of the cell.
+     */
+    public void jacobian(double t, double[] y, int cells, int cell, double[][] block) {
+        int m = get_number_variables();
+        double[] y_cell = new double[m];
+        double[] f0 = new double[m];
+        double[] f1 = new double[m];
+        double epsilon = Etc.get_epsilon().doubleValue();
+        for (int k = 0; k < m; k++) {
+            y_cell[k] = y[k * cells + cell];
+        }
+        f(t, y_cell, f0, 1, 0, 1);
+        for (int j = 0; j < m; j++) {
+            double saved = y_cell[j];
+            // the increment of the finite difference Jacobians of RADAU5
+            double delta = Math.sqrt(epsilon * Math.max(1e-5, Math.abs(saved)));
+            y_cell[j] = saved + delta;
+            f(t, y_cell, f1, 1, 0, 1);
+            y_cell[j] = saved;
+            for (int i = 0; i < m; i++) {
+                block[i][j] = (f1[i] - f0[i]) / delta;
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/* ./ode/FiniteDifferenceOperator.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.ode;
+
+import ca.usask.simlab.odeToJava.util.LinearOperator;
+
+/**
+ * The product of the Jacobian of a function with a vector by a forward
+ * difference along the vector, J*v = (g(y + delta*v) - g(y))/delta.
+ * <p>
+ * The value of the function at y is evaluated with the first product and
+ * kept, so each further product costs one evaluation. The increment is chosen as
+ * in the Jacobian-free Newton-Krylov methods.
+ * <p>
+ * Dana A. Knoll and David E. Keyes. "Jacobian-free Newton-Krylov methods: a survey of approaches and applications", Journal of Computational Physics, vol 193, pg 357-397, 2004.
+ */
+abstract class FiniteDifferenceOperator implements LinearOperator {
+    private static final double SQRT_EPSILON = Math.sqrt(2.220446049250313e-16);
+
+    private final double[] y, gy, yv, gyv;
+    private final double ynorm;
+    private boolean evaluated;
+
+    /**
+     * The default constructor for this operator.
+     *
+     * @param y The point to linearize about, which is copied.
+     */
+    FiniteDifferenceOperator(double[] y) {
+        int n = y.length;
+        this.y = y.clone();
+        gy = new double[n];
+        yv = new double[n];
+        gyv = new double[n];
+        double sum = 0.0;
+        for (int i = 0; i < n; i++) {
+            sum += y[i] * y[i];
+        }
+        ynorm = Math.sqrt(sum);
+    }
+
+    /**
+     * Evaluate the function whose Jacobian is approximated.
+     *
+     * @param y      The argument of the function.
+     * @param result The array that receives the value of the function.
+     */
+    protected abstract void evaluate(double[] y, double[] result);
+
+    public int get_size() {
+        return y.length;
+    }
+
+    public void apply(double[] v, double[] result) {
+        int n = y.length;
+        double vnorm = 0.0;
+        for (int i = 0; i < n; i++) {
+            vnorm += v[i] * v[i];
+        }
+        vnorm = Math.sqrt(vnorm);
+        if (vnorm == 0.0) {
+            for (int i = 0; i < n; i++) {
+                result[i] = 0.0;
+            }
+            return;
+        }
+        if (!evaluated) {
+            evaluate(y, gy);
+            evaluated = true;
+        }
+        double delta = SQRT_EPSILON * (1.0 + ynorm) / vnorm;
+        for (int i = 0; i < n; i++) {
+            yv[i] = y[i] + delta * v[i];
+        }
+        evaluate(yv, gyv);
+        for (int i = 0; i < n; i++) {
+            result[i] = (gyv[i] - gy[i]) / delta;
+        }
+    }
+}
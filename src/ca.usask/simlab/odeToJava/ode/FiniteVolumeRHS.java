@@ -0,0 +1,287 @@
+/* ./ode/FiniteVolumeRHS.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.ode;
+
+import org.jscience.mathematics.numbers.Float64;
+import org.jscience.mathematics.vectors.Float64Matrix;
+import org.jscience.mathematics.vectors.Float64Vector;
+import ca.usask.simlab.odeToJava.util.LinearOperator;
+import ca.usask.simlab.odeToJava.util.Matrix;
+
+/**
+ * An ODE from the finite volume discretization of a scalar conservation law
+ * with diffusion, u_t + F(u)_x = nu*u_xx, on a mesh of cells of any widths.
+ * The unknowns are the averages of u over the cells, and the values at the
+ * two ends of the interval are fixed.
+ * <p>
+ * f1 is the flux F, with the local Lax-Friedrichs flux of values
+ * reconstructed by minmod limited slopes, and f2 is the diffusion, with
+ * centered differences between the centers of the cells. The mesh can be
+ * replaced between integrations, which changes the size of the ODE, so a
+ * driver such as AdaptiveMeshController can move cells to where the solution
+ * changes quickly. The work arrays make an instance unsafe to share between
+ * threads.
+ * <p>
+ * Randall J. LeVeque. "Finite Volume Methods for Hyperbolic Problems", Cambridge University Press, 2002.
+ */
+public abstract class FiniteVolumeRHS extends AdditiveRHS {
+    private final double viscosity;
+    private double left, right;
+    private double[] edges;
+    private double[] width;
+    // the distances between the centers of neighbouring cells, with the
+    // half widths at the two ends
+    private double[] distance;
+    // work arrays for the slopes and the diffusion
+    private double[] slope, diffusion;
+
+    /**
+     * The constructor for the ODE.
+     *
+     * @param edges     The edges of the cells, increasing.
+     * @param viscosity The diffusion coefficient nu.
+     */
+    public FiniteVolumeRHS(double[] edges, double viscosity) {
+        if (viscosity < 0.0) {
+            throw new IllegalArgumentException("The viscosity must not be negative");
+        }
+        this.viscosity = viscosity;
+        set_mesh(edges);
+    }
+
+    /**
+     * The flux of the conservation law.
+     *
+     * @param u The value of the solution.
+     *
+     * @return The flux F(u).
+     */
+    public abstract double flux(double u);
+
+    /**
+     * The speed of the waves of the conservation law, which bounds |F'| near u.
+     *
+     * @param u The value of the solution.
+     *
+     * @return The wave speed |F'(u)|.
+     */
+    public abstract double wave_speed(double u);
+
+    /**
+     * Replace the mesh, which changes the number of unknowns to the number
+     * of cells.
+     *
+     * @param edges The edges of the cells, increasing.
+     */
+    public void set_mesh(double[] edges) {
+        if (edges.length < 2) {
+            throw new IllegalArgumentException("The mesh needs at least one cell");
+        }
+        int n = edges.length - 1;
+        double[] new_width = new double[n];
+        for (int i = 0; i < n; i++) {
+            new_width[i] = edges[i + 1] - edges[i];
+            if (!(new_width[i] > 0.0)) {
+                throw new IllegalArgumentException("The edges of the cells must increase");
+            }
+        }
+        this.edges = edges.clone();
+        width = new_width;
+        distance = new double[n + 1];
+        distance[0] = 0.5 * width[0];
+        for (int i = 1; i < n; i++) {
+            distance[i] = 0.5 * (width[i - 1] + width[i]);
+        }
+        distance[n] = 0.5 * width[n - 1];
+        slope = new double[n];
+        diffusion = new double[n];
+    }
+
+    /**
+     * Get the edges of the cells.
+     *
+     * @return The edges, one more than the number of cells.
+     */
+    public double[] get_edges() {
+        return edges.clone();
+    }
+
+    /**
+     * Set the values of the solution at the two ends of the interval.
+     *
+     * @param left  The value at the first edge.
+     * @param right The value at the last edge.
+     */
+    public void set_boundary_values(double left, double right) {
+        this.left = left;
+        this.right = right;
+    }
+
+    /**
+     * Get the diffusion coefficient.
+     *
+     * @return The viscosity nu.
+     */
+    public double get_viscosity() {
+        return viscosity;
+    }
+
+    @Override
+    public int get_size() {
+        return width.length;
+    }
+
+    @Override
+    public Float64Vector f(Float64 t, Float64Vector y) {
+        double[] yp = new double[get_size()];
+        f(t.doubleValue(), Matrix.toDouble(y), yp);
+        return Float64Vector.valueOf(yp);
+    }
+
+    @Override
+    public void f(double t, double[] y, double[] yp) {
+        f1(t, y, yp);
+        f2(t, y, diffusion);
+        for (int i = 0; i < yp.length; i++) {
+            yp[i] += diffusion[i];
+        }
+    }
+
+    @Override
+    public Float64Vector f1(Float64 t, Float64Vector y) {
+        double[] yp = new double[get_size()];
+        f1(t.doubleValue(), Matrix.toDouble(y), yp);
+        return Float64Vector.valueOf(yp);
+    }
+
+    /**
+     * Evaluates the flux on plain arrays, storing the derivatives in yp.
+     *
+     * @param t  The solution time to do the evaluation.
+     * @param y  The solution to use in the RHS evaluation.
+     * @param yp The array that receives the value of f1.
+     */
+    public void f1(double t, double[] y, double[] yp) {
+        int n = width.length;
+        // the limited slopes, the values at the ends are at half a cell
+        for (int i = 0; i < n; i++) {
+            double before = i == 0 ? left : y[i - 1];
+            double after = i == n - 1 ? right : y[i + 1];
+            slope[i] = minmod((y[i] - before) / distance[i], (after - y[i]) / distance[i + 1]);
+        }
+        double previous = 0.0;
+        for (int i = 0; i <= n; i++) {
+            double u_left = i == 0 ? left : y[i - 1] + 0.5 * width[i - 1] * slope[i - 1];
+            double u_right = i == n ? right : y[i] - 0.5 * width[i] * slope[i];
+            double speed = Math.max(wave_speed(u_left), wave_speed(u_right));
+            double numerical_flux = 0.5 * (flux(u_left) + flux(u_right)) - 0.5 * speed * (u_right - u_left);
+            if (i > 0) {
+                yp[i - 1] = (previous - numerical_flux) / width[i - 1];
+            }
+            previous = numerical_flux;
+        }
+    }
+
+    @Override
+    public Float64Vector f2(Float64 t, Float64Vector y) {
+        double[] yp = new double[get_size()];
+        f2(t.doubleValue(), Matrix.toDouble(y), yp);
+        return Float64Vector.valueOf(yp);
+    }
+
+    @Override
+    public void f2(double t, double[] y, double[] yp) {
+        int n = width.length;
+        double previous = viscosity * (y[0] - left) / distance[0];
+        for (int i = 0; i < n; i++) {
+            double after = i == n - 1 ? right : y[i + 1];
+            double diffusive_flux = viscosity * (after - y[i]) / distance[i + 1];
+            yp[i] = (diffusive_flux - previous) / width[i];
+            previous = diffusive_flux;
+        }
+    }
+
+    @Override
+    public Float64Matrix jacobian(Float64 t, Float64Vector y) {
+        // the diffusion is the only linear part
+        return jacobian_f2(t, y);
+    }
+
+    @Override
+    public Float64Matrix jacobian_f2(Float64 t, Float64Vector y) {
+        int n = width.length;
+        double[][] jac = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            double lower = viscosity / (distance[i] * width[i]);
+            double upper = viscosity / (distance[i + 1] * width[i]);
+            jac[i][i] = -lower - upper;
+            if (i > 0) {
+                jac[i][i - 1] = lower;
+            }
+            if (i < n - 1) {
+                jac[i][i + 1] = upper;
+            }
+        }
+        return Float64Matrix.valueOf(jac);
+    }
+
+    @Override
+    public LinearOperator jacobian_f2_operator(double t, double[] y) {
+        final int n = width.length;
+        final double[] lower = new double[n];
+        final double[] upper = new double[n];
+        for (int i = 0; i < n; i++) {
+            lower[i] = viscosity / (distance[i] * width[i]);
+            upper[i] = viscosity / (distance[i + 1] * width[i]);
+        }
+        return new LinearOperator() {
+            public int get_size() {
+                return n;
+            }
+
+            public void apply(double[] x, double[] result) {
+                for (int i = 0; i < n; i++) {
+                    double sum = -(lower[i] + upper[i]) * x[i];
+                    if (i > 0) {
+                        sum += lower[i] * x[i - 1];
+                    }
+                    if (i < n - 1) {
+                        sum += upper[i] * x[i + 1];
+                    }
+                    result[i] = sum;
+                }
+            }
+        };
+    }
+
+    /**
+     * The minmod limiter, the smaller of two slopes of the same sign and
+     * zero otherwise.
+     *
+     * @param a The first slope.
+     * @param b The second slope.
+     *
+     * @return The limited slope.
+     */
+    public static double minmod(double a, double b) {
+        if (a * b <= 0.0) {
+            return 0.0;
+        }
+        return Math.abs(a) < Math.abs(b) ? a : b;
+    }
+}
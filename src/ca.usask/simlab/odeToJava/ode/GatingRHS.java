@@ -0,0 +1,46 @@
+/* ./ode/GatingRHS.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.ode;
+
+/**
+ * This interface is implemented by an RHS where some components are gating
+ * variables of the form dy/dt = (y_inf - y)/tau, as in the ion channel
+ * models of cardiac electrophysiology, so a Rush-Larsen method can update
+ * them with the exponential.
+ * <p>
+ * The steady states y_inf and time constants tau may depend on the time and
+ * on all components, usually only on the membrane potential.
+ */
+public interface GatingRHS {
+    /**
+     * Get the components that are gating variables.
+     *
+     * @return The indices of the gating variables.
+     */
+    public int[] get_gating_components();
+
+    /**
+     * Evaluate the steady states and time constants of the gating variables.
+     *
+     * @param t     The solution time to do the evaluation.
+     * @param y     The full solution vector.
+     * @param y_inf The array that receives the steady states, in the order of get_gating_components().
+     * @param tau   The array that receives the time constants, in the order of get_gating_components().
+     */
+    public void gating_rates(double t, double[] y, double[] y_inf, double[] tau);
+}
@@ -0,0 +1,374 @@
+/* ./ode/NewtonIterationMatrix.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.ode;
+
+import org.jscience.mathematics.numbers.Float64;
+import org.jscience.mathematics.vectors.Float64Vector;
+import ca.usask.simlab.odeToJava.util.BlockLUDecomposition;
+import ca.usask.simlab.odeToJava.util.LUDecomposition;
+import ca.usask.simlab.odeToJava.util.Matrix;
+
+/**
+ * Holds a Jacobian and the decomposed iteration matrix I - gamma*J used by
+ * the simplified Newton iterations of implicit methods.
+ * <p>
+ * Evaluating the Jacobian and decomposing the iteration matrix usually
+ * dominate the cost of an implicit method on a large system, so both are
+ * kept between steps. The Jacobian is re-evaluated only after a number of
+ * steps or when the caller reports a convergence failure, and the iteration
+ * matrix is decomposed again only when gamma has changed significantly.
+ * <p>
+ * When the ODE implements BlockDiagonalJacobian only the blocks of the
+ * Jacobian are evaluated and decomposed. Methods that need several shifts of
+ * the same Jacobian at once, such as one for each stage of a parallel method
+ * or each row of an extrapolation tableau, create further decompositions
+ * with create_decomposition, which take the same path.
+ * <p>
+ * Alan C. Hindmarsh et al. "SUNDIALS: Suite of nonlinear and differential/algebraic equation solvers", ACM TOMS, vol 31, pg 363-396, 2005.
+ * <p>
+ * Ernst Hairer and Gerhard Wanner. "Solving Ordinary Differential Equations II, 2nd Edition", pg 121-123.
+ */
+public class NewtonIterationMatrix {
+    /**
+     * The default number of steps after which the Jacobian is re-evaluated.
+     */
+    public static final int DEFAULT_MAX_JACOBIAN_AGE = 20;
+
+    /**
+     * The default relative change in gamma that causes a new decomposition.
+     */
+    public static final double DEFAULT_GAMMA_THRESHOLD = 0.3;
+
+    private final RHS ode;
+    private final int n;
+    private double[][] jacobian;
+    private final LUDecomposition lu;
+    // the blocks of the Jacobian if the ODE has a block-diagonal Jacobian
+    private final BlockDiagonalJacobian block_ode;
+    private final int[][] blocks;
+    private final double[][][] block_jacobian;
+    private final BlockLUDecomposition block_lu;
+    private boolean have_jacobian;
+    private double gamma_factored;
+    private boolean factored;
+    private boolean jacobian_current;
+    private int jacobian_age;
+    private int max_jacobian_age;
+    private double gamma_threshold;
+    private int jacobian_evaluations;
+    private int decompositions;
+
+    /**
+     * Create the storage for the iteration matrix of an ODE.
+     *
+     * @param ode The ODE that is being solved.
+     */
+    public NewtonIterationMatrix(RHS ode) {
+        this.ode = ode;
+        n = ode.get_size();
+        if (ode instanceof BlockDiagonalJacobian) {
+            block_ode = (BlockDiagonalJacobian) ode;
+            blocks = block_ode.get_jacobian_blocks();
+            block_jacobian = new double[blocks.length][][];
+            for (int b = 0; b < blocks.length; b++) {
+                block_jacobian[b] = new double[blocks[b].length][blocks[b].length];
+            }
+            block_lu = new BlockLUDecomposition(blocks);
+            lu = null;
+        } else {
+            block_ode = null;
+            blocks = null;
+            block_jacobian = null;
+            block_lu = null;
+            lu = new LUDecomposition(n);
+        }
+        max_jacobian_age = DEFAULT_MAX_JACOBIAN_AGE;
+        gamma_threshold = DEFAULT_GAMMA_THRESHOLD;
+        reset();
+    }
+
+    /**
+     * Forget the Jacobian and decomposition, for example at the start of an integration.
+     */
+    public void reset() {
+        jacobian = null;
+        have_jacobian = false;
+        factored = false;
+        jacobian_current = false;
+        jacobian_age = 0;
+        jacobian_evaluations = 0;
+        decompositions = 0;
+    }
+
+    /**
+     * Set the number of steps a Jacobian may be used before it is re-evaluated.
+     *
+     * @param steps The maximum age of the Jacobian in steps.
+     */
+    public void set_max_jacobian_age(int steps) {
+        if (steps < 1) {
+            throw new IllegalArgumentException("Maximum Jacobian age must be positive");
+        }
+        max_jacobian_age = steps;
+    }
+
+    /**
+     * Set the relative change in gamma that causes the iteration matrix to be
+     * decomposed again.
+     *
+     * @param threshold The relative change in gamma.
+     */
+    public void set_gamma_threshold(double threshold) {
+        if (threshold < 0.0) {
+            throw new IllegalArgumentException("Gamma threshold must not be negative");
+        }
+        gamma_threshold = threshold;
+    }
+
+    /**
+     * Make the iteration matrix usable for a step with the given gamma.
+     * <p>
+     * This is called once at the beginning of each step. The Jacobian is
+     * evaluated at (t, y) only if there is none or it is too old.
+     *
+     * @param t     The time at which to evaluate a new Jacobian.
+     * @param y     The solution at which to evaluate a new Jacobian.
+     * @param gamma The factor multiplying the Jacobian in the iteration matrix.
+     *
+     * @return false if the iteration matrix is singular.
+     */
+    public boolean prepare(double t, double[] y, double gamma) {
+        jacobian_current = false;
+        if (!have_jacobian || jacobian_age >= max_jacobian_age) {
+            return refresh(t, y, gamma);
+        }
+        jacobian_age++;
+        if (!factored || Math.abs(gamma / gamma_factored - 1.0) > gamma_threshold) {
+            return factor(gamma);
+        }
+        return true;
+    }
+
+    /**
+     * Mark the Jacobian as out of date, so the next call to prepare evaluates
+     * a new one, for example when the last iteration converged slowly.
+     */
+    public void expire_jacobian() {
+        jacobian_age = max_jacobian_age;
+    }
+
+    /**
+     * Evaluate a new Jacobian and decompose the iteration matrix.
+     * <p>
+     * This is typically called when the Newton iteration failed with an old Jacobian.
+     *
+     * @param t     The time at which to evaluate the Jacobian.
+     * @param y     The solution at which to evaluate the Jacobian.
+     * @param gamma The factor multiplying the Jacobian in the iteration matrix.
+     *
+     * @return false if the iteration matrix is singular.
+     */
+    public boolean refresh(double t, double[] y, double gamma) {
+        evaluate(t, y);
+        return factor(gamma);
+    }
+
+    /**
+     * Evaluate a new Jacobian without decomposing the iteration matrix, for
+     * methods that only decompose with create_decomposition.
+     *
+     * @param t The time at which to evaluate the Jacobian.
+     * @param y The solution at which to evaluate the Jacobian.
+     */
+    public void evaluate(double t, double[] y) {
+        if (block_ode != null) {
+            for (int b = 0; b < blocks.length; b++) {
+                block_ode.jacobian_block(t, y, b, block_jacobian[b]);
+            }
+        } else {
+            jacobian = Matrix.toDouble(ode.jacobian(Float64.valueOf(t), Float64Vector.valueOf(y)));
+        }
+        have_jacobian = true;
+        jacobian_evaluations++;
+        jacobian_age = 0;
+        jacobian_current = true;
+    }
+
+    /**
+     * Decompose the iteration matrix with the current Jacobian and a new gamma.
+     *
+     * @param gamma The factor multiplying the Jacobian in the iteration matrix.
+     *
+     * @return false if the iteration matrix is singular.
+     */
+    public boolean factor(double gamma) {
+        decompositions++;
+        gamma_factored = gamma;
+        if (block_lu != null) {
+            factored = block_lu.factor_shifted(gamma, block_jacobian);
+        } else {
+            factored = lu.factor_shifted(gamma, jacobian);
+        }
+        return factored;
+    }
+
+    /**
+     * Solve with the decomposed iteration matrix, overwriting the right hand side.
+     *
+     * @param b The right hand side on entry and the solution on exit.
+     */
+    public void solve(double[] b) {
+        if (block_lu != null) {
+            block_lu.solve(b);
+            return;
+        }
+        lu.solve(b);
+    }
+
+    /**
+     * Create a further decomposition of I - gamma*J with the Jacobian of this
+     * matrix. Its blocks are decomposed and solved on the calling thread,
+     * since it is meant for methods that use several of them on threads of
+     * their own, and its decompositions are not counted by get_decompositions.
+     *
+     * @return The decomposition, which must be factored before it is solved with.
+     */
+    public Decomposition create_decomposition() {
+        return new Decomposition();
+    }
+
+    /**
+     * A decomposition of I - gamma*J that shares the Jacobian of the
+     * NewtonIterationMatrix that created it, so it sees every new Jacobian.
+     */
+    public class Decomposition {
+        private final LUDecomposition lu;
+        private final BlockLUDecomposition block_lu;
+
+        private Decomposition() {
+            if (blocks != null) {
+                block_lu = new BlockLUDecomposition(blocks);
+                block_lu.set_threads(1);
+                lu = null;
+            } else {
+                block_lu = null;
+                lu = new LUDecomposition(n);
+            }
+        }
+
+        /**
+         * Decompose I - gamma*J with the current Jacobian.
+         *
+         * @param gamma The factor multiplying the Jacobian.
+         *
+         * @return false if the matrix is singular.
+         */
+        public boolean factor(double gamma) {
+            if (block_lu != null) {
+                return block_lu.factor_shifted(gamma, block_jacobian);
+            }
+            return lu.factor_shifted(gamma, jacobian);
+        }
+
+        /**
+         * Solve with the decomposed matrix, overwriting the right hand side.
+         *
+         * @param b The right hand side on entry and the solution on exit.
+         */
+        public void solve(double[] b) {
+            if (block_lu != null) {
+                block_lu.solve(b);
+                return;
+            }
+            lu.solve(b);
+        }
+    }
+
+    /**
+     * Check if the Jacobian was evaluated during the current step, in which
+     * case re-evaluating it will not help a failing iteration.
+     *
+     * @return true if the Jacobian was evaluated during the current step.
+     */
+    public boolean is_jacobian_current() {
+        return jacobian_current;
+    }
+
+    /**
+     * Get the gamma with which the iteration matrix was last decomposed.
+     *
+     * @return The gamma of the decomposition.
+     */
+    public double get_factored_gamma() {
+        return gamma_factored;
+    }
+
+    /**
+     * Get the current Jacobian, which must not be modified.
+     *
+     * @return The Jacobian, or null if none has been evaluated or the Jacobian is kept as blocks.
+     */
+    public double[][] get_jacobian() {
+        return jacobian;
+    }
+
+    /**
+     * Get the components of the blocks of the Jacobian.
+     *
+     * @return The blocks, or null if the Jacobian is dense.
+     */
+    public int[][] get_blocks() {
+        return blocks;
+    }
+
+    /**
+     * Get the current blocks of the Jacobian, which must not be modified.
+     *
+     * @return The blocks of the Jacobian in the order of get_blocks(), or null if the Jacobian is dense.
+     */
+    public double[][][] get_block_jacobian() {
+        return block_jacobian;
+    }
+
+    /**
+     * Get the size of the iteration matrix.
+     *
+     * @return The number of components in the ODE.
+     */
+    public int get_size() {
+        return n;
+    }
+
+    /**
+     * Get the number of Jacobian evaluations since the last reset.
+     *
+     * @return The number of Jacobian evaluations.
+     */
+    public int get_jacobian_evaluations() {
+        return jacobian_evaluations;
+    }
+
+    /**
+     * Get the number of decompositions since the last reset.
+     *
+     * @return The number of decompositions.
+     */
+    public int get_decompositions() {
+        return decompositions;
+    }
+}
@@ -0,0 +1,48 @@
+/* ./ode/PartitionedRHS.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.ode;
+
+/**
+ * This interface is implemented by an RHS whose components can be evaluated
+ * separately, so a multirate method only pays for the components it
+ * sub-steps.
+ * <p>
+ * The RHS may also name the components that always change quickly. Otherwise
+ * the multirate method finds them from the local error estimates of each
+ * step.
+ */
+public interface PartitionedRHS {
+    /**
+     * Evaluate some components of the RHS, the other components of yp are
+     * left unchanged.
+     *
+     * @param t          The solution time to do the evaluation.
+     * @param y          The full solution vector to use in the RHS evaluation.
+     * @param yp         The array that receives the derivatives.
+     * @param components The indices of the components to evaluate.
+     * @param count      The number of indices used from components.
+     */
+    public void f(double t, double[] y, double[] yp, int[] components, int count);
+
+    /**
+     * Get the components that are always sub-stepped.
+     *
+     * @return The indices of the fast components, or null to choose them from the error estimates.
+     */
+    public int[] get_fast_components();
+}
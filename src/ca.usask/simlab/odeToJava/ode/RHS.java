@@ -20,6 +20,7 @@ package ca.usask.simlab.odeToJava.ode;
 import org.jscience.mathematics.numbers.Float64;
 import org.jscience.mathematics.vectors.Float64Vector;
 import org.jscience.mathematics.vectors.Float64Matrix;
+import ca.usask.simlab.odeToJava.util.LinearOperator;
 
 /**
  * Represents a typical ordinary differential equation with a single
@@ -28,6 +29,9 @@ import org.jscience.mathematics.vectors.Float64Matrix;
  * In order to define the RHS of an ODE, the method f is overridden.
  */
 public abstract class RHS {
+    // the unit roundoff, for the increment of the time derivative
+    private static final double UNIT_ROUNDOFF = 2.220446049250313e-16;
+
     /**
      * Get the number of components in this ODE.
      * 
@@ -46,6 +50,24 @@ public abstract class RHS {
      */
     public abstract Float64Vector f(Float64 t, Float64Vector y);
 
+    /**
+     * Evaluates the RHS on plain arrays, storing the derivatives in yp.
+     * <p>
+     * Methods that keep their working storage as arrays call this version.
+     * By default it wraps the arrays and calls f, so ODEs that care about
+     * allocation in the inner loop should override it.
+     *
+     * @param t  The solution time to evaluate the RHS at.
+     * @param y  The solution values to evaluate the RHS with.
+     * @param yp The array that receives the value of the RHS.
+     */
+    public void f(double t, double[] y, double[] yp) {
+        Float64Vector value = f(Float64.valueOf(t), Float64Vector.valueOf(y));
+        for (int i = 0; i < yp.length; i++) {
+            yp[i] = value.getValue(i);
+        }
+    }
+
     /**
      * This method defines the Jacobian matrix at the given solution time
      * and solution values.
@@ -59,4 +81,48 @@ public abstract class RHS {
         // calculates the Jacobian with a finite difference method by default
         return Jacobian.finiteDifference(this, t, y);
     } 
+
+    /**
+     * Finds the partial derivative of the RHS with respect to time, for
+     * linearly implicit and Rosenbrock-type methods on non-autonomous
+     * problems.
+     * <p>
+     * By default this is a forward difference with the increment of the
+     * RODAS code, so ODEs that do not depend on time or know the derivative
+     * should override it.
+     *
+     * @param t      The solution time to evaluate the derivative at.
+     * @param y      The solution values to evaluate the derivative with.
+     * @param f      The value of the RHS at t and y.
+     * @param result The array that receives the derivative.
+     */
+    public void time_derivative(double t, double[] y, double[] f, double[] result) {
+        double delta = Math.sqrt(UNIT_ROUNDOFF * Math.max(1e-5, Math.abs(t)));
+        f(t + delta, y, result);
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (result[i] - f[i]) / delta;
+        }
+    }
+
+    /**
+     * The Jacobian at the given solution time and solution values as an
+     * operator that is only applied to vectors, for methods that work with
+     * Krylov subspaces.
+     * <p>
+     * By default the products are forward differences of the RHS along the
+     * vector, so ODEs with sparse or structured Jacobians should override this.
+     *
+     * @param t The solution time to evaluate the Jacobian at.
+     * @param y The solution values to evaluate the Jacobian with.
+     *
+     * @return The Jacobian as an operator, which does not depend on later changes to y.
+     */
+    public LinearOperator jacobian_operator(final double t, double[] y) {
+        return new FiniteDifferenceOperator(y) {
+            @Override
+            protected void evaluate(double[] y, double[] result) {
+                f(t, y, result);
+            }
+        };
+    }
 }
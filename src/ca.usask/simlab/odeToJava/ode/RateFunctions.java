@@ -0,0 +1,49 @@
+/* ./ode/RateFunctions.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.ode;
+
+/**
+ * This interface is implemented by an RHS whose expensive parts are
+ * functions of a single variable, such as the rates of the ion channels of
+ * cardiac models that only depend on the membrane potential, so they can be
+ * tabulated in a LookupTable.
+ */
+public interface RateFunctions {
+    /**
+     * Get the number of rate functions.
+     *
+     * @return The number of functions.
+     */
+    public int get_number_rates();
+
+    /**
+     * Evaluate all the rate functions.
+     *
+     * @param x      The variable the functions depend on.
+     * @param values The array that receives the values of the functions.
+     */
+    public void rates(double x, double[] values);
+
+    /**
+     * Get the points where any of the functions is not smooth, which must
+     * be nodes of a table.
+     *
+     * @return The points where the functions jump or have a kink, which may be empty.
+     */
+    public double[] get_breakpoints();
+}
@@ -0,0 +1,65 @@
+/* ./ode/Reaction.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.ode;
+
+import ca.usask.simlab.odeToJava.util.Etc;
+
+/**
+ * The reaction term of a reaction-diffusion system, which couples the species
+ * at one point of the grid of a StencilRHS and not the points themselves.
+ */
+public abstract class Reaction {
+    /**
+     * Evaluate the reaction rates of the species at one point. This must be
+     * safe to call from several threads with different arrays.
+     *
+     * @param t      The solution time to do the evaluation.
+     * @param u      The values of the species at the point.
+     * @param result The array that receives the rates of the species.
+     */
+    public abstract void rate(double t, double[] u, double[] result);
+
+    /**
+     * Evaluate the Jacobian of the reaction rates with respect to the species.
+     * <p>
+     * By default the Jacobian is found with forward differences of the rates.
+     *
+     * @param t      The solution time to evaluate the Jacobian at.
+     * @param u      The values of the species at the point, which are not modified.
+     * @param result The matrix that receives the Jacobian.
+     */
+    public void jacobian(double t, double[] u, double[][] result) {
+        int m = u.length;
+        double[] point = u.clone();
+        double[] r0 = new double[m];
+        double[] r1 = new double[m];
+        double epsilon = Etc.get_epsilon().doubleValue();
+        rate(t, point, r0);
+        for (int j = 0; j < m; j++) {
+            double saved = point[j];
+            // the increment of the finite difference Jacobians of RADAU5
+            double delta = Math.sqrt(epsilon * Math.max(1e-5, Math.abs(saved)));
+            point[j] = saved + delta;
+            rate(t, point, r1);
+            point[j] = saved;
+            for (int i = 0; i < m; i++) {
+                result[i][j] = (r1[i] - r0[i]) / delta;
+            }
+        }
+    }
+}
@@ -0,0 +1,269 @@
+/* ./ode/ReactionNetwork.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.ode;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A network of reactions with mass action kinetics, built reaction by
+ * reaction or read from text, that compiles to an RHS for the
+ * concentrations of its species.
+ * <p>
+ * In the text format each line is a reaction with its rate constant,
+ * <pre>
+ * 0.266e2 : NO + O3 -> NO2
+ * 0.860e-3 : HCHO -> 2 HO2 + CO
+ * </pre>
+ * where a term of a side is a species with an optional integer coefficient
+ * before it, either side may be empty, and everything after a # is a
+ * comment. The species are numbered in the order they first appear.
+ */
+public class ReactionNetwork {
+    private final List<String> species = new ArrayList<String>();
+    private final Map<String, Integer> indices = new HashMap<String, Integer>();
+    private final List<Double> rate_constants = new ArrayList<Double>();
+    // the species and coefficients of the two sides of each reaction
+    private final List<int[]> reactants = new ArrayList<int[]>();
+    private final List<int[]> reactant_coefficients = new ArrayList<int[]>();
+    private final List<int[]> products = new ArrayList<int[]>();
+    private final List<int[]> product_coefficients = new ArrayList<int[]>();
+
+    /**
+     * Read a network in the text format.
+     *
+     * @param reader The source of the text.
+     *
+     * @return The network.
+     *
+     * @throws IOException If the text could not be read.
+     * @throws IllegalArgumentException If a line is not a reaction.
+     */
+    public static ReactionNetwork parse(Reader reader) throws IOException {
+        ReactionNetwork network = new ReactionNetwork();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        int number = 0;
+        while ((line = lines.readLine()) != null) {
+            number++;
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.length() == 0) {
+                continue;
+            }
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                throw new IllegalArgumentException("Line " + number + " has no rate constant");
+            }
+            double rate_constant;
+            try {
+                rate_constant = Double.parseDouble(line.substring(0, colon).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Line " + number + " has a rate constant that is not a number");
+            }
+            try {
+                network.add_reaction(line.substring(colon + 1), rate_constant);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Line " + number + ": " + e.getMessage());
+            }
+        }
+        return network;
+    }
+
+    /**
+     * Add a species, or find a species that was added before.
+     *
+     * @param name The name of the species.
+     *
+     * @return The index of the species.
+     */
+    public int add_species(String name) {
+        Integer index = indices.get(name);
+        if (index == null) {
+            index = species.size();
+            species.add(name);
+            indices.put(name, index);
+        }
+        return index;
+    }
+
+    /**
+     * Add a reaction given as an equation such as "NO + O3 -> NO2".
+     *
+     * @param equation      The equation of the reaction.
+     * @param rate_constant The rate constant.
+     */
+    public void add_reaction(String equation, double rate_constant) {
+        int arrow = equation.indexOf("->");
+        if (arrow < 0) {
+            throw new IllegalArgumentException("The reaction has no ->");
+        }
+        List<String> names = new ArrayList<String>();
+        List<Integer> coefficients = new ArrayList<Integer>();
+        parse_side(equation.substring(0, arrow), names, coefficients);
+        String[] reactant_names = names.toArray(new String[names.size()]);
+        int[] reactant_counts = to_array(coefficients);
+        names.clear();
+        coefficients.clear();
+        parse_side(equation.substring(arrow + 2), names, coefficients);
+        add_reaction(rate_constant, reactant_names, reactant_counts, names.toArray(new String[names.size()]), to_array(coefficients));
+    }
+
+    /**
+     * Add a reaction.
+     *
+     * @param rate_constant   The rate constant.
+     * @param reactant_names  The species consumed.
+     * @param reactant_counts The coefficient of each species consumed, the order of the reaction in it.
+     * @param product_names   The species produced.
+     * @param product_counts  The coefficient of each species produced.
+     */
+    public void add_reaction(double rate_constant, String[] reactant_names, int[] reactant_counts,
+                             String[] product_names, int[] product_counts) {
+        if (reactant_names.length != reactant_counts.length || product_names.length != product_counts.length) {
+            throw new IllegalArgumentException("Every species of the reaction needs one coefficient");
+        }
+        if (rate_constant < 0.0) {
+            throw new IllegalArgumentException("The rate constant must not be negative");
+        }
+        rate_constants.add(rate_constant);
+        reactants.add(get_indices(reactant_names));
+        reactant_coefficients.add(check_counts(reactant_counts));
+        products.add(get_indices(product_names));
+        product_coefficients.add(check_counts(product_counts));
+    }
+
+    /**
+     * Get the number of species.
+     *
+     * @return The number of species.
+     */
+    public int get_number_species() {
+        return species.size();
+    }
+
+    /**
+     * Get the number of reactions.
+     *
+     * @return The number of reactions.
+     */
+    public int get_number_reactions() {
+        return rate_constants.size();
+    }
+
+    /**
+     * Get the index of a species.
+     *
+     * @param name The name of the species.
+     *
+     * @return The index, which is the component of the species in the RHS.
+     */
+    public int get_species_index(String name) {
+        Integer index = indices.get(name);
+        if (index == null) {
+            throw new IllegalArgumentException("There is no species " + name);
+        }
+        return index;
+    }
+
+    /**
+     * Get the name of a species.
+     *
+     * @param index The index of the species.
+     *
+     * @return The name.
+     */
+    public String get_species_name(int index) {
+        return species.get(index);
+    }
+
+    /**
+     * Compile the network into an RHS. Later changes to the network do not
+     * change the RHS.
+     *
+     * @return The RHS for the concentrations of the species.
+     */
+    public ReactionNetworkRHS compile() {
+        int count = rate_constants.size();
+        double[] constants = new double[count];
+        for (int r = 0; r < count; r++) {
+            constants[r] = rate_constants.get(r);
+        }
+        return new ReactionNetworkRHS(species.size(), constants, reactants, reactant_coefficients,
+                                      products, product_coefficients);
+    }
+
+    private int[] get_indices(String[] names) {
+        int[] result = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            result[i] = add_species(names[i]);
+        }
+        return result;
+    }
+
+    private static int[] check_counts(int[] counts) {
+        for (int count : counts) {
+            if (count < 1) {
+                throw new IllegalArgumentException("The coefficients must be positive");
+            }
+        }
+        return counts.clone();
+    }
+
+    /**
+     * Read the terms of one side of an equation.
+     */
+    private static void parse_side(String side, List<String> names, List<Integer> coefficients) {
+        side = side.trim();
+        if (side.length() == 0) {
+            return;
+        }
+        for (String term : side.split("\\+")) {
+            String[] words = term.trim().split("\\s+");
+            if (words.length == 1 && words[0].length() > 0) {
+                names.add(words[0]);
+                coefficients.add(1);
+            } else if (words.length == 2) {
+                try {
+                    coefficients.add(Integer.parseInt(words[0]));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("The coefficient " + words[0] + " is not an integer");
+                }
+                names.add(words[1]);
+            } else {
+                throw new IllegalArgumentException("The term \"" + term.trim() + "\" is not a species with a coefficient");
+            }
+        }
+    }
+
+    private static int[] to_array(List<Integer> values) {
+        int[] result = new int[values.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = values.get(i);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,294 @@
+/* ./ode/ReactionNetworkRHS.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.ode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import org.jscience.mathematics.numbers.Float64;
+import org.jscience.mathematics.vectors.Float64Matrix;
+import org.jscience.mathematics.vectors.Float64Vector;
+import ca.usask.simlab.odeToJava.util.LinearOperator;
+import ca.usask.simlab.odeToJava.util.Matrix;
+import ca.usask.simlab.odeToJava.util.SparseMatrix;
+
+/**
+ * The RHS of a compiled ReactionNetwork with mass action kinetics.
+ * <p>
+ * The reactions are compiled into flat arrays: the reactants and their
+ * orders, and the net change of each species, so an evaluation is two loops
+ * over the reactions without creating any objects. The pattern of the
+ * Jacobian is found once, along with the position in it of each term of the
+ * derivative of each reaction, so the exact sparse Jacobian costs about as
+ * much as one evaluation instead of one evaluation per species for finite
+ * differences. An instance keeps the rates of the last evaluation, so it
+ * must not be evaluated from several threads at once.
+ */
+public class ReactionNetworkRHS extends RHS {
+    private final int n;
+    private final int reactions;
+    private final double[] rate_constants;
+    // the reactants of reaction r are reactant_start[r] to reactant_start[r + 1] - 1
+    private final int[] reactant_start;
+    private final int[] reactant;
+    private final int[] order;
+    // the net changes of reaction r are change_start[r] to change_start[r + 1] - 1
+    private final int[] change_start;
+    private final int[] change_species;
+    private final double[] change;
+    // the columns of each row of the Jacobian, and the entry of each change
+    // for each reactant
+    private final int[][] pattern;
+    private final int[] entry;
+    private final double[] rates;
+
+    ReactionNetworkRHS(int n, double[] rate_constants, List<int[]> reactants, List<int[]> reactant_coefficients,
+                       List<int[]> products, List<int[]> product_coefficients) {
+        this.n = n;
+        this.rate_constants = rate_constants;
+        reactions = rate_constants.length;
+        rates = new double[reactions];
+        // merge repeated species into one reactant and one net change
+        List<TreeMap<Integer, Integer>> orders = new ArrayList<TreeMap<Integer, Integer>>();
+        List<TreeMap<Integer, Integer>> changes = new ArrayList<TreeMap<Integer, Integer>>();
+        int reactant_count = 0, change_count = 0;
+        for (int r = 0; r < reactions; r++) {
+            TreeMap<Integer, Integer> merged = new TreeMap<Integer, Integer>();
+            TreeMap<Integer, Integer> net = new TreeMap<Integer, Integer>();
+            for (int i = 0; i < reactants.get(r).length; i++) {
+                add(merged, reactants.get(r)[i], reactant_coefficients.get(r)[i]);
+                add(net, reactants.get(r)[i], -reactant_coefficients.get(r)[i]);
+            }
+            for (int i = 0; i < products.get(r).length; i++) {
+                add(net, products.get(r)[i], product_coefficients.get(r)[i]);
+            }
+            net.values().removeAll(Collections.singleton(0));
+            orders.add(merged);
+            changes.add(net);
+            reactant_count += merged.size();
+            change_count += net.size();
+        }
+        reactant_start = new int[reactions + 1];
+        reactant = new int[reactant_count];
+        order = new int[reactant_count];
+        change_start = new int[reactions + 1];
+        change_species = new int[change_count];
+        change = new double[change_count];
+        int k = 0, c = 0;
+        for (int r = 0; r < reactions; r++) {
+            for (Map.Entry<Integer, Integer> e : orders.get(r).entrySet()) {
+                reactant[k] = e.getKey();
+                order[k] = e.getValue();
+                k++;
+            }
+            reactant_start[r + 1] = k;
+            for (Map.Entry<Integer, Integer> e : changes.get(r).entrySet()) {
+                change_species[c] = e.getKey();
+                change[c] = e.getValue();
+                c++;
+            }
+            change_start[r + 1] = c;
+        }
+        // the pattern, a change of species i by a reaction with reactant j
+        // is an entry (i, j), with the diagonal for the iteration matrices
+        List<TreeSet<Integer>> rows = new ArrayList<TreeSet<Integer>>();
+        for (int i = 0; i < n; i++) {
+            TreeSet<Integer> row = new TreeSet<Integer>();
+            row.add(i);
+            rows.add(row);
+        }
+        int terms = 0;
+        for (int r = 0; r < reactions; r++) {
+            for (int p = reactant_start[r]; p < reactant_start[r + 1]; p++) {
+                for (int q = change_start[r]; q < change_start[r + 1]; q++) {
+                    rows.get(change_species[q]).add(reactant[p]);
+                    terms++;
+                }
+            }
+        }
+        pattern = new int[n][];
+        for (int i = 0; i < n; i++) {
+            pattern[i] = new int[rows.get(i).size()];
+            int j = 0;
+            for (int column : rows.get(i)) {
+                pattern[i][j++] = column;
+            }
+        }
+        SparseMatrix matrix = get_jacobian_pattern();
+        entry = new int[terms];
+        int t = 0;
+        for (int r = 0; r < reactions; r++) {
+            for (int p = reactant_start[r]; p < reactant_start[r + 1]; p++) {
+                for (int q = change_start[r]; q < change_start[r + 1]; q++) {
+                    entry[t++] = matrix.get_entry(change_species[q], reactant[p]);
+                }
+            }
+        }
+    }
+
+    private static void add(TreeMap<Integer, Integer> map, int key, int value) {
+        Integer old = map.get(key);
+        map.put(key, old == null ? value : old + value);
+    }
+
+    @Override
+    public int get_size() {
+        return n;
+    }
+
+    /**
+     * Get the number of reactions.
+     *
+     * @return The number of reactions.
+     */
+    public int get_number_reactions() {
+        return reactions;
+    }
+
+    /**
+     * Change the rate constant of a reaction, such as for a sweep over the
+     * parameters of a mechanism.
+     *
+     * @param reaction      The index of the reaction, in the order it was added.
+     * @param rate_constant The rate constant.
+     */
+    public void set_rate_constant(int reaction, double rate_constant) {
+        rate_constants[reaction] = rate_constant;
+    }
+
+    /**
+     * Get the rate constant of a reaction.
+     *
+     * @param reaction The index of the reaction.
+     *
+     * @return The rate constant.
+     */
+    public double get_rate_constant(int reaction) {
+        return rate_constants[reaction];
+    }
+
+    @Override
+    public Float64Vector f(Float64 t, Float64Vector y) {
+        double[] yp = new double[n];
+        f(t.doubleValue(), Matrix.toDouble(y), yp);
+        return Float64Vector.valueOf(yp);
+    }
+
+    @Override
+    public void f(double t, double[] y, double[] yp) {
+        for (int r = 0; r < reactions; r++) {
+            double rate = rate_constants[r];
+            for (int p = reactant_start[r]; p < reactant_start[r + 1]; p++) {
+                rate *= power(y[reactant[p]], order[p]);
+            }
+            rates[r] = rate;
+        }
+        for (int i = 0; i < n; i++) {
+            yp[i] = 0.0;
+        }
+        for (int r = 0; r < reactions; r++) {
+            double rate = rates[r];
+            for (int q = change_start[r]; q < change_start[r + 1]; q++) {
+                yp[change_species[q]] += change[q] * rate;
+            }
+        }
+    }
+
+    /**
+     * Get a new matrix with the pattern of the Jacobian, to be filled by
+     * jacobian.
+     *
+     * @return The matrix, with all stored entries zero.
+     */
+    public SparseMatrix get_jacobian_pattern() {
+        int entries = 0;
+        for (int[] row : pattern) {
+            entries += row.length;
+        }
+        SparseMatrix matrix = new SparseMatrix(n, entries);
+        for (int[] row : pattern) {
+            for (int column : row) {
+                matrix.add(column, 0.0);
+            }
+            matrix.end_row();
+        }
+        return matrix;
+    }
+
+    /**
+     * Evaluate the exact Jacobian into a matrix from get_jacobian_pattern.
+     *
+     * @param t      The solution time to do the evaluation.
+     * @param y      The solution to use in the evaluation.
+     * @param result The matrix that receives the Jacobian.
+     */
+    public void jacobian(double t, double[] y, SparseMatrix result) {
+        result.zero();
+        int term = 0;
+        for (int r = 0; r < reactions; r++) {
+            int first = reactant_start[r], last = reactant_start[r + 1];
+            for (int p = first; p < last; p++) {
+                // the derivative of the rate by reactant p
+                double derivative = rate_constants[r] * order[p] * power(y[reactant[p]], order[p] - 1);
+                for (int other = first; other < last; other++) {
+                    if (other != p) {
+                        derivative *= power(y[reactant[other]], order[other]);
+                    }
+                }
+                for (int q = change_start[r]; q < change_start[r + 1]; q++) {
+                    result.add_to_entry(entry[term++], change[q] * derivative);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the exact Jacobian as a sparse matrix.
+     *
+     * @param t The solution time to do the evaluation.
+     * @param y The solution to use in the evaluation.
+     *
+     * @return The Jacobian.
+     */
+    public SparseMatrix get_sparse_jacobian(double t, double[] y) {
+        SparseMatrix result = get_jacobian_pattern();
+        jacobian(t, y, result);
+        return result;
+    }
+
+    @Override
+    public Float64Matrix jacobian(Float64 t, Float64Vector y) {
+        return Float64Matrix.valueOf(get_sparse_jacobian(t.doubleValue(), Matrix.toDouble(y)).to_dense());
+    }
+
+    @Override
+    public LinearOperator jacobian_operator(double t, double[] y) {
+        return get_sparse_jacobian(t, y);
+    }
+
+    private static double power(double x, int k) {
+        double result = 1.0;
+        for (int i = 0; i < k; i++) {
+            result *= x;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,387 @@
+/* ./ode/ReducedRHS.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.ode;
+
+import java.util.TreeSet;
+import org.jscience.mathematics.numbers.Float64;
+import org.jscience.mathematics.vectors.Float64Matrix;
+import org.jscience.mathematics.vectors.Float64Vector;
+import ca.usask.simlab.odeToJava.util.LUDecomposition;
+import ca.usask.simlab.odeToJava.util.Matrix;
+import ca.usask.simlab.odeToJava.util.SingularValueDecomposition;
+
+/**
+ * A reduced-order model of an AdditiveRHS by Galerkin projection onto an
+ * orthonormal basis, such as the proper orthogonal decomposition (POD) of
+ * snapshots of its solution. The solution is approximated by y = U a with
+ * the r coefficients a as the unknowns, and the reduced RHS is U^T f(U a),
+ * so the model is solved by the usual controllers.
+ * <p>
+ * f2 must be affine and autonomous, such as a diffusion, so it is projected
+ * once into an r x r matrix. f1 is projected directly, which costs a full
+ * evaluation, or with the discrete empirical interpolation method (DEIM),
+ * which interpolates f1 in the span of a second basis from a few sampled
+ * components. The sampled components are evaluated from the solution at
+ * their dependencies only, so the cost of the reduced RHS does not grow
+ * with the size of the full ODE, which must then implement SampledRHS.
+ * <p>
+ * Saifon Chaturantabut and Danny C. Sorensen. "Nonlinear model reduction via discrete empirical interpolation", SIAM Journal on Scientific Computing, vol 32, pg 2737-2764, 2010.
+ */
+public class ReducedRHS extends AdditiveRHS {
+    /**
+     * The number of snapshots above which from_snapshots uses the randomized
+     * singular value decomposition.
+     */
+    public static final int RANDOMIZED_SNAPSHOTS = 200;
+
+    private final AdditiveRHS full;
+    private final int n, r;
+    // the basis, one vector in each row
+    private final double[][] basis;
+    // the projection of f2, f2(U a) = U (linear a + offset)
+    private final double[][] linear;
+    private final double[] offset;
+    // the hyper-reduction: the sampled components, the components of the
+    // solution they depend on with the rows of the basis there, and the
+    // matrix taking the samples of f1 to its projection
+    private int[] samples;
+    private int[] support;
+    private double[][] support_basis;
+    private double[][] interpolation;
+    // work arrays
+    private final double[] full_y, full_yp;
+    private double[] sampled;
+
+    /**
+     * Create a reduced model with f1 projected directly.
+     *
+     * @param full  The full ODE.
+     * @param basis The orthonormal basis, one vector of the size of the ODE in each row.
+     */
+    public ReducedRHS(AdditiveRHS full, double[][] basis) {
+        this.full = full;
+        n = full.get_size();
+        r = basis.length;
+        for (int l = 0; l < r; l++) {
+            if (basis[l].length != n) {
+                throw new IllegalArgumentException("The basis vectors must have the size of the ODE");
+            }
+        }
+        this.basis = basis;
+        full_y = new double[n];
+        full_yp = new double[n];
+        // the columns of the projected f2 from f2 at the basis vectors
+        double[] zero = new double[n];
+        full.f2(0.0, zero, full_yp);
+        offset = project(full_yp);
+        linear = new double[r][r];
+        for (int j = 0; j < r; j++) {
+            full.f2(0.0, basis[j], full_yp);
+            for (int i = 0; i < r; i++) {
+                linear[i][j] = dot(basis[i], full_yp) - offset[i];
+            }
+        }
+    }
+
+    /**
+     * Create a reduced model from snapshots of the solution, with the POD
+     * bases of the snapshots and of f1 at the snapshots.
+     *
+     * @param full           The full ODE.
+     * @param times          The times of the snapshots.
+     * @param snapshots      The snapshots, one solution in each row.
+     * @param rank           The size of the reduced model.
+     * @param nonlinear_rank The number of sampled components of f1, 0 to project f1 directly.
+     *
+     * @return The reduced model.
+     */
+    public static ReducedRHS from_snapshots(AdditiveRHS full, double[] times, double[][] snapshots, int rank,
+                                            int nonlinear_rank) {
+        ReducedRHS reduced = new ReducedRHS(full, get_POD_basis(snapshots, rank));
+        if (nonlinear_rank > 0) {
+            double[][] nonlinear = new double[snapshots.length][];
+            for (int s = 0; s < snapshots.length; s++) {
+                nonlinear[s] = Matrix.toDouble(full.f1(Float64.valueOf(times[s]), Float64Vector.valueOf(snapshots[s])));
+            }
+            reduced.set_hyper_reduction(get_POD_basis(nonlinear, nonlinear_rank));
+        }
+        return reduced;
+    }
+
+    /**
+     * Get the leading left singular vectors of the snapshots, with the
+     * randomized decomposition for many snapshots.
+     *
+     * @param snapshots The snapshots, one in each row.
+     * @param rank      The number of vectors.
+     *
+     * @return The basis, one vector in each row.
+     */
+    public static double[][] get_POD_basis(double[][] snapshots, int rank) {
+        SingularValueDecomposition svd;
+        if (snapshots.length > RANDOMIZED_SNAPSHOTS) {
+            svd = SingularValueDecomposition.randomized(snapshots, rank, 0);
+        } else {
+            svd = new SingularValueDecomposition(snapshots);
+        }
+        return svd.get_left_vectors(rank);
+    }
+
+    /**
+     * Interpolate f1 from the components chosen by DEIM for a basis of the
+     * values of f1. The full ODE must implement SampledRHS.
+     *
+     * @param nonlinear_basis The basis for f1, one vector of the size of the ODE in each row.
+     */
+    public void set_hyper_reduction(double[][] nonlinear_basis) {
+        if (!(full instanceof SampledRHS)) {
+            throw new IllegalArgumentException("The hyper-reduction needs an ODE that implements SampledRHS");
+        }
+        int m = nonlinear_basis.length;
+        int[] indices = get_DEIM_indices(nonlinear_basis);
+        TreeSet<Integer> dependencies = new TreeSet<Integer>();
+        for (int i : indices) {
+            for (int d : ((SampledRHS) full).get_f1_dependencies(i)) {
+                dependencies.add(d);
+            }
+        }
+        support = new int[dependencies.size()];
+        support_basis = new double[support.length][r];
+        int count = 0;
+        for (int d : dependencies) {
+            support[count] = d;
+            for (int l = 0; l < r; l++) {
+                support_basis[count][l] = basis[l][d];
+            }
+            count++;
+        }
+        // interpolation = U^T W (P^T W)^-1, by rows from the transposed system
+        double[][] transposed = new double[m][m];
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < m; j++) {
+                transposed[j][i] = nonlinear_basis[j][indices[i]];
+            }
+        }
+        LUDecomposition lu = new LUDecomposition(m);
+        if (!lu.factor(transposed)) {
+            throw new IllegalArgumentException("The basis for f1 is singular at the sampled components");
+        }
+        interpolation = new double[r][];
+        for (int k = 0; k < r; k++) {
+            double[] row = new double[m];
+            for (int j = 0; j < m; j++) {
+                row[j] = dot(basis[k], nonlinear_basis[j]);
+            }
+            lu.solve(row);
+            interpolation[k] = row;
+        }
+        samples = indices;
+        sampled = new double[m];
+    }
+
+    /**
+     * Choose the components that interpolate a basis by the greedy DEIM
+     * algorithm, each the largest error of the interpolation by the vectors
+     * before.
+     *
+     * @param basis The basis, one vector in each row.
+     *
+     * @return The components, one for each vector.
+     */
+    public static int[] get_DEIM_indices(double[][] basis) {
+        int m = basis.length;
+        int[] indices = new int[m];
+        indices[0] = get_largest(basis[0]);
+        for (int l = 1; l < m; l++) {
+            double[][] system = new double[l][l];
+            double[] c = new double[l];
+            for (int i = 0; i < l; i++) {
+                for (int j = 0; j < l; j++) {
+                    system[i][j] = basis[j][indices[i]];
+                }
+                c[i] = basis[l][indices[i]];
+            }
+            LUDecomposition lu = new LUDecomposition(l);
+            if (!lu.factor(system)) {
+                throw new IllegalArgumentException("The basis is not linearly independent");
+            }
+            lu.solve(c);
+            double[] residual = basis[l].clone();
+            for (int j = 0; j < l; j++) {
+                for (int p = 0; p < residual.length; p++) {
+                    residual[p] -= c[j] * basis[j][p];
+                }
+            }
+            indices[l] = get_largest(residual);
+        }
+        return indices;
+    }
+
+    private static int get_largest(double[] x) {
+        int largest = 0;
+        for (int p = 1; p < x.length; p++) {
+            if (Math.abs(x[p]) > Math.abs(x[largest])) {
+                largest = p;
+            }
+        }
+        return largest;
+    }
+
+    /**
+     * Get the coefficients of the projection of a full solution onto the basis.
+     *
+     * @param y The full solution.
+     *
+     * @return The coefficients U^T y.
+     */
+    public double[] project(double[] y) {
+        double[] a = new double[r];
+        for (int l = 0; l < r; l++) {
+            a[l] = dot(basis[l], y);
+        }
+        return a;
+    }
+
+    /**
+     * Get the full solution of the coefficients.
+     *
+     * @param a The coefficients.
+     *
+     * @return The full solution U a.
+     */
+    public double[] lift(double[] a) {
+        double[] y = new double[n];
+        lift(a, y);
+        return y;
+    }
+
+    private void lift(double[] a, double[] y) {
+        for (int p = 0; p < n; p++) {
+            y[p] = 0.0;
+        }
+        for (int l = 0; l < r; l++) {
+            double coefficient = a[l];
+            double[] vector = basis[l];
+            for (int p = 0; p < n; p++) {
+                y[p] += coefficient * vector[p];
+            }
+        }
+    }
+
+    /**
+     * Get the components sampled by the hyper-reduction.
+     *
+     * @return The components, or null if f1 is projected directly.
+     */
+    public int[] get_samples() {
+        return samples == null ? null : samples.clone();
+    }
+
+    @Override
+    public int get_size() {
+        return r;
+    }
+
+    @Override
+    public Float64Vector f(Float64 t, Float64Vector y) {
+        double[] yp = new double[r];
+        f(t.doubleValue(), Matrix.toDouble(y), yp);
+        return Float64Vector.valueOf(yp);
+    }
+
+    @Override
+    public void f(double t, double[] y, double[] yp) {
+        f1(t, y, yp);
+        for (int i = 0; i < r; i++) {
+            yp[i] += offset[i] + dot(linear[i], y);
+        }
+    }
+
+    @Override
+    public Float64Vector f1(Float64 t, Float64Vector y) {
+        double[] yp = new double[r];
+        f1(t.doubleValue(), Matrix.toDouble(y), yp);
+        return Float64Vector.valueOf(yp);
+    }
+
+    /**
+     * Evaluates the projection of f1 on plain arrays, storing the
+     * derivatives in yp.
+     *
+     * @param t  The solution time to do the evaluation.
+     * @param a  The coefficients to use in the RHS evaluation.
+     * @param yp The array that receives the value of f1.
+     */
+    public void f1(double t, double[] a, double[] yp) {
+        if (samples == null) {
+            lift(a, full_y);
+            Float64Vector value = full.f1(Float64.valueOf(t), Float64Vector.valueOf(full_y));
+            for (int p = 0; p < n; p++) {
+                full_yp[p] = value.getValue(p);
+            }
+            for (int l = 0; l < r; l++) {
+                yp[l] = dot(basis[l], full_yp);
+            }
+            return;
+        }
+        // the solution at the dependencies of the samples only
+        for (int s = 0; s < support.length; s++) {
+            full_y[support[s]] = dot(support_basis[s], a);
+        }
+        ((SampledRHS) full).f1(t, full_y, full_yp, samples, samples.length);
+        for (int i = 0; i < samples.length; i++) {
+            sampled[i] = full_yp[samples[i]];
+        }
+        for (int l = 0; l < r; l++) {
+            yp[l] = dot(interpolation[l], sampled);
+        }
+    }
+
+    @Override
+    public Float64Vector f2(Float64 t, Float64Vector y) {
+        double[] yp = new double[r];
+        f2(t.doubleValue(), Matrix.toDouble(y), yp);
+        return Float64Vector.valueOf(yp);
+    }
+
+    @Override
+    public void f2(double t, double[] a, double[] yp) {
+        for (int i = 0; i < r; i++) {
+            yp[i] = offset[i] + dot(linear[i], a);
+        }
+    }
+
+    @Override
+    public Float64Matrix jacobian(Float64 t, Float64Vector y) {
+        // the projected f2 is the only linear part
+        return jacobian_f2(t, y);
+    }
+
+    @Override
+    public Float64Matrix jacobian_f2(Float64 t, Float64Vector y) {
+        return Float64Matrix.valueOf(linear);
+    }
+
+    private static double dot(double[] x, double[] y) {
+        double sum = 0.0;
+        for (int p = 0; p < x.length; p++) {
+            sum += x[p] * y[p];
+        }
+        return sum;
+    }
+}
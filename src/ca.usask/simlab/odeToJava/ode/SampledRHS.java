@@ -0,0 +1,48 @@
+/* ./ode/SampledRHS.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.ode;
+
+/**
+ * This interface is implemented by an AdditiveRHS where each component of
+ * f1 depends on only a few components of the solution, such as the points
+ * of a stencil, so a hyper-reduced model can evaluate f1 at a few sampled
+ * components from the solution at their dependencies only.
+ */
+public interface SampledRHS {
+    /**
+     * Get the components of the solution that a component of f1 depends on.
+     *
+     * @param component The component of f1.
+     *
+     * @return The indices of the components of the solution.
+     */
+    public int[] get_f1_dependencies(int component);
+
+    /**
+     * Evaluate some components of f1, the other components of yp are left
+     * unchanged. Only the dependencies of the evaluated components need to
+     * be set in y.
+     *
+     * @param t          The solution time to do the evaluation.
+     * @param y          The solution vector to use in the RHS evaluation.
+     * @param yp         The array that receives the derivatives.
+     * @param components The indices of the components to evaluate.
+     * @param count      The number of indices used from components.
+     */
+    public void f1(double t, double[] y, double[] yp, int[] components, int count);
+}
@@ -0,0 +1,54 @@
+/* ./ode/SecondOrderRHS.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.ode;
+
+/**
+ * Represents a second-order system q'' = f(t, q) in which the acceleration
+ * does not depend on the first derivative.
+ * <p>
+ * The first half of the solution vector holds the positions q and the second
+ * half holds the first derivatives q', so the system is also a separable
+ * Hamiltonian with T(p) = |p|^2/2 and can be solved by any method for
+ * first-order systems. Runge-Kutta-Nystrom methods only evaluate the
+ * acceleration.
+ * <p>
+ * In order to define the RHS of an ODE, the method acceleration is
+ * overridden.
+ * <p>
+ * Ernst Hairer, Syvert Norsett, and Gerhard Wanner. "Solving Order Differential Equations I, 2nd Edition", pg 283-287.
+ */
+public abstract class SecondOrderRHS extends SeparableRHS {
+    @Override
+    public final void velocity(double t, double[] p, double[] result) {
+        System.arraycopy(p, 0, result, 0, p.length);
+    }
+
+    @Override
+    public final void force(double t, double[] q, double[] result) {
+        acceleration(t, q, result);
+    }
+
+    /**
+     * The second derivative of the positions.
+     *
+     * @param t      The solution time to do the evaluation.
+     * @param q      The positions.
+     * @param result The array that receives the acceleration.
+     */
+    public abstract void acceleration(double t, double[] q, double[] result);
+}
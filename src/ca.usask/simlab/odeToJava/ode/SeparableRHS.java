@@ -0,0 +1,86 @@
+/* ./ode/SeparableRHS.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.ode;
+
+import org.jscience.mathematics.numbers.Float64;
+import org.jscience.mathematics.vectors.Float64Vector;
+
+/**
+ * Represents the equations of motion of a separable Hamiltonian
+ * H(q, p) = T(p) + V(q).
+ * <p>
+ * The first half of the solution vector holds the positions q and the second
+ * half holds the momenta p, as for the Stormer-Verlet method. The RHS is
+ * q' = velocity(p) = dT/dp and p' = force(q) = -dV/dq, and the two halves are
+ * supplied separately so that splitting and composition methods can update one
+ * half without evaluating the other.
+ * <p>
+ * In order to define the RHS of an ODE, the method force is overridden, and
+ * the method velocity as well if the kinetic energy is not T(p) = |p|^2/2.
+ * <p>
+ * Ernst Hairer, Christian Lubich, and Gerhard Wanner. "Geometric Numerical Integration: Structure-preserving algorithms for ordinary differential", 2002, pg 5-8.
+ */
+public abstract class SeparableRHS extends RHS {
+    @Override
+    public Float64Vector f(Float64 t, Float64Vector y) {
+        double[] y_array = new double[y.getDimension()];
+        for (int i = 0; i < y_array.length; i++) {
+            y_array[i] = y.getValue(i);
+        }
+        double[] yp = new double[y_array.length];
+        f(t.doubleValue(), y_array, yp);
+        return Float64Vector.valueOf(yp);
+    }
+
+    @Override
+    public void f(double t, double[] y, double[] yp) {
+        int half = get_size() / 2;
+        double[] q = new double[half];
+        double[] p = new double[half];
+        double[] qp = new double[half];
+        double[] pp = new double[half];
+        System.arraycopy(y, 0, q, 0, half);
+        System.arraycopy(y, half, p, 0, half);
+        velocity(t, p, qp);
+        force(t, q, pp);
+        System.arraycopy(qp, 0, yp, 0, half);
+        System.arraycopy(pp, 0, yp, half, half);
+    }
+
+    /**
+     * The derivative of the positions, which depends only on the momenta.
+     * <p>
+     * By default the kinetic energy is T(p) = |p|^2/2, so the velocity is p.
+     *
+     * @param t      The solution time to do the evaluation.
+     * @param p      The momenta.
+     * @param result The array that receives the derivative of the positions.
+     */
+    public void velocity(double t, double[] p, double[] result) {
+        System.arraycopy(p, 0, result, 0, p.length);
+    }
+
+    /**
+     * The derivative of the momenta, which depends only on the positions.
+     *
+     * @param t      The solution time to do the evaluation.
+     * @param q      The positions.
+     * @param result The array that receives the derivative of the momenta.
+     */
+    public abstract void force(double t, double[] q, double[] result);
+}
@@ -0,0 +1,681 @@
+/* ./ode/StencilRHS.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.ode;
+
+import org.jscience.mathematics.numbers.Float64;
+import org.jscience.mathematics.vectors.Float64Matrix;
+import org.jscience.mathematics.vectors.Float64Vector;
+import ca.usask.simlab.odeToJava.util.LinearOperator;
+import ca.usask.simlab.odeToJava.util.Matrix;
+import ca.usask.simlab.odeToJava.util.ParallelLoop;
+import ca.usask.simlab.odeToJava.util.SparseMatrix;
+import ca.usask.simlab.odeToJava.util.TridiagonalSolver;
+
+/**
+ * The method of lines discretization of an advection-diffusion-reaction
+ * system on a regular grid in one, two or three dimensions, which is
+ * declared with terms instead of written by hand.
+ * <p>
+ * Each species has a diffusion coefficient, an advection velocity along each
+ * axis of the form a + b*u, so b = 1 gives the advection of Burgers'
+ * equation, and the species at a point react through a Reaction. Diffusion
+ * uses second-order central differences and advection first-order upwind
+ * differences. As usual for IMEX methods f1 is the advection and reaction
+ * and f2 the diffusion.
+ * <p>
+ * The unknowns are the values at the grid points, stored species by species
+ * with the first axis varying fastest: species s at point (i, j, k) is at
+ * index s*N + (k*ny + j)*nx + i, where N is the number of points. Each side
+ * of an axis is periodic, a Dirichlet boundary where the values at the edge
+ * points are held fixed, or a Neumann boundary with zero flux, where the
+ * value one point outside mirrors the value one point inside.
+ * <p>
+ * The grid is swept in tiles of rows, so the neighbouring rows and planes
+ * that a stencil reads stay in the cache, and the tiles are shared out among
+ * several threads. The Jacobian is available exactly, as a sparse matrix and
+ * as a matrix-free operator. The diffusion along each axis is a factor of
+ * the Jacobian of f2, solved with independent tridiagonal systems along the
+ * lines of the grid.
+ * <p>
+ * William E. Schiesser. "The Numerical Method of Lines: Integration of Partial Differential Equations", Academic Press, 1991.
+ */
+public class StencilRHS extends AdditiveRHS implements ApproximateFactorization {
+    /**
+     * The boundary conditions at the sides of the axes.
+     */
+    public enum Boundary {
+        /** The axis wraps around, both sides of the axis must be periodic. */
+        PERIODIC,
+        /** The values at the edge points are held at their initial values. */
+        DIRICHLET,
+        /** There is no flux through the boundary. */
+        NEUMANN
+    }
+
+    // the size of a tile along the first and second axes, all of the third axis is in a tile
+    private static final int TILE_X = 1024;
+    private static final int TILE_Y = 16;
+    // the fewest points in the work of each thread
+    private static final int MIN_POINTS_PER_THREAD = 16384;
+    // what a sweep evaluates
+    private static final int F1 = 0, F2 = 1, F = 2, JACOBIAN = 3, JACOBIAN_F2 = 4;
+
+    private final int species;
+    private final int dimension;
+    private final int points;
+    private final int[] n = {1, 1, 1};
+    private final int[] stride = new int[3];
+    private final double[] inverse_h = {1.0, 1.0, 1.0};
+    private final Boundary[][] boundary = new Boundary[3][2];
+    private final double[] diffusion;
+    private final double[][] velocity, slope;
+    private Reaction reaction;
+    private final int tiles_x, tiles;
+    private final ParallelLoop loop = new ParallelLoop("stencil");
+    // the values and rates of the species at a point for each thread
+    private final ThreadLocal<double[][]> buffers = new ThreadLocal<double[][]>();
+    // the solver and the systems along a line of the grid for each thread
+    private final ThreadLocal<TridiagonalSolver> line_solvers = new ThreadLocal<TridiagonalSolver>();
+    private final ThreadLocal<double[][]> line_buffers = new ThreadLocal<double[][]>();
+
+    /**
+     * The constructor for the discretization, without any terms and with
+     * Neumann boundaries.
+     *
+     * @param species The number of species.
+     * @param points  The number of grid points along each axis, 1 to 3 axes.
+     * @param spacing The distance between the grid points along each axis.
+     */
+    public StencilRHS(int species, int[] points, double[] spacing) {
+        if (points.length < 1 || points.length > 3 || spacing.length != points.length) {
+            throw new IllegalArgumentException("The grid must have 1 to 3 axes with a spacing for each");
+        }
+        this.species = species;
+        dimension = points.length;
+        int total = 1;
+        for (int a = 0; a < 3; a++) {
+            if (a < dimension) {
+                n[a] = points[a];
+                inverse_h[a] = 1.0 / spacing[a];
+            }
+            stride[a] = total;
+            total *= n[a];
+            boundary[a][0] = Boundary.NEUMANN;
+            boundary[a][1] = Boundary.NEUMANN;
+        }
+        this.points = total;
+        diffusion = new double[species];
+        velocity = new double[species][dimension];
+        slope = new double[species][dimension];
+        tiles_x = (n[0] + TILE_X - 1) / TILE_X;
+        tiles = tiles_x * ((n[1] + TILE_Y - 1) / TILE_Y);
+    }
+
+    @Override
+    public int get_size() {
+        return species * points;
+    }
+
+    /**
+     * Get the number of species.
+     *
+     * @return The number of species.
+     */
+    public int get_number_species() {
+        return species;
+    }
+
+    /**
+     * Get the number of grid points.
+     *
+     * @return The number of points of the whole grid.
+     */
+    public int get_number_points() {
+        return points;
+    }
+
+    /**
+     * Get the index of the value of a species at a point of the grid.
+     *
+     * @param s The species.
+     * @param i The position along the first axis.
+     * @param j The position along the second axis, 0 for a one-dimensional grid.
+     * @param k The position along the third axis, 0 for a grid with fewer axes.
+     * @return The index of the value in the solution.
+     */
+    public int get_index(int s, int i, int j, int k) {
+        return s * points + (k * n[1] + j) * n[0] + i;
+    }
+
+    /**
+     * Set the boundary conditions of an axis for all species.
+     *
+     * @param axis  The axis.
+     * @param lower The condition at the first point of the axis.
+     * @param upper The condition at the last point of the axis.
+     */
+    public void set_boundary(int axis, Boundary lower, Boundary upper) {
+        check_axis(axis);
+        if ((lower == Boundary.PERIODIC) != (upper == Boundary.PERIODIC)) {
+            throw new IllegalArgumentException("Both sides of a periodic axis must be periodic");
+        }
+        boundary[axis][0] = lower;
+        boundary[axis][1] = upper;
+    }
+
+    /**
+     * Set the diffusion coefficient of a species.
+     *
+     * @param s           The species.
+     * @param coefficient The diffusion coefficient.
+     */
+    public void set_diffusion(int s, double coefficient) {
+        diffusion[s] = coefficient;
+    }
+
+    /**
+     * Set the advection of a species along an axis with the velocity a + b*u,
+     * where u is the value of the species.
+     *
+     * @param s    The species.
+     * @param axis The axis.
+     * @param a    The constant part of the velocity.
+     * @param b    The part of the velocity proportional to the species.
+     */
+    public void set_advection(int s, int axis, double a, double b) {
+        check_axis(axis);
+        velocity[s][axis] = a;
+        slope[s][axis] = b;
+    }
+
+    /**
+     * Set the reaction of the species at each point.
+     *
+     * @param reaction The reaction, or null for none.
+     */
+    public void set_reaction(Reaction reaction) {
+        this.reaction = reaction;
+    }
+
+    /**
+     * Set the number of threads that sweep the grid. Each thread is only used
+     * when it has enough points to be worth it.
+     *
+     * @param threads The number of threads, 1 sweeps in the calling thread only.
+     */
+    public void set_threads(int threads) {
+        loop.set_threads(threads);
+    }
+
+    /**
+     * Get the number of threads that sweep the grid.
+     *
+     * @return The number of threads.
+     */
+    public int get_threads() {
+        return loop.get_threads();
+    }
+
+    private void check_axis(int axis) {
+        if (axis < 0 || axis >= dimension) {
+            throw new IllegalArgumentException("The grid has no axis " + axis);
+        }
+    }
+
+    @Override
+    public Float64Vector f(Float64 t, Float64Vector y) {
+        double[] yp = new double[get_size()];
+        f(t.doubleValue(), Matrix.toDouble(y), yp);
+        return Float64Vector.valueOf(yp);
+    }
+
+    @Override
+    public void f(double t, double[] y, double[] yp) {
+        sweep(F, t, y, null, null, yp);
+    }
+
+    @Override
+    public Float64Vector f1(Float64 t, Float64Vector y) {
+        double[] yp = new double[get_size()];
+        f1(t.doubleValue(), Matrix.toDouble(y), yp);
+        return Float64Vector.valueOf(yp);
+    }
+
+    /**
+     * Evaluates the advection and reaction on plain arrays, storing the
+     * derivatives in yp.
+     *
+     * @param t  The solution time to do the evaluation.
+     * @param y  The solution to use in the RHS evaluation.
+     * @param yp The array that receives the value of f1.
+     */
+    public void f1(double t, double[] y, double[] yp) {
+        sweep(F1, t, y, null, null, yp);
+    }
+
+    @Override
+    public Float64Vector f2(Float64 t, Float64Vector y) {
+        double[] yp = new double[get_size()];
+        f2(t.doubleValue(), Matrix.toDouble(y), yp);
+        return Float64Vector.valueOf(yp);
+    }
+
+    @Override
+    public void f2(double t, double[] y, double[] yp) {
+        sweep(F2, t, y, null, null, yp);
+    }
+
+    /**
+     * The exact Jacobian as an operator, which sweeps the grid once for each
+     * product.
+     */
+    @Override
+    public LinearOperator jacobian_operator(final double t, double[] y) {
+        final double[] base = y.clone();
+        final double[] reaction_jacobian = reaction_jacobian(t, base);
+        return new LinearOperator() {
+            public int get_size() {
+                return StencilRHS.this.get_size();
+            }
+
+            public void apply(double[] x, double[] result) {
+                sweep(JACOBIAN, t, base, x, reaction_jacobian, result);
+            }
+        };
+    }
+
+    /**
+     * The diffusion as an operator, which sweeps the grid once for each
+     * product.
+     */
+    @Override
+    public LinearOperator jacobian_f2_operator(final double t, double[] y) {
+        return new LinearOperator() {
+            public int get_size() {
+                return StencilRHS.this.get_size();
+            }
+
+            public void apply(double[] x, double[] result) {
+                sweep(JACOBIAN_F2, t, null, x, null, result);
+            }
+        };
+    }
+
+    /**
+     * The dense Jacobian, assembled from the sparse one, which is only
+     * sensible for small grids.
+     */
+    @Override
+    public Float64Matrix jacobian(Float64 t, Float64Vector y) {
+        return Float64Matrix.valueOf(get_sparse_jacobian(t.doubleValue(), Matrix.toDouble(y)).to_dense());
+    }
+
+    /**
+     * The dense Jacobian of the diffusion, assembled from the sparse one,
+     * which is only sensible for small grids.
+     */
+    @Override
+    public Float64Matrix jacobian_f2(Float64 t, Float64Vector y) {
+        return Float64Matrix.valueOf(get_sparse_jacobian_f2().to_dense());
+    }
+
+    /**
+     * Get the exact Jacobian as a sparse matrix.
+     *
+     * @param t The solution time to evaluate the Jacobian at.
+     * @param y The solution values to evaluate the Jacobian with.
+     * @return The Jacobian.
+     */
+    public SparseMatrix get_sparse_jacobian(double t, double[] y) {
+        return assemble(true, y, reaction_jacobian(t, y));
+    }
+
+    /**
+     * Get the Jacobian of the diffusion, which does not depend on the
+     * solution, as a sparse matrix.
+     *
+     * @return The Jacobian of f2.
+     */
+    public SparseMatrix get_sparse_jacobian_f2() {
+        return assemble(false, null, null);
+    }
+
+    public int get_number_factors() {
+        return dimension;
+    }
+
+    /**
+     * Solve with the diffusion along one axis, which is a tridiagonal system
+     * along each line of the grid parallel to the axis, or a periodic one if
+     * the axis is periodic. The lines are shared out among the threads.
+     */
+    public void solve_factor(final int axis, final double gamma, final double[] b) {
+        check_axis(axis);
+        final int length = n[axis];
+        if (length == 1) {
+            return;
+        }
+        for (int s = 0; s < species; s++) {
+            if (diffusion[s] == 0.0) {
+                continue;
+            }
+            final int offset = s * points;
+            final double c = gamma * diffusion[s] * inverse_h[axis] * inverse_h[axis];
+            loop.run(points / length, Math.max(1, MIN_POINTS_PER_THREAD / length), new ParallelLoop.Body() {
+                public void run(int from, int to) {
+                    // the lines read and write disjoint components of b
+                    for (int line = from; line < to; line++) {
+                        solve_line(axis, line, c, offset, b);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Solve (I - c*D) x = b along one line of the grid, where D is the second
+     * difference along the axis with the boundaries of sweep_tile.
+     */
+    private void solve_line(int axis, int line, double c, int offset, double[] b) {
+        // the position of the line along the other axes
+        int first, second;
+        int start;
+        if (axis == 0) {
+            first = line % n[1];
+            second = line / n[1];
+            start = line * n[0];
+            if (is_fixed(1, first) || is_fixed(2, second)) {
+                return;
+            }
+        } else if (axis == 1) {
+            first = line % n[0];
+            second = line / n[0];
+            start = second * n[0] * n[1] + first;
+            if (is_fixed(0, first) || is_fixed(2, second)) {
+                return;
+            }
+        } else {
+            first = line % n[0];
+            second = line / n[0];
+            start = line;
+            if (is_fixed(0, first) || is_fixed(1, second)) {
+                return;
+            }
+        }
+        int length = n[axis];
+        TridiagonalSolver solver = line_solvers.get();
+        double[][] buffer = line_buffers.get();
+        if (buffer == null || buffer[0].length < length) {
+            int size = Math.max(n[0], Math.max(n[1], n[2]));
+            solver = new TridiagonalSolver(size);
+            buffer = new double[4][size];
+            line_solvers.set(solver);
+            line_buffers.set(buffer);
+        }
+        double[] lower = buffer[0], main = buffer[1], upper = buffer[2], x = buffer[3];
+        for (int m = 0; m < length; m++) {
+            x[m] = b[offset + start + m * stride[axis]];
+            lower[m] = 0.0;
+            upper[m] = 0.0;
+            if (is_fixed(axis, m)) {
+                main[m] = 1.0;
+                continue;
+            }
+            main[m] = 1.0 + 2.0 * c;
+            if (m > 0) {
+                lower[m] = -c;
+            }
+            if (m < length - 1) {
+                upper[m] = -c;
+            }
+        }
+        double top = 0.0, bottom = 0.0;
+        if (boundary[axis][0] == Boundary.PERIODIC) {
+            if (length == 2) {
+                upper[0] -= c;
+                lower[1] -= c;
+            } else {
+                top = -c;
+                bottom = -c;
+            }
+        } else {
+            // the mirror images at zero flux boundaries
+            if (boundary[axis][0] == Boundary.NEUMANN) {
+                upper[0] -= c;
+            }
+            if (boundary[axis][1] == Boundary.NEUMANN) {
+                lower[length - 1] -= c;
+            }
+        }
+        if (top != 0.0) {
+            solver.solve_periodic(length, lower, main, upper, top, bottom, x);
+        } else {
+            solver.solve(length, lower, main, upper, x);
+        }
+        for (int m = 0; m < length; m++) {
+            b[offset + start + m * stride[axis]] = x[m];
+        }
+    }
+
+    /**
+     * Evaluate the Jacobians of the reaction at all points, the Jacobian at
+     * point p is stored row by row from p*species*species.
+     */
+    private double[] reaction_jacobian(final double t, final double[] y) {
+        if (reaction == null) {
+            return null;
+        }
+        final double[] result = new double[points * species * species];
+        loop.run(points, MIN_POINTS_PER_THREAD, new ParallelLoop.Body() {
+            public void run(int from, int to) {
+                double[] u = new double[species];
+                double[][] jacobian = new double[species][species];
+                for (int p = from; p < to; p++) {
+                    for (int s = 0; s < species; s++) {
+                        u[s] = y[s * points + p];
+                    }
+                    reaction.jacobian(t, u, jacobian);
+                    for (int s = 0; s < species; s++) {
+                        System.arraycopy(jacobian[s], 0, result, (p * species + s) * species, species);
+                    }
+                }
+            }
+        });
+        return result;
+    }
+
+    private boolean is_fixed(int axis, int coordinate) {
+        return (coordinate == 0 && boundary[axis][0] == Boundary.DIRICHLET)
+            || (coordinate == n[axis] - 1 && boundary[axis][1] == Boundary.DIRICHLET);
+    }
+
+    /**
+     * The index of the neighbour before a value along an axis.
+     */
+    private int lower(int index, int coordinate, int axis) {
+        if (coordinate > 0) {
+            return index - stride[axis];
+        } else if (boundary[axis][0] == Boundary.PERIODIC) {
+            return index + (n[axis] - 1) * stride[axis];
+        }
+        // the mirror image of the neighbour after, a Dirichlet point has no neighbours
+        return n[axis] > 1 ? index + stride[axis] : index;
+    }
+
+    /**
+     * The index of the neighbour after a value along an axis.
+     */
+    private int upper(int index, int coordinate, int axis) {
+        if (coordinate < n[axis] - 1) {
+            return index + stride[axis];
+        } else if (boundary[axis][1] == Boundary.PERIODIC) {
+            return index - (n[axis] - 1) * stride[axis];
+        }
+        return n[axis] > 1 ? index - stride[axis] : index;
+    }
+
+    /**
+     * Sweep all tiles of the grid, splitting them among the threads.
+     */
+    private void sweep(final int mode, final double t, final double[] y, final double[] x,
+                       final double[] reaction_jacobian, final double[] result) {
+        int tile_points = Math.max(1, points / tiles);
+        loop.run(tiles, Math.max(1, MIN_POINTS_PER_THREAD / tile_points), new ParallelLoop.Body() {
+            public void run(int from, int to) {
+                // the tiles write disjoint components of result
+                for (int tile = from; tile < to; tile++) {
+                    sweep_tile(mode, t, y, x, reaction_jacobian, result, tile);
+                }
+            }
+        });
+    }
+
+    /**
+     * Evaluate the terms of the mode at the points of a tile. The sums, and
+     * the Jacobian products at the base y, are of the values in y or, for
+     * the Jacobians, in x.
+     */
+    private void sweep_tile(int mode, double t, double[] y, double[] x, double[] reaction_jacobian,
+                            double[] result, int tile) {
+        double[][] buffer = buffers.get();
+        if (buffer == null) {
+            buffer = new double[2][species];
+            buffers.set(buffer);
+        }
+        double[] u = buffer[0];
+        double[] rate = buffer[1];
+        boolean reacting = reaction != null && (mode == F1 || mode == F || mode == JACOBIAN);
+        boolean advecting = mode == F1 || mode == F || mode == JACOBIAN;
+        boolean diffusing = mode != F1;
+        boolean linearized = mode == JACOBIAN || mode == JACOBIAN_F2;
+        double[] values = linearized ? x : y;
+        int i0 = (tile % tiles_x) * TILE_X;
+        int i1 = Math.min(n[0], i0 + TILE_X);
+        int j0 = (tile / tiles_x) * TILE_Y;
+        int j1 = Math.min(n[1], j0 + TILE_Y);
+        for (int k = 0; k < n[2]; k++) {
+            for (int j = j0; j < j1; j++) {
+                boolean fixed_row = is_fixed(1, j) || is_fixed(2, k);
+                int row = (k * n[1] + j) * n[0];
+                for (int i = i0; i < i1; i++) {
+                    int p = row + i;
+                    if (fixed_row || is_fixed(0, i)) {
+                        for (int s = 0; s < species; s++) {
+                            result[s * points + p] = 0.0;
+                        }
+                        continue;
+                    }
+                    if (reacting) {
+                        if (linearized) {
+                            int offset = p * species * species;
+                            for (int s = 0; s < species; s++) {
+                                double sum = 0.0;
+                                for (int r = 0; r < species; r++) {
+                                    sum += reaction_jacobian[offset + s * species + r] * x[r * points + p];
+                                }
+                                rate[s] = sum;
+                            }
+                        } else {
+                            for (int s = 0; s < species; s++) {
+                                u[s] = y[s * points + p];
+                            }
+                            reaction.rate(t, u, rate);
+                        }
+                    }
+                    for (int s = 0; s < species; s++) {
+                        int index = s * points + p;
+                        double sum = reacting ? rate[s] : 0.0;
+                        double coefficient = diffusing ? diffusion[s] : 0.0;
+                        for (int a = 0; a < dimension; a++) {
+                            int coordinate = a == 0 ? i : a == 1 ? j : k;
+                            int lo = lower(index, coordinate, a);
+                            int hi = upper(index, coordinate, a);
+                            if (coefficient != 0.0) {
+                                sum += coefficient * inverse_h[a] * inverse_h[a]
+                                       * (values[lo] - 2.0 * values[index] + values[hi]);
+                            }
+                            if (advecting && (velocity[s][a] != 0.0 || slope[s][a] != 0.0)) {
+                                double w = velocity[s][a] + slope[s][a] * y[index];
+                                // upwind differences
+                                int from = w > 0.0 ? lo : index;
+                                int to = w > 0.0 ? index : hi;
+                                if (linearized) {
+                                    sum -= (w * (x[to] - x[from]) + slope[s][a] * x[index] * (y[to] - y[from])) * inverse_h[a];
+                                } else {
+                                    sum -= w * (y[to] - y[from]) * inverse_h[a];
+                                }
+                            }
+                        }
+                        result[index] = sum;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Assemble the Jacobian of all terms, or of the diffusion only, in the
+     * same way as sweep_tile.
+     */
+    private SparseMatrix assemble(boolean full, double[] y, double[] reaction_jacobian) {
+        int size = get_size();
+        SparseMatrix jacobian = new SparseMatrix(size, size * (2 * dimension + 1 + (full ? species : 0)));
+        for (int s = 0; s < species; s++) {
+            for (int k = 0; k < n[2]; k++) {
+                for (int j = 0; j < n[1]; j++) {
+                    boolean fixed_row = is_fixed(1, j) || is_fixed(2, k);
+                    for (int i = 0; i < n[0]; i++) {
+                        int p = (k * n[1] + j) * n[0] + i;
+                        if (fixed_row || is_fixed(0, i)) {
+                            jacobian.end_row();
+                            continue;
+                        }
+                        int index = s * points + p;
+                        if (full && reaction_jacobian != null) {
+                            int offset = (p * species + s) * species;
+                            for (int r = 0; r < species; r++) {
+                                jacobian.add(r * points + p, reaction_jacobian[offset + r]);
+                            }
+                        }
+                        for (int a = 0; a < dimension; a++) {
+                            int coordinate = a == 0 ? i : a == 1 ? j : k;
+                            int lo = lower(index, coordinate, a);
+                            int hi = upper(index, coordinate, a);
+                            if (diffusion[s] != 0.0) {
+                                double c = diffusion[s] * inverse_h[a] * inverse_h[a];
+                                jacobian.add(lo, c);
+                                jacobian.add(index, -2.0 * c);
+                                jacobian.add(hi, c);
+                            }
+                            if (full && (velocity[s][a] != 0.0 || slope[s][a] != 0.0)) {
+                                double w = velocity[s][a] + slope[s][a] * y[index];
+                                int from = w > 0.0 ? lo : index;
+                                int to = w > 0.0 ? index : hi;
+                                jacobian.add(to, -w * inverse_h[a]);
+                                jacobian.add(from, w * inverse_h[a]);
+                                jacobian.add(index, -slope[s][a] * (y[to] - y[from]) * inverse_h[a]);
+                            }
+                        }
+                        jacobian.end_row();
+                    }
+                }
+            }
+        }
+        return jacobian;
+    }
+}
@@ -0,0 +1,42 @@
+/* ./ode/StepDensity.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.ode;
+
+/**
+ * The control function of an adaptive symplectic integrator that uses a
+ * Sundman time transformation with dt/dtau = 1/rho.
+ * <p>
+ * If sigma(q, p) is the desired stepsize up to a constant, then
+ * rho = 1/sigma and the control function is
+ * G(q, p) = -grad(sigma).f/sigma = -d/dt log(sigma), so that the auxiliary
+ * variable rho is updated by rho' = G(q, p)*rho in the transformed time. A
+ * positive value makes the steps smaller.
+ * <p>
+ * Ernst Hairer, Gustaf Söderlind. "Explicit, time reversible, adaptive step size control", SIAM Journal of Scientific Computing, vol 26, pg 1838-1851, 2005.
+ */
+public interface StepDensity {
+    /**
+     * Evaluate the control function, which must not modify its arguments.
+     *
+     * @param q The positions.
+     * @param p The momenta.
+     *
+     * @return The value of G(q, p).
+     */
+    public double evaluate(double[] q, double[] p);
+}
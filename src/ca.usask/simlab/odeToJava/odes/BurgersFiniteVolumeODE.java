@@ -0,0 +1,44 @@
+/* ./odes/BurgersFiniteVolumeODE.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.odes;
+
+import ca.usask.simlab.odeToJava.ode.FiniteVolumeRHS;
+
+/**
+ * An ODE derived from the finite volume discretization of the Burgers
+ * equation with diffusion, u_t + (u^2/2)_x = nu*u_xx, on a mesh of cells of
+ * any widths.
+ */
+public class BurgersFiniteVolumeODE extends FiniteVolumeRHS {
+    /*
+     * The constructor for the ODE.
+     */
+    public BurgersFiniteVolumeODE(double[] edges, double nu) {
+        super(edges, nu);
+    }
+
+    @Override
+    public double flux(double u) {
+        return 0.5 * u * u;
+    }
+
+    @Override
+    public double wave_speed(double u) {
+        return Math.abs(u);
+    }
+}
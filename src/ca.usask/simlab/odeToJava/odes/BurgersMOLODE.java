@@ -22,13 +22,15 @@ import org.jscience.mathematics.numbers.Float64;
 import org.jscience.mathematics.vectors.Float64Vector;
 import org.jscience.mathematics.vectors.Float64Matrix;
 import ca.usask.simlab.odeToJava.ode.AdditiveRHS;
+import ca.usask.simlab.odeToJava.ode.SampledRHS;
+import ca.usask.simlab.odeToJava.util.LinearOperator;
 
 /**
  * An ODE derived from the spatial discretization by finite differences of the Burgers advection equation with diffusion.
  * <p>
  * Uri Ascher, Steven Ruuth, Raymond Spiteri. "Implicit-explicit Runge-Kutta methods for time-dependent partial differential equations", Applied Numerical Mathematics, vol 25, pg 151-167, 1997.
  */
-public class BurgersMOLODE extends AdditiveRHS {
+public class BurgersMOLODE extends AdditiveRHS implements SampledRHS {
     private int n = 0;
 
     private double dx; // spatial stepsize
@@ -68,6 +70,24 @@ public class BurgersMOLODE extends AdditiveRHS {
         return Float64Vector.valueOf(yp);
     }
 
+    public int[] get_f1_dependencies(int component) {
+        if (component == 0 || component == n-1) {
+            return new int[0];
+        }
+        return new int[] {component-1, component};
+    }
+
+    public void f1(double t, double[] y, double[] yp, int[] components, int count) {
+        for (int c = 0; c < count; c++) {
+            int i = components[c];
+            if (i == 0 || i == n-1) {
+                yp[i] = 0.0;
+            } else {
+                yp[i] = y[i]*(y[i-1] - y[i]) / dx;
+            }
+        }
+    }
+
     @Override
     public Float64Vector f2(Float64 t, Float64Vector y) {
         double[] yp = new double[y.getDimension()];
@@ -97,4 +117,28 @@ public class BurgersMOLODE extends AdditiveRHS {
 
         return Float64Matrix.valueOf(jac);
     }
+
+    @Override
+    public Float64Matrix jacobian_f2(Float64 t, Float64Vector y) {
+        // the diffusion is the only linear part
+        return jacobian(t, y);
+    }
+
+    @Override
+    public LinearOperator jacobian_f2_operator(double t, double[] y) {
+        final double coeff = nu/(dx*dx);
+        return new LinearOperator() {
+            public int get_size() {
+                return n;
+            }
+
+            public void apply(double[] x, double[] result) {
+                result[0] = 0.0;
+                for (int i = 1; i < n-1; i++) {
+                    result[i] = coeff*(x[i-1] - 2.0*x[i] + x[i+1]);
+                }
+                result[n-1] = 0.0;
+            }
+        };
+    }
 }
@@ -0,0 +1,83 @@
+/* ./odes/LuoRudyCellModel.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.odes;
+
+import ca.usask.simlab.odeToJava.ode.CellModel;
+import ca.usask.simlab.odeToJava.util.LookupTable;
+import static ca.usask.simlab.odeToJava.odes.LuoRudyODE.*;
+
+/**
+ * The Luo-Rudy model of LuoRudyODE as a cell model for arrays of cells,
+ * with the same variables in the same order: the gates m, h, j, d, f, the
+ * calcium concentration, the gate X and the membrane potential.
+ * <p>
+ * Ching-hsing Luo and Yoram Rudy, "A Model of the Ventricular Cardiac Action Potential", Circulation Research, vol 68, pg 1501-1526, 1991.
+ */
+public class LuoRudyCellModel extends CellModel {
+    private LookupTable table;
+
+    @Override
+    public int get_number_variables() {
+        return 8;
+    }
+
+    @Override
+    public int get_potential_variable() {
+        return V;
+    }
+
+    /**
+     * Get the state of the model at rest, which is where the reference
+     * solution of LuoRudyODE ends.
+     *
+     * @return The resting values.
+     */
+    @Override
+    public double[] get_resting_values() {
+        return new double[] {2.18502963e-03, 9.75934411e-01, 9.48790712e-01, 3.43445246e-03,
+                             9.36184686e-01, 1.96273243e-04, 2.63446603e-01, -8.29141140e+01};
+    }
+
+    /**
+     * Evaluate the rates that only depend on the membrane potential from a
+     * table, which is shared by all cells.
+     *
+     * @param table The table from LuoRudyODE.create_lookup_table, or null to evaluate the rates directly.
+     */
+    public void set_lookup_table(LookupTable table) {
+        this.table = table;
+    }
+
+    @Override
+    public void f(double t, double[] y, double[] yp, int cells, int from, int to) {
+        LookupTable table = this.table;
+        int h = H * cells, j = J * cells, d = D * cells, f = F * cells;
+        int ca = CA * cells, x = X * cells, v = V * cells;
+        for (int i = from; i < to; i++) {
+            double potential = y[v + i];
+            yp[i] = gate_rate(M, y[i], potential, table);
+            yp[h + i] = gate_rate(H, y[h + i], potential, table);
+            yp[j + i] = gate_rate(J, y[j + i], potential, table);
+            yp[d + i] = gate_rate(D, y[d + i], potential, table);
+            yp[f + i] = gate_rate(F, y[f + i], potential, table);
+            yp[ca + i] = calcium_rate(y[d + i], y[f + i], y[ca + i], potential);
+            yp[x + i] = gate_rate(X, y[x + i], potential, table);
+            yp[v + i] = potential_rate(y[i], y[h + i], y[j + i], y[d + i], y[f + i], y[ca + i], y[x + i], potential, table);
+        }
+    }
+}
@@ -19,14 +19,49 @@ package ca.usask.simlab.odeToJava.odes;
 
 import org.jscience.mathematics.numbers.Float64;
 import org.jscience.mathematics.vectors.Float64Vector;
+import ca.usask.simlab.odeToJava.ode.GatingRHS;
+import ca.usask.simlab.odeToJava.ode.PartitionedRHS;
 import ca.usask.simlab.odeToJava.ode.RHS;
+import ca.usask.simlab.odeToJava.ode.RateFunctions;
+import ca.usask.simlab.odeToJava.util.LookupTable;
 
 /**
  * An ODE describing cardiac electrical electrical activity in the heart.
  * <p>
+ * The components can be evaluated separately for multirate methods, which
+ * find the fast ones, mostly the membrane potential and the m gate during
+ * the upstroke, from their error estimates. The gates have the form
+ * dy/dt = (y_inf - y)/tau, so Rush-Larsen methods can update them with the
+ * exponential. The rates that only depend on the membrane potential can be
+ * evaluated from a LookupTable instead of the exponentials.
+ * <p>
  * Ching-hsing Luo and Yoram Rudy, "A Model of the Ventricular Cardiac Action Potential", Circulation Research, vol 68, pg 1501-1526, 1991.
  */    
-public class LuoRudyODE extends RHS {
+public class LuoRudyODE extends RHS implements PartitionedRHS, GatingRHS, RateFunctions {
+    // the components of the gates
+    static final int M = 0, H = 1, J = 2, D = 3, F = 4, CA = 5, X = 6, V = 7;
+    private static final int[] GATES = {M, H, J, D, F, X};
+    // the rates of the potassium currents after the rates of the gates
+    private static final int XI = 12, K1INF = 13, KP = 14, RATES = 15;
+
+    /**
+     * The default smallest membrane potential of a table of the rates.
+     */
+    public static final double DEFAULT_TABLE_MIN = -100.0;
+
+    /**
+     * The default largest membrane potential of a table of the rates.
+     */
+    public static final double DEFAULT_TABLE_MAX = 80.0;
+
+    /**
+     * The default distance between the nodes of a table of the rates, which
+     * is exact in binary so the breakpoints and -77 are exact nodes.
+     */
+    public static final double DEFAULT_TABLE_STEP = 1.0 / 32.0;
+
+    private LookupTable table;
+
     @Override
     public Float64Vector f(Float64 t, Float64Vector y) {
         Float64Vector yp;
@@ -38,91 +73,302 @@ public class LuoRudyODE extends RHS {
     public int get_size() {
         return 8;
     }
+
+    public void f(double t, double[] y, double[] yp, int[] components, int count) {
+        Float64 time = Float64.valueOf(t);
+        Float64Vector values = Float64Vector.valueOf(y);
+        for (int m = 0; m < count; m++) {
+            int i = components[m];
+            switch (i) {
+                case 0:
+                    yp[i] = mDot(time, values);
+                    break;
+                case 1:
+                    yp[i] = hDot(time, values);
+                    break;
+                case 2:
+                    yp[i] = jDot(time, values);
+                    break;
+                case 3:
+                    yp[i] = dDot(time, values);
+                    break;
+                case 4:
+                    yp[i] = fDot(time, values);
+                    break;
+                case 5:
+                    yp[i] = caDot(time, values);
+                    break;
+                case 6:
+                    yp[i] = xDot(time, values);
+                    break;
+                default:
+                    yp[i] = vDot(time, values);
+                    break;
+            }
+        }
+    }
+
+    public int[] get_fast_components() {
+        return null;
+    }
     
+    public int[] get_gating_components() {
+        return GATES.clone();
+    }
+
+    public void gating_rates(double t, double[] y, double[] y_inf, double[] tau) {
+        double v = y[7];
+        if (table != null) {
+            for (int i = 0; i < GATES.length; i++) {
+                y_inf[i] = table.evaluate(2 * i, v);
+                tau[i] = 1.0 / table.evaluate(2 * i + 1, v);
+            }
+            return;
+        }
+        for (int i = 0; i < GATES.length; i++) {
+            double alpha = alpha(GATES[i], v);
+            double beta = beta(GATES[i], v);
+            y_inf[i] = alpha / (alpha + beta);
+            tau[i] = 1.0 / (alpha + beta);
+        }
+    }
+
+    public int get_number_rates() {
+        return RATES;
+    }
+
+    /**
+     * Evaluate the rates that only depend on the membrane potential: the
+     * steady state and the inverse time constant of each gate, in the order
+     * of get_gating_components(), followed by the rates of the time-dependent,
+     * time-independent and plateau potassium currents.
+     *
+     * @param v      The membrane potential.
+     * @param values The array that receives the rates.
+     */
+    public void rates(double v, double[] values) {
+        for (int i = 0; i < GATES.length; i++) {
+            double alpha = alpha(GATES[i], v);
+            double beta = beta(GATES[i], v);
+            values[2 * i] = alpha / (alpha + beta);
+            values[2 * i + 1] = alpha + beta;
+        }
+        values[XI] = direct_rate(XI, v);
+        values[K1INF] = direct_rate(K1INF, v);
+        values[KP] = direct_rate(KP, v);
+    }
+
+    public double[] get_breakpoints() {
+        return new double[] {-100.0, -40.0};
+    }
+
+    /**
+     * Evaluate the rates that only depend on the membrane potential from a
+     * table, which is shared by copies of the ODE made with the same table.
+     *
+     * @param table The table of the rates of this ODE from create_lookup_table, or null to evaluate them directly.
+     */
+    public void set_lookup_table(LookupTable table) {
+        this.table = table;
+    }
+
+    /**
+     * Tabulate the rates that only depend on the membrane potential.
+     *
+     * @param min  The smallest membrane potential of the table.
+     * @param max  The largest membrane potential of the table.
+     * @param step The distance between the nodes, which must divide the distance from min to -100 and -40.
+     *
+     * @return The table, to be given to set_lookup_table.
+     */
+    public static LookupTable create_lookup_table(double min, double max, double step) {
+        return new LookupTable(new LuoRudyODE(), min, max, step);
+    }
+
+    /**
+     * Tabulate the rates with the default range and step.
+     *
+     * @return The table, to be given to set_lookup_table.
+     */
+    public static LookupTable create_lookup_table() {
+        return create_lookup_table(DEFAULT_TABLE_MIN, DEFAULT_TABLE_MAX, DEFAULT_TABLE_STEP);
+    }
+
+    /*
+     * The rate of change of a gate, (y_inf - y)/tau.
+     */
+    private double gateDot(int gate, Float64Vector y) {
+        return gate_rate(gate, y.getValue(gate), y.getValue(7), table);
+    }
+
+    /*
+     * The rate of change of a gate with the value y at the membrane
+     * potential v, with the rates from the table if it is not null.
+     */
+    static double gate_rate(int gate, double y, double v, LookupTable table) {
+        if (table != null) {
+            int i = gate == X ? 5 : gate;
+            return (table.evaluate(2 * i, v) - y) * table.evaluate(2 * i + 1, v);
+        }
+        double alpha = alpha(gate, v);
+        double beta = beta(gate, v);
+        return (alpha / (alpha + beta) - y) / (1.0 / (alpha + beta));
+    }
+
+    /*
+     * One of the rates of the currents that only depend on the membrane
+     * potential, from the table if it is not null.
+     */
+    private static double rate(int function, double v, LookupTable table) {
+        if (table != null) {
+            return table.evaluate(function, v);
+        }
+        return direct_rate(function, v);
+    }
+
+    /*
+     * One of the rates of the currents evaluated without the table.
+     */
+    private static double direct_rate(int function, double v) {
+        switch (function) {
+            case XI:
+                if (v <= -100.0) {
+                    return 1;
+                } else if (v == -77.0) {
+                    return 0.6088832917; // made change here
+                }
+                return 2.837 * (Math.exp(0.04 * (v + 77.0)) - 1.0) / ((v + 77.0) * Math.exp(0.04 * (v + 35.0)));
+            case K1INF:
+                double E_K1 = -87.2;
+                double alpha_K1 = 1.02 / (1.0 + Math.exp(0.2385 * (v - E_K1 - 59.215)));
+                double beta_K1 = (0.49124 * Math.exp(0.08032 * (v - E_K1 + 5.476)) + Math.exp(0.06175 * (v - E_K1 - 594.31))) / (1 + Math.exp(-0.5143 * (v - E_K1 + 4.753)));
+                return alpha_K1 / (alpha_K1 + beta_K1);
+            default:
+                return 1.0 / (1.0 + Math.exp((7.488 - v) / 5.98));
+        }
+    }
+
+    /*
+     * The opening rate of a gate at the membrane potential v.
+     */
+    private static double alpha(int gate, double v) {
+        switch (gate) {
+            case M:
+                return 0.32 * (v + 47.13) / (1.0 - Math.exp(-0.1 * (v + 47.13)));
+            case H:
+                if (v < -40.0) {
+                    return 0.135 * Math.exp((v + 80) / -6.8);
+                }
+                return 0.0;
+            case J:
+                if (v < -40.0) {
+                    return (-1.2714 * Math.pow(10.0, -5.0) * Math.exp(0.2444 * v) - 3.474 * Math.pow(10, -5.0) * Math.exp(-0.04391 * v)) * (v + 37.78) / (1 + Math.exp(0.311 * (v + 79.23)));
+                }
+                return 0.0;
+            case D:
+                return 0.095 * Math.exp(-0.01 * (v - 5)) / (1.0 + Math.exp(-0.072 * (v - 5.0)));
+            case F:
+                return 0.012 * Math.exp(-0.008 * (v + 28.0)) / (1.0 + Math.exp(0.15 * (v + 28.0)));
+            default:
+                return 0.0005 * Math.exp(0.083 * (v + 50)) / (1.0 + Math.exp(0.057 * (v + 50.0)));
+        }
+    }
+
+    /*
+     * The closing rate of a gate at the membrane potential v.
+     */
+    private static double beta(int gate, double v) {
+        switch (gate) {
+            case M:
+                return 0.08 * Math.exp(-v / 11.0);
+            case H:
+                if (v < -40.0) {
+                    return 3.56 * Math.exp(0.079 * v + 3.1 * Math.pow(10, 5) * Math.exp(0.35 * v));
+                }
+                return 1 / (0.13 * (1 + Math.exp((v + 10.66) / -11.1)));
+            case J:
+                if (v < -40.0) {
+                    return 0.1212 * Math.exp(-0.01052 * v) / (1 + Math.exp(-0.1378 * (v + 40.14)));
+                }
+                return 0.3 * Math.exp(-2.535 * Math.pow(10.0, -7.0) * v) / (1 + Math.exp(-0.1 * (v + 32.0)));
+            case D:
+                return 0.07 * Math.exp(-0.017 * (v + 44.0)) / (1.0 + Math.exp(0.05 * (v + 44.0)));
+            case F:
+                return 0.0065 * Math.exp(-0.02 * (v + 30.0)) / (1.0 + Math.exp(-0.2 * (v + 30.0)));
+            default:
+                return 0.0013 * Math.exp(-0.06 * (v + 20.0)) / (1.0 + Math.exp(-0.04 * (v + 20.0)));
+        }
+    }
+
     private double mDot(Float64 t, Float64Vector y) {
-        double alpha_m = 0.32 * (y.getValue(7) + 47.13) / (1.0 - Math.exp(-0.1 * (y.getValue(7) + 47.13)));
-        double beta_m = 0.08 * Math.exp(-y.getValue(7) / 11.0);
-        double dmdt = (alpha_m / (alpha_m + beta_m) - y.getValue(0)) / (1.0 / (alpha_m + beta_m));
-        return dmdt;
+        return gateDot(M, y);
     }
-    
+
     private double hDot(Float64 t, Float64Vector y) {
-        double alpha_h, beta_h;
-        if (y.getValue(7) < -40.0) {
-            alpha_h = 0.135 * Math.exp((y.getValue(7) + 80) / -6.8);
-            beta_h = 3.56 * Math.exp(0.079 * y.getValue(7) + 3.1 * Math.pow(10, 5) * Math.exp(0.35 * y.getValue(7)));
-        } else {
-            alpha_h = 0.0;
-            beta_h = 1 / (0.13 * (1 + Math.exp((y.getValue(7) + 10.66) / -11.1)));
-        }
-        double dhdt = (alpha_h / (alpha_h + beta_h) - y.getValue(1)) / (1.0 / (alpha_h + beta_h));
-        return dhdt;
-        
+        return gateDot(H, y);
     }
-    
+
     private double jDot(Float64 t, Float64Vector y) {
-        double alpha_j, beta_j;
-        
-        if (y.getValue(7) < -40.0) {
-            alpha_j = (-1.2714 * Math.pow(10.0, -5.0) * Math.exp(0.2444 * y.getValue(7)) - 3.474 * Math.pow(10, -5.0) * Math.exp(-0.04391 * y.getValue(7))) * (y.getValue(7) + 37.78) / (1 + Math.exp(0.311 * (y.getValue(7) + 79.23)));
-            beta_j = 0.1212 * Math.exp(-0.01052 * y.getValue(7)) / (1 + Math.exp(-0.1378 * (y.getValue(7) + 40.14)));
-        } else {
-            alpha_j = 0.0;
-            beta_j = 0.3 * Math.exp(-2.535 * Math.pow(10.0, -7.0) * y.getValue(7)) / (1 + Math.exp(-0.1 * (y.getValue(7) + 32.0)));
-        }
-        double djdt = (alpha_j / (alpha_j + beta_j) - y.getValue(2)) / (1.0 / (alpha_j + beta_j));
-        return djdt;
+        return gateDot(J, y);
     }
-    
+
     private double dDot(Float64 t, Float64Vector y) {
-        double alpha_d = 0.095 * Math.exp(-0.01 * (y.getValue(7) - 5)) / (1.0 + Math.exp(-0.072 * (y.getValue(7) - 5.0)));
-        double beta_d = 0.07 * Math.exp(-0.017 * (y.getValue(7) + 44.0)) / (1.0 + Math.exp(0.05 * (y.getValue(7) + 44.0)));
-        double dddt = (alpha_d / (alpha_d + beta_d) - y.getValue(3)) / (1.0 / (alpha_d + beta_d));
-        return dddt;
+        return gateDot(D, y);
     }
-    
+
     private double fDot(Float64 t, Float64Vector y) {
-        double alpha_f = 0.012 * Math.exp(-0.008 * (y.getValue(7) + 28.0)) / (1.0 + Math.exp(0.15 * (y.getValue(7) + 28.0)));
-        double beta_f = 0.0065 * Math.exp(-0.02 * (y.getValue(7) + 30.0)) / (1.0 + Math.exp(-0.2 * (y.getValue(7) + 30.0)));
-        double dfdt = (alpha_f / (alpha_f + beta_f) - y.getValue(4)) / (1.0 / (alpha_f + beta_f));
-        return dfdt;
+        return gateDot(F, y);
     }
     
     private double caDot(Float64 t, Float64Vector y) {
-        double Ca = y.getValue(5);
+        return calcium_rate(y.getValue(3), y.getValue(4), y.getValue(5), y.getValue(7));
+    }
+
+    /*
+     * The rate of change of the calcium concentration Ca with the gates d
+     * and f at the membrane potential v.
+     */
+    static double calcium_rate(double d, double f, double Ca, double v) {
         double Gbar_si = 0.09;
         double E_si = 7.7 - 13.0287 * Math.log(Ca);
-        double I_si = Gbar_si * y.getValue(3) * y.getValue(4) * (y.getValue(7) - E_si);
+        double I_si = Gbar_si * d * f * (v - E_si);
         double dCadt = -Math.pow(10.0, -4.0) * I_si + 0.07 * (Math.pow(10.0, -4.0) - Ca);
         return dCadt;
         
     }
     
     private double xDot(Float64 t, Float64Vector y) {
-        double alpha_X = 0.0005 * Math.exp(0.083 * (y.getValue(7) + 50)) / (1.0 + Math.exp(0.057 * (y.getValue(7) + 50.0)));
-        double beta_X = 0.0013 * Math.exp(-0.06 * (y.getValue(7) + 20.0)) / (1.0 + Math.exp(-0.04 * (y.getValue(7) + 20.0)));
-        double dXdt = (alpha_X / (alpha_X + beta_X) - y.getValue(6)) / (1.0 / (alpha_X + beta_X));
-        return dXdt;
-        
+        return gateDot(X, y);
     }
     
     public double vDot(Float64 t, Float64Vector y) {
+        return potential_rate(y.getValue(0), y.getValue(1), y.getValue(2), y.getValue(3), y.getValue(4),
+                              y.getValue(5), y.getValue(6), y.getValue(7), table);
+    }
+
+    /*
+     * The rate of change of the membrane potential v with the gates m, h, j,
+     * d, f and X and the calcium concentration Ca, with the rates from the
+     * table if it is not null.
+     */
+    static double potential_rate(double m, double h, double j, double d, double f, double Ca, double X, double v,
+                                 LookupTable table) {
         double C = 1;
         
         double Gbar_Na = 23.0; // maximum conductance of the sodium channel
         double E_Na = 54.4; // reversal potential for sodium
-        double I_Na = Gbar_Na * Math.pow(y.getValue(0), 3) * y.getValue(1) * y.getValue(2) * (y.getValue(7) - E_Na); // Fast
+        double I_Na = Gbar_Na * Math.pow(m, 3) * h * j * (v - E_Na); // Fast
         // sodium
         // current
         
         double Gbar_si = 0.09; // maximum conductance of the calcium channel
         
-        double E_si = 7.7 - 13.0287 * Math.log(y.getValue(5)); // Reversal
+        double E_si = 7.7 - 13.0287 * Math.log(Ca); // Reversal
         // potential
         // for
         // calcium
         
-        double I_si = Gbar_si * y.getValue(3) * y.getValue(4) * (y.getValue(7) - E_si); // Slow
+        double I_si = Gbar_si * d * f * (v - E_si); // Slow
         // inward
         // current
         // (calcium)
@@ -130,41 +376,32 @@ public class LuoRudyODE extends RHS {
         double Gbar_K = 0.282; // maximum conductance of the potassium channel
         // "K"
         double E_K = -77.0; // reversal potential of K
-        double Xi;
-        if (y.getValue(7) <= -100.0) {
-            Xi = 1;
-        } else if (y.getValue(7) == -77.0) {
-            Xi = 0.6088832917; // made change here
-        } else {
-            Xi = 2.837 * (Math.exp(0.04 * (y.getValue(7) + 77.0)) - 1.0) / ((y.getValue(7) + 77.0) * Math.exp(0.04 * (y.getValue(7) + 35.0)));
-        }
+        double Xi = rate(XI, v, table);
         
-        double I_K = Gbar_K * y.getValue(6) * Xi * (y.getValue(7) - E_K); // time-dependent
+        double I_K = Gbar_K * X * Xi * (v - E_K); // time-dependent
         // potassium
         // current
         
         double Gbar_K1 = 0.6047; // maximum conductance of the potassium
         // channel "K1"
         double E_K1 = -87.2; // reversal potential of K1
-        double alpha_K1 = 1.02 / (1.0 + Math.exp(0.2385 * (y.getValue(7) - E_K1 - 59.215)));
-        double beta_K1 = (0.49124 * Math.exp(0.08032 * (y.getValue(7) - E_K1 + 5.476)) + Math.exp(0.06175 * (y.getValue(7) - E_K1 - 594.31))) / (1 + Math.exp(-0.5143 * (y.getValue(7) - E_K1 + 4.753)));
-        double K1inf = alpha_K1 / (alpha_K1 + beta_K1);
-        double I_K1 = Gbar_K1 * K1inf * (y.getValue(7) - E_K1); // time-independent
+        double K1inf = rate(K1INF, v, table);
+        double I_K1 = Gbar_K1 * K1inf * (v - E_K1); // time-independent
         // potassium
         // current
         
         double Gbar_Kp = 0.0183; // maximum conductance of the potassium
         // channel "Kp"
         double E_Kp = -87.2; // reversal potential of Kp
-        double Kp = 1.0 / (1.0 + Math.exp((7.488 - y.getValue(7)) / 5.98));
-        double I_Kp = Gbar_Kp * Kp * (y.getValue(7) - E_Kp); // Plateau
+        double Kp = rate(KP, v, table);
+        double I_Kp = Gbar_Kp * Kp * (v - E_Kp); // Plateau
         // potassium
         // current
         
         double Gbar_b = 0.03921; // maximum conductance of the potassium
         // channel "b"
         double E_b = -59.87; // reversal potential of b
-        double I_b = Gbar_b * (y.getValue(7) - E_b); // background potassium
+        double I_b = Gbar_b * (v - E_b); // background potassium
         // current
         
         double dVmdt = -(1.0 / C) * (I_Na + I_si + I_K + I_K1 + I_Kp + I_b);
@@ -0,0 +1,442 @@
+/* ./odes/NBodyODE.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.odes;
+
+import ca.usask.simlab.odeToJava.ode.SecondOrderRHS;
+import ca.usask.simlab.odeToJava.util.ParallelLoop;
+
+/**
+ * The gravitational N-body problem in two or three dimensions for any number
+ * of bodies.
+ * <p>
+ * The positions are stored coordinate by coordinate as in PleiadesODE:
+ * coordinate d of body i is component d*N + i of the positions, followed by
+ * the velocities in the same layout. With the masses 1, ..., 7 in the plane
+ * it is the Pleiades problem.
+ * <p>
+ * The direct sum computes every pair force once and applies it to both
+ * bodies. For many bodies the Barnes-Hut tree approximates the bodies in a
+ * cell that is small compared to its distance by their centre of mass, which
+ * costs O(N log N) instead of O(N^2). Neither allocates during an evaluation
+ * once the tree has grown to its size.
+ * <p>
+ * Josh Barnes and Piet Hut. "A hierarchical O(N log N) force-calculation algorithm", Nature, vol 324, pg 446-449, 1986.
+ */
+public class NBodyODE extends SecondOrderRHS {
+    // the fewest bodies for each thread
+    private static final int MIN_BODIES_PER_THREAD = 64;
+    // the deepest a cell of the tree is divided, bodies closer than this share a cell
+    private static final int MAX_DEPTH = 48;
+    // the marks of a cell without bodies and of a cell divided into children
+    private static final int EMPTY = -1;
+    private static final int DIVIDED = -2;
+
+    private final double[] mass;
+    private final int n;
+    private final int dimension;
+    private double g = 1.0;
+    private double softening2 = 0.0;
+    private double theta = 0.0;
+    private final ParallelLoop loop = new ParallelLoop("n-body");
+
+    // the tree, a divided cell c has the children cell_child[c] to cell_child[c] + 2^dimension - 1
+    private int cells;
+    // the first body of a leaf, EMPTY or DIVIDED, and the next body of a leaf after each body
+    private int[] cell_body;
+    private int[] body_next;
+    private int[] cell_child;
+    private double[] cell_size;
+    private double[] cell_mass;
+    // the centres of the cells and their centres of mass, coordinate d of cell c is at c*dimension + d
+    private double[] cell_centre;
+    private double[] cell_com;
+    private final ThreadLocal<int[]> stacks = new ThreadLocal<int[]>();
+
+    /**
+     * The constructor for the ODE.
+     *
+     * @param mass      The masses of the bodies.
+     * @param dimension The dimension of space, 2 or 3.
+     */
+    public NBodyODE(double[] mass, int dimension) {
+        if (dimension != 2 && dimension != 3) {
+            throw new IllegalArgumentException("Only 2 or 3 dimensions are supported");
+        }
+        this.mass = mass.clone();
+        this.dimension = dimension;
+        n = mass.length;
+    }
+
+    @Override
+    public int get_size() {
+        return 2 * dimension * n;
+    }
+
+    /**
+     * Get the number of bodies.
+     *
+     * @return The number of bodies.
+     */
+    public int get_number_bodies() {
+        return n;
+    }
+
+    /**
+     * Get the dimension of space.
+     *
+     * @return 2 or 3.
+     */
+    public int get_dimension() {
+        return dimension;
+    }
+
+    /**
+     * Set the gravitational constant, 1 by default.
+     *
+     * @param g The gravitational constant.
+     */
+    public void set_gravitational_constant(double g) {
+        this.g = g;
+    }
+
+    /**
+     * Set the softening length, which replaces the distance r between two
+     * bodies by sqrt(r^2 + epsilon^2) so close encounters stay bounded.
+     * There is no softening by default.
+     *
+     * @param epsilon The softening length.
+     */
+    public void set_softening(double epsilon) {
+        softening2 = epsilon * epsilon;
+    }
+
+    /**
+     * Set the opening angle of the Barnes-Hut approximation. A cell of width
+     * s at distance d from a body is replaced by its centre of mass when
+     * s/d is less than theta, so smaller angles are more accurate. An angle
+     * of 0, the default, uses the exact direct sum.
+     *
+     * @param theta The opening angle, typically between 0.3 and 1.
+     */
+    public void set_opening_angle(double theta) {
+        if (theta < 0.0) {
+            throw new IllegalArgumentException("The opening angle must not be negative");
+        }
+        this.theta = theta;
+    }
+
+    /**
+     * Set the number of threads that compute the accelerations. Each thread
+     * takes a range of bodies, so the direct sum computes every pair force
+     * twice, once for each body, when more than one thread is used.
+     *
+     * @param threads The number of threads, 1 computes in the calling thread only.
+     */
+    public void set_threads(int threads) {
+        loop.set_threads(threads);
+    }
+
+    @Override
+    public void acceleration(double t, final double[] q, final double[] result) {
+        if (theta > 0.0) {
+            build_tree(q);
+            loop.run(n, MIN_BODIES_PER_THREAD, new ParallelLoop.Body() {
+                public void run(int from, int to) {
+                    tree_acceleration(q, result, from, to);
+                }
+            });
+        } else if (loop.get_threads() > 1 && n >= 2 * MIN_BODIES_PER_THREAD) {
+            loop.run(n, MIN_BODIES_PER_THREAD, new ParallelLoop.Body() {
+                public void run(int from, int to) {
+                    direct_acceleration(q, result, from, to);
+                }
+            });
+        } else {
+            pair_acceleration(q, result);
+        }
+    }
+
+    /**
+     * The direct sum over the pairs, each pair force is applied to both bodies.
+     */
+    private void pair_acceleration(double[] q, double[] result) {
+        int y = n, z = 2 * n;
+        for (int i = 0; i < result.length; i++) {
+            result[i] = 0.0;
+        }
+        for (int i = 0; i < n; i++) {
+            double xi = q[i], yi = q[y + i], zi = dimension == 3 ? q[z + i] : 0.0;
+            double ax = 0.0, ay = 0.0, az = 0.0;
+            for (int j = i + 1; j < n; j++) {
+                double dx = q[j] - xi;
+                double dy = q[y + j] - yi;
+                double dz = dimension == 3 ? q[z + j] - zi : 0.0;
+                double r2 = dx * dx + dy * dy + dz * dz + softening2;
+                double inverse = g / (r2 * Math.sqrt(r2));
+                double mi = mass[i] * inverse, mj = mass[j] * inverse;
+                ax += mj * dx;
+                ay += mj * dy;
+                az += mj * dz;
+                result[j] -= mi * dx;
+                result[y + j] -= mi * dy;
+                if (dimension == 3) {
+                    result[z + j] -= mi * dz;
+                }
+            }
+            result[i] += ax;
+            result[y + i] += ay;
+            if (dimension == 3) {
+                result[z + i] += az;
+            }
+        }
+    }
+
+    /**
+     * The direct sum for a range of bodies, which only writes their accelerations.
+     */
+    private void direct_acceleration(double[] q, double[] result, int from, int to) {
+        int y = n, z = 2 * n;
+        for (int i = from; i < to; i++) {
+            double xi = q[i], yi = q[y + i], zi = dimension == 3 ? q[z + i] : 0.0;
+            double ax = 0.0, ay = 0.0, az = 0.0;
+            for (int j = 0; j < n; j++) {
+                if (j == i) {
+                    continue;
+                }
+                double dx = q[j] - xi;
+                double dy = q[y + j] - yi;
+                double dz = dimension == 3 ? q[z + j] - zi : 0.0;
+                double r2 = dx * dx + dy * dy + dz * dz + softening2;
+                double mj = g * mass[j] / (r2 * Math.sqrt(r2));
+                ax += mj * dx;
+                ay += mj * dy;
+                az += mj * dz;
+            }
+            result[i] = ax;
+            result[y + i] = ay;
+            if (dimension == 3) {
+                result[z + i] = az;
+            }
+        }
+    }
+
+    /**
+     * Build the tree of the bodies, a quadtree in two dimensions and an octree
+     * in three, with the total mass and centre of mass of every cell.
+     */
+    private void build_tree(double[] q) {
+        // the root is the smallest square or cube around the bodies
+        double width = 0.0;
+        if (cell_body == null) {
+            allocate(4 * n + 1);
+            body_next = new int[n];
+        }
+        cells = 0;
+        int root = new_cell();
+        for (int d = 0; d < dimension; d++) {
+            double low = Double.POSITIVE_INFINITY;
+            double high = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                low = Math.min(low, q[d * n + i]);
+                high = Math.max(high, q[d * n + i]);
+            }
+            width = Math.max(width, high - low);
+            cell_centre[root * dimension + d] = 0.5 * (low + high);
+        }
+        cell_size[root] = width * (1.0 + 1e-10) + Double.MIN_NORMAL;
+        for (int i = 0; i < n; i++) {
+            body_next[i] = EMPTY;
+            insert(q, root, i);
+        }
+        summarize(q, root);
+    }
+
+    private void allocate(int capacity) {
+        int[] body = new int[capacity];
+        int[] child = new int[capacity];
+        double[] size = new double[capacity];
+        double[] centre = new double[capacity * dimension];
+        if (cell_body != null) {
+            System.arraycopy(cell_body, 0, body, 0, cells);
+            System.arraycopy(cell_child, 0, child, 0, cells);
+            System.arraycopy(cell_size, 0, size, 0, cells);
+            System.arraycopy(cell_centre, 0, centre, 0, cells * dimension);
+        }
+        cell_body = body;
+        cell_child = child;
+        cell_size = size;
+        cell_centre = centre;
+        cell_mass = new double[capacity];
+        cell_com = new double[capacity * dimension];
+    }
+
+    private int new_cell() {
+        if (cells == cell_body.length) {
+            allocate(2 * cells);
+        }
+        cell_body[cells] = EMPTY;
+        return cells++;
+    }
+
+    private void insert(double[] q, int cell, int body) {
+        for (int depth = 0; ; depth++) {
+            if (cell_body[cell] == EMPTY) {
+                cell_body[cell] = body;
+                return;
+            }
+            if (cell_body[cell] >= 0) {
+                if (depth >= MAX_DEPTH) {
+                    // the bodies are too close to separate, so the leaf keeps a list of them
+                    body_next[body] = body_next[cell_body[cell]];
+                    body_next[cell_body[cell]] = body;
+                    return;
+                }
+                // divide the leaf and move its body down
+                int old = cell_body[cell];
+                divide(cell);
+                cell_body[child_of(q, cell, old)] = old;
+            }
+            cell = child_of(q, cell, body);
+        }
+    }
+
+    private void divide(int cell) {
+        int children = 1 << dimension;
+        int first = cells;
+        for (int k = 0; k < children; k++) {
+            new_cell();
+        }
+        cell_body[cell] = DIVIDED;
+        cell_child[cell] = first;
+        double quarter = 0.25 * cell_size[cell];
+        for (int k = 0; k < children; k++) {
+            cell_size[first + k] = 0.5 * cell_size[cell];
+            for (int d = 0; d < dimension; d++) {
+                double offset = ((k >> d) & 1) == 1 ? quarter : -quarter;
+                cell_centre[(first + k) * dimension + d] = cell_centre[cell * dimension + d] + offset;
+            }
+        }
+    }
+
+    private int child_of(double[] q, int cell, int body) {
+        int k = 0;
+        for (int d = 0; d < dimension; d++) {
+            if (q[d * n + body] >= cell_centre[cell * dimension + d]) {
+                k |= 1 << d;
+            }
+        }
+        return cell_child[cell] + k;
+    }
+
+    /**
+     * Find the masses and centres of mass of a cell and everything below it.
+     */
+    private void summarize(double[] q, int cell) {
+        double total = 0.0;
+        int offset = cell * dimension;
+        for (int d = 0; d < dimension; d++) {
+            cell_com[offset + d] = 0.0;
+        }
+        if (cell_body[cell] == DIVIDED) {
+            int children = 1 << dimension;
+            for (int k = 0; k < children; k++) {
+                int child = cell_child[cell] + k;
+                summarize(q, child);
+                total += cell_mass[child];
+                for (int d = 0; d < dimension; d++) {
+                    cell_com[offset + d] += cell_mass[child] * cell_com[child * dimension + d];
+                }
+            }
+        } else {
+            for (int body = cell_body[cell]; body != EMPTY; body = body_next[body]) {
+                total += mass[body];
+                for (int d = 0; d < dimension; d++) {
+                    cell_com[offset + d] += mass[body] * q[d * n + body];
+                }
+            }
+        }
+        cell_mass[cell] = total;
+        if (total > 0.0) {
+            for (int d = 0; d < dimension; d++) {
+                cell_com[offset + d] /= total;
+            }
+        }
+    }
+
+    /**
+     * The accelerations of a range of bodies from the tree.
+     */
+    private void tree_acceleration(double[] q, double[] result, int from, int to) {
+        int[] stack = stacks.get();
+        if (stack == null) {
+            stack = new int[(MAX_DEPTH + 2) << dimension];
+            stacks.set(stack);
+        }
+        double theta2 = theta * theta;
+        int y = n, z = 2 * n;
+        for (int i = from; i < to; i++) {
+            double xi = q[i], yi = q[y + i], zi = dimension == 3 ? q[z + i] : 0.0;
+            double ax = 0.0, ay = 0.0, az = 0.0;
+            int top = 0;
+            stack[top++] = 0;
+            while (top > 0) {
+                int cell = stack[--top];
+                if (cell_body[cell] == DIVIDED) {
+                    int offset = cell * dimension;
+                    double dx = cell_com[offset] - xi;
+                    double dy = cell_com[offset + 1] - yi;
+                    double dz = dimension == 3 ? cell_com[offset + 2] - zi : 0.0;
+                    double r2 = dx * dx + dy * dy + dz * dz;
+                    double size = cell_size[cell];
+                    if (size * size < theta2 * r2) {
+                        // the cell is far enough to act as one body at its centre of mass
+                        r2 += softening2;
+                        double m = g * cell_mass[cell] / (r2 * Math.sqrt(r2));
+                        ax += m * dx;
+                        ay += m * dy;
+                        az += m * dz;
+                    } else {
+                        int children = 1 << dimension;
+                        for (int k = 0; k < children; k++) {
+                            stack[top++] = cell_child[cell] + k;
+                        }
+                    }
+                } else {
+                    for (int j = cell_body[cell]; j != EMPTY; j = body_next[j]) {
+                        if (j == i) {
+                            continue;
+                        }
+                        double dx = q[j] - xi;
+                        double dy = q[y + j] - yi;
+                        double dz = dimension == 3 ? q[z + j] - zi : 0.0;
+                        double r2 = dx * dx + dy * dy + dz * dz + softening2;
+                        double m = g * mass[j] / (r2 * Math.sqrt(r2));
+                        ax += m * dx;
+                        ay += m * dy;
+                        az += m * dz;
+                    }
+                }
+            }
+            result[i] = ax;
+            result[y + i] = ay;
+            if (dimension == 3) {
+                result[z + i] = az;
+            }
+        }
+    }
+}
@@ -17,9 +17,7 @@
  */
 package ca.usask.simlab.odeToJava.odes;
 
-import org.jscience.mathematics.numbers.Float64;
-import org.jscience.mathematics.vectors.Float64Vector;
-import ca.usask.simlab.odeToJava.ode.RHS;
+import ca.usask.simlab.odeToJava.ode.SecondOrderRHS;
 
 /**
  * An ODE describing a celestial mechanics problem of 7 stars in which quasi-collisions occur, i.e., close approaches between stars.  
@@ -27,7 +25,7 @@ import ca.usask.simlab.odeToJava.ode.RHS;
  * Francesca, Mazzia, Cecilia Magherini. "Test set for initial value problem solvers, release 2.4", pg II-6-1 - II-6-9, Department of Mathematics, University of Bari, Italy, 2008.
  * <p>
  */     
-public class PleiadesODE extends RHS {
+public class PleiadesODE extends SecondOrderRHS {
 
     final int DERIVATIVE_OFFSET = 14; // index offset to indicate the partitions of the position and first derivative,
                                       // indicates the partitions of the first and second derivatives in the RHS evaluation
@@ -44,10 +42,9 @@ public class PleiadesODE extends RHS {
     }
     
     @Override
-    public Float64Vector f(Float64 t, Float64Vector z) {
-        // uses z to indicate the full vector the first-order ODE RHS
-        double[] zp = new double[z.getDimension()];
-        
+    public void acceleration(double t, double[] q, double[] result) {
+        // the positions are x in the first Y_OFFSET components of q and y in
+        // the rest, the accelerations are stored in the same layout
         // initialize the r_ij matrix
         for (int i = 0; i < Y_OFFSET; i++) {
             for (int j = 0; j < Y_OFFSET; j++) {
@@ -55,12 +52,6 @@ public class PleiadesODE extends RHS {
                 r[i][j] = -1;
             }
         }
-        
-        for (int i = 0; i < DERIVATIVE_OFFSET; i++) {
-            // set up the first derivatives, x' and y',
-            // which are in the first half of the zp vector
-            zp[i] = z.getValue(i + DERIVATIVE_OFFSET);
-        }
 
         // set up the second derivatives, x"
         for (int i = 0; i < Y_OFFSET; i++) {
@@ -69,16 +60,16 @@ public class PleiadesODE extends RHS {
                 // for efficiency r_ij only needs to be computed once
                 if (r[i][j] == -1) {
                     r[i][j] = Math.pow(
-                                (Math.pow((z.getValue(i) - z.getValue(j)), 2.0) + 
-                                 Math.pow((z.getValue(i + Y_OFFSET) - z.getValue(j + Y_OFFSET)), 2.0)),
+                                (Math.pow((q[i] - q[j]), 2.0) + 
+                                 Math.pow((q[i + Y_OFFSET] - q[j + Y_OFFSET]), 2.0)),
                                 (3.0 / 2.0));
                 }
                 // sum up the forces on a star i in the x coordinate
                 if (j != i) {
-                    sum += (j + 1) * (z.getValue(j) - z.getValue(i)) / r[i][j];
+                    sum += (j + 1) * (q[j] - q[i]) / r[i][j];
                 }
             }
-            zp[i + DERIVATIVE_OFFSET] = sum;
+            result[i] = sum;
         }
         
         // set up the second derivatives, y"
@@ -87,19 +78,17 @@ public class PleiadesODE extends RHS {
             for (int j = 0; j < Y_OFFSET; j++) {
                 if (r[i - Y_OFFSET][j] == -1) {
                     r[i - Y_OFFSET][j] = Math.pow(
-                                           (Math.pow((z.getValue(i - Y_OFFSET) - z.getValue(j)), 2.0) +
-                                            Math.pow((z.getValue(i) - z.getValue(j + Y_OFFSET)), 2.0)),
+                                           (Math.pow((q[i - Y_OFFSET] - q[j]), 2.0) +
+                                            Math.pow((q[i] - q[j + Y_OFFSET]), 2.0)),
                                            (3.0 / 2.0));
                 }
                 
                 if (j != i - Y_OFFSET) {
-                    sum += (j + 1) * (z.getValue(j + Y_OFFSET) - z.getValue(i)) / r[i - Y_OFFSET][j];
+                    sum += (j + 1) * (q[j + Y_OFFSET] - q[i]) / r[i - Y_OFFSET][j];
                 }
             }
             // sum up the forces on a star i in the y coordinate
-            zp[i + DERIVATIVE_OFFSET] = sum;
+            result[i] = sum;
         }
-        
-        return Float64Vector.valueOf(zp);
     }
 }
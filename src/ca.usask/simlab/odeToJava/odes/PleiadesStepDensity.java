@@ -0,0 +1,49 @@
+/* ./odes/PleiadesStepDensity.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.odes;
+
+import ca.usask.simlab.odeToJava.ode.StepDensity;
+
+/**
+ * The step density for the Pleiades problem that makes the steps small during
+ * the close approaches between stars.
+ * <p>
+ * The desired stepsize is sigma = (sum_(i<j) r_ij^(-2))^(-1/2), which is close
+ * to the smallest distance between two stars, and the control function is
+ * G = -d/dt log(sigma) = -sum_(i<j) r_ij^(-4)*(q_i - q_j).(p_i - p_j) / sum_(i<j) r_ij^(-2).
+ * <p>
+ * Ernst Hairer, Gustaf Söderlind. "Explicit, time reversible, adaptive step size control", SIAM Journal of Scientific Computing, vol 26, pg 1838-1851, 2005.
+ */
+public class PleiadesStepDensity implements StepDensity {
+    final int Y_OFFSET = 7; // index indicates the offset for the y components within the positions and derivatives
+
+    public double evaluate(double[] q, double[] p) {
+        double numerator = 0.0;
+        double denominator = 0.0;
+        for (int i = 0; i < Y_OFFSET; i++) {
+            for (int j = i + 1; j < Y_OFFSET; j++) {
+                double dx = q[i] - q[j];
+                double dy = q[i + Y_OFFSET] - q[j + Y_OFFSET];
+                double r2_inverse = 1.0 / (dx * dx + dy * dy);
+                numerator += r2_inverse * r2_inverse * (dx * (p[i] - p[j]) + dy * (p[i + Y_OFFSET] - p[j + Y_OFFSET]));
+                denominator += r2_inverse;
+            }
+        }
+        return -numerator / denominator;
+    }
+}
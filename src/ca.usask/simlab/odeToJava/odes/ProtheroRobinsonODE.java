@@ -0,0 +1,114 @@
+/* ./odes/ProtheroRobinsonODE.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.odes;
+
+import org.jscience.mathematics.numbers.Float64;
+import org.jscience.mathematics.vectors.Float64Vector;
+import org.jscience.mathematics.vectors.Float64Matrix;
+import ca.usask.simlab.odeToJava.ode.RHS;
+
+/**
+ * The Prothero-Robinson problem y_i' = lambda_i*(y_i - sin(t)) + cos(t), a
+ * stiff and non-autonomous test problem whose solution is y_i = sin(t) when
+ * y_i(0) = 0.
+ * <p>
+ * The components are independent, so several stiffnesses can be tested at
+ * once. The evaluations of the RHS are counted, so the work of the methods can
+ * be compared.
+ * <p>
+ * A. Prothero and A. Robinson. "On the stability and accuracy of one-step methods for solving stiff systems of ordinary differential equations", Mathematics of Computation, vol 28, pg 145-162, 1974.
+ */
+public class ProtheroRobinsonODE extends RHS {
+    private final double[] lambda;
+    private int evaluations;
+
+    /**
+     * The default constructor for this ODE.
+     *
+     * @param lambda The stiffness of each component, which should be negative.
+     */
+    public ProtheroRobinsonODE(double... lambda) {
+        if (lambda.length == 0) {
+            throw new IllegalArgumentException("There must be at least one component");
+        }
+        this.lambda = lambda.clone();
+    }
+
+    @Override
+    public Float64Vector f(Float64 t, Float64Vector y) {
+        double[] yp = new double[lambda.length];
+        double[] values = new double[lambda.length];
+        for (int i = 0; i < lambda.length; i++) {
+            values[i] = y.getValue(i);
+        }
+        f(t.doubleValue(), values, yp);
+        return Float64Vector.valueOf(yp);
+    }
+
+    @Override
+    public void f(double t, double[] y, double[] yp) {
+        evaluations++;
+        double g = Math.sin(t);
+        double dg = Math.cos(t);
+        for (int i = 0; i < lambda.length; i++) {
+            yp[i] = lambda[i] * (y[i] - g) + dg;
+        }
+    }
+
+    @Override
+    public Float64Matrix jacobian(Float64 t, Float64Vector y) {
+        double[][] jacobian = new double[lambda.length][lambda.length];
+        for (int i = 0; i < lambda.length; i++) {
+            jacobian[i][i] = lambda[i];
+        }
+        return Float64Matrix.valueOf(jacobian);
+    }
+
+    @Override
+    public int get_size() {
+        return lambda.length;
+    }
+
+    /**
+     * Get the exact solution, which is the same for every component.
+     *
+     * @param t The time to find the solution at.
+     *
+     * @return The value of each component at t.
+     */
+    public double get_exact_solution(double t) {
+        return Math.sin(t);
+    }
+
+    /**
+     * Get the number of evaluations of the RHS since the ODE was created or
+     * the count was last reset.
+     *
+     * @return The number of evaluations.
+     */
+    public int get_evaluations() {
+        return evaluations;
+    }
+
+    /**
+     * Reset the number of evaluations of the RHS to zero.
+     */
+    public void reset_evaluations() {
+        evaluations = 0;
+    }
+}
@@ -139,6 +139,32 @@ public class PropertyHolder {
         return (Float64Vector[][]) get_property(name);
     }
 
+    /**
+     * Get an array of doubles from the property holder.
+     *
+     * @param  name The unique string that identifies the property to be set.
+     *
+     * @return The value of the property.
+     *
+     * @throws PropertyNotFoundException
+     */
+    public double[] get_double_array_property(String name) throws PropertyNotFoundException {
+        return (double[]) get_property(name);
+    }
+
+    /**
+     * Get a two-dimensional array of doubles from the property holder.
+     *
+     * @param  name The unique string that identifies the property to be set.
+     *
+     * @return The value of the property.
+     *
+     * @throws PropertyNotFoundException
+     */
+    public double[][] get_double_array_array_property(String name) throws PropertyNotFoundException {
+        return (double[][]) get_property(name);
+    }
+
     /**
      * Get a Float64Matrix from the property holder.
      *
@@ -275,6 +301,26 @@ public class PropertyHolder {
         set_property_internal(name, value);
     }
 
+    /**
+     * Set an array of doubles as a property.
+     *
+     * @param name  The unique string that identifies the property to be set.
+     * @param value The value to set this property as.
+     */
+    public void set_property(String name, double[] value) {
+        set_property_internal(name, value);
+    }
+
+    /**
+     * Set a two-dimensional array of doubles as a property.
+     *
+     * @param name  The unique string that identifies the property to be set.
+     * @param value The value to set this property as.
+     */
+    public void set_property(String name, double[][] value) {
+        set_property_internal(name, value);
+    }
+
     /**
      * Set a Jscience Float64Matrix objects as a property.
      *
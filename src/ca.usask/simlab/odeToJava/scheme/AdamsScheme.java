@@ -0,0 +1,153 @@
+/* ./scheme/AdamsScheme.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.scheme;
+
+/**
+ * The Adams-Bashforth-Moulton predictor-corrector pairs of orders 1 to 12 in
+ * Nordsieck form.
+ * <p>
+ * The prediction of the Nordsieck array is the Adams-Bashforth method of
+ * order q and the correction is the Adams-Moulton method of order q. The
+ * correction e = y_n - y_n^(0) is scaled so that l_0 = 1, which makes
+ * e = gamma_(q-1)*h^(q+1)*y^(q+1) to leading order and gives the error
+ * estimates in terms of the coefficients gamma_j and gamma*_j of the explicit
+ * and implicit Adams methods.
+ * <p>
+ * Ernst Hairer, Syvert Norsett, and Gerhard Wanner. "Solving Order Differential Equations I, 2nd Edition", pg 357-361, 409-417.
+ */
+public class AdamsScheme extends MultistepScheme {
+    private final double[] gamma, gamma_star;
+
+    /**
+     * Create an Adams family.
+     *
+     * @param max_order The maximum order to use, between 1 and 12.
+     */
+    public AdamsScheme(int max_order) {
+        super(max_order, "ABM");
+        if (max_order < 1 || max_order > 12) {
+            throw new IllegalArgumentException("The order of an Adams method must be between 1 and 12");
+        }
+        // the coefficients of the explicit and implicit methods, pg 359 and 361
+        gamma = new double[max_order + 2];
+        gamma_star = new double[max_order + 2];
+        gamma[0] = 1.0;
+        gamma_star[0] = 1.0;
+        for (int j = 1; j < gamma.length; j++) {
+            double sum = 0.0;
+            double sum_star = 0.0;
+            for (int i = 0; i < j; i++) {
+                sum += gamma[i] / (j + 1 - i);
+                sum_star += gamma_star[i] / (j + 1 - i);
+            }
+            gamma[j] = 1.0 - sum;
+            gamma_star[j] = -sum_star;
+        }
+    }
+
+    /**
+     * Get the Adams methods up to order 12.
+     *
+     * @return The Adams-Bashforth-Moulton family.
+     */
+    public static AdamsScheme get_ABM_scheme() {
+        return new AdamsScheme(12);
+    }
+
+    /**
+     * Get the coefficient gamma_j of the explicit Adams methods.
+     *
+     * @param j The index of the coefficient.
+     *
+     * @return The value of gamma_j.
+     */
+    public double get_gamma(int j) {
+        return gamma[j];
+    }
+
+    /**
+     * Get the coefficient gamma*_j of the implicit Adams methods.
+     *
+     * @param j The index of the coefficient.
+     *
+     * @return The value of gamma*_j.
+     */
+    public double get_gamma_star(int j) {
+        return gamma_star[j];
+    }
+
+    @Override
+    public double[] get_l(int q) {
+        // the integral from -1 to x of (x + 1)...(x + q - 1)/(q - 1)!, which
+        // keeps y_(n-1) and the past derivatives, divided by its value at 0
+        double[] lambda = product_coefficients(1, q - 1);
+        double[] l = new double[q + 1];
+        for (int j = 1; j <= q; j++) {
+            l[j] = lambda[j - 1] / j;
+        }
+        double l0 = 0.0;
+        for (int j = 1; j <= q; j++) {
+            l0 -= (j % 2 == 0 ? 1.0 : -1.0) * l[j];
+        }
+        l[0] = 1.0;
+        for (int j = 1; j <= q; j++) {
+            l[j] /= l0;
+        }
+        return l;
+    }
+
+    @Override
+    public double get_error_constant(int q) {
+        return Math.abs(gamma_star[q]) / gamma[q - 1];
+    }
+
+    @Override
+    public double get_lower_error_constant(int q) {
+        // the derivative of order q is q!*z_q/h^q
+        return Math.abs(gamma_star[q - 1]) * factorial(q);
+    }
+
+    @Override
+    public double get_higher_error_constant(int q) {
+        return Math.abs(gamma_star[q + 1]) / gamma[q - 1];
+    }
+
+    @Override
+    public double[] get_order_increase_coefficients(int q) {
+        // add x^(q+1)*h^(q+1)*y^(q+1)/(q+1)! with the value at 0 and the
+        // derivatives at 0, -1, ..., -(q - 1) unchanged
+        double[] derivative = product_coefficients(0, q);
+        double scale = 1.0 / (gamma[q - 1] * factorial(q));
+        double[] c = new double[q + 2];
+        for (int j = 1; j <= q + 1; j++) {
+            c[j] = scale * derivative[j - 1] / j;
+        }
+        return c;
+    }
+
+    @Override
+    public double[] get_order_decrease_coefficients(int q) {
+        // drop the derivative furthest in the past, keeping the value at 0
+        double[] derivative = product_coefficients(0, q - 1);
+        double[] c = new double[q + 1];
+        for (int j = 1; j <= q; j++) {
+            c[j] = q * derivative[j - 1] / j;
+        }
+        return c;
+    }
+}
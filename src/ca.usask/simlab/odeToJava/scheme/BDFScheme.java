@@ -0,0 +1,165 @@
+/* ./scheme/BDFScheme.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.scheme;
+
+/**
+ * The backward differentiation formulas (BDF) and numerical differentiation
+ * formulas (NDF) of orders 1 to 5 in Nordsieck form.
+ * <p>
+ * The NDFs add kappa*gamma_q*(y_n - y_n^(0)) to the BDFs, which reduces the
+ * error constants by up to 26% at the price of a little stability. The
+ * Nordsieck array still interpolates the past solution values, so only the
+ * corrector equation and the error constants differ.
+ * <p>
+ * Lawrence F. Shampine and Mark W. Reichelt. "The MATLAB ODE suite", SIAM Journal on Scientific Computing, vol 18, pg 1-22, 1997.
+ * <p>
+ * Ernst Hairer and Gerhard Wanner. "Solving Ordinary Differential Equations II, 2nd Edition", pg 246-251.
+ */
+public class BDFScheme extends MultistepScheme {
+    // the NDF coefficients of the Klopfenstein-Shampine family
+    private static final double[] NDF_KAPPA = {0.0, -0.1850, -1.0 / 9.0, -0.0823, -0.0415, 0.0};
+
+    private final boolean ndf;
+
+    /**
+     * Create a BDF or NDF family.
+     *
+     * @param max_order The maximum order to use, between 1 and 5.
+     * @param ndf       true to use the numerical differentiation formulas.
+     */
+    public BDFScheme(int max_order, boolean ndf) {
+        super(max_order, ndf ? "NDF" : "BDF");
+        if (max_order < 1 || max_order > 5) {
+            throw new IllegalArgumentException("The order of a BDF must be between 1 and 5");
+        }
+        this.ndf = ndf;
+    }
+
+    /**
+     * Get the BDFs up to order 5.
+     *
+     * @return The BDF family.
+     */
+    public static BDFScheme get_BDF_scheme() {
+        return new BDFScheme(5, false);
+    }
+
+    /**
+     * Get the NDFs up to order 5.
+     *
+     * @return The NDF family.
+     */
+    public static BDFScheme get_NDF_scheme() {
+        return new BDFScheme(5, true);
+    }
+
+    /**
+     * Check if this family uses the numerical differentiation formulas.
+     *
+     * @return true for the NDFs.
+     */
+    public boolean is_NDF() {
+        return ndf;
+    }
+
+    /**
+     * Get gamma_q, the sum of 1/j for j = 1..q.
+     *
+     * @param q The order.
+     *
+     * @return The value of gamma_q.
+     */
+    public static double get_gamma(int q) {
+        double gamma = 0.0;
+        for (int j = 1; j <= q; j++) {
+            gamma += 1.0 / j;
+        }
+        return gamma;
+    }
+
+    /**
+     * Get the NDF coefficient kappa of an order, which is zero for the BDFs.
+     *
+     * @param q The order.
+     *
+     * @return The value of kappa.
+     */
+    public double get_kappa(int q) {
+        if (ndf && q < NDF_KAPPA.length) {
+            return NDF_KAPPA[q];
+        }
+        return 0.0;
+    }
+
+    /**
+     * Get the coefficient multiplying e in the corrector equation
+     * h*f(y_pred + e) = z_1 + coefficient*e.
+     *
+     * @param q The current order.
+     *
+     * @return The corrector coefficient, l_1 for the BDFs.
+     */
+    public double get_corrector_coefficient(int q) {
+        return (1.0 - get_kappa(q)) * get_gamma(q);
+    }
+
+    @Override
+    public double[] get_l(int q) {
+        // the coefficients of (1 + x)(1 + x/2)...(1 + x/q)
+        double[] l = product_coefficients(1, q);
+        double scale = 1.0 / factorial(q);
+        for (int j = 0; j <= q; j++) {
+            l[j] *= scale;
+        }
+        return l;
+    }
+
+    @Override
+    public double get_error_constant(int q) {
+        return get_kappa(q) * get_gamma(q) + 1.0 / (q + 1);
+    }
+
+    @Override
+    public double get_lower_error_constant(int q) {
+        // the backward difference of order q is q!*z_q
+        return (get_kappa(q - 1) * get_gamma(q - 1) + 1.0 / q) * factorial(q);
+    }
+
+    @Override
+    public double get_higher_error_constant(int q) {
+        return get_kappa(q + 1) * get_gamma(q + 1) + 1.0 / (q + 2);
+    }
+
+    @Override
+    public double[] get_order_increase_coefficients(int q) {
+        // e is the backward difference of order q + 1, which enters the
+        // interpolating polynomial with x(x + 1)...(x + q)/(q + 1)!
+        double[] c = product_coefficients(0, q + 1);
+        double scale = 1.0 / factorial(q + 1);
+        for (int j = 0; j <= q + 1; j++) {
+            c[j] *= scale;
+        }
+        return c;
+    }
+
+    @Override
+    public double[] get_order_decrease_coefficients(int q) {
+        // drop the interpolation point furthest in the past
+        return product_coefficients(0, q);
+    }
+}
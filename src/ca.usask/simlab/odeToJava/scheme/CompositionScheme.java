@@ -0,0 +1,212 @@
+/* ./scheme/CompositionScheme.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.scheme;
+
+import ca.usask.simlab.odeToJava.interpolant.DefaultInterpolant;
+
+/**
+ * The coefficients of a symmetric composition method
+ * Psi_h = Phi_(gamma_s*h) o ... o Phi_(gamma_1*h) of a symmetric method Phi_h
+ * of order 2, such as the Stormer-Verlet method.
+ * <p>
+ * With suitable coefficients the composition has an even order higher than
+ * two while keeping the method symmetric and, for a symplectic basic method,
+ * symplectic. The methods are meant for constant stepsizes, where they do not
+ * show a drift in the energy over long times.
+ * <p>
+ * Ernst Hairer, Christian Lubich, and Gerhard Wanner. "Geometric Numerical Integration: Structure-preserving algorithms for ordinary differential", 2002, pg 39-45, 144-158.
+ * <p>
+ * Haruo Yoshida. "Construction of higher order symplectic integrators", Physics Letters A, vol 150, pg 262-268, 1990.
+ * <p>
+ * Masuo Suzuki. "Fractal decomposition of exponential operators with applications to many-body theories and Monte Carlo simulations", Physics Letters A, vol 146, pg 319-323, 1990.
+ */
+public class CompositionScheme extends Scheme {
+    private final double[] gamma;
+
+    /**
+     * Create a composition method.
+     *
+     * @param gamma The stepsize fractions gamma_1, ..., gamma_s, which must sum to one.
+     * @param order The order of the composition.
+     * @param name  The name of the method.
+     */
+    public CompositionScheme(double[] gamma, int order, String name) {
+        double sum = 0.0;
+        for (int i = 0; i < gamma.length; i++) {
+            sum += gamma[i];
+        }
+        if (Math.abs(sum - 1.0) > 1e-12) {
+            throw new IllegalArgumentException("The coefficients of a composition must sum to one");
+        }
+        this.gamma = gamma;
+        this.order = order;
+        this.name = name;
+        order_interpolant = 1;
+        interpolant = new DefaultInterpolant();
+    }
+
+    /**
+     * Build the coefficients of a symmetric composition from its first half
+     * and its middle coefficient, which is chosen so the coefficients sum to
+     * one.
+     */
+    private static double[] symmetric(double[] half) {
+        int m = half.length;
+        double[] gamma = new double[2 * m + 1];
+        double sum = 0.0;
+        for (int i = 0; i < m; i++) {
+            gamma[i] = half[i];
+            gamma[2 * m - i] = half[i];
+            sum += 2.0 * half[i];
+        }
+        gamma[m] = 1.0 - sum;
+        return gamma;
+    }
+
+    /**
+     * Get the triple jump composition of order 4 with 3 stages.
+     * <p>
+     * Haruo Yoshida. "Construction of higher order symplectic integrators", pg 263.
+     *
+     * @return The method of order 4.
+     */
+    public static CompositionScheme get_Yoshida4_scheme() {
+        return new CompositionScheme(get_triple_jump_scheme(4).get_gamma(), 4, "Yoshida composition, order 4");
+    }
+
+    /**
+     * Get the composition of Suzuki of order 4 with 5 stages, which has
+     * smaller error constants than the triple jump.
+     * <p>
+     * Masuo Suzuki. "Fractal decomposition of exponential operators with applications to many-body theories and Monte Carlo simulations", pg 321.
+     *
+     * @return The method of order 4.
+     */
+    public static CompositionScheme get_Suzuki4_scheme() {
+        double gamma = 1.0 / (4.0 - Math.cbrt(4.0));
+        return new CompositionScheme(symmetric(new double[] {gamma, gamma}), 4, "Suzuki composition, order 4");
+    }
+
+    /**
+     * Get the composition of Yoshida of order 6 with 7 stages, solution A.
+     * <p>
+     * Haruo Yoshida. "Construction of higher order symplectic integrators", pg 267.
+     *
+     * @return The method of order 6.
+     */
+    public static CompositionScheme get_Yoshida6_scheme() {
+        double[] half = {0.784513610477560, 0.235573213359357, -1.17767998417887};
+        return new CompositionScheme(symmetric(half), 6, "Yoshida composition, order 6");
+    }
+
+    /**
+     * Get the composition of Yoshida of order 8 with 15 stages, solution D.
+     * <p>
+     * Haruo Yoshida. "Construction of higher order symplectic integrators", pg 267.
+     *
+     * @return The method of order 8.
+     */
+    public static CompositionScheme get_Yoshida8_scheme() {
+        double[] half = {0.914844246229740, 0.253693336566229, -1.44485223686048, -0.158240635368243,
+                         1.93813913762276, -1.96061023297549, 0.102799849391985};
+        return new CompositionScheme(symmetric(half), 8, "Yoshida composition, order 8");
+    }
+
+    /**
+     * Get the composition of any even order built by repeating the triple
+     * jump, which takes 3^(order/2 - 1) stages.
+     * <p>
+     * Ernst Hairer, Christian Lubich, and Gerhard Wanner. "Geometric Numerical Integration: Structure-preserving algorithms for ordinary differential", 2002, pg 40.
+     *
+     * @param order The order, an even number of at least 2.
+     *
+     * @return The method of the given order.
+     */
+    public static CompositionScheme get_triple_jump_scheme(int order) {
+        if (order < 2 || order % 2 != 0) {
+            throw new IllegalArgumentException("The order of a composition must be even and at least 2");
+        }
+        double[] gamma = {1.0};
+        for (int p = 2; p < order; p += 2) {
+            // raise the order from p to p + 2
+            double outer = 1.0 / (2.0 - Math.pow(2.0, 1.0 / (p + 1)));
+            double inner = 1.0 - 2.0 * outer;
+            double[] next = new double[3 * gamma.length];
+            for (int i = 0; i < gamma.length; i++) {
+                next[i] = outer * gamma[i];
+                next[gamma.length + i] = inner * gamma[i];
+                next[2 * gamma.length + i] = outer * gamma[i];
+            }
+            gamma = next;
+        }
+        return new CompositionScheme(gamma, order, "Triple jump composition, order " + order);
+    }
+
+    /**
+     * Get the stepsize fractions of the stages.
+     *
+     * @return The coefficients gamma_1, ..., gamma_s.
+     */
+    public double[] get_gamma() {
+        return gamma;
+    }
+
+    /**
+     * Get the number of stages, which is the number of steps of the basic method.
+     *
+     * @return The number of stages.
+     */
+    public int get_number_stages() {
+        return gamma.length;
+    }
+
+    @Override
+    public boolean is_single() {
+        return true;
+    }
+
+    @Override
+    public boolean is_additive() {
+        return false;
+    }
+
+    @Override
+    public boolean is_FSAL() {
+        return false;
+    }
+
+    @Override
+    public int get_order() {
+        return order;
+    }
+
+    @Override
+    public boolean has_emb() {
+        return false;
+    }
+
+    @Override
+    public int get_scheme_order() {
+        return order;
+    }
+
+    @Override
+    public int get_emb_order() {
+        return order;
+    }
+}
@@ -0,0 +1,302 @@
+/* ./scheme/ExponentialRKTableau.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.scheme;
+
+import ca.usask.simlab.odeToJava.interpolant.HermiteInterpolant;
+
+/**
+ * The coefficients of an explicit exponential Runge-Kutta method for
+ * y' = L*y + N(t, y), written in terms of the phi functions of h*L.
+ * <p>
+ * The method is stored in the form of Hochbruck and Ostermann, where the
+ * stages are
+ * U_i = y_0 + h*(a_i0(hL)*f(t_0, y_0) + sum_(j=1..i-1) a_ij(hL)*D_j) with
+ * D_j = N(t_0 + c_j*h, U_j) - N(t_0, y_0), and the solution and embedded
+ * solution are formed the same way with the weights b_j(hL). Each coefficient
+ * is a sum of terms alpha*phi_k(sigma*hL), so methods like ETDRK4 that use
+ * the phi functions of a fraction of the step can be written down directly.
+ * <p>
+ * When the method is of exponential Rosenbrock type, L is the Jacobian of the
+ * whole RHS at the beginning of each step; otherwise L is a fixed linear
+ * operator, by default the Jacobian of the stiff part f2 of an additive RHS.
+ * <p>
+ * Marlis Hochbruck and Alexander Ostermann. "Exponential integrators", Acta Numerica, vol 19, pg 209-286, 2010.
+ * <p>
+ * Steven M. Cox and Paul C. Matthews. "Exponential time differencing for stiff systems", Journal of Computational Physics, vol 176, pg 430-455, 2002.
+ */
+public class ExponentialRKTableau extends Scheme {
+    /**
+     * A term alpha*phi_k(sigma*hL) of a coefficient, applied to the vector
+     * from the stage given by the source.
+     */
+    public static class PhiTerm {
+        /**
+         * The stage whose D_j is multiplied, or 0 for f(t_0, y_0).
+         */
+        public final int source;
+
+        /**
+         * The weight alpha of the term.
+         */
+        public final double weight;
+
+        /**
+         * The index k of the phi function.
+         */
+        public final int k;
+
+        /**
+         * The fraction sigma of the step the phi function is evaluated at.
+         */
+        public final double fraction;
+
+        /**
+         * The default constructor for a term.
+         *
+         * @param source   The stage whose D_j is multiplied, or 0 for f(t_0, y_0).
+         * @param weight   The weight alpha of the term.
+         * @param k        The index k of the phi function.
+         * @param fraction The fraction sigma of the step the phi function is evaluated at.
+         */
+        public PhiTerm(int source, double weight, int k, double fraction) {
+            this.source = source;
+            this.weight = weight;
+            this.k = k;
+            this.fraction = fraction;
+        }
+    }
+
+    private final double[] c;
+    private final PhiTerm[][] a;
+    private final PhiTerm[] b, b_emb;
+    private final int emb_order;
+    private final boolean rosenbrock;
+    private final int max_phi;
+
+    /**
+     * Create an exponential Runge-Kutta method.
+     *
+     * @param c          The nodes of the stages, with c_0 = 0.
+     * @param a          The terms of the coefficients of each stage, where a[0] is not used.
+     * @param b          The terms of the weights of the solution.
+     * @param b_emb      The terms of the weights of the embedded solution.
+     * @param order      The order of the method.
+     * @param emb_order  The order of the embedded method.
+     * @param rosenbrock Whether L is the Jacobian at the beginning of each step.
+     * @param name       The name of the method.
+     */
+    public ExponentialRKTableau(double[] c, PhiTerm[][] a, PhiTerm[] b, PhiTerm[] b_emb, int order, int emb_order, boolean rosenbrock, String name) {
+        if (a.length != c.length) {
+            throw new IllegalArgumentException("There must be coefficients for every stage");
+        }
+        this.c = c;
+        this.a = a;
+        this.b = b;
+        this.b_emb = b_emb;
+        this.order = order;
+        this.emb_order = emb_order;
+        this.rosenbrock = rosenbrock;
+        this.name = name;
+        order_interpolant = 3;
+        interpolant = new HermiteInterpolant();
+        int highest = 0;
+        for (int i = 1; i < a.length; i++) {
+            highest = Math.max(highest, check_terms(a[i], i));
+        }
+        highest = Math.max(highest, check_terms(b, c.length));
+        highest = Math.max(highest, check_terms(b_emb, c.length));
+        max_phi = highest;
+    }
+
+    private static int check_terms(PhiTerm[] terms, int stage) {
+        int highest = 0;
+        for (PhiTerm term : terms) {
+            if (term.source < 0 || term.source >= stage) {
+                throw new IllegalArgumentException("A stage can only use the stages before it");
+            }
+            if (term.k < 0) {
+                throw new IllegalArgumentException("The index of a phi function must not be negative");
+            }
+            highest = Math.max(highest, term.k);
+        }
+        return highest;
+    }
+
+    private static PhiTerm term(int source, double weight, int k, double fraction) {
+        return new PhiTerm(source, weight, k, fraction);
+    }
+
+    /**
+     * Get the exponential time differencing method ETDRK2 of Cox and
+     * Matthews, with the exponential Euler method as the embedded method.
+     *
+     * @return The ETDRK2 method, order 2(1).
+     */
+    public static ExponentialRKTableau get_ETDRK2_tableau() {
+        double[] c = {0.0, 1.0};
+        PhiTerm[][] a = {
+            {},
+            {term(0, 1.0, 1, 1.0)}};
+        PhiTerm[] b = {term(0, 1.0, 1, 1.0), term(1, 1.0, 2, 1.0)};
+        PhiTerm[] b_emb = {term(0, 1.0, 1, 1.0)};
+        return new ExponentialRKTableau(c, a, b, b_emb, 2, 1, false, "ETDRK2, order 2(1)");
+    }
+
+    /**
+     * Get the exponential time differencing method ETDRK4 of Cox and
+     * Matthews. The embedded method is ETDRK2 with the last stage in place of
+     * the exponential Euler stage.
+     * <p>
+     * Steven M. Cox and Paul C. Matthews. "Exponential time differencing for stiff systems", pg 438.
+     *
+     * @return The ETDRK4 method, order 4(2).
+     */
+    public static ExponentialRKTableau get_ETDRK4_tableau() {
+        double[] c = {0.0, 0.5, 0.5, 1.0};
+        PhiTerm[][] a = {
+            {},
+            {term(0, 0.5, 1, 0.5)},
+            {term(0, 0.5, 1, 0.5), term(1, 0.5, 1, 0.5)},
+            {term(0, 1.0, 1, 1.0), term(2, 1.0, 1, 0.5)}};
+        PhiTerm[] b = {
+            term(0, 1.0, 1, 1.0),
+            term(1, 2.0, 2, 1.0), term(1, -4.0, 3, 1.0),
+            term(2, 2.0, 2, 1.0), term(2, -4.0, 3, 1.0),
+            term(3, -1.0, 2, 1.0), term(3, 4.0, 3, 1.0)};
+        PhiTerm[] b_emb = {term(0, 1.0, 1, 1.0), term(3, 1.0, 2, 1.0)};
+        return new ExponentialRKTableau(c, a, b, b_emb, 4, 2, false, "ETDRK4, order 4(2)");
+    }
+
+    /**
+     * Get the exponential Rosenbrock method exprb32, with the exponential
+     * Rosenbrock-Euler method as the embedded method.
+     * <p>
+     * Marlis Hochbruck, Alexander Ostermann, and Julia Schweitzer. "Exponential Rosenbrock-type methods", SIAM Journal on Numerical Analysis, vol 47, pg 786-803, 2009.
+     *
+     * @return The exprb32 method, order 3(2).
+     */
+    public static ExponentialRKTableau get_EXPRB32_tableau() {
+        double[] c = {0.0, 1.0};
+        PhiTerm[][] a = {
+            {},
+            {term(0, 1.0, 1, 1.0)}};
+        PhiTerm[] b = {term(0, 1.0, 1, 1.0), term(1, 2.0, 3, 1.0)};
+        PhiTerm[] b_emb = {term(0, 1.0, 1, 1.0)};
+        return new ExponentialRKTableau(c, a, b, b_emb, 3, 2, true, "exprb32, order 3(2)");
+    }
+
+    /**
+     * Get the number of stages, including the first stage y_0.
+     *
+     * @return The number of stages.
+     */
+    public int get_number_stages() {
+        return c.length;
+    }
+
+    /**
+     * Get the nodes of the stages.
+     *
+     * @return The array of nodes c.
+     */
+    public double[] get_c() {
+        return c;
+    }
+
+    /**
+     * Get the terms of the coefficients of a stage.
+     *
+     * @param i The stage, from 1 to the number of stages minus one.
+     *
+     * @return The terms of a_ij.
+     */
+    public PhiTerm[] get_a(int i) {
+        return a[i];
+    }
+
+    /**
+     * Get the terms of the weights of the solution.
+     *
+     * @return The terms of b_j.
+     */
+    public PhiTerm[] get_b() {
+        return b;
+    }
+
+    /**
+     * Get the terms of the weights of the embedded solution.
+     *
+     * @return The terms of the embedded b_j.
+     */
+    public PhiTerm[] get_b_emb() {
+        return b_emb;
+    }
+
+    /**
+     * Get the highest phi function used by the method.
+     *
+     * @return The largest k of any term.
+     */
+    public int get_max_phi() {
+        return max_phi;
+    }
+
+    /**
+     * Finds if L is the Jacobian at the beginning of each step.
+     *
+     * @return true for an exponential Rosenbrock method.
+     */
+    public boolean is_rosenbrock() {
+        return rosenbrock;
+    }
+
+    @Override
+    public boolean is_single() {
+        return true;
+    }
+
+    @Override
+    public boolean is_additive() {
+        return false;
+    }
+
+    @Override
+    public boolean is_FSAL() {
+        return true;
+    }
+
+    @Override
+    public int get_order() {
+        return order;
+    }
+
+    @Override
+    public boolean has_emb() {
+        return true;
+    }
+
+    @Override
+    public int get_scheme_order() {
+        return order;
+    }
+
+    @Override
+    public int get_emb_order() {
+        return emb_order;
+    }
+}
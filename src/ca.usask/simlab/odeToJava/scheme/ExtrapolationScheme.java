@@ -0,0 +1,183 @@
+/* ./scheme/ExtrapolationScheme.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.scheme;
+
+import ca.usask.simlab.odeToJava.interpolant.HermiteInterpolant;
+
+/**
+ * A family of extrapolation methods, either the Gragg-Bulirsch-Stoer (GBS)
+ * method for nonstiff problems or the linearly implicit Euler method for
+ * stiff problems.
+ * <p>
+ * A step of size H computes the first column of the extrapolation tableau
+ * T_{j,1} with n_j substeps of size H/n_j of a basic method and eliminates
+ * the leading error terms with the Aitken-Neville algorithm. The error of the
+ * explicit midpoint rule has an expansion in powers of h^2, so each column of
+ * the GBS tableau raises the order by two, while each column of the linearly
+ * implicit Euler tableau raises the order by one. The columns of the first
+ * row are independent, which allows them to be computed in parallel.
+ * <p>
+ * Ernst Hairer, Syvert Norsett, and Gerhard Wanner. "Solving Order Differential Equations I, 2nd Edition", pg 224-241.
+ * <p>
+ * Ernst Hairer and Gerhard Wanner. "Solving Ordinary Differential Equations II, 2nd Edition", pg 131-144.
+ */
+public class ExtrapolationScheme extends Scheme {
+    /**
+     * The default number of columns of the GBS tableau, giving order up to 18.
+     */
+    public static final int DEFAULT_GBS_COLUMNS = 9;
+
+    private final int[] sequence;
+    private final boolean linearly_implicit;
+
+    /**
+     * Create an extrapolation family from a step-number sequence.
+     *
+     * @param sequence          The increasing numbers of substeps n_j used by each row of the tableau.
+     * @param linearly_implicit Whether the basic method is the linearly implicit Euler method instead of the explicit midpoint rule.
+     * @param name              The name of the family.
+     */
+    public ExtrapolationScheme(int[] sequence, boolean linearly_implicit, String name) {
+        if (sequence.length < 3) {
+            throw new IllegalArgumentException("At least three rows are needed for order and stepsize control");
+        }
+        for (int j = 0; j < sequence.length; j++) {
+            if (sequence[j] < 1 || (j > 0 && sequence[j] <= sequence[j - 1])) {
+                throw new IllegalArgumentException("The step-number sequence must be positive and increasing");
+            }
+            if (!linearly_implicit && sequence[j] % 2 != 0) {
+                throw new IllegalArgumentException("The GBS method needs an even number of substeps");
+            }
+        }
+        this.sequence = sequence.clone();
+        this.linearly_implicit = linearly_implicit;
+        this.name = name;
+        order = get_column_order(sequence.length - 1);
+        order_interpolant = 3;
+        interpolant = new HermiteInterpolant();
+    }
+
+    /**
+     * Get the GBS method with the harmonic sequence 2, 4, 6, ..., as used by
+     * ODEX.
+     *
+     * @return The GBS family.
+     */
+    public static ExtrapolationScheme get_GBS_scheme() {
+        int[] sequence = new int[DEFAULT_GBS_COLUMNS];
+        for (int j = 0; j < sequence.length; j++) {
+            sequence[j] = 2 * (j + 1);
+        }
+        return new ExtrapolationScheme(sequence, false, "GBS extrapolation, order up to " + 2 * DEFAULT_GBS_COLUMNS);
+    }
+
+    /**
+     * Get the linearly implicit Euler method with the sequence
+     * 1, 2, 3, 4, 6, 8, 12, as used by SEULEX.
+     *
+     * @return The linearly implicit Euler family.
+     */
+    public static ExtrapolationScheme get_linearly_implicit_Euler_scheme() {
+        int[] sequence = {1, 2, 3, 4, 6, 8, 12};
+        return new ExtrapolationScheme(sequence, true, "Linearly implicit Euler extrapolation, order up to " + sequence.length);
+    }
+
+    /**
+     * Get the number of substeps used by a row of the tableau.
+     *
+     * @param j The row, starting from 0.
+     *
+     * @return The number of substeps n_j.
+     */
+    public int get_substeps(int j) {
+        return sequence[j];
+    }
+
+    /**
+     * Get the number of rows of the tableau.
+     *
+     * @return The maximum number of rows.
+     */
+    public int get_max_rows() {
+        return sequence.length;
+    }
+
+    /**
+     * Get the order of the diagonal entry T_{j,j} of the tableau.
+     *
+     * @param j The row, starting from 0.
+     *
+     * @return The order of the extrapolated solution.
+     */
+    public int get_column_order(int j) {
+        return linearly_implicit ? j + 1 : 2 * (j + 1);
+    }
+
+    /**
+     * Get the power of h in the error expansion of the basic method.
+     *
+     * @return 2 for the midpoint rule and 1 for the linearly implicit Euler method.
+     */
+    public int get_expansion_power() {
+        return linearly_implicit ? 1 : 2;
+    }
+
+    /**
+     * Determine if the basic method is the linearly implicit Euler method.
+     *
+     * @return true for the stiff variant, false for the GBS method.
+     */
+    public boolean is_linearly_implicit() {
+        return linearly_implicit;
+    }
+
+    @Override
+    public boolean is_single() {
+        return true;
+    }
+
+    @Override
+    public boolean is_additive() {
+        return false;
+    }
+
+    @Override
+    public boolean is_FSAL() {
+        return true;
+    }
+
+    @Override
+    public int get_order() {
+        return order;
+    }
+
+    @Override
+    public boolean has_emb() {
+        return true;
+    }
+
+    @Override
+    public int get_scheme_order() {
+        return order;
+    }
+
+    @Override
+    public int get_emb_order() {
+        return get_column_order(sequence.length - 2);
+    }
+}
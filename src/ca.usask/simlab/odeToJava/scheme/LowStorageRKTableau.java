@@ -0,0 +1,556 @@
+/* ./scheme/LowStorageRKTableau.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.scheme;
+
+import ca.usask.simlab.odeToJava.interpolant.DefaultInterpolant;
+import ca.usask.simlab.odeToJava.util.LUDecomposition;
+
+/**
+ * The coefficients of an explicit Runge-Kutta method in the two-register (2N)
+ * form of Williamson or the three-register (3S*) form of Ketcheson.
+ * <p>
+ * In the 2N form, starting from U = y_0 and dU = 0, each stage is
+ * dU = A_i*dU + h*f(t_0 + c_i*h, U) followed by U = U + B_i*dU, and U is the
+ * solution after the last stage. Only U and dU are kept however many stages
+ * the method has. The embedded method, if there is one, is given by its
+ * weights in the usual Butcher form, and its difference from the main method
+ * is accumulated in a third register as the stages are evaluated.
+ * <p>
+ * In the 3S* form, starting from S1 = S3 = y_0 and S2 = 0, each stage is
+ * S2 = S2 + delta_i*S1 followed by
+ * S1 = gamma1_i*S1 + gamma2_i*S2 + gamma3_i*S3 + beta_i*h*f(t_0 + c_i*h, S1),
+ * and S1 is the solution after the last stage. The stages are combinations
+ * of the current stage, a running weighted sum of the earlier stages, and
+ * the initial values, which reaches more methods than the 2N form. The
+ * running sum is also the embedded method, which is
+ * (S2 + delta_(s+1)*S1 + delta_(s+2)*S3)/sum(delta), so the error estimate
+ * needs no register of its own. Without the last two delta this is a
+ * three-register method with no embedded method.
+ * <p>
+ * J. H. Williamson. "Low-storage Runge-Kutta schemes", Journal of Computational Physics, vol 35, pg 48-56, 1980.
+ * <p>
+ * Mark H. Carpenter and Christopher A. Kennedy. "Fourth-order 2N-storage Runge-Kutta schemes", NASA Technical Memorandum 109112, 1994.
+ * <p>
+ * David I. Ketcheson. "Runge-Kutta methods with minimum storage implementations", Journal of Computational Physics, vol 229, pg 1763-1773, 2010.
+ */
+public class LowStorageRKTableau extends Scheme {
+    private final double[] A, B, c;
+    private final double[] gamma1, gamma2, gamma3, beta, delta;
+    private final double[] b_emb;
+    private final int emb_order;
+
+    /**
+     * Create a low-storage Runge-Kutta method.
+     *
+     * @param A         The factors of the register dU, with A_1 = 0.
+     * @param B         The factors of the updates of the solution.
+     * @param c         The nodes of the stages.
+     * @param b_emb     The weights of the embedded method in Butcher form, or null if there is none.
+     * @param order     The order of the method.
+     * @param emb_order The order of the embedded method.
+     * @param name      The name of the method.
+     */
+    public LowStorageRKTableau(double[] A, double[] B, double[] c, double[] b_emb, int order, int emb_order, String name) {
+        if (B.length != A.length || c.length != A.length || (b_emb != null && b_emb.length != A.length)) {
+            throw new IllegalArgumentException("There must be coefficients for every stage");
+        }
+        if (A[0] != 0.0) {
+            throw new IllegalArgumentException("The first factor of the register must be zero");
+        }
+        this.A = A;
+        this.B = B;
+        this.c = c;
+        this.b_emb = b_emb;
+        gamma1 = null;
+        gamma2 = null;
+        gamma3 = null;
+        beta = null;
+        delta = null;
+        this.order = order;
+        this.emb_order = emb_order;
+        this.name = name;
+        // no stages are kept, so the dense output is linear
+        order_interpolant = 2;
+        interpolant = new DefaultInterpolant();
+    }
+
+    /**
+     * Create a low-storage Runge-Kutta method in the 3S* form. The nodes
+     * are the sums of the rows of the method in Butcher form.
+     *
+     * @param gamma1    The factors of the current stage S1.
+     * @param gamma2    The factors of the running sum S2.
+     * @param gamma3    The factors of the initial values S3.
+     * @param beta      The factors of the RHS.
+     * @param delta     The weights of the stages in S2, with delta_1 = 1, and two more for the embedded method if there is one.
+     * @param order     The order of the method.
+     * @param emb_order The order of the embedded method, ignored if there is none.
+     * @param name      The name of the method.
+     */
+    public LowStorageRKTableau(double[] gamma1, double[] gamma2, double[] gamma3, double[] beta, double[] delta, int order, int emb_order, String name) {
+        int s = beta.length;
+        if (gamma1.length != s || gamma2.length != s || gamma3.length != s || (delta.length != s && delta.length != s + 2)) {
+            throw new IllegalArgumentException("There must be coefficients for every stage");
+        }
+        if (delta[0] != 1.0) {
+            throw new IllegalArgumentException("The first weight of the running sum must be one");
+        }
+        this.gamma1 = gamma1;
+        this.gamma2 = gamma2;
+        this.gamma3 = gamma3;
+        this.beta = beta;
+        this.delta = delta;
+        A = null;
+        B = null;
+        // the nodes and the embedded weights follow from the Butcher form
+        double[][] a = three_register_to_butcher(gamma1, gamma2, gamma3, beta, delta);
+        c = new double[s];
+        for (int i = 0; i < s; i++) {
+            for (int j = 0; j < i; j++) {
+                c[i] += a[i][j];
+            }
+        }
+        b_emb = delta.length == s + 2 ? a[s + 1] : null;
+        this.order = order;
+        this.emb_order = emb_order;
+        this.name = name;
+        // no stages are kept, so the dense output is linear
+        order_interpolant = 2;
+        interpolant = new DefaultInterpolant();
+    }
+
+    /**
+     * The third-order method of Williamson with three stages, with the
+     * second-order method that does not use the last stage as the embedded
+     * method.
+     * <p>
+     * J. H. Williamson. "Low-storage Runge-Kutta schemes", pg 54.
+     *
+     * @return The tableau for Williamson, order 3, embedded order 2.
+     */
+    public static LowStorageRKTableau get_Williamson3_tableau() {
+        double[] A = {0.0, -5.0 / 9.0, -153.0 / 128.0};
+        double[] B = {1.0 / 3.0, 15.0 / 16.0, 8.0 / 15.0};
+        double[] c = {0.0, 1.0 / 3.0, 3.0 / 4.0};
+        return new LowStorageRKTableau(A, B, c, embedded_weights(A, B, c, 2), 3, 2, "Williamson 2N, order 3, embedded order 2");
+    }
+
+    /**
+     * The fourth-order method of Carpenter and Kennedy with five stages, with
+     * the third-order method that does not use the last stage as the embedded
+     * method. The embedded method is only stable on the negative real axis to
+     * -1.91, where the method is stable to -4.66, so on problems where the
+     * stepsize is limited by stability the error estimate keeps the stepsize
+     * within the stability region of the embedded method.
+     * <p>
+     * Mark H. Carpenter and Christopher A. Kennedy. "Fourth-order 2N-storage Runge-Kutta schemes", pg 13.
+     *
+     * @return The tableau for Carpenter-Kennedy, order 4, embedded order 3.
+     */
+    public static LowStorageRKTableau get_CarpenterKennedy4_tableau() {
+        double[] A = {0.0,
+                      -567301805773.0 / 1357537059087.0,
+                      -2404267990393.0 / 2016746695238.0,
+                      -3550918686646.0 / 2091501179385.0,
+                      -1275806237668.0 / 842570457699.0};
+        double[] B = {1432997174477.0 / 9575080441755.0,
+                      5161836677717.0 / 13612068292357.0,
+                      1720146321549.0 / 2090206949498.0,
+                      3134564353537.0 / 4481467310338.0,
+                      2277821191437.0 / 14882151754819.0};
+        double[] c = {0.0,
+                      1432997174477.0 / 9575080441755.0,
+                      2526269341429.0 / 6820363962896.0,
+                      2006345519317.0 / 3224310063776.0,
+                      2802321613138.0 / 2924317926251.0};
+        return new LowStorageRKTableau(A, B, c, embedded_weights(A, B, c, 3), 4, 3, "Carpenter-Kennedy 2N, order 4, embedded order 3");
+    }
+
+    /**
+     * The fourth-order method of Berland, Bogey, and Bailly with six stages,
+     * optimized for small dissipation and dispersion errors in wave
+     * propagation, with the third-order method that does not use the last
+     * stage as the embedded method.
+     * <p>
+     * Julien Berland, Christophe Bogey, and Christophe Bailly. "Low-dissipation and low-dispersion fourth-order Runge-Kutta algorithm", Computers and Fluids, vol 35, pg 1459-1463, 2006.
+     *
+     * @return The tableau for RK46-NL, order 4, embedded order 3.
+     */
+    public static LowStorageRKTableau get_RK46NL_tableau() {
+        double[] A = {0.0, -0.737101392796, -1.634740794341, -0.744739003780, -1.469897351522, -2.813971388035};
+        double[] B = {0.032918605146, 0.823256998200, 0.381530948900, 0.200092213184, 1.718581042715, 0.27};
+        double[] c = {0.0, 0.032918605146, 0.249351723343, 0.466911705055, 0.582030414044, 0.847252983783};
+        return new LowStorageRKTableau(A, B, c, embedded_weights(A, B, c, 3), 4, 3, "RK46-NL 2N, order 4, embedded order 3");
+    }
+
+    /**
+     * The third-order strong stability preserving method of Shu and Osher
+     * with three stages in the 3S* form. The embedded method 2 Y_3 - y_0 is
+     * the method of Heun, stable to 2 on the negative real axis where the
+     * method is stable to 2.51, so the error estimate stays honest when the
+     * stepsize is limited by stability. Only the embedded method uses the
+     * running sum.
+     * <p>
+     * Chi-Wang Shu and Stanley Osher. "Efficient implementation of essentially non-oscillatory shock-capturing schemes", Journal of Computational Physics, vol 77, pg 439-471, 1988.
+     *
+     * @return The tableau for SSPRK(3,3), order 3, embedded order 2.
+     */
+    public static LowStorageRKTableau get_SSPRK33_tableau() {
+        double[] gamma1 = {1.0, 1.0 / 4.0, 2.0 / 3.0};
+        double[] gamma2 = {0.0, 0.0, 0.0};
+        double[] gamma3 = {0.0, 3.0 / 4.0, 1.0 / 3.0};
+        double[] beta = {1.0, 1.0 / 4.0, 2.0 / 3.0};
+        double[] delta = {1.0, 0.0, 2.0, 0.0, -2.0};
+        return new LowStorageRKTableau(gamma1, gamma2, gamma3, beta, delta, 3, 2, "SSPRK(3,3) 3S*, order 3, embedded order 2");
+    }
+
+    /**
+     * The third-order strong stability preserving method of Kraaijevanger
+     * with four stages in the 3S* form, whose SSP coefficient of 2 allows
+     * twice the stepsize of forward Euler. The embedded method
+     * y_0 - 2 Y_2 + 2 Y_3 is the explicit midpoint rule, stable to 2 on the
+     * negative real axis where the method is stable to 5.15. Combinations
+     * with a longer stability interval gave error estimates that did not
+     * decrease with the tolerance on the Burgers problem in MOLTest.
+     * <p>
+     * J. F. B. M. Kraaijevanger. "Contractivity of Runge-Kutta methods", BIT, vol 31, pg 482-528, 1991.
+     * <p>
+     * Raymond J. Spiteri and Steven J. Ruuth. "A new class of optimal high-order strong-stability-preserving time discretization methods", SIAM J. Numer. Anal., vol 40, pg 469-491, 2002.
+     *
+     * @return The tableau for SSPRK(4,3), order 3, embedded order 2.
+     */
+    public static LowStorageRKTableau get_SSPRK43_tableau() {
+        double[] gamma1 = {1.0, 1.0, 1.0 / 3.0, 1.0};
+        double[] gamma2 = {0.0, 0.0, 0.0, 0.0};
+        double[] gamma3 = {0.0, 0.0, 2.0 / 3.0, 0.0};
+        double[] beta = {1.0 / 2.0, 1.0 / 2.0, 1.0 / 6.0, 1.0 / 2.0};
+        double[] delta = {1.0, -2.0, 2.0, 0.0, 0.0, 0.0};
+        return new LowStorageRKTableau(gamma1, gamma2, gamma3, beta, delta, 3, 2, "SSPRK(4,3) 3S*, order 3, embedded order 2");
+    }
+
+    /**
+     * Find the weights of the embedded method of order 2 or 3 on all but the
+     * last stage, from the order conditions in Butcher form, which are
+     * sum(b_j) = 1 and sum(b_j*c_j) = 1/2 for order 2 and also
+     * sum(b_j*c_j^2) = 1/3 and sum(b_j*a_jk*c_k) = 1/6 for order 3.
+     * <p>
+     * None of the 2N methods here is published with an embedded method, so this
+     * is how theirs are found. For the method of Williamson there are two
+     * conditions on two weights and for that of Carpenter and Kennedy four on
+     * four, so the embedded method is the only one of its order on those
+     * stages. For RK46-NL there are four conditions on five weights, and the
+     * solution closest to the main weights in the 2-norm is taken, which
+     * keeps the error estimate small where the main method is accurate. The
+     * order and the stability regions of the embedded methods are checked by
+     * the LowStorageRKTest driver.
+     * <p>
+     * Ernst Hairer, Syvert Norsett, and Gerhard Wanner. "Solving Order Differential Equations I, 2nd Edition", pg 135.
+     */
+    private static double[] embedded_weights(double[] A, double[] B, double[] c, int emb_order) {
+        double[][] a = to_butcher_A(A, B);
+        double[] b = a[A.length];
+        int m = emb_order == 2 ? 2 : 4;
+        int s = A.length - 1;
+        if (emb_order < 2 || emb_order > 3 || m > s) {
+            throw new IllegalArgumentException("The embedded method is not determined by the order conditions");
+        }
+        // the order conditions on the first s stages and their residual for
+        // the main weights without the last one
+        double[][] conditions = new double[m][s];
+        double[] residual = new double[m];
+        for (int j = 0; j < s; j++) {
+            double ac = 0.0;
+            for (int k = 0; k < j; k++) {
+                ac += a[j][k] * c[k];
+            }
+            conditions[0][j] = 1.0;
+            conditions[1][j] = c[j];
+            if (emb_order == 3) {
+                conditions[2][j] = c[j] * c[j];
+                conditions[3][j] = ac;
+            }
+        }
+        residual[0] = 1.0;
+        residual[1] = 1.0 / 2.0;
+        if (emb_order == 3) {
+            residual[2] = 1.0 / 3.0;
+            residual[3] = 1.0 / 6.0;
+        }
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < s; j++) {
+                residual[i] -= conditions[i][j] * b[j];
+            }
+        }
+        // the smallest change of the weights, from the normal equations
+        double[][] normal = new double[m][m];
+        for (int i = 0; i < m; i++) {
+            for (int k = 0; k < m; k++) {
+                for (int j = 0; j < s; j++) {
+                    normal[i][k] += conditions[i][j] * conditions[k][j];
+                }
+            }
+        }
+        LUDecomposition lu = new LUDecomposition(m);
+        if (!lu.factor(normal)) {
+            throw new IllegalArgumentException("The embedded method is not determined by the order conditions");
+        }
+        lu.solve(residual);
+        double[] weights = new double[A.length];
+        for (int j = 0; j < s; j++) {
+            weights[j] = b[j];
+            for (int i = 0; i < m; i++) {
+                weights[j] += conditions[i][j] * residual[i];
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * Get the coefficients of a method in the 3S* form in Butcher form, with
+     * the weights in row s and the embedded weights, if there are any, in
+     * row s + 1. The registers are followed as combinations of y_0 and of
+     * h*f of each stage, and every stage must be y_0 plus such a sum.
+     */
+    private static double[][] three_register_to_butcher(double[] gamma1, double[] gamma2, double[] gamma3, double[] beta, double[] delta) {
+        int s = beta.length;
+        // index 0 is the factor of y_0 and index j + 1 that of h*f of stage j
+        double[] s1 = new double[s + 1];
+        double[] s2 = new double[s + 1];
+        double[] s3 = new double[s + 1];
+        s1[0] = 1.0;
+        s3[0] = 1.0;
+        double[][] a = new double[s + 2][s];
+        for (int i = 0; i < s; i++) {
+            if (Math.abs(s1[0] - 1.0) > 1e-12) {
+                throw new IllegalArgumentException("Every stage must be consistent");
+            }
+            System.arraycopy(s1, 1, a[i], 0, s);
+            for (int j = 0; j <= s; j++) {
+                s2[j] += delta[i] * s1[j];
+            }
+            for (int j = 0; j <= s; j++) {
+                s1[j] = gamma1[i] * s1[j] + gamma2[i] * s2[j] + gamma3[i] * s3[j];
+            }
+            s1[i + 1] += beta[i];
+        }
+        if (Math.abs(s1[0] - 1.0) > 1e-12) {
+            throw new IllegalArgumentException("The solution must be consistent");
+        }
+        System.arraycopy(s1, 1, a[s], 0, s);
+        if (delta.length == s + 2) {
+            double sum = 0.0;
+            for (int i = 0; i < delta.length; i++) {
+                sum += delta[i];
+            }
+            if (sum == 0.0) {
+                throw new IllegalArgumentException("The weights of the embedded method must not sum to zero");
+            }
+            for (int j = 0; j < s; j++) {
+                a[s + 1][j] = (s2[j + 1] + delta[s] * s1[j + 1] + delta[s + 1] * s3[j + 1]) / sum;
+            }
+        }
+        return a;
+    }
+
+    /**
+     * Get the coefficients of the stages in Butcher form, where stage i uses
+     * the register after the updates j..i-1, a_ij = sum_(l=j..i-1) B_l*A_(j+1)*...*A_l.
+     */
+    private static double[][] to_butcher_A(double[] A, double[] B) {
+        int s = A.length;
+        double[][] a = new double[s + 1][s];
+        for (int j = 0; j < s; j++) {
+            double product = 1.0;
+            double sum = 0.0;
+            for (int l = j; l < s; l++) {
+                if (l > j) {
+                    product *= A[l];
+                }
+                sum += B[l] * product;
+                a[l + 1][j] = sum;
+            }
+        }
+        return a;
+    }
+
+    /**
+     * Check whether the method is in the 3S* form.
+     *
+     * @return true for the 3S* form, false for the 2N form.
+     */
+    public boolean is_three_register() {
+        return beta != null;
+    }
+
+    /**
+     * Get the factors of the current stage in the 3S* form.
+     *
+     * @return The vector gamma1, or null in the 2N form.
+     */
+    public double[] get_gamma1() {
+        return gamma1;
+    }
+
+    /**
+     * Get the factors of the running sum in the 3S* form.
+     *
+     * @return The vector gamma2, or null in the 2N form.
+     */
+    public double[] get_gamma2() {
+        return gamma2;
+    }
+
+    /**
+     * Get the factors of the initial values in the 3S* form.
+     *
+     * @return The vector gamma3, or null in the 2N form.
+     */
+    public double[] get_gamma3() {
+        return gamma3;
+    }
+
+    /**
+     * Get the factors of the RHS in the 3S* form.
+     *
+     * @return The vector beta, or null in the 2N form.
+     */
+    public double[] get_beta() {
+        return beta;
+    }
+
+    /**
+     * Get the weights of the running sum in the 3S* form, including the two
+     * weights of the embedded method if there is one.
+     *
+     * @return The vector delta, or null in the 2N form.
+     */
+    public double[] get_delta() {
+        return delta;
+    }
+
+    /**
+     * Get the factors of the register dU.
+     *
+     * @return The vector A, or null in the 3S* form.
+     */
+    public double[] get_A() {
+        return A;
+    }
+
+    /**
+     * Get the factors of the updates of the solution.
+     *
+     * @return The vector B, or null in the 3S* form.
+     */
+    public double[] get_B() {
+        return B;
+    }
+
+    /**
+     * Get the nodes of the stages.
+     *
+     * @return The vector c.
+     */
+    public double[] get_c() {
+        return c;
+    }
+
+    /**
+     * Get the coefficients of the stages in Butcher form.
+     *
+     * @return The matrix A in Butcher form.
+     */
+    public double[][] get_butcher_A() {
+        double[][] a = butcher();
+        double[][] result = new double[c.length][];
+        System.arraycopy(a, 0, result, 0, c.length);
+        return result;
+    }
+
+    /**
+     * Get the method in Butcher form with the weights in the last row.
+     */
+    private double[][] butcher() {
+        if (is_three_register()) {
+            return three_register_to_butcher(gamma1, gamma2, gamma3, beta, delta);
+        }
+        return to_butcher_A(A, B);
+    }
+
+    /**
+     * Get the weights of the method in Butcher form.
+     *
+     * @return The vector b.
+     */
+    public double[] get_b() {
+        return butcher()[c.length];
+    }
+
+    /**
+     * Get the weights of the embedded method in Butcher form.
+     *
+     * @return The embedded vector b, or null if there is no embedded method.
+     */
+    public double[] get_b_emb() {
+        return b_emb;
+    }
+
+    /**
+     * Get the number of stages.
+     *
+     * @return The number of stages.
+     */
+    public int get_number_stages() {
+        return c.length;
+    }
+
+    @Override
+    public boolean is_single() {
+        return true;
+    }
+
+    @Override
+    public boolean is_additive() {
+        return false;
+    }
+
+    @Override
+    public boolean is_FSAL() {
+        return false;
+    }
+
+    @Override
+    public int get_order() {
+        return get_scheme_order();
+    }
+
+    @Override
+    public boolean has_emb() {
+        return b_emb != null;
+    }
+
+    @Override
+    public int get_scheme_order() {
+        return order;
+    }
+
+    @Override
+    public int get_emb_order() {
+        return emb_order;
+    }
+}
@@ -0,0 +1,152 @@
+/* ./scheme/MultirateScheme.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.scheme;
+
+import ca.usask.simlab.odeToJava.interpolant.HermiteInterpolant;
+
+/**
+ * A multirate method built from an embedded explicit Runge-Kutta method, in
+ * which only the components that need it take smaller steps.
+ * <p>
+ * A step of size H is first taken for all components. The components whose
+ * local error is too large, or that the RHS names as fast, are computed
+ * again with two steps of size H/2, then the ones that still fail with four
+ * steps of size H/4, and so on up to a maximum number of levels. At each
+ * level the components that are not stepped are taken from the cubic
+ * Hermite interpolant of the level where they were last computed. The
+ * coarser levels are then computed again with the refined values of the
+ * faster components. The coupling is only third order, and the error
+ * estimate of each component is the largest local error estimate of its
+ * finest level plus the change from computing it again.
+ * <p>
+ * Valeriu Savcenco, Willem Hundsdorfer, and Jan Verwer. "A multirate time stepping strategy for stiff ordinary differential equations", BIT Numerical Mathematics, vol 47, pg 137-155, 2007.
+ * <p>
+ * C.W. Gear and D.R. Wells. "Multirate linear multistep methods", BIT Numerical Mathematics, vol 24, pg 484-502, 1984.
+ */
+public class MultirateScheme extends Scheme {
+    /**
+     * The default number of refinement levels, so the smallest step is H/32.
+     */
+    public static final int DEFAULT_LEVELS = 5;
+
+    /**
+     * The default fraction of automatically chosen fast components above
+     * which the step is not refined, since a smaller global step is cheaper.
+     */
+    public static final double DEFAULT_MAX_FAST_FRACTION = 0.5;
+
+    private final ERKButcherTableau tableau;
+    private final int levels;
+    private final double max_fast_fraction;
+
+    /**
+     * Create a multirate method.
+     *
+     * @param tableau           The embedded explicit Runge-Kutta method used at every level.
+     * @param levels            The number of refinement levels, each halving the step.
+     * @param max_fast_fraction The largest fraction of automatically chosen fast components that is refined.
+     */
+    public MultirateScheme(ERKButcherTableau tableau, int levels, double max_fast_fraction) {
+        if (!tableau.has_emb()) {
+            throw new IllegalArgumentException("The multirate method needs an embedded method for the error estimates");
+        }
+        if (levels < 1) {
+            throw new IllegalArgumentException("At least one refinement level is needed");
+        }
+        this.tableau = tableau;
+        this.levels = levels;
+        this.max_fast_fraction = max_fast_fraction;
+        name = "Multirate " + tableau.get_name();
+        order = tableau.get_scheme_order();
+        order_interpolant = 3;
+        interpolant = new HermiteInterpolant();
+    }
+
+    /**
+     * Get the multirate method built from the Dormand-Prince 5(4) method with
+     * the default number of levels.
+     *
+     * @return The multirate method.
+     */
+    public static MultirateScheme get_DormandPrince_multirate_scheme() {
+        return new MultirateScheme(ERKButcherTableau.get_DormandPrince54_tableau(), DEFAULT_LEVELS, DEFAULT_MAX_FAST_FRACTION);
+    }
+
+    /**
+     * Get the method used at every level.
+     *
+     * @return The Butcher tableau.
+     */
+    public ERKButcherTableau get_tableau() {
+        return tableau;
+    }
+
+    /**
+     * Get the number of refinement levels.
+     *
+     * @return The number of levels.
+     */
+    public int get_levels() {
+        return levels;
+    }
+
+    /**
+     * Get the largest fraction of automatically chosen fast components that
+     * is refined.
+     *
+     * @return The fraction of the components.
+     */
+    public double get_max_fast_fraction() {
+        return max_fast_fraction;
+    }
+
+    @Override
+    public boolean is_single() {
+        return true;
+    }
+
+    @Override
+    public boolean is_additive() {
+        return false;
+    }
+
+    @Override
+    public boolean is_FSAL() {
+        return false;
+    }
+
+    @Override
+    public int get_order() {
+        return order;
+    }
+
+    @Override
+    public boolean has_emb() {
+        return true;
+    }
+
+    @Override
+    public int get_scheme_order() {
+        return order;
+    }
+
+    @Override
+    public int get_emb_order() {
+        return tableau.get_emb_order();
+    }
+}
@@ -0,0 +1,197 @@
+/* ./scheme/MultistepScheme.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.scheme;
+
+import ca.usask.simlab.odeToJava.interpolant.NordsieckInterpolant;
+
+/**
+ * An abstract class for a family of variable-order multistep methods in
+ * Nordsieck form.
+ * <p>
+ * The history of a method of order q is kept as the Nordsieck array
+ * z_j = h^j y^(j)(t_n) / j! for j = 0..q, so changing the stepsize only
+ * rescales the array. A step predicts the array with the Pascal matrix and
+ * corrects it with z = z_pred + l*e, where e is the difference between the
+ * corrected and predicted solution. The coefficients returned by this class
+ * define the correction, the error estimates at the current and neighbouring
+ * orders, and how the array is changed when the order changes.
+ * <p>
+ * Ernst Hairer, Syvert Norsett, and Gerhard Wanner. "Solving Order Differential Equations I, 2nd Edition", pg 409-417.
+ * <p>
+ * Alan C. Hindmarsh. "ODEPACK, A Systematized Collection of ODE Solvers", IMACS Transactions on Scientific Computation, vol 1, pg 55-64, 1983.
+ */
+public abstract class MultistepScheme extends Scheme {
+    /**
+     * The maximum order of the family.
+     */
+    protected int max_order;
+
+    /**
+     * Set up the parts common to all multistep families.
+     *
+     * @param max_order The maximum order of the family.
+     * @param name      The name of the family.
+     */
+    protected MultistepScheme(int max_order, String name) {
+        this.max_order = max_order;
+        this.name = name;
+        order = max_order;
+        order_interpolant = max_order;
+        interpolant = new NordsieckInterpolant();
+    }
+
+    /**
+     * Get the largest order the family may use.
+     *
+     * @return The maximum order.
+     */
+    public int get_max_order() {
+        return max_order;
+    }
+
+    /**
+     * Get the vector l used to correct the predicted Nordsieck array.
+     *
+     * @param q The current order.
+     *
+     * @return The q + 1 coefficients of the correction.
+     */
+    public abstract double[] get_l(int q);
+
+    /**
+     * Get the factor that turns the weighted norm of the correction e into
+     * an estimate of the local error at the current order.
+     *
+     * @param q The current order.
+     *
+     * @return The error constant of the order.
+     */
+    public abstract double get_error_constant(int q);
+
+    /**
+     * Get the factor that turns the weighted norm of the last column of the
+     * Nordsieck array into an estimate of the local error at order q - 1.
+     *
+     * @param q The current order.
+     *
+     * @return The error constant used when considering a lower order.
+     */
+    public abstract double get_lower_error_constant(int q);
+
+    /**
+     * Get the factor that turns the weighted norm of the difference of the
+     * last two corrections into an estimate of the local error at order q + 1.
+     *
+     * @param q The current order.
+     *
+     * @return The error constant used when considering a higher order.
+     */
+    public abstract double get_higher_error_constant(int q);
+
+    /**
+     * Get the coefficients c_j that raise the order of an accepted Nordsieck
+     * array from q to q + 1 with z_j = z_j + c_j*e.
+     *
+     * @param q The current order.
+     *
+     * @return The q + 2 coefficients of the change.
+     */
+    public abstract double[] get_order_increase_coefficients(int q);
+
+    /**
+     * Get the coefficients c_j that lower the order of an accepted Nordsieck
+     * array from q to q - 1 with z_j = z_j - c_j*z_q.
+     *
+     * @param q The current order.
+     *
+     * @return The q + 1 coefficients of the change, the last of which is one.
+     */
+    public abstract double[] get_order_decrease_coefficients(int q);
+
+    /**
+     * Find the coefficients of the polynomial (x + start)(x + start + 1)...(x + start + count - 1).
+     *
+     * @param start The root of the first factor negated.
+     * @param count The number of factors.
+     *
+     * @return The count + 1 coefficients, lowest power first.
+     */
+    protected static double[] product_coefficients(int start, int count) {
+        double[] c = new double[count + 1];
+        c[0] = 1.0;
+        for (int k = 0; k < count; k++) {
+            double root = start + k;
+            for (int j = k + 1; j > 0; j--) {
+                c[j] = c[j - 1] + root * c[j];
+            }
+            c[0] = root * c[0];
+        }
+        return c;
+    }
+
+    /**
+     * Finds the factorial of a small integer.
+     *
+     * @param k The integer.
+     *
+     * @return The factorial of k.
+     */
+    protected static double factorial(int k) {
+        double value = 1.0;
+        for (int i = 2; i <= k; i++) {
+            value *= i;
+        }
+        return value;
+    }
+
+    @Override
+    public boolean is_single() {
+        return true;
+    }
+
+    @Override
+    public boolean is_additive() {
+        return false;
+    }
+
+    @Override
+    public boolean is_FSAL() {
+        return false;
+    }
+
+    @Override
+    public int get_order() {
+        return order;
+    }
+
+    @Override
+    public boolean has_emb() {
+        // the error estimate comes from the correction itself
+        return true;
+    }
+
+    @Override
+    public int get_scheme_order() {
+        return order;
+    }
+
+    @Override
+    public int get_emb_order() {
+        return order - 1;
+    }
+}
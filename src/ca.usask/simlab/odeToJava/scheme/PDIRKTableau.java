@@ -0,0 +1,251 @@
+/* ./scheme/PDIRKTableau.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.scheme;
+
+import ca.usask.simlab.odeToJava.interpolant.CollocationInterpolant;
+import ca.usask.simlab.odeToJava.util.LUDecomposition;
+
+/**
+ * A parallel diagonally-implicit iterated Runge-Kutta (PDIRK) method, which
+ * solves the stage equations of a stiffly accurate implicit corrector with a
+ * fixed number of iterations whose stages are independent of each other.
+ * <p>
+ * Starting from Y_i = y_0, each iteration computes
+ * Y_i = Y_i + inverse(I - h*d_i*J)*(y_0 + h*sum a_ij*F_j - Y_i), where F_j
+ * are the derivatives of the previous iterate. Every stage has its own
+ * matrix I - h*d_i*J, so the stages of an iteration can be factored and
+ * solved on different processors. The diagonal D is chosen so that all
+ * eigenvalues of inverse(D)*A are one, then the iteration is exact for the
+ * stiff components after s iterations. Each iteration raises the order by
+ * one, so m iterations from the starting value y_0 give order min(p, m).
+ * <p>
+ * The error estimate is that of RADAU5 with gamma_0 = d_s, so that it is
+ * filtered with the matrix of the last stage,
+ * err = inverse(I - h*d_s*J)*(d_s*h*f(y_0) + sum e_i*Z_i), where
+ * Z_i = Y_i - y_0. The weights make y_0 + d_s*h*f(y_0) + sum bhat_i*h*F_i
+ * exact for polynomials of degree s - 1, and e = (bhat - b)*inverse(A), so
+ * the embedded method has order s.
+ * <p>
+ * P.J. van der Houwen and B.P. Sommeijer. "Iterated Runge-Kutta methods on parallel computers", SIAM J. Sci. Stat. Comput., vol 12, pg 1000-1028, 1991.
+ * <p>
+ * Ernst Hairer and Gerhard Wanner. "Solving Ordinary Differential Equations II, 2nd Edition", pg 72-74.
+ */
+public class PDIRKTableau extends Scheme {
+    private final double[][] a;
+    private final double[] c, d;
+    private final double[] error_weights;
+    private final int iterations;
+    private final int order_embedded;
+
+    /**
+     * Create a PDIRK method from a stiffly accurate corrector.
+     *
+     * @param a               The coefficient matrix of the corrector, its last row is the weights.
+     * @param c               The nodes of the corrector, the last of which is one.
+     * @param d               The diagonal of the stage matrices I - h*d_i*J.
+     * @param order_corrector The order of convergence of the corrector.
+     * @param iterations      The number of iterations in a step, at least two.
+     * @param name            The name of the method.
+     */
+    public PDIRKTableau(double[][] a, double[] c, double[] d, int order_corrector, int iterations, String name) {
+        int s = c.length;
+        if (a.length != s || d.length != s) {
+            throw new IllegalArgumentException("The corrector and the diagonal must have the same number of stages");
+        }
+        if (c[s - 1] != 1.0) {
+            throw new IllegalArgumentException("The corrector must be stiffly accurate");
+        }
+        if (iterations < 2) {
+            throw new IllegalArgumentException("At least two iterations are needed for an error estimate");
+        }
+        this.a = a;
+        this.c = c;
+        this.d = d;
+        this.iterations = iterations;
+        this.name = name;
+        order = Math.min(order_corrector, iterations);
+        order_embedded = Math.min(s, order - 1);
+        error_weights = error_weights(a, c, d[s - 1]);
+        order_interpolant = Math.min(s, order);
+        interpolant = new CollocationInterpolant(c);
+    }
+
+    /**
+     * Find the weights e = (bhat - b)*inverse(A) of the error estimate, where
+     * sum bhat_i*c_i^k = 1/(k + 1) for k = 0, ..., s - 1 except that
+     * gamma_0 = d_s is taken from the first condition.
+     */
+    private static double[] error_weights(double[][] a, double[] c, double gamma0) {
+        int s = c.length;
+        double[][] vandermonde = new double[s][s];
+        double[] b_hat = new double[s];
+        for (int k = 0; k < s; k++) {
+            for (int i = 0; i < s; i++) {
+                vandermonde[k][i] = Math.pow(c[i], k);
+            }
+            b_hat[k] = 1.0 / (k + 1);
+        }
+        b_hat[0] -= gamma0;
+        LUDecomposition lu = new LUDecomposition(s);
+        if (!lu.factor(vandermonde)) {
+            throw new IllegalArgumentException("The nodes of the corrector must be distinct");
+        }
+        lu.solve(b_hat);
+        // solve e*A = bhat - b, where b is the last row of A
+        double[][] transpose = new double[s][s];
+        double[] e = new double[s];
+        for (int i = 0; i < s; i++) {
+            for (int j = 0; j < s; j++) {
+                transpose[i][j] = a[j][i];
+            }
+            e[i] = b_hat[i] - a[s - 1][i];
+        }
+        if (!lu.factor(transpose)) {
+            throw new IllegalArgumentException("The coefficient matrix of the corrector must be invertible");
+        }
+        lu.solve(e);
+        return e;
+    }
+
+    /**
+     * Get the weights e_i of the error estimate
+     * inverse(I - h*d_s*J)*(d_s*h*f(y_0) + sum e_i*Z_i), which must not be
+     * modified.
+     *
+     * @return The weights of the stage increments.
+     */
+    public double[] get_error_weights() {
+        return error_weights;
+    }
+
+    /**
+     * Get the coefficient matrix of the corrector, which must not be modified.
+     *
+     * @return The A matrix.
+     */
+    public double[][] get_A_values() {
+        return a;
+    }
+
+    /**
+     * Get the nodes of the corrector, which must not be modified.
+     *
+     * @return The c vector.
+     */
+    public double[] get_c_values() {
+        return c;
+    }
+
+    /**
+     * Get the diagonal of the stage matrices, which must not be modified.
+     *
+     * @return The diagonal D.
+     */
+    public double[] get_D_values() {
+        return d;
+    }
+
+    /**
+     * Get the number of iterations in a step.
+     *
+     * @return The number of iterations.
+     */
+    public int get_iterations() {
+        return iterations;
+    }
+
+    /**
+     * Get the number of stages.
+     *
+     * @return The number of stages.
+     */
+    public int get_number_stages() {
+        return c.length;
+    }
+
+    @Override
+    public boolean is_single() {
+        return true;
+    }
+
+    @Override
+    public boolean is_additive() {
+        return false;
+    }
+
+    @Override
+    public boolean is_FSAL() {
+        return false;
+    }
+
+    @Override
+    public int get_order() {
+        return order;
+    }
+
+    @Override
+    public boolean has_emb() {
+        return true;
+    }
+
+    @Override
+    public int get_scheme_order() {
+        return order;
+    }
+
+    @Override
+    public int get_emb_order() {
+        return order_embedded;
+    }
+
+    /**
+     * The two-stage Radau IIA corrector of order 3 with three iterations.
+     * The diagonal d_1 = 2/3 - 1/sqrt(6), d_2 = (4 + sqrt(6))/10 is the root
+     * of det(D) = det(A), trace(inverse(D)*A) = 2 with the smaller spectral
+     * radius of the iteration on the imaginary axis.
+     *
+     * @return The PDIRK method.
+     */
+    public static PDIRKTableau get_PDIRK_RadauIIA3_tableau() {
+        double sq6 = Math.sqrt(6.0);
+        double[][] a = {{5.0 / 12.0, -1.0 / 12.0},
+                        {3.0 / 4.0, 1.0 / 4.0}};
+        double[] c = {1.0 / 3.0, 1.0};
+        double[] d = {2.0 / 3.0 - 1.0 / sq6, (4.0 + sq6) / 10.0};
+        return new PDIRKTableau(a, c, d, 3, 3, "PDIRK Radau IIA, order 3");
+    }
+
+    /**
+     * The three-stage Radau IIA corrector of order 5 with five iterations.
+     * The diagonal solves trace(inverse(D)*A) = 3, the sum of the principal
+     * 2 x 2 minors of inverse(D)*A = 3 and det(D) = det(A); of the four real
+     * solutions it has the smallest spectral radius of the iteration on the
+     * imaginary axis, about 0.40.
+     *
+     * @return The PDIRK method.
+     */
+    public static PDIRKTableau get_PDIRK_RadauIIA5_tableau() {
+        double sq6 = Math.sqrt(6.0);
+        double[][] a = {{(88.0 - 7.0 * sq6) / 360.0, (296.0 - 169.0 * sq6) / 1800.0, (-2.0 + 3.0 * sq6) / 225.0},
+                        {(296.0 + 169.0 * sq6) / 1800.0, (88.0 + 7.0 * sq6) / 360.0, (-2.0 - 3.0 * sq6) / 225.0},
+                        {(16.0 - sq6) / 36.0, (16.0 + sq6) / 36.0, 1.0 / 9.0}};
+        double[] c = {(4.0 - sq6) / 10.0, (4.0 + sq6) / 10.0, 1.0};
+        double[] d = {0.3203827776857808, 0.1399668046773267, 0.37166745952291147};
+        return new PDIRKTableau(a, c, d, 5, 5, "PDIRK Radau IIA, order 5");
+    }
+}
@@ -0,0 +1,147 @@
+/* ./scheme/RKCScheme.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.scheme;
+
+import ca.usask.simlab.odeToJava.interpolant.HermiteInterpolant;
+
+/**
+ * The family of second-order Runge-Kutta-Chebyshev methods with damped
+ * Chebyshev stability polynomials.
+ * <p>
+ * The method with s stages is stable on the negative real axis up to
+ * about 0.653*s^2, so the number of stages is chosen each step from an
+ * estimate of the spectral radius of the Jacobian. The coefficients follow
+ * from three-term recurrences, so they are not tabulated and any number of
+ * stages can be used with storage for only a few vectors. The error
+ * estimate is of order 2 and uses the derivatives at both ends of the step,
+ * which also give a cubic Hermite interpolant.
+ * <p>
+ * Ben P. Sommeijer, Lawrence F. Shampine, and Jan G. Verwer. "RKC: An explicit solver for parabolic PDEs", Journal of Computational and Applied Mathematics, vol 88, pg 315-326, 1997.
+ * <p>
+ * Ernst Hairer and Gerhard Wanner. "Solving Ordinary Differential Equations II, 2nd Edition", pg 31-36.
+ */
+public class RKCScheme extends Scheme {
+    /**
+     * The default damping of the stability polynomial.
+     */
+    public static final double DEFAULT_DAMPING = 2.0 / 13.0;
+
+    /**
+     * The default maximum number of stages.
+     */
+    public static final int DEFAULT_MAX_STAGES = 500;
+
+    private final double damping;
+    private final int max_stages;
+
+    /**
+     * Create a Runge-Kutta-Chebyshev family.
+     *
+     * @param damping    The damping epsilon of the stability polynomial, w0 = 1 + epsilon/s^2.
+     * @param max_stages The largest number of stages to use.
+     */
+    public RKCScheme(double damping, int max_stages) {
+        if (damping <= 0.0) {
+            throw new IllegalArgumentException("The damping must be positive");
+        }
+        if (max_stages < 2) {
+            throw new IllegalArgumentException("At least two stages are needed");
+        }
+        this.damping = damping;
+        this.max_stages = max_stages;
+        order = 2;
+        order_interpolant = 3;
+        interpolant = new HermiteInterpolant();
+        name = "RKC, order 2";
+    }
+
+    /**
+     * Get the second-order method of Sommeijer, Shampine, and Verwer.
+     *
+     * @return The RKC family.
+     */
+    public static RKCScheme get_RKC2_scheme() {
+        return new RKCScheme(DEFAULT_DAMPING, DEFAULT_MAX_STAGES);
+    }
+
+    /**
+     * Get the damping of the stability polynomial.
+     *
+     * @return The damping epsilon.
+     */
+    public double get_damping() {
+        return damping;
+    }
+
+    /**
+     * Get the largest number of stages to use.
+     *
+     * @return The maximum number of stages.
+     */
+    public int get_max_stages() {
+        return max_stages;
+    }
+
+    /**
+     * Find the number of stages needed for stability with a stepsize and
+     * spectral radius.
+     *
+     * @param h_rho The stepsize times the spectral radius of the Jacobian.
+     *
+     * @return The number of stages, between 2 and the maximum.
+     */
+    public int get_number_stages(double h_rho) {
+        int s = 1 + (int) Math.sqrt(1.0 + 1.54 * h_rho);
+        return Math.max(2, Math.min(s, max_stages));
+    }
+
+    @Override
+    public boolean is_single() {
+        return true;
+    }
+
+    @Override
+    public boolean is_additive() {
+        return false;
+    }
+
+    @Override
+    public boolean is_FSAL() {
+        return true;
+    }
+
+    @Override
+    public int get_order() {
+        return order;
+    }
+
+    @Override
+    public boolean has_emb() {
+        return true;
+    }
+
+    @Override
+    public int get_scheme_order() {
+        return order;
+    }
+
+    @Override
+    public int get_emb_order() {
+        return order;
+    }
+}
@@ -0,0 +1,350 @@
+/* ./scheme/RKNTableau.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.scheme;
+
+import org.jscience.mathematics.vectors.Float64Matrix;
+import org.jscience.mathematics.vectors.Float64Vector;
+import ca.usask.simlab.odeToJava.interpolant.RKNInterpolant;
+
+/**
+ * The coefficients of an explicit Runge-Kutta-Nystrom method for the
+ * second-order system q'' = f(t, q).
+ * <p>
+ * The stages are Q_i = q_0 + c_i*h*q'_0 + h^2*sum_j abar_ij*f(t_0 + c_j*h, Q_j),
+ * the solution is q_1 = q_0 + h*q'_0 + h^2*sum_i bbar_i*f_i and
+ * q'_1 = q'_0 + h*sum_i b_i*f_i, and the embedded solution is formed the same
+ * way with the embedded weights. Only the accelerations are evaluated and the
+ * stages have half the dimension of the first-order system.
+ * <p>
+ * Any explicit Runge-Kutta method applied to the equivalent first-order system
+ * is a Runge-Kutta-Nystrom method with abar = A^2 and bbar = b*A, which keeps
+ * its order, its embedded method, and the FSAL property. These induced methods
+ * evaluate as many stages as the Runge-Kutta method does and only save the
+ * arithmetic on the first derivatives. Genuine Nystrom pairs, whose order
+ * conditions are those of second-order systems, reach the same order with
+ * fewer stages.
+ * <p>
+ * Ernst Hairer, Syvert Norsett, and Gerhard Wanner. "Solving Order Differential Equations I, 2nd Edition", pg 283-301.
+ */
+public class RKNTableau extends Scheme {
+    private final double[][] a;
+    private final double[] b_bar, b, b_bar_emb, b_emb, c;
+    private final int emb_order;
+    private final boolean fsal;
+
+    /**
+     * Create a Runge-Kutta-Nystrom method.
+     *
+     * @param a         The coefficients abar of the stages.
+     * @param b_bar     The weights of the positions.
+     * @param b         The weights of the first derivatives.
+     * @param b_bar_emb The weights of the positions of the embedded method, or null if there is none.
+     * @param b_emb     The weights of the first derivatives of the embedded method, or null if there is none.
+     * @param c         The nodes of the stages.
+     * @param order     The order of the method.
+     * @param emb_order The order of the embedded method.
+     * @param name      The name of the method.
+     */
+    public RKNTableau(double[][] a, double[] b_bar, double[] b, double[] b_bar_emb, double[] b_emb, double[] c, int order, int emb_order, String name) {
+        int s = c.length;
+        if (a.length != s || b_bar.length != s || b.length != s) {
+            throw new IllegalArgumentException("There must be coefficients for every stage");
+        }
+        if ((b_bar_emb == null) != (b_emb == null)) {
+            throw new IllegalArgumentException("The embedded method needs weights for both the positions and the first derivatives");
+        }
+        for (int i = 0; i < s; i++) {
+            for (int j = i; j < a[i].length; j++) {
+                if (a[i][j] != 0.0) {
+                    throw new IllegalArgumentException("The method must be explicit");
+                }
+            }
+        }
+        this.a = a;
+        this.b_bar = b_bar;
+        this.b = b;
+        this.b_bar_emb = b_bar_emb;
+        this.b_emb = b_emb;
+        this.c = c;
+        this.order = order;
+        this.emb_order = emb_order;
+        this.name = name;
+        order_interpolant = 5;
+        interpolant = new RKNInterpolant();
+        // the last stage is the first stage of the next step if it is at the
+        // solution of the step, since the acceleration does not depend on the
+        // first derivatives its weight b may be non-zero
+        boolean last = s > 1 && c[s - 1] == 1.0 && b_bar[s - 1] == 0.0;
+        for (int j = 0; last && j < s - 1; j++) {
+            last = a[s - 1][j] == b_bar[j];
+        }
+        fsal = last;
+    }
+
+    /**
+     * The classical method of Nystrom of order 4 with three stages.
+     * <p>
+     * Ernst Hairer, Syvert Norsett, and Gerhard Wanner. "Solving Order Differential Equations I, 2nd Edition", pg 285.
+     *
+     * @return The tableau for Nystrom, order 4.
+     */
+    public static RKNTableau get_Nystrom4_tableau() {
+        double[][] a = new double[3][3];
+        a[1][0] = 1.0 / 8.0;
+        a[2][1] = 1.0 / 2.0;
+        double[] b_bar = {1.0 / 6.0, 1.0 / 3.0, 0.0};
+        double[] b = {1.0 / 6.0, 2.0 / 3.0, 1.0 / 6.0};
+        double[] c = {0.0, 1.0 / 2.0, 1.0};
+        return new RKNTableau(a, b_bar, b, null, null, c, 4, 0, "Nystrom, order 4");
+    }
+
+    /**
+     * The Runge-Kutta-Nystrom pair of Dormand, El-Mikkawy, and Prince of order
+     * 6(4) with six stages. The last stage is the first stage of the next step,
+     * so it costs five evaluations of the acceleration per step, where the
+     * Dormand-Prince method of order 5(4) costs six.
+     * <p>
+     * J. R. Dormand, M. E. A. El-Mikkawy, and P. J. Prince. "Families of Runge-Kutta-Nystrom formulae", IMA Journal of Numerical Analysis, vol 7, pg 235-250, 1987.
+     *
+     * @return The tableau for RKN6(4), order 6, embedded order 4.
+     */
+    public static RKNTableau get_RKN64_tableau() {
+        double[][] a = new double[6][6];
+        a[1][0] = 1.0 / 200.0;
+        a[2][0] = -1.0 / 2200.0;
+        a[2][1] = 1.0 / 22.0;
+        a[3][0] = 637.0 / 6600.0;
+        a[3][1] = -7.0 / 110.0;
+        a[3][2] = 7.0 / 33.0;
+        a[4][0] = 225437.0 / 1968750.0;
+        a[4][1] = -30073.0 / 281250.0;
+        a[4][2] = 65569.0 / 281250.0;
+        a[4][3] = -9367.0 / 984375.0;
+        double[] b_bar = {151.0 / 2142.0, 5.0 / 116.0, 385.0 / 1368.0, 55.0 / 168.0, -6250.0 / 28101.0, 0.0};
+        System.arraycopy(b_bar, 0, a[5], 0, 5);
+        double[] b = {151.0 / 2142.0, 25.0 / 522.0, 275.0 / 684.0, 275.0 / 252.0, -78125.0 / 112404.0, 1.0 / 12.0};
+        double[] b_bar_emb = {1349.0 / 157500.0, 7873.0 / 50000.0, 192199.0 / 900000.0, 521683.0 / 2100000.0, -16.0 / 125.0, 0.0};
+        double[] b_emb = {1349.0 / 157500.0, 7873.0 / 45000.0, 27457.0 / 90000.0, 521683.0 / 630000.0, -2.0 / 5.0, 1.0 / 12.0};
+        double[] c = {0.0, 1.0 / 10.0, 3.0 / 10.0, 7.0 / 10.0, 17.0 / 25.0, 1.0};
+        return new RKNTableau(a, b_bar, b, b_bar_emb, b_emb, c, 6, 4, "RKN6(4)");
+    }
+
+    /**
+     * The Dormand-Prince method of order 5(4) in Nystrom form.
+     *
+     * @return The tableau for Dormand-Prince, order 5, embedded order 4.
+     */
+    public static RKNTableau get_DormandPrince54_tableau() {
+        return get_induced_tableau(ERKButcherTableau.get_DormandPrince54_tableau());
+    }
+
+    /**
+     * The Verner method of order 6(5) in Nystrom form.
+     *
+     * @return The tableau for Verner, order 6, embedded order 5.
+     */
+    public static RKNTableau get_Verner65_tableau() {
+        return get_induced_tableau(ERKButcherTableau.get_Verner65_tableau());
+    }
+
+    /**
+     * The Runge-Kutta-Fehlberg method of order 7(8) in Nystrom form.
+     *
+     * @return The tableau for Runge-Kutta-Fehlberg, order 7, embedded order 8.
+     */
+    public static RKNTableau get_RKF78_tableau() {
+        return get_induced_tableau(ERKButcherTableau.get_RKF78_tableau());
+    }
+
+    /**
+     * Write an explicit Runge-Kutta method as the Runge-Kutta-Nystrom method
+     * it gives for second-order systems, with abar = A^2 and bbar = b*A.
+     * <p>
+     * Ernst Hairer, Syvert Norsett, and Gerhard Wanner. "Solving Order Differential Equations I, 2nd Edition", pg 284.
+     *
+     * @param tableau The explicit Runge-Kutta method.
+     *
+     * @return The tableau of the Runge-Kutta-Nystrom method.
+     */
+    public static RKNTableau get_induced_tableau(ERKButcherTableau tableau) {
+        double[][] a_rk = to_array(tableau.get_A());
+        int s = a_rk.length;
+        double[][] a = new double[s][s];
+        for (int i = 0; i < s; i++) {
+            for (int k = 0; k < i; k++) {
+                for (int j = 0; j < k; j++) {
+                    a[i][j] += a_rk[i][k] * a_rk[k][j];
+                }
+            }
+        }
+        double[] b = to_array(tableau.get_b());
+        // the nodes are the row sums of A, which is what the positions of the
+        // stages are advanced with
+        double[] c = new double[s];
+        for (int i = 0; i < s; i++) {
+            for (int j = 0; j < i; j++) {
+                c[i] += a_rk[i][j];
+            }
+        }
+        double[] b_emb = null;
+        double[] b_bar_emb = null;
+        if (tableau.has_emb()) {
+            b_emb = to_array(tableau.get_bemb());
+            b_bar_emb = times(b_emb, a_rk);
+        }
+        double[] b_bar = times(b, a_rk);
+        boolean fsal = b[s - 1] == 0.0;
+        for (int j = 0; fsal && j < s - 1; j++) {
+            fsal = a_rk[s - 1][j] == b[j];
+        }
+        if (fsal) {
+            // the last row of A^2 is b*A and the last node is 1, but they are
+            // not rounded that way
+            System.arraycopy(b_bar, 0, a[s - 1], 0, s);
+            c[s - 1] = 1.0;
+        }
+        return new RKNTableau(a, b_bar, b, b_bar_emb, b_emb, c, tableau.get_scheme_order(), tableau.get_emb_order(), tableau.get_name() + ", Nystrom form");
+    }
+
+    private static double[][] to_array(Float64Matrix matrix) {
+        double[][] array = new double[matrix.getNumberOfRows()][matrix.getNumberOfColumns()];
+        for (int i = 0; i < array.length; i++) {
+            for (int j = 0; j < array[i].length; j++) {
+                array[i][j] = matrix.get(i, j).doubleValue();
+            }
+        }
+        return array;
+    }
+
+    private static double[] to_array(Float64Vector vector) {
+        double[] array = new double[vector.getDimension()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = vector.getValue(i);
+        }
+        return array;
+    }
+
+    // the row vector w*A
+    private static double[] times(double[] w, double[][] a) {
+        double[] result = new double[w.length];
+        for (int i = 0; i < w.length; i++) {
+            for (int j = 0; j < i; j++) {
+                result[j] += w[i] * a[i][j];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the coefficients of the stages.
+     *
+     * @return The matrix abar.
+     */
+    public double[][] get_A() {
+        return a;
+    }
+
+    /**
+     * Get the weights of the positions.
+     *
+     * @return The vector bbar.
+     */
+    public double[] get_b_bar() {
+        return b_bar;
+    }
+
+    /**
+     * Get the weights of the first derivatives.
+     *
+     * @return The vector b.
+     */
+    public double[] get_b() {
+        return b;
+    }
+
+    /**
+     * Get the weights of the positions of the embedded method.
+     *
+     * @return The embedded vector bbar, or null if there is no embedded method.
+     */
+    public double[] get_b_bar_emb() {
+        return b_bar_emb;
+    }
+
+    /**
+     * Get the weights of the first derivatives of the embedded method.
+     *
+     * @return The embedded vector b, or null if there is no embedded method.
+     */
+    public double[] get_b_emb() {
+        return b_emb;
+    }
+
+    /**
+     * Get the nodes of the stages.
+     *
+     * @return The vector c.
+     */
+    public double[] get_c() {
+        return c;
+    }
+
+    /**
+     * Get the number of stages.
+     *
+     * @return The number of stages.
+     */
+    public int get_number_stages() {
+        return c.length;
+    }
+
+    @Override
+    public boolean is_single() {
+        return true;
+    }
+
+    @Override
+    public boolean is_additive() {
+        return false;
+    }
+
+    @Override
+    public boolean is_FSAL() {
+        return fsal;
+    }
+
+    @Override
+    public int get_order() {
+        return get_scheme_order();
+    }
+
+    @Override
+    public boolean has_emb() {
+        return b_emb != null;
+    }
+
+    @Override
+    public int get_scheme_order() {
+        return order;
+    }
+
+    @Override
+    public int get_emb_order() {
+        return emb_order;
+    }
+}
@@ -0,0 +1,280 @@
+/* ./scheme/RadauIIATableau.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.scheme;
+
+import java.util.Arrays;
+
+import org.jscience.mathematics.vectors.Float64Matrix;
+import org.jscience.mathematics.vectors.Float64Vector;
+import ca.usask.simlab.odeToJava.interpolant.CollocationInterpolant;
+import ca.usask.simlab.odeToJava.util.LUDecomposition;
+
+/**
+ * The three-stage Radau IIA method of order 5 together with the quantities
+ * needed to solve its stage equations efficiently.
+ * <p>
+ * The inverse of the coefficient matrix has one real eigenvalue gamma and a
+ * complex conjugate pair alpha +- i*beta, and T transforms it to the block
+ * diagonal form diag(gamma, [alpha, -beta; beta, alpha]). With this
+ * transformation the 3n x 3n Newton system splits into one real and one
+ * complex system of size n. The error estimate of the method is of order 3
+ * and is returned as the embedded order.
+ * <p>
+ * Ernst Hairer and Gerhard Wanner. "Solving Ordinary Differential Equations II, 2nd Edition", pg 72-74, 118-127.
+ */
+public class RadauIIATableau extends Scheme {
+    private final Float64Matrix A;
+    private final Float64Vector b, c;
+    private final double[][] a_values;
+    private final double[] c_values;
+    private final double[][] t, t_inverse;
+    private final double gamma, alpha, beta;
+    private final double[] error_weights;
+    private final int order_embedded;
+
+    /**
+     * Creates a new tableau for a three-stage method whose coefficient matrix
+     * has one real eigenvalue and a complex conjugate pair.
+     *
+     * @param a              The coefficient matrix of the method.
+     * @param c              The nodes of the method, the last of which is one.
+     * @param t              The real transformation to block diagonal form.
+     * @param t_inverse      The inverse of the transformation.
+     * @param error_weights  The weights of the stage increments in the error estimate.
+     * @param order          The order of convergence of the method.
+     * @param order_embedded The order of the error estimate.
+     * @param name           The name of the method.
+     */
+    public RadauIIATableau(double[][] a, double[] c, double[][] t, double[][] t_inverse, double[] error_weights, int order, int order_embedded, String name) {
+        a_values = a;
+        c_values = c;
+        this.t = t;
+        this.t_inverse = t_inverse;
+        this.error_weights = error_weights;
+        this.order = order;
+        this.order_embedded = order_embedded;
+        this.name = name;
+        A = Float64Matrix.valueOf(a);
+        b = Float64Vector.valueOf(a[a.length - 1]);
+        this.c = Float64Vector.valueOf(c);
+        order_interpolant = c.length;
+        interpolant = new CollocationInterpolant(c);
+
+        // find the block diagonal form of the inverse of A to machine precision
+        int s = c.length;
+        LUDecomposition lu = new LUDecomposition(s);
+        lu.factor(a);
+        double[][] a_inverse = new double[s][s];
+        double[] column = new double[s];
+        for (int j = 0; j < s; j++) {
+            Arrays.fill(column, 0.0);
+            column[j] = 1.0;
+            lu.solve(column);
+            for (int i = 0; i < s; i++) {
+                a_inverse[i][j] = column[i];
+            }
+        }
+        double[][] lambda = multiply(t_inverse, multiply(a_inverse, t));
+        gamma = lambda[0][0];
+        alpha = lambda[1][1];
+        beta = lambda[2][1];
+    }
+
+    private static double[][] multiply(double[][] x, double[][] y) {
+        int s = x.length;
+        double[][] product = new double[s][s];
+        for (int i = 0; i < s; i++) {
+            for (int j = 0; j < s; j++) {
+                double sum = 0.0;
+                for (int k = 0; k < s; k++) {
+                    sum += x[i][k] * y[k][j];
+                }
+                product[i][j] = sum;
+            }
+        }
+        return product;
+    }
+
+    /**
+     * Get the A matrix of the Butcher tableau.
+     *
+     * @return The A matrix.
+     */
+    public Float64Matrix get_A() {
+        return A;
+    }
+
+    /**
+     * Get the b vector of the Butcher tableau, the last row of A.
+     *
+     * @return The b vector.
+     */
+    public Float64Vector get_b() {
+        return b;
+    }
+
+    /**
+     * Get the c vector of the Butcher tableau.
+     *
+     * @return The c vector.
+     */
+    public Float64Vector get_c() {
+        return c;
+    }
+
+    /**
+     * Get the A matrix as an array of doubles, which must not be modified.
+     *
+     * @return The A matrix.
+     */
+    public double[][] get_A_values() {
+        return a_values;
+    }
+
+    /**
+     * Get the nodes as an array of doubles, which must not be modified.
+     *
+     * @return The c vector.
+     */
+    public double[] get_c_values() {
+        return c_values;
+    }
+
+    /**
+     * Get the transformation T with inverse(T)*inverse(A)*T block diagonal,
+     * which must not be modified.
+     *
+     * @return The transformation.
+     */
+    public double[][] get_T() {
+        return t;
+    }
+
+    /**
+     * Get the inverse of the transformation T, which must not be modified.
+     *
+     * @return The inverse transformation.
+     */
+    public double[][] get_T_inverse() {
+        return t_inverse;
+    }
+
+    /**
+     * Get the real eigenvalue of the inverse of A.
+     *
+     * @return The real eigenvalue gamma.
+     */
+    public double get_gamma() {
+        return gamma;
+    }
+
+    /**
+     * Get the real part of the complex eigenvalues of the inverse of A.
+     *
+     * @return The real part alpha.
+     */
+    public double get_alpha() {
+        return alpha;
+    }
+
+    /**
+     * Get the imaginary part of the complex eigenvalues of the inverse of A.
+     *
+     * @return The imaginary part beta.
+     */
+    public double get_beta() {
+        return beta;
+    }
+
+    /**
+     * Get the weights e_i of the error estimate
+     * (gamma/h*I - J)^(-1)*(f(y_0) + sum e_i*z_i/h).
+     *
+     * @return The weights of the stage increments.
+     */
+    public double[] get_error_weights() {
+        return error_weights;
+    }
+
+    /**
+     * Get the number of stages.
+     *
+     * @return The number of stages.
+     */
+    public int get_number_stages() {
+        return c_values.length;
+    }
+
+    @Override
+    public boolean is_single() {
+        return true;
+    }
+
+    @Override
+    public boolean is_additive() {
+        return false;
+    }
+
+    @Override
+    public boolean is_FSAL() {
+        return false;
+    }
+
+    @Override
+    public int get_order() {
+        return order;
+    }
+
+    @Override
+    public boolean has_emb() {
+        return true;
+    }
+
+    @Override
+    public int get_scheme_order() {
+        return order;
+    }
+
+    @Override
+    public int get_emb_order() {
+        return order_embedded;
+    }
+
+    /**
+     * The three-stage Radau IIA method of order 5 as used in RADAU5.
+     * <p>
+     * Ernst Hairer and Gerhard Wanner. "Solving Ordinary Differential Equations II, 2nd Edition", pg 74, 123-124.
+     *
+     * @return The Butcher tableau of the method.
+     */
+    public static RadauIIATableau get_RadauIIA5_tableau() {
+        double sq6 = Math.sqrt(6.0);
+        double[][] a = {{(88.0 - 7.0 * sq6) / 360.0, (296.0 - 169.0 * sq6) / 1800.0, (-2.0 + 3.0 * sq6) / 225.0},
+                        {(296.0 + 169.0 * sq6) / 1800.0, (88.0 + 7.0 * sq6) / 360.0, (-2.0 - 3.0 * sq6) / 225.0},
+                        {(16.0 - sq6) / 36.0, (16.0 + sq6) / 36.0, 1.0 / 9.0}};
+        double[] c = {(4.0 - sq6) / 10.0, (4.0 + sq6) / 10.0, 1.0};
+        double[][] t = {{9.1232394870892942792e-02, -0.14125529502095420843, -3.0029194105147424492e-02},
+                        {0.24171793270710701896, 0.20412935229379993199, 0.38294211275726193779},
+                        {0.96604818261509293619, 1.0, 0.0}};
+        double[][] t_inverse = {{4.3255798900631553510, 0.33919925181580986954, 0.54177053993587487119},
+                                {-4.1787185915519047273, -0.32768282076106238708, 0.47662355450055045196},
+                                {-0.50287263494578687595, 2.5719269498556054292, -0.59603920482822492497}};
+        double[] error_weights = {-(13.0 + 7.0 * sq6) / 3.0, (-13.0 + 7.0 * sq6) / 3.0, -1.0 / 3.0};
+        return new RadauIIATableau(a, c, t, t_inverse, error_weights, 5, 3, "Radau IIA, order 5");
+    }
+}
@@ -0,0 +1,109 @@
+/* ./scheme/RushLarsenScheme.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.scheme;
+
+import ca.usask.simlab.odeToJava.interpolant.DefaultInterpolant;
+
+/**
+ * The Rush-Larsen methods for an RHS with gating variables, given by the
+ * GatingRHS interface.
+ * <p>
+ * The gating variables are updated with the exponential of their linear
+ * equations, y_inf + (y - y_inf)*exp(-h/tau), with the steady states and
+ * time constants frozen over the step, which is stable for any stepsize. The
+ * other components, such as the membrane potential and the concentrations,
+ * are updated with an explicit Runge-Kutta method. The method of order 1
+ * uses forward Euler. The method of order 2 uses the explicit midpoint rule
+ * and evaluates the rates at the midpoint, which is found with the method of
+ * order 1, and that method also gives the error estimate.
+ * <p>
+ * S. Rush and H. Larsen. "A practical algorithm for solving dynamic membrane equations", IEEE Transactions on Biomedical Engineering, vol 25, pg 389-392, 1978.
+ * <p>
+ * Joakim Sundnes, Rune Artebrant, Ola Skavhaug, and Aslak Tveito. "A second-order algorithm for solving dynamic cell membrane equations", IEEE Transactions on Biomedical Engineering, vol 56, pg 2546-2548, 2009.
+ */
+public class RushLarsenScheme extends Scheme {
+    /**
+     * Create a Rush-Larsen method.
+     *
+     * @param order The order, 1 or 2.
+     */
+    public RushLarsenScheme(int order) {
+        if (order != 1 && order != 2) {
+            throw new IllegalArgumentException("The Rush-Larsen methods are of order 1 or 2");
+        }
+        this.order = order;
+        order_interpolant = 1;
+        interpolant = new DefaultInterpolant();
+        name = "Rush-Larsen, order " + order;
+    }
+
+    /**
+     * Get the Rush-Larsen method of order 1 with forward Euler, which has no
+     * error estimate.
+     *
+     * @return The method of order 1.
+     */
+    public static RushLarsenScheme get_RushLarsen1_scheme() {
+        return new RushLarsenScheme(1);
+    }
+
+    /**
+     * Get the Rush-Larsen method of order 2 with the explicit midpoint rule,
+     * with the method of order 1 for the error estimate.
+     *
+     * @return The method of order 2.
+     */
+    public static RushLarsenScheme get_RushLarsen2_scheme() {
+        return new RushLarsenScheme(2);
+    }
+
+    @Override
+    public boolean is_single() {
+        return true;
+    }
+
+    @Override
+    public boolean is_additive() {
+        return false;
+    }
+
+    @Override
+    public boolean is_FSAL() {
+        return false;
+    }
+
+    @Override
+    public int get_order() {
+        return order;
+    }
+
+    @Override
+    public boolean has_emb() {
+        return order == 2;
+    }
+
+    @Override
+    public int get_scheme_order() {
+        return order;
+    }
+
+    @Override
+    public int get_emb_order() {
+        return 1;
+    }
+}
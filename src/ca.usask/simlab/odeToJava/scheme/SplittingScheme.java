@@ -0,0 +1,141 @@
+/* ./scheme/SplittingScheme.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.scheme;
+
+/**
+ * The coefficients of an operator splitting method for an RHS f = f1 + f2,
+ * Psi_h = Phi2_(b_s*h) o Phi1_(a_s*h) o ... o Phi2_(b_1*h) o Phi1_(a_1*h),
+ * where Phi1 and Phi2 are the flows of f1 and f2, as used by
+ * SplittingController.
+ * <p>
+ * The Lie splitting has order 1 and the Strang splitting order 2. Higher
+ * orders come from compositions of the Strang splitting, which need substeps
+ * backwards in time, so they only suit flows that are stable in both
+ * directions and not, for example, diffusion.
+ * <p>
+ * Robert McLachlan and Reinout Quispel. "Splitting methods", Acta Numerica, vol 11, pg 341-434, 2002.
+ * <p>
+ * Gilbert Strang. "On the construction and comparison of difference schemes", SIAM Journal on Numerical Analysis, vol 5, pg 506-517, 1968.
+ */
+public class SplittingScheme {
+    private final double[] a, b;
+    private final int order;
+    private final String name;
+
+    /**
+     * Create a splitting method.
+     *
+     * @param a     The stepsize fractions of the flows of f1, which must sum to one.
+     * @param b     The stepsize fractions of the flows of f2, as many as a, which must sum to one.
+     * @param order The order of the method.
+     * @param name  The name of the method.
+     */
+    public SplittingScheme(double[] a, double[] b, int order, String name) {
+        if (a.length != b.length) {
+            throw new IllegalArgumentException("A splitting needs as many coefficients for f1 as for f2");
+        }
+        double sum_a = 0.0;
+        double sum_b = 0.0;
+        for (int i = 0; i < a.length; i++) {
+            sum_a += a[i];
+            sum_b += b[i];
+        }
+        if (Math.abs(sum_a - 1.0) > 1e-12 || Math.abs(sum_b - 1.0) > 1e-12) {
+            throw new IllegalArgumentException("The coefficients of a splitting must sum to one");
+        }
+        this.a = a;
+        this.b = b;
+        this.order = order;
+        this.name = name;
+    }
+
+    /**
+     * Get the Lie splitting of order 1, Phi2_h o Phi1_h.
+     *
+     * @return The Lie splitting.
+     */
+    public static SplittingScheme get_Lie_scheme() {
+        return new SplittingScheme(new double[] {1.0}, new double[] {1.0}, 1, "Lie splitting, order 1");
+    }
+
+    /**
+     * Get the Strang splitting of order 2, Phi1_(h/2) o Phi2_h o Phi1_(h/2).
+     *
+     * @return The Strang splitting.
+     */
+    public static SplittingScheme get_Strang_scheme() {
+        return new SplittingScheme(new double[] {0.5, 0.5}, new double[] {1.0, 0.0}, 2, "Strang splitting, order 2");
+    }
+
+    /**
+     * Get the composition of Strang splittings with the coefficients of a
+     * composition method, merging the adjacent half steps of f1.
+     *
+     * @param composition The composition, such as CompositionScheme.get_Yoshida4_scheme().
+     *
+     * @return The splitting with the order of the composition.
+     */
+    public static SplittingScheme get_composition_scheme(CompositionScheme composition) {
+        double[] gamma = composition.get_gamma();
+        int s = gamma.length;
+        double[] a = new double[s + 1];
+        double[] b = new double[s + 1];
+        for (int i = 0; i < s; i++) {
+            a[i] += 0.5 * gamma[i];
+            a[i + 1] += 0.5 * gamma[i];
+            b[i] = gamma[i];
+        }
+        return new SplittingScheme(a, b, composition.get_order(), "Strang splitting composed by the " + composition.get_name());
+    }
+
+    /**
+     * Get the stepsize fractions of the flows of f1.
+     *
+     * @return The coefficients a_1, ..., a_s.
+     */
+    public double[] get_a() {
+        return a;
+    }
+
+    /**
+     * Get the stepsize fractions of the flows of f2.
+     *
+     * @return The coefficients b_1, ..., b_s.
+     */
+    public double[] get_b() {
+        return b;
+    }
+
+    /**
+     * Get the order of the method.
+     *
+     * @return The order.
+     */
+    public int get_order() {
+        return order;
+    }
+
+    /**
+     * Get the name of the method.
+     *
+     * @return The name.
+     */
+    public String get_name() {
+        return name;
+    }
+}
@@ -0,0 +1,78 @@
+/* ./solver/AdamsSolver.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.solver;
+
+import org.jscience.mathematics.vectors.Float64Vector;
+import ca.usask.simlab.odeToJava.modules.multistep.AdamsModule;
+import ca.usask.simlab.odeToJava.modules.multistep.NordsieckHistoryModule;
+import ca.usask.simlab.odeToJava.ode.RHS;
+import ca.usask.simlab.odeToJava.scheme.AdamsScheme;
+
+/**
+ * A variable-stepsize, variable-order solver using the Adams-Bashforth-Moulton
+ * methods of orders 1 to 12 in PECE mode, intended for nonstiff problems with
+ * an expensive RHS.
+ * <p>
+ * Each step costs two evaluations of the RHS, compared to six or more for
+ * an embedded Runge-Kutta method of similar order, and the dense output
+ * comes from the Nordsieck array at no extra cost.
+ * <p>
+ * Ernst Hairer, Syvert Norsett, and Gerhard Wanner. "Solving Order Differential Equations I, 2nd Edition", pg 409-417.
+ */
+public class AdamsSolver extends MultistepSolver {
+    /**
+     * Create a solver with uniform tolerances.
+     *
+     * @param scheme The Adams family.
+     * @param atol   The absolute tolerance used for all variables.
+     * @param rtol   The relative tolerance used for all variables.
+     * @param ode    The ODE that is being solved.
+     */
+    public AdamsSolver(AdamsScheme scheme, double atol, double rtol, RHS ode) {
+        this(scheme, new NordsieckHistoryModule(scheme.get_max_order()), atol, rtol, ode);
+    }
+
+    /**
+     * Create a solver with component-wise tolerances.
+     *
+     * @param scheme The Adams family.
+     * @param atol   A vector of absolute tolerances.
+     * @param rtol   A vector of relative tolerances.
+     * @param ode    The ODE that is being solved.
+     */
+    public AdamsSolver(AdamsScheme scheme, Float64Vector atol, Float64Vector rtol, RHS ode) {
+        this(scheme, new NordsieckHistoryModule(scheme.get_max_order()), atol, rtol, ode);
+    }
+
+    private AdamsSolver(AdamsScheme scheme, NordsieckHistoryModule history, double atol, double rtol, RHS ode) {
+        super(history, new AdamsModule(scheme, history, atol, rtol, ode));
+    }
+
+    private AdamsSolver(AdamsScheme scheme, NordsieckHistoryModule history, Float64Vector atol, Float64Vector rtol, RHS ode) {
+        super(history, new AdamsModule(scheme, history, atol, rtol, ode));
+    }
+
+    /**
+     * Get the module correcting the steps.
+     *
+     * @return The Adams module.
+     */
+    public AdamsModule get_Adams_module() {
+        return (AdamsModule) corrector;
+    }
+}
@@ -0,0 +1,79 @@
+/* ./solver/BDFSolver.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.solver;
+
+import org.jscience.mathematics.vectors.Float64Vector;
+import ca.usask.simlab.odeToJava.modules.multistep.BDFModule;
+import ca.usask.simlab.odeToJava.modules.multistep.NordsieckHistoryModule;
+import ca.usask.simlab.odeToJava.ode.RHS;
+import ca.usask.simlab.odeToJava.scheme.BDFScheme;
+
+/**
+ * A variable-stepsize, variable-order solver using the BDFs or NDFs of orders
+ * 1 to 5, intended for large stiff systems.
+ * <p>
+ * Each step costs a prediction, a few simplified Newton iterations that reuse
+ * the Jacobian and iteration matrix across steps, and no extra function
+ * evaluations for the error estimate or dense output.
+ * <p>
+ * Ernst Hairer and Gerhard Wanner. "Solving Ordinary Differential Equations II, 2nd Edition", pg 246-251.
+ * <p>
+ * Lawrence F. Shampine and Mark W. Reichelt. "The MATLAB ODE suite", SIAM Journal on Scientific Computing, vol 18, pg 1-22, 1997.
+ */
+public class BDFSolver extends MultistepSolver {
+    /**
+     * Create a solver with uniform tolerances.
+     *
+     * @param scheme The BDF or NDF family.
+     * @param atol   The absolute tolerance used for all variables.
+     * @param rtol   The relative tolerance used for all variables.
+     * @param ode    The ODE that is being solved.
+     */
+    public BDFSolver(BDFScheme scheme, double atol, double rtol, RHS ode) {
+        this(scheme, new NordsieckHistoryModule(scheme.get_max_order()), atol, rtol, ode);
+    }
+
+    /**
+     * Create a solver with component-wise tolerances.
+     *
+     * @param scheme The BDF or NDF family.
+     * @param atol   A vector of absolute tolerances.
+     * @param rtol   A vector of relative tolerances.
+     * @param ode    The ODE that is being solved.
+     */
+    public BDFSolver(BDFScheme scheme, Float64Vector atol, Float64Vector rtol, RHS ode) {
+        this(scheme, new NordsieckHistoryModule(scheme.get_max_order()), atol, rtol, ode);
+    }
+
+    private BDFSolver(BDFScheme scheme, NordsieckHistoryModule history, double atol, double rtol, RHS ode) {
+        super(history, new BDFModule(scheme, history, atol, rtol, ode));
+    }
+
+    private BDFSolver(BDFScheme scheme, NordsieckHistoryModule history, Float64Vector atol, Float64Vector rtol, RHS ode) {
+        super(history, new BDFModule(scheme, history, atol, rtol, ode));
+    }
+
+    /**
+     * Get the module solving the corrector equations.
+     *
+     * @return The BDF module.
+     */
+    public BDFModule get_BDF_module() {
+        return (BDFModule) corrector;
+    }
+}
@@ -0,0 +1,109 @@
+/* ./solver/ExtrapolationSolver.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.solver;
+
+import org.jscience.mathematics.numbers.Float64;
+import org.jscience.mathematics.vectors.Float64Vector;
+import ca.usask.simlab.odeToJava.modules.scheme.ExtrapolationModule;
+import ca.usask.simlab.odeToJava.ode.RHS;
+import ca.usask.simlab.odeToJava.property.PropertyHolder;
+import ca.usask.simlab.odeToJava.property.PropertyNotFoundException;
+import ca.usask.simlab.odeToJava.scheme.ExtrapolationScheme;
+import ca.usask.simlab.odeToJava.util.Matrix;
+
+/**
+ * A variable-stepsize, variable-order solver using extrapolation of the
+ * explicit midpoint rule (GBS) for nonstiff problems or of the linearly
+ * implicit Euler method for stiff problems.
+ * <p>
+ * The solver holds a single module that computes the extrapolation tableau
+ * and does its own error and order control. Other modules such as solution
+ * writers are added as usual. Unless an initial stepsize is given, one is
+ * estimated from the tolerances of the extrapolation module.
+ * <p>
+ * Ernst Hairer, Syvert Norsett, and Gerhard Wanner. "Solving Order Differential Equations I, 2nd Edition", pg 224-241.
+ */
+public class ExtrapolationSolver extends VariableStepsizeSolver {
+    private final ExtrapolationModule extrapolation;
+
+    /**
+     * Create a solver with uniform tolerances.
+     *
+     * @param scheme The extrapolation family.
+     * @param atol   The absolute tolerance used for all variables.
+     * @param rtol   The relative tolerance used for all variables.
+     * @param ode    The ODE that is being solved.
+     */
+    public ExtrapolationSolver(ExtrapolationScheme scheme, double atol, double rtol, RHS ode) {
+        this(new ExtrapolationModule(scheme, atol, rtol, ode));
+    }
+
+    /**
+     * Create a solver with component-wise tolerances.
+     *
+     * @param scheme The extrapolation family.
+     * @param atol   A vector of absolute tolerances.
+     * @param rtol   A vector of relative tolerances.
+     * @param ode    The ODE that is being solved.
+     */
+    public ExtrapolationSolver(ExtrapolationScheme scheme, Float64Vector atol, Float64Vector rtol, RHS ode) {
+        this(new ExtrapolationModule(scheme, atol, rtol, ode));
+    }
+
+    private ExtrapolationSolver(ExtrapolationModule extrapolation) {
+        super();
+        require_property("stepAccepted");
+        require_property("nextStepSize");
+        require_property("finalValues");
+        require_property("finalTime");
+
+        require_if_present_property("stopSolver");
+        require_if_present_property("stopReason");
+
+        require_if_present_property("initialStepSize");
+
+        supply_property("finalTime");
+        supply_property("initialTime");
+        supply_property("initialValues");
+
+        this.extrapolation = extrapolation;
+        add_solver_module(extrapolation);
+    }
+
+    /**
+     * Get the module computing the tableau and doing the error control, for
+     * example to change the limits on the stepsize or the number of threads.
+     *
+     * @return The extrapolation module.
+     */
+    public ExtrapolationModule get_extrapolation_module() {
+        return extrapolation;
+    }
+
+    @Override
+    protected Float64 find_initial_stepsize(PropertyHolder constant_properties) {
+        try {
+            return constant_properties.getFloat64Property("initialStepSize");
+        } catch (PropertyNotFoundException e) {
+            double h = extrapolation.estimate_initial_stepsize(get_initial_time().doubleValue(),
+                                                               get_final_time().doubleValue(),
+                                                               Matrix.toDouble(get_initial_values()));
+            return Float64.valueOf(h);
+        }
+    }
+}
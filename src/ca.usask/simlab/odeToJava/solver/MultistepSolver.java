@@ -0,0 +1,107 @@
+/* ./solver/MultistepSolver.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.solver;
+
+import org.jscience.mathematics.numbers.Float64;
+import ca.usask.simlab.odeToJava.modules.multistep.MultistepModule;
+import ca.usask.simlab.odeToJava.modules.multistep.NordsieckHistoryModule;
+import ca.usask.simlab.odeToJava.property.PropertyHolder;
+import ca.usask.simlab.odeToJava.property.PropertyNotFoundException;
+import ca.usask.simlab.odeToJava.util.Matrix;
+
+/**
+ * An abstract variable-stepsize, variable-order solver for multistep methods
+ * in Nordsieck form.
+ * <p>
+ * The solver holds a history module and a corrector module that also does the
+ * error control. Other modules such as solution writers are added as usual.
+ * Unless an initial stepsize is given, one is estimated from the tolerances
+ * of the corrector module.
+ * <p>
+ * Ernst Hairer, Syvert Norsett, and Gerhard Wanner. "Solving Order Differential Equations I, 2nd Edition", pg 409-417.
+ */
+public abstract class MultistepSolver extends VariableStepsizeSolver {
+    /**
+     * The module holding the Nordsieck array.
+     */
+    protected final NordsieckHistoryModule history;
+
+    /**
+     * The module doing the correction and error control.
+     */
+    protected final MultistepModule corrector;
+
+    /**
+     * The standard constructor.
+     *
+     * @param history   The module holding the Nordsieck array.
+     * @param corrector The module doing the correction and error control.
+     */
+    public MultistepSolver(NordsieckHistoryModule history, MultistepModule corrector) {
+        super();
+        require_property("stepAccepted");
+        require_property("nextStepSize");
+        require_property("finalValues");
+        require_property("finalTime");
+
+        require_if_present_property("stopSolver");
+        require_if_present_property("stopReason");
+
+        require_if_present_property("initialStepSize");
+
+        supply_property("finalTime");
+        supply_property("initialTime");
+        supply_property("initialValues");
+
+        this.history = history;
+        this.corrector = corrector;
+        add_solver_module(history);
+        add_solver_module(corrector);
+    }
+
+    /**
+     * Get the module doing the correction and error control, for example to
+     * change the limits on the stepsize.
+     *
+     * @return The corrector module.
+     */
+    public MultistepModule get_corrector_module() {
+        return corrector;
+    }
+
+    /**
+     * Get the module holding the Nordsieck array.
+     *
+     * @return The history module.
+     */
+    public NordsieckHistoryModule get_history_module() {
+        return history;
+    }
+
+    @Override
+    protected Float64 find_initial_stepsize(PropertyHolder constant_properties) {
+        try {
+            return constant_properties.getFloat64Property("initialStepSize");
+        } catch (PropertyNotFoundException e) {
+            double h = corrector.estimate_initial_stepsize(get_initial_time().doubleValue(),
+                                                           get_final_time().doubleValue(),
+                                                           Matrix.toDouble(get_initial_values()));
+            return Float64.valueOf(h);
+        }
+    }
+}
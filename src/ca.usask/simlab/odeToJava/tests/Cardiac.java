@@ -21,10 +21,22 @@ import java.util.Arrays;
 
 import ca.usask.simlab.odeToJava.controller.IVP;
 import ca.usask.simlab.odeToJava.controller.IVPController;
+import ca.usask.simlab.odeToJava.controller.IVPControllerFactory;
+import ca.usask.simlab.odeToJava.controller.PararealController;
+import ca.usask.simlab.odeToJava.testSuite.SolutionTester;
 import org.jscience.mathematics.vectors.Float64Vector;
+import ca.usask.simlab.odeToJava.ode.CellArrayRHS;
+import ca.usask.simlab.odeToJava.odes.LuoRudyCellModel;
 import ca.usask.simlab.odeToJava.odes.LuoRudyODE;
 import ca.usask.simlab.odeToJava.testSuite.Testable;
+import ca.usask.simlab.odeToJava.util.LookupTable;
 import ca.usask.simlab.odeToJava.scheme.IMEXESDIRKButcherTableau;
+import ca.usask.simlab.odeToJava.scheme.ERKButcherTableau;
+import ca.usask.simlab.odeToJava.scheme.MultirateScheme;
+import ca.usask.simlab.odeToJava.scheme.RushLarsenScheme;
+import ca.usask.simlab.odeToJava.scheme.RKCScheme;
+import ca.usask.simlab.odeToJava.scheme.RadauIIATableau;
+import ca.usask.simlab.odeToJava.scheme.Scheme;
 
 /**
  * This class runs tests with the Luo-Rudy cardiac models in order to test the
@@ -95,5 +107,110 @@ public class Cardiac {
         // the Dormand-Prince 5(4) ERK method for comparison 
         luorudy.test_embedded_Dopr(RTOLS,
                             ATOLS);
+        // the multirate Dormand-Prince method, only the fast components are sub-stepped
+        luorudy.test_embedded(MultirateScheme.get_DormandPrince_multirate_scheme(),
+                        RTOLS,
+                        ATOLS);
+        // the second-order Rush-Larsen method, the gates are updated with the exponential
+        luorudy.test_embedded(RushLarsenScheme.get_RushLarsen2_scheme(),
+                        RTOLS,
+                        ATOLS);
+        // the same methods with the rates that only depend on the membrane
+        // potential interpolated from a lookup table
+        LuoRudyODE tabulated = new LuoRudyODE();
+        LookupTable table = LuoRudyODE.create_lookup_table();
+        tabulated.set_lookup_table(table);
+        System.out.println("lookup table error bounds " + Arrays.toString(table.get_error_bound()));
+        Testable luorudy_table = new Testable(tabulated, "referenceSolutions/luorudyReference.txt");
+        luorudy_table.test_embedded_Dopr(RTOLS,
+                                  ATOLS);
+        luorudy_table.test_embedded(RushLarsenScheme.get_RushLarsen2_scheme(),
+                              RTOLS,
+                              ATOLS);
+        // Parareal with a Rush-Larsen coarse propagator and a tight
+        // Dormand-Prince fine propagator, the fine solves of the slices run in
+        // parallel; the gates make Dormand-Prince a poor coarse propagator since
+        // its stepsize is limited by stiffness, so it needs one iteration per slice
+        SolutionTester reference = new SolutionTester("referenceSolutions/luorudyReference.txt");
+        IVP ivp = new IVP(new LuoRudyODE(), reference.get_initial_time(), reference.get_initial_values());
+        for (int slices = 4; slices <= 16; slices *= 2) {
+            PararealController parareal = new PararealController(ivp, reference.get_final_time().doubleValue(),
+                                                                 get_factory(RushLarsenScheme.get_RushLarsen2_scheme(), 1e-5),
+                                                                 get_factory(ERKButcherTableau.get_DormandPrince54_tableau(), 1e-9));
+            parareal.set_slices(slices);
+            parareal.set_threads(slices);
+            long start = System.currentTimeMillis();
+            parareal.run();
+            System.out.format("Parareal, %d slices: %d iterations, %d fine solves, converged %b, sequential %b, %d ms\n",
+                              slices, parareal.get_iterations(), parareal.get_fine_solves(),
+                              parareal.is_converged(), parareal.is_sequential(), System.currentTimeMillis() - start);
+            System.out.println("boundary changes " + Arrays.toString(parareal.get_boundary_changes()));
+            System.out.println("final values " + parareal.get_final_values());
+        }
+        // a strand of coupled cells stimulated at one end, the action potential
+        // travels along the strand
+        Float64Vector stimulus = reference.get_initial_values();
+        for (int threads = 1; threads <= 4; threads *= 2) {
+            run_strand(RKCScheme.get_RKC2_scheme(), threads, stimulus);
+        }
+        // Radau IIA only decomposes the blocks of the cells of the strand
+        run_strand(RadauIIATableau.get_RadauIIA5_tableau(), 1, stimulus);
+    }
+
+    /**
+     * Solve a strand of 512 Luo-Rudy cells whose first cells are stimulated
+     * and print how many cells the action potential has reached.
+     *
+     * @param scheme   The method to solve with.
+     * @param threads  The number of threads that evaluate the cells.
+     * @param stimulus The values of the stimulated cells.
+     */
+    private static void run_strand(Scheme scheme, int threads, Float64Vector stimulus) throws Exception {
+        CellArrayRHS strand = new CellArrayRHS(new LuoRudyCellModel(), 512, 10.0);
+        strand.set_threads(threads);
+        double[] y0 = strand.get_initial_values();
+        for (int i = 0; i < 5; i++) {
+            for (int k = 0; k < stimulus.getDimension(); k++) {
+                y0[strand.get_index(k, i)] = stimulus.getValue(k);
+            }
+        }
+        IVPController controller = new IVPController(new IVP(strand, 0.0, y0), 10.0);
+        controller.set_butcher_tableau(scheme);
+        controller.set_rtol(1e-4);
+        controller.set_atol(1e-4);
+        long start = System.currentTimeMillis();
+        IVPController.RunnableSolver solver = controller.get_runnable();
+        solver.run();
+        Float64Vector y = solver.solver.get_final_values();
+        int depolarized = 0;
+        for (int i = 0; i < strand.get_number_cells(); i++) {
+            if (y.getValue(strand.get_index(strand.get_model().get_potential_variable(), i)) > -40.0) {
+                depolarized++;
+            }
+        }
+        System.out.format("strand of %d cells, %s, %d threads: %d cells depolarized, %d ms\n",
+                          strand.get_number_cells(), scheme.get_name(), threads, depolarized,
+                          System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Get a factory for controllers of a method with the same absolute and
+     * relative tolerance.
+     *
+     * @param scheme The method to solve with.
+     * @param tol    The tolerance.
+     *
+     * @return The factory.
+     */
+    private static IVPControllerFactory get_factory(final Scheme scheme, final double tol) {
+        return new IVPControllerFactory() {
+            public IVPController create(IVP ivp, double final_time) {
+                IVPController controller = new IVPController(ivp, final_time);
+                controller.set_butcher_tableau(scheme);
+                controller.set_rtol(tol);
+                controller.set_atol(tol);
+                return controller;
+            }
+        };
     }
 } 
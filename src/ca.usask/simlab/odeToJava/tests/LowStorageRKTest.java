@@ -0,0 +1,180 @@
+/* ./tests/LowStorageRKTest.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.tests;
+
+import ca.usask.simlab.odeToJava.scheme.LowStorageRKTableau;
+
+/**
+ * This class checks the low-storage Runge-Kutta methods and the embedded
+ * methods found for them, by the order conditions in Butcher form and by
+ * the stability intervals on the negative real and the imaginary axes.
+ * <p>
+ * The stability function is R(z) = 1 + sum_k b^T*A^(k-1)*e*z^k, and the
+ * intervals are found by stepping along the axes until |R(z)| > 1.
+ * <p>
+ * Ernst Hairer, Syvert Norsett, and Gerhard Wanner. "Solving Order Differential Equations I, 2nd Edition", pg 148, 16.
+ */
+public class LowStorageRKTest {
+    // the increment along the axes
+    private static final double INCREMENT = 1e-3;
+    // the tolerance of the order conditions, some methods are only
+    // published to 12 digits
+    private static final double TOLERANCE = 1e-10;
+
+    /**
+     * The main method for the low-storage Runge-Kutta methods.
+     *
+     * @param args The standard variable for holding command-line arguments.
+     */
+    public static void main(String[] args) {
+        check(LowStorageRKTableau.get_Williamson3_tableau());
+        check(LowStorageRKTableau.get_CarpenterKennedy4_tableau());
+        check(LowStorageRKTableau.get_RK46NL_tableau());
+        check(LowStorageRKTableau.get_SSPRK33_tableau());
+        check(LowStorageRKTableau.get_SSPRK43_tableau());
+    }
+
+    /**
+     * Print the order and the stability intervals of a method and of its
+     * embedded method, and fail if the orders are not the ones the method
+     * claims.
+     *
+     * @param tableau The low-storage method.
+     */
+    private static void check(LowStorageRKTableau tableau) {
+        double[][] a = tableau.get_butcher_A();
+        double[] c = tableau.get_c();
+        double[] b = tableau.get_b();
+        double[] b_emb = tableau.get_b_emb();
+        int order = order(a, b, c);
+        int emb_order = order(a, b_emb, c);
+        double[] r = stability_polynomial(a, b);
+        double[] r_emb = stability_polynomial(a, b_emb);
+        System.out.format("%s\n", tableau.get_name());
+        System.out.format("    method:   order %d, real interval [-%.3f, 0], imaginary interval [-%.3f, %.3f]\n",
+                          order, real_interval(r), imaginary_interval(r), imaginary_interval(r));
+        System.out.format("    embedded: order %d, real interval [-%.3f, 0], imaginary interval [-%.3f, %.3f]\n",
+                          emb_order, real_interval(r_emb), imaginary_interval(r_emb), imaginary_interval(r_emb));
+        if (order != tableau.get_scheme_order() || emb_order != tableau.get_emb_order()) {
+            throw new RuntimeException(tableau.get_name() + " has order " + order + "(" + emb_order + ")");
+        }
+    }
+
+    /**
+     * Find the order of a method from the order conditions up to order 4.
+     */
+    private static int order(double[][] a, double[] b, double[] c) {
+        int s = b.length;
+        double[] ac = times(a, c);
+        double[] c2 = new double[s];
+        for (int i = 0; i < s; i++) {
+            c2[i] = c[i] * c[i];
+        }
+        double[] ac2 = times(a, c2);
+        double[] aac = times(a, ac);
+        double[][] conditions = new double[8][2];
+        // the sums and their exact values for the trees of order 1 to 4
+        for (int i = 0; i < s; i++) {
+            conditions[0][0] += b[i];
+            conditions[1][0] += b[i] * c[i];
+            conditions[2][0] += b[i] * c2[i];
+            conditions[3][0] += b[i] * ac[i];
+            conditions[4][0] += b[i] * c2[i] * c[i];
+            conditions[5][0] += b[i] * c[i] * ac[i];
+            conditions[6][0] += b[i] * ac2[i];
+            conditions[7][0] += b[i] * aac[i];
+        }
+        double[] exact = {1.0, 1.0 / 2.0, 1.0 / 3.0, 1.0 / 6.0, 1.0 / 4.0, 1.0 / 8.0, 1.0 / 12.0, 1.0 / 24.0};
+        // the last condition of each order
+        int[] last = {0, 1, 3, 7};
+        int order = 0;
+        for (int p = 0; p < last.length; p++) {
+            for (int k = p == 0 ? 0 : last[p - 1] + 1; k <= last[p]; k++) {
+                if (Math.abs(conditions[k][0] - exact[k]) > TOLERANCE) {
+                    return order;
+                }
+            }
+            order = p + 1;
+        }
+        return order;
+    }
+
+    /**
+     * Find the coefficients of the stability polynomial.
+     */
+    private static double[] stability_polynomial(double[][] a, double[] b) {
+        int s = b.length;
+        double[] r = new double[s + 1];
+        double[] power = new double[s];
+        for (int i = 0; i < s; i++) {
+            power[i] = 1.0;
+        }
+        r[0] = 1.0;
+        for (int k = 1; k <= s; k++) {
+            for (int i = 0; i < s; i++) {
+                r[k] += b[i] * power[i];
+            }
+            power = times(a, power);
+        }
+        return r;
+    }
+
+    /**
+     * Find how far the method is stable along the negative real axis.
+     */
+    private static double real_interval(double[] r) {
+        double x = 0.0;
+        while (Math.abs(evaluate(r, -(x + INCREMENT), 0.0)) <= 1.0 && x < 100.0) {
+            x += INCREMENT;
+        }
+        return x;
+    }
+
+    /**
+     * Find how far the method is stable along the imaginary axis.
+     */
+    private static double imaginary_interval(double[] r) {
+        double y = 0.0;
+        while (Math.abs(evaluate(r, 0.0, y + INCREMENT)) <= 1.0 && y < 100.0) {
+            y += INCREMENT;
+        }
+        return y;
+    }
+
+    // the modulus of the polynomial at x + i*y
+    private static double evaluate(double[] r, double x, double y) {
+        double real = 0.0;
+        double imaginary = 0.0;
+        for (int k = r.length - 1; k >= 0; k--) {
+            double next = real * x - imaginary * y + r[k];
+            imaginary = real * y + imaginary * x;
+            real = next;
+        }
+        return Math.hypot(real, imaginary);
+    }
+
+    private static double[] times(double[][] a, double[] v) {
+        double[] result = new double[v.length];
+        for (int i = 0; i < v.length; i++) {
+            for (int j = 0; j < i; j++) {
+                result[i] += a[i][j] * v[j];
+            }
+        }
+        return result;
+    }
+}
@@ -18,13 +18,31 @@
 package ca.usask.simlab.odeToJava.tests;
 import java.util.Vector;
 import java.util.Arrays;
+import ca.usask.simlab.odeToJava.controller.AdaptiveMeshController;
 import ca.usask.simlab.odeToJava.controller.IVP;
 import ca.usask.simlab.odeToJava.controller.IVPController;
+import ca.usask.simlab.odeToJava.controller.IVPControllerFactory;
+import ca.usask.simlab.odeToJava.controller.SplittingController;
+import ca.usask.simlab.odeToJava.controller.SubFlow;
+import ca.usask.simlab.odeToJava.controller.WaveformRelaxationController;
 import org.jscience.mathematics.vectors.Float64Vector;
 import org.jscience.mathematics.numbers.Float64;
+import ca.usask.simlab.odeToJava.modules.io.writers.SnapshotWriter;
+import ca.usask.simlab.odeToJava.ode.Reaction;
+import ca.usask.simlab.odeToJava.ode.ReducedRHS;
+import ca.usask.simlab.odeToJava.ode.StencilRHS;
+import ca.usask.simlab.odeToJava.odes.BurgersFiniteVolumeODE;
 import ca.usask.simlab.odeToJava.odes.BurgersMOLODE;
+import ca.usask.simlab.odeToJava.testSuite.SolutionTester;
+import ca.usask.simlab.odeToJava.util.Matrix;
 import ca.usask.simlab.odeToJava.testSuite.Testable;
+import ca.usask.simlab.odeToJava.scheme.ERKButcherTableau;
 import ca.usask.simlab.odeToJava.scheme.IMEXESDIRKButcherTableau;
+import ca.usask.simlab.odeToJava.scheme.RKCScheme;
+import ca.usask.simlab.odeToJava.scheme.Scheme;
+import ca.usask.simlab.odeToJava.scheme.ExponentialRKTableau;
+import ca.usask.simlab.odeToJava.scheme.LowStorageRKTableau;
+import ca.usask.simlab.odeToJava.scheme.SplittingScheme;
 
 /**
  * This class tests the method of lines models in order to test IMEX methods.
@@ -62,5 +80,265 @@ public class MOLTest {
                             RTOLS, 
                             ATOLS);  
         burgers_mol.test_embedded_Dopr(RTOLS,ATOLS);
+        // the low-storage explicit Runge-Kutta methods for large systems
+        burgers_mol.test_embedded(LowStorageRKTableau.get_CarpenterKennedy4_tableau(),
+                            RTOLS, 
+                            ATOLS);  
+        burgers_mol.test_embedded(LowStorageRKTableau.get_RK46NL_tableau(),
+                            RTOLS, 
+                            ATOLS);  
+        burgers_mol.test_embedded(LowStorageRKTableau.get_SSPRK43_tableau(),
+                            RTOLS, 
+                            ATOLS);  
+        // the stabilized explicit Runge-Kutta-Chebyshev method
+        burgers_mol.test_embedded(RKCScheme.get_RKC2_scheme(),
+                            RTOLS, 
+                            ATOLS);  
+        // the exponential time differencing methods of Cox and Matthews
+        burgers_mol.test_embedded(ExponentialRKTableau.get_ETDRK2_tableau(),
+                            RTOLS, 
+                            ATOLS);  
+        burgers_mol.test_embedded(ExponentialRKTableau.get_ETDRK4_tableau(),
+                            RTOLS, 
+                            ATOLS);  
+        // the same problem declared as stencil terms
+        StencilRHS burgers_stencil = new StencilRHS(1, new int[] {127}, new double[] {1./126.});
+        burgers_stencil.set_boundary(0, StencilRHS.Boundary.DIRICHLET, StencilRHS.Boundary.DIRICHLET);
+        burgers_stencil.set_diffusion(0, 0.01);
+        burgers_stencil.set_advection(0, 0, 0.0, 1.0);
+        Testable burgers_stencil_mol = new Testable(burgers_stencil, "referenceSolutions/burgersMOLReference.txt");
+        burgers_stencil_mol.test_embedded(IMEXESDIRKButcherTableau.get_KC43_tableau(),
+                                    RTOLS,
+                                    ATOLS);
+        burgers_stencil_mol.test_embedded(RKCScheme.get_RKC2_scheme(),
+                                    RTOLS,
+                                    ATOLS);
+        // a Brusselator with diffusion on large square grids, solved by the
+        // Runge-Kutta-Chebyshev method which only needs the RHS
+        for (int points = 128; points <= 512; points *= 2) {
+            run_brusselator(points, RKCScheme.get_RKC2_scheme(), false);
+        }
+        // and by an IMEX method with the reaction explicit, solving the
+        // diffusion by lines of the grid with the approximate factorization
+        for (int points = 128; points <= 512; points *= 2) {
+            run_brusselator(points, IMEXESDIRKButcherTableau.get_KC43_tableau(), true);
+        }
+        // Burgers equation with a steep front on uniform and adaptive meshes
+        run_adaptive_burgers();
+        // a reduced-order model of Burgers equation from the snapshots of
+        // two runs, solving a run in between
+        run_reduced_burgers();
+        // waveform relaxation with the two halves of the domain as blocks,
+        // the halves are solved in parallel by Dormand-Prince controllers
+        SolutionTester reference = new SolutionTester("referenceSolutions/burgersMOLReference.txt");
+        BurgersMOLODE burgers = new BurgersMOLODE(127,Float64.valueOf(1./126.),Float64.valueOf(0.01));
+        IVP ivp = new IVP(burgers, reference.get_initial_time(), reference.get_initial_values());
+        int n = burgers.get_size();
+        int[][] blocks = new int[2][];
+        blocks[0] = new int[n/2];
+        blocks[1] = new int[n - n/2];
+        for (int i = 0; i < n; i++) {
+            if (i < n/2) {
+                blocks[0][i] = i;
+            } else {
+                blocks[1][i - n/2] = i;
+            }
+        }
+        for (int windows = 5; windows <= 20; windows *= 2) {
+            WaveformRelaxationController relaxation = new WaveformRelaxationController(ivp, reference.get_final_time().doubleValue(),
+                                                                                       blocks, get_Dopr_factory(1e-6));
+            relaxation.set_windows(windows);
+            relaxation.set_threads(2);
+            relaxation.set_tolerance(1e-5);
+            long start = System.currentTimeMillis();
+            relaxation.run();
+            System.out.format("Waveform relaxation, %d windows: %d block solves, converged %b, %d ms\n",
+                              windows, relaxation.get_block_solves(), relaxation.is_converged(),
+                              System.currentTimeMillis() - start);
+            System.out.println("sweeps " + Arrays.toString(relaxation.get_sweeps()));
+            System.out.println("final values " + relaxation.get_final_values());
+        }
+        // Lie and Strang splittings, with the advection solved by Dormand-Prince
+        // controllers and the diffusion by the exponential or an implicit solve
+        SubFlow advection = SplittingController.get_controller_flow(SplittingController.get_f1(burgers), get_Dopr_factory(1e-10));
+        SubFlow[] diffusions = {SplittingController.get_exponential_flow(burgers), SplittingController.get_implicit_flow(burgers)};
+        SplittingScheme[] splittings = {SplittingScheme.get_Lie_scheme(), SplittingScheme.get_Strang_scheme()};
+        for (SubFlow diffusion : diffusions) {
+            for (SplittingScheme splitting : splittings) {
+                for (int steps = 50; steps <= 400; steps *= 2) {
+                    SplittingController controller = new SplittingController(ivp, reference.get_final_time().doubleValue(),
+                                                                             advection, diffusion);
+                    controller.set_splitting(splitting);
+                    controller.set_steps(steps);
+                    long start = System.currentTimeMillis();
+                    controller.run();
+                    System.out.format("%s, %d steps: %d ms\n", splitting.get_name(), steps,
+                                      System.currentTimeMillis() - start);
+                    System.out.println("final values " + controller.get_final_values());
+                }
+            }
+        }
+    }
+
+    /**
+     * Solve the two-dimensional Brusselator with diffusion on the unit square
+     * with a grid of the given size.
+     * <p>
+     * Ernst Hairer and Gerhard Wanner. "Solving Ordinary Differential Equations II, 2nd Edition".
+     *
+     * @param points                    The number of points along each side.
+     * @param scheme                    The scheme to solve with.
+     * @param approximate_factorization Whether an IMEX scheme uses the approximate factorization.
+     */
+    private static void run_brusselator(int points, Scheme scheme, boolean approximate_factorization) throws Exception {
+        double h = 1.0 / points;
+        StencilRHS brusselator = new StencilRHS(2, new int[] {points, points}, new double[] {h, h});
+        brusselator.set_boundary(0, StencilRHS.Boundary.PERIODIC, StencilRHS.Boundary.PERIODIC);
+        brusselator.set_boundary(1, StencilRHS.Boundary.PERIODIC, StencilRHS.Boundary.PERIODIC);
+        brusselator.set_diffusion(0, 0.1);
+        brusselator.set_diffusion(1, 0.1);
+        brusselator.set_reaction(new Reaction() {
+            public void rate(double t, double[] u, double[] result) {
+                result[0] = 1.0 + u[0] * u[0] * u[1] - 4.4 * u[0];
+                result[1] = 3.4 * u[0] - u[0] * u[0] * u[1];
+            }
+        });
+        brusselator.set_threads(Runtime.getRuntime().availableProcessors());
+        double[] y0 = new double[brusselator.get_size()];
+        for (int j = 0; j < points; j++) {
+            for (int i = 0; i < points; i++) {
+                double x = i * h;
+                double y = j * h;
+                y0[brusselator.get_index(0, i, j, 0)] = 22.0 * y * Math.pow(1.0 - y, 1.5);
+                y0[brusselator.get_index(1, i, j, 0)] = 27.0 * x * Math.pow(1.0 - x, 1.5);
+            }
+        }
+        IVPController controller = new IVPController(new IVP(brusselator, 0.0, y0), 1.0);
+        controller.set_butcher_tableau(scheme);
+        controller.set_approximate_factorization(approximate_factorization);
+        controller.set_rtol(1e-4);
+        controller.set_atol(1e-4);
+        long start = System.currentTimeMillis();
+        IVPController.RunnableSolver solver = controller.get_runnable();
+        solver.run();
+        Float64Vector y = solver.solver.get_final_values();
+        System.out.format("Brusselator on %d x %d points, %s: u(1/2, 1/2) = %.6f, %d ms\n", points, points, scheme.get_name(),
+                          y.getValue(brusselator.get_index(0, points / 2, points / 2, 0)),
+                          System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Solve the Burgers equation with a small viscosity, whose front needs
+     * fine cells, by finite volumes on uniform meshes and on adaptive meshes
+     * refined up to the finest uniform mesh.
+     */
+    private static void run_adaptive_burgers() throws Exception {
+        double nu = 1e-3;
+        int finest = 2048;
+        for (int cells = 256; cells <= finest; cells *= 2) {
+            BurgersFiniteVolumeODE burgers = new BurgersFiniteVolumeODE(get_uniform_edges(cells), nu);
+            IVPController controller = get_Dopr_factory(1e-6).create(new IVP(burgers, 0.0, get_sine_averages(burgers.get_edges())), 1.0);
+            long start = System.currentTimeMillis();
+            IVPController.RunnableSolver solver = controller.get_runnable();
+            solver.run();
+            System.out.format("Burgers on %d uniform cells: %d ms\n", cells, System.currentTimeMillis() - start);
+            System.out.println("final values " + solver.solver.get_final_values());
+        }
+        for (int digits = 2; digits <= 4; digits++) {
+            double tolerance = Math.pow(10.0, -digits);
+            BurgersFiniteVolumeODE burgers = new BurgersFiniteVolumeODE(get_uniform_edges(finest), nu);
+            AdaptiveMeshController adaptive = new AdaptiveMeshController(burgers, 16, 0.0, get_sine_averages(burgers.get_edges()),
+                                                                         1.0, get_Dopr_factory(1e-6));
+            adaptive.set_tolerance(tolerance);
+            long start = System.currentTimeMillis();
+            adaptive.run();
+            System.out.format("Burgers on an adaptive mesh, tolerance %.0e: %.1f cells on average, %d ms\n", tolerance,
+                              adaptive.get_mean_cells(), System.currentTimeMillis() - start);
+            System.out.println("final edges " + Arrays.toString(adaptive.get_final_edges()));
+            System.out.println("final values " + adaptive.get_final_values());
+        }
+    }
+
+    /**
+     * Build POD-DEIM models of the Burgers equation from snapshots of the
+     * solutions for two amplitudes of the initial values, and compare them
+     * with the full ODE for an amplitude in between.
+     */
+    private static void run_reduced_burgers() throws Exception {
+        int n = 501;
+        BurgersMOLODE burgers = new BurgersMOLODE(n, Float64.valueOf(1.0 / (n - 1)), Float64.valueOf(0.005));
+        SnapshotWriter snapshots = new SnapshotWriter();
+        for (double amplitude : new double[] {0.8, 1.2}) {
+            IVPController controller = get_Dopr_factory(1e-7).create(new IVP(burgers, 0.0, get_sine_values(n, amplitude)), 1.0);
+            controller.add_solution_writer(snapshots);
+            controller.get_runnable().run();
+        }
+        IVPController controller = get_Dopr_factory(1e-7).create(new IVP(burgers, 0.0, get_sine_values(n, 1.0)), 1.0);
+        long start = System.currentTimeMillis();
+        IVPController.RunnableSolver solver = controller.get_runnable();
+        solver.run();
+        Float64Vector full = solver.solver.get_final_values();
+        System.out.format("Burgers with %d unknowns: %d ms\n", n, System.currentTimeMillis() - start);
+        for (int rank = 10; rank <= 40; rank *= 2) {
+            start = System.currentTimeMillis();
+            ReducedRHS reduced = ReducedRHS.from_snapshots(burgers, snapshots.get_times(), snapshots.get_snapshots(), rank, 2 * rank);
+            long built = System.currentTimeMillis();
+            controller = get_Dopr_factory(1e-7).create(new IVP(reduced, 0.0, reduced.project(get_sine_values(n, 1.0))), 1.0);
+            solver = controller.get_runnable();
+            solver.run();
+            Float64Vector error = Float64Vector.valueOf(reduced.lift(Matrix.toDouble(solver.solver.get_final_values()))).minus(full);
+            System.out.format("POD-DEIM with %d unknowns: built in %d ms, solved in %d ms, error %.3e\n", rank,
+                              built - start, System.currentTimeMillis() - built, error.normValue());
+        }
+    }
+
+    /**
+     * The values of a sine with the given amplitude at n points of the unit interval.
+     */
+    private static double[] get_sine_values(int n, double amplitude) {
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = amplitude * Math.sin(Math.PI * i / (n - 1.0));
+        }
+        return values;
+    }
+
+    private static double[] get_uniform_edges(int cells) {
+        double[] edges = new double[cells + 1];
+        for (int i = 0; i <= cells; i++) {
+            edges[i] = (double) i / cells;
+        }
+        return edges;
+    }
+
+    /**
+     * The averages of sin(pi*x) over the cells.
+     */
+    private static double[] get_sine_averages(double[] edges) {
+        double[] averages = new double[edges.length - 1];
+        for (int i = 0; i < averages.length; i++) {
+            averages[i] = (Math.cos(Math.PI * edges[i]) - Math.cos(Math.PI * edges[i + 1])) / (Math.PI * (edges[i + 1] - edges[i]));
+        }
+        return averages;
+    }
+
+    /**
+     * Get a factory for Dormand-Prince controllers with the same absolute and
+     * relative tolerance.
+     *
+     * @param tol The tolerance.
+     *
+     * @return The factory.
+     */
+    private static IVPControllerFactory get_Dopr_factory(final double tol) {
+        return new IVPControllerFactory() {
+            public IVPController create(IVP ivp, double final_time) {
+                IVPController controller = new IVPController(ivp, final_time);
+                controller.set_butcher_tableau(ERKButcherTableau.get_DormandPrince54_tableau());
+                controller.set_rtol(tol);
+                controller.set_atol(tol);
+                return controller;
+            }
+        };
     }
 }
@@ -22,6 +22,8 @@ import java.util.Arrays;
 
 import ca.usask.simlab.odeToJava.ode.RHS;
 import ca.usask.simlab.odeToJava.scheme.ERKButcherTableau;
+import ca.usask.simlab.odeToJava.scheme.AdamsScheme;
+import ca.usask.simlab.odeToJava.scheme.ExtrapolationScheme;
 import ca.usask.simlab.odeToJava.interpolant.DefaultInterpolant;
 import ca.usask.simlab.odeToJava.testSuite.Testable;
 import ca.usask.simlab.odeToJava.controller.IVPController;
@@ -168,6 +170,10 @@ public class NonStiffDETestSet {
             if (i != 22) {
                 detest.test_embedded(ERKButcherTableau.get_RKF78_tableau(), RTOLS, ATOLS);
             }
+            // variable-order Adams-Bashforth-Moulton in PECE mode
+            detest.test_embedded(AdamsScheme.get_ABM_scheme(), RTOLS, ATOLS);
+            // variable-order GBS extrapolation
+            detest.test_embedded(ExtrapolationScheme.get_GBS_scheme(), RTOLS, ATOLS);
 
             // Test the orbital problems, C5 to D5, with Stormer-Verlet
             if (14 <= i && i < 20) {
@@ -19,14 +19,19 @@ package ca.usask.simlab.odeToJava.tests;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Random;
 import java.util.Vector;
 
 import org.jscience.mathematics.numbers.Float64;
 import ca.usask.simlab.odeToJava.scheme.IMEXESDIRKButcherTableau;
 import ca.usask.simlab.odeToJava.scheme.ERKButcherTableau;
 import ca.usask.simlab.odeToJava.scheme.StormerVerletTableau;
+import ca.usask.simlab.odeToJava.scheme.CompositionScheme;
+import ca.usask.simlab.odeToJava.scheme.RKNTableau;
+import ca.usask.simlab.odeToJava.odes.NBodyODE;
 import ca.usask.simlab.odeToJava.odes.OrbitArenstorfODE;
 import ca.usask.simlab.odeToJava.odes.PleiadesODE;
+import ca.usask.simlab.odeToJava.odes.PleiadesStepDensity;
 import ca.usask.simlab.odeToJava.nonstiffDETest.C5;
 import ca.usask.simlab.odeToJava.nonstiffDETest.D1;
 import ca.usask.simlab.odeToJava.nonstiffDETest.D2;
@@ -45,7 +50,9 @@ import ca.usask.simlab.odeToJava.modules.scheme.IMEXESDIRKModule;
 import ca.usask.simlab.odeToJava.modules.scheme.ERKModule;
 import ca.usask.simlab.odeToJava.modules.scheme.ForwardEulerModule;
 import ca.usask.simlab.odeToJava.modules.scheme.StormerVerletArenstorfOrbitModule;
+import ca.usask.simlab.odeToJava.modules.scheme.CompositionArenstorfOrbitModule;
 import ca.usask.simlab.odeToJava.modules.scheme.StormerVerletVariableStepsizeArenstorfOrbitModule;
+import ca.usask.simlab.odeToJava.modules.scheme.AdaptiveStormerVerletModule;
 import ca.usask.simlab.odeToJava.ode.RHS;
 import ca.usask.simlab.odeToJava.solver.PropertySolver;
 import ca.usask.simlab.odeToJava.solver.ConstantStepSolver;
@@ -81,6 +88,10 @@ public class OrbitTest {
         Vector hp_rtol = new Vector(Arrays.asList(1e-8, 1e-10, 1e-12, 1e-14));
         Vector hp_atol = new Vector(Arrays.asList(1e-8, 1e-10, 1e-12, 1e-14));
         Vector stepsize_orbit = new Vector(Arrays.asList(1e-4, 3.16277e-5, 1e-5, 3.16277e-6, 1e-6));
+        Vector<Double> stepsize_composition = new Vector<Double>(Arrays.asList(1e-3, 5e-4, 2.5e-4, 1.25e-4));
+        Vector<CompositionScheme> compositions = new Vector<CompositionScheme>(Arrays.asList(CompositionScheme.get_Suzuki4_scheme(),
+                                                                                             CompositionScheme.get_Yoshida6_scheme(),
+                                                                                             CompositionScheme.get_Yoshida8_scheme()));
         Testable c5 = new Testable(new C5(), "referenceSolutions/nonstiffC5Reference.txt");
         Testable d1 = new Testable(new D1(), "referenceSolutions/nonstiffD1Reference.txt");
         Testable d2 = new Testable(new D2(), "referenceSolutions/nonstiffD2Reference.txt");
@@ -130,6 +141,24 @@ public class OrbitTest {
                 tests.output_test_stats(System.out);
                 tests.run();
 
+                // compositions of the special Stormer-Verlet method, each
+                // stepsize needs its own solver
+                for (CompositionScheme composition : compositions) {
+                    tests = new SolutionTester("referenceSolutions/Hamiltonian" + orbit_number + "OrbitReference.txt");
+                    for (int j = 0; j < stepsize_composition.size(); j++) {
+                        ivp = new IVP(new OrbitArenstorfODE(), tests.get_initial_time(), tests.get_initial_values());
+                        controller = new IVPController(ivp, tests.get_final_time());
+                        PropertySolver solver = new ConstantStepSolver();
+                        solver.add_solver_module(new CompositionArenstorfOrbitModule(composition));
+                        controller.set_custom_solver(solver);
+                        controller.set_butcher_tableau(composition);
+                        controller.write_at_array(tests.get_solution_times());
+                        tests.add_IVPController(controller, null, null, new Vector<Double>(Arrays.asList(stepsize_composition.get(j))));
+                    }
+                    tests.output_test_stats(System.out);
+                    tests.run();
+                }
+
                 // create a controller for using the variable-step Stormer-Verlet method
                 // XXX use the following to loops to examine the data in the paper                    
                 for (int j = 0; j < 5; j++) {
@@ -165,6 +194,28 @@ public class OrbitTest {
                 }
             } else {
                 orbit.test_const_StormerVerlet(stepsize_orbit);
+                // compositions of the Stormer-Verlet method for separable Hamiltonians
+                if (orbit == pleiades) {
+                    for (CompositionScheme composition : compositions) {
+                        orbit.test_const(composition, stepsize_composition);
+                    }
+                    // the adaptive Stormer-Verlet method with steps that follow the close approaches
+                    Vector<Double> epsilons = new Vector<Double>(Arrays.asList(1e-2, 3e-3, 1e-3));
+                    for (int k = 0; k < epsilons.size(); k++) {
+                        System.out.format("epsilon = %e\n", epsilons.get(k));
+                        SolutionTester tests = new SolutionTester("referenceSolutions/pleiadesReference.txt");
+                        IVP ivp = new IVP(new PleiadesODE(), tests.get_initial_time(), tests.get_initial_values());
+                        IVPController controller = new IVPController(ivp, tests.get_final_time());
+                        PropertySolver solver = new SymmetricVariableStepsizeSolver();
+                        solver.add_solver_module(new AdaptiveStormerVerletModule(new PleiadesStepDensity(), epsilons.get(k)));
+                        controller.set_custom_solver(solver);
+                        controller.set_butcher_tableau(new StormerVerletTableau());
+                        controller.write_at_array(tests.get_solution_times());
+                        tests.add_IVPController(controller, null, null, new Vector<Double>(Arrays.asList(epsilons.get(k))));
+                        tests.output_test_stats(System.out);
+                        tests.run();
+                    }
+                }
             }
 
             orbit.test_sd(ERKButcherTableau.get_Runge2_tableau(),
@@ -211,6 +262,67 @@ public class OrbitTest {
             orbit.test_embedded(ERKButcherTableau.get_RKF78_tableau(),
                                 hp_rtol,
                                 hp_atol);
+            // Runge-Kutta-Nystrom methods for the second-order systems
+            if (orbit == pleiades) {
+                orbit.test_const(RKNTableau.get_Nystrom4_tableau(), stepsize_composition);
+                orbit.test_embedded(RKNTableau.get_DormandPrince54_tableau(),
+                                    rtol,
+                                    atol);
+                orbit.test_embedded(RKNTableau.get_RKN64_tableau(),
+                                    rtol,
+                                    atol);
+                orbit.test_embedded(RKNTableau.get_Verner65_tableau(),
+                                    hp_rtol,
+                                    hp_atol);
+                orbit.test_embedded(RKNTableau.get_RKF78_tableau(),
+                                    hp_rtol,
+                                    hp_atol);
+                // the general N-body RHS with the masses of the Pleiades
+                Testable nbody = new Testable(new NBodyODE(new double[] {1, 2, 3, 4, 5, 6, 7}, 2),
+                                              "referenceSolutions/pleiadesReference.txt");
+                nbody.test_const_StormerVerlet(stepsize_orbit);
+                nbody.test_embedded(RKNTableau.get_DormandPrince54_tableau(),
+                                    rtol,
+                                    atol);
+            }
+        }
+        compare_nbody_forces();
+    }
+
+    /**
+     * Time the direct and Barnes-Hut accelerations of a random cluster of
+     * bodies and print the relative error of the tree.
+     */
+    private static void compare_nbody_forces() {
+        Random random = new Random(1);
+        for (int n = 1000; n <= 16000; n *= 4) {
+            double[] mass = new double[n];
+            double[] q = new double[3 * n];
+            Arrays.fill(mass, 1.0 / n);
+            for (int i = 0; i < q.length; i++) {
+                q[i] = random.nextGaussian();
+            }
+            NBodyODE ode = new NBodyODE(mass, 3);
+            ode.set_softening(1e-3);
+            double[] direct = new double[q.length];
+            double[] tree = new double[q.length];
+            long start = System.nanoTime();
+            ode.acceleration(0.0, q, direct);
+            long direct_time = System.nanoTime() - start;
+            for (double theta = 0.25; theta <= 1.0; theta *= 2.0) {
+                ode.set_opening_angle(theta);
+                start = System.nanoTime();
+                ode.acceleration(0.0, q, tree);
+                long tree_time = System.nanoTime() - start;
+                double error = 0.0;
+                double norm = 0.0;
+                for (int i = 0; i < q.length; i++) {
+                    error = Math.max(error, Math.abs(tree[i] - direct[i]));
+                    norm = Math.max(norm, Math.abs(direct[i]));
+                }
+                System.out.format("%d bodies, theta %.2f: direct %.1f ms, Barnes-Hut %.1f ms, relative error %.2e\n",
+                                  n, theta, direct_time / 1e6, tree_time / 1e6, error / norm);
+            }
         }
     }
 }
@@ -18,18 +18,56 @@
 package ca.usask.simlab.odeToJava.tests;
 import java.util.Vector;
 import java.util.Arrays;
+import java.io.StringReader;
 
 import ca.usask.simlab.odeToJava.controller.IVP;
 import ca.usask.simlab.odeToJava.controller.IVPController;
 import org.jscience.mathematics.vectors.Float64Vector;
 import ca.usask.simlab.odeToJava.odes.PollutionODE;
+import ca.usask.simlab.odeToJava.ode.ReactionNetwork;
 import ca.usask.simlab.odeToJava.testSuite.Testable;
 import ca.usask.simlab.odeToJava.scheme.IMEXESDIRKButcherTableau;
+import ca.usask.simlab.odeToJava.scheme.BDFScheme;
+import ca.usask.simlab.odeToJava.scheme.RadauIIATableau;
+import ca.usask.simlab.odeToJava.scheme.ExponentialRKTableau;
+import ca.usask.simlab.odeToJava.scheme.ExtrapolationScheme;
+import ca.usask.simlab.odeToJava.scheme.PDIRKTableau;
 
 /**
  * This class runs the tests on the air pollution problem.
  */
 public class PollutionTest {
+    /**
+     * The reactions of the air pollution problem, in the order that gives the
+     * species the same indices as in PollutionODE.
+     */
+    private static final String POLLUTION_MECHANISM = 
+        "0.350    : NO2 -> NO + O3P\n" +
+        "0.266e2  : NO + O3 -> NO2\n" +
+        "0.123e5  : HO2 + NO -> NO2 + OH\n" +
+        "0.860e-3 : HCHO -> 2 HO2 + CO\n" +
+        "0.820e-3 : HCHO -> CO\n" +
+        "0.150e5  : HCHO + OH -> HO2 + CO\n" +
+        "0.130e-3 : ALD -> MEO2 + HO2 + CO\n" +
+        "0.240e5  : ALD + OH -> C2O3\n" +
+        "0.165e5  : C2O3 + NO -> NO2 + MEO2 + CO2\n" +
+        "0.900e4  : C2O3 + NO2 -> PAN\n" +
+        "0.220e-1 : PAN -> C2O3 + NO2\n" +
+        "0.120e5  : MEO2 + NO -> CH3O + NO2\n" +
+        "0.188e1  : CH3O -> HCHO + HO2\n" +
+        "0.163e5  : NO2 + OH -> HNO3\n" +
+        "0.480e7  : O3P -> O3\n" +
+        "0.350e-3 : O3 -> O1D\n" +
+        "0.175e-1 : O3 -> O3P\n" +
+        "0.100e9  : O1D -> 2 OH\n" +
+        "0.444e12 : O1D -> O3P\n" +
+        "0.124e4  : SO2 + OH -> SO4 + HO2\n" +
+        "0.210e1  : NO3 -> NO\n" +
+        "0.578e1  : NO3 -> NO2 + O3P\n" +
+        "0.474e-1 : NO2 + O3 -> NO3\n" +
+        "0.178e4  : NO3 + NO2 -> N2O5\n" +
+        "0.312e1  : N2O5 -> NO2 + NO3\n";
+
     /**
      * The main method for the air pollution problem. 
      *
@@ -87,5 +125,34 @@ public class PollutionTest {
         pollution.test_embedded(IMEXESDIRKButcherTableau.get_LIRK43_tableau(),
                           RTOLS, 
                           ATOLS); 
+        // the variable-order BDF and NDF multistep methods
+        pollution.test_embedded(BDFScheme.get_BDF_scheme(),
+                          RTOLS, 
+                          ATOLS); 
+        pollution.test_embedded(BDFScheme.get_NDF_scheme(),
+                          RTOLS, 
+                          ATOLS); 
+        // the fully implicit Radau IIA method of order 5
+        pollution.test_embedded(RadauIIATableau.get_RadauIIA5_tableau(),
+                          RTOLS, 
+                          ATOLS);
+        // the exponential Rosenbrock method exprb32
+        pollution.test_embedded(ExponentialRKTableau.get_EXPRB32_tableau(),
+                          RTOLS, 
+                          ATOLS); 
+        // extrapolation of the linearly implicit Euler method
+        pollution.test_embedded(ExtrapolationScheme.get_linearly_implicit_Euler_scheme(),
+                          RTOLS, 
+                          ATOLS); 
+        // the parallel diagonally-implicit iterated Radau IIA method
+        pollution.test_embedded(PDIRKTableau.get_PDIRK_RadauIIA5_tableau(),
+                          RTOLS, 
+                          ATOLS); 
+        // the same mechanism compiled from its reaction equations, with an exact sparse Jacobian
+        Testable compiled_pollution = new Testable(ReactionNetwork.parse(new StringReader(POLLUTION_MECHANISM)).compile(),
+                                                   "referenceSolutions/pollutionReference.txt");
+        compiled_pollution.test_embedded(RadauIIATableau.get_RadauIIA5_tableau(),
+                                         RTOLS, 
+                                         ATOLS);
     }
 }
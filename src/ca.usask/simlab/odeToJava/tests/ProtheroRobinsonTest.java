@@ -0,0 +1,174 @@
+/* ./tests/ProtheroRobinsonTest.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.tests;
+
+import org.jscience.mathematics.numbers.Float64;
+import org.jscience.mathematics.vectors.Float64Vector;
+
+import ca.usask.simlab.odeToJava.controller.IVP;
+import ca.usask.simlab.odeToJava.controller.IVPController;
+import ca.usask.simlab.odeToJava.modules.io.writers.SolutionWriter;
+import ca.usask.simlab.odeToJava.odes.ProtheroRobinsonODE;
+import ca.usask.simlab.odeToJava.scheme.AdamsScheme;
+import ca.usask.simlab.odeToJava.scheme.BDFScheme;
+import ca.usask.simlab.odeToJava.scheme.ExponentialRKTableau;
+import ca.usask.simlab.odeToJava.scheme.ExtrapolationScheme;
+import ca.usask.simlab.odeToJava.scheme.PDIRKTableau;
+import ca.usask.simlab.odeToJava.scheme.RadauIIATableau;
+import ca.usask.simlab.odeToJava.scheme.Scheme;
+
+/**
+ * This class runs the tests on the Prothero-Robinson problem, which is stiff
+ * and non-autonomous and has a known solution.
+ */
+public class ProtheroRobinsonTest {
+    /**
+     * The main method for the Prothero-Robinson problem.
+     *
+     * @param args The standard variable for holding command-line arguments.
+     */
+    public static void main(String[] args) throws Exception {
+        // an initial stepsize far too large, so the first step is rejected
+        // and the dense output has to cope with a rejected step
+        double[] mild = {-1.0, -100.0};
+        run(BDFScheme.get_BDF_scheme(), mild, 1e-8, 5.0);
+        run(BDFScheme.get_NDF_scheme(), mild, 1e-8, 5.0);
+        run(AdamsScheme.get_ABM_scheme(), mild, 1e-8, 5.0);
+        run(AdamsScheme.get_ABM_scheme(), mild, 1e-8, 0.0);
+        run(ExtrapolationScheme.get_GBS_scheme(), mild, 1e-8, 5.0);
+        run(ExtrapolationScheme.get_linearly_implicit_Euler_scheme(), mild, 1e-8, 5.0);
+
+        // the exponential Rosenbrock method has to keep its order although
+        // the problem is non-autonomous
+        double order = observed_order(ExponentialRKTableau.get_EXPRB32_tableau(), mild, 0.1, 4);
+        if (order < 2.8) {
+            throw new RuntimeException("exprb32 has order " + order + " on a non-autonomous problem");
+        }
+        double[] stiff = {-1e4};
+        for (double tolerance : new double[] {1e-3, 1e-5, 1e-7}) {
+            run(ExponentialRKTableau.get_EXPRB32_tableau(), stiff, tolerance, 0.0);
+            run(RadauIIATableau.get_RadauIIA5_tableau(), stiff, tolerance, 0.0);
+        }
+        // the linearly implicit Euler extrapolation needs the time
+        // derivative to be efficient on non-autonomous problems
+        for (double tolerance : new double[] {1e-3, 1e-5, 1e-7, 1e-9, 1e-11}) {
+            run(ExtrapolationScheme.get_linearly_implicit_Euler_scheme(), stiff, tolerance, 0.0);
+        }
+        // the PDIRK method has to keep large stepsizes on stiff components,
+        // so it may take a few times the evaluations of Radau IIA but not
+        // orders of magnitude more
+        double[][] problems = {stiff, {-1.0, -100.0, -1e4, -1e6}};
+        for (double[] lambda : problems) {
+            for (double tolerance : new double[] {1e-3, 1e-5, 1e-7}) {
+                int radau = run(RadauIIATableau.get_RadauIIA5_tableau(), lambda, tolerance, 0.0);
+                int pdirk = run(PDIRKTableau.get_PDIRK_RadauIIA5_tableau(), lambda, tolerance, 0.0);
+                if (pdirk > 10 * radau) {
+                    throw new RuntimeException("PDIRK takes " + pdirk + " evaluations against " + radau + " for Radau IIA");
+                }
+            }
+        }
+    }
+
+    /**
+     * Estimate the order of a method from the error at t = 2 with constant
+     * stepsizes, halving the stepsize each time.
+     *
+     * @param scheme   The method to use.
+     * @param lambda   The stiffness of each component.
+     * @param stepsize The largest stepsize.
+     * @param runs     The number of stepsizes.
+     *
+     * @return The order observed between the two smallest stepsizes.
+     */
+    private static double observed_order(Scheme scheme, double[] lambda, double stepsize, int runs) throws Exception {
+        double final_time = 2.0;
+        double order = 0.0;
+        double previous = 0.0;
+        for (int run = 0; run < runs; run++) {
+            ProtheroRobinsonODE ode = new ProtheroRobinsonODE(lambda);
+            IVPController controller = new IVPController(new IVP(ode, 0.0, new double[lambda.length]), final_time);
+            controller.set_butcher_tableau(scheme);
+            controller.set_no_error_control();
+            controller.set_initial_stepsize(stepsize);
+            IVPController.RunnableSolver solver = controller.get_runnable();
+            solver.run();
+            Float64Vector y = solver.solver.get_final_values();
+            double error = 0.0;
+            for (int i = 0; i < lambda.length; i++) {
+                error = Math.max(error, Math.abs(y.getValue(i) - ode.get_exact_solution(final_time)));
+            }
+            if (run > 0) {
+                order = Math.log(previous / error) / Math.log(2.0);
+            }
+            System.out.format("%s, stepsize %.4f: error %.3e, order %.2f\n", scheme.get_name(), stepsize, error, order);
+            previous = error;
+            stepsize /= 2.0;
+        }
+        return order;
+    }
+
+    /**
+     * Solve the problem from t = 0 to t = 10 writing the solution at t = 1
+     * and t = 10, and print the error at the end and the number of
+     * evaluations of the RHS.
+     *
+     * @param scheme           The method to use.
+     * @param lambda           The stiffness of each component.
+     * @param tolerance        The absolute and relative tolerance.
+     * @param initial_stepsize The initial stepsize, or 0 for initial stepsize selection.
+     *
+     * @return The number of evaluations of the RHS.
+     */
+    private static int run(Scheme scheme, double[] lambda, double tolerance, double initial_stepsize) throws Exception {
+        ProtheroRobinsonODE ode = new ProtheroRobinsonODE(lambda);
+        final double final_time = 10.0;
+        IVPController controller = new IVPController(new IVP(ode, 0.0, new double[lambda.length]), final_time);
+        controller.set_butcher_tableau(scheme);
+        controller.set_emb_error_control();
+        controller.set_rtol(tolerance);
+        controller.set_atol(tolerance);
+        if (initial_stepsize > 0.0) {
+            controller.set_initial_stepsize(initial_stepsize);
+        } else {
+            controller.use_initial_stepsize_selection();
+        }
+        controller.write_at_array(Float64Vector.valueOf(0.0, 1.0, final_time));
+        final double[] error = new double[1];
+        final ProtheroRobinsonODE exact = ode;
+        controller.add_solution_writer(new SolutionWriter() {
+            public void begin() {
+            }
+
+            public void emit(Float64 t, Float64Vector y) {
+                if (t.doubleValue() == final_time) {
+                    for (int i = 0; i < y.getDimension(); i++) {
+                        error[0] = Math.max(error[0], Math.abs(y.getValue(i) - exact.get_exact_solution(final_time)));
+                    }
+                }
+            }
+
+            public void end() {
+            }
+        });
+        controller.run();
+        System.out.format("%s, tolerance %.0e, initial stepsize %s: error %.3e, %d evaluations\n",
+                          scheme.get_name(), tolerance, initial_stepsize > 0.0 ? String.valueOf(initial_stepsize) : "automatic",
+                          error[0], ode.get_evaluations());
+        return ode.get_evaluations();
+    }
+}
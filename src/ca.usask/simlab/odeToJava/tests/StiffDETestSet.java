@@ -24,6 +24,10 @@ import ca.usask.simlab.odeToJava.ode.RHS;
 import ca.usask.simlab.odeToJava.util.Matrix;
 import ca.usask.simlab.odeToJava.scheme.Scheme;
 import ca.usask.simlab.odeToJava.scheme.IMEXESDIRKButcherTableau;
+import ca.usask.simlab.odeToJava.scheme.BDFScheme;
+import ca.usask.simlab.odeToJava.scheme.RadauIIATableau;
+import ca.usask.simlab.odeToJava.scheme.ExtrapolationScheme;
+import ca.usask.simlab.odeToJava.scheme.PDIRKTableau;
 import ca.usask.simlab.odeToJava.testSuite.Testable;
 import ca.usask.simlab.odeToJava.controller.IVPController;
 import org.jscience.mathematics.numbers.Float64;
@@ -213,7 +217,12 @@ public class StiffDETestSet {
 
         Vector<Scheme> embedded_tableaux = new Vector(Arrays.asList(IMEXESDIRKButcherTableau.get_KC32_tableau(),
                                                                     IMEXESDIRKButcherTableau.get_KC43_tableau(),
-                                                                    IMEXESDIRKButcherTableau.get_KC54_tableau()));
+                                                                    IMEXESDIRKButcherTableau.get_KC54_tableau(),
+                                                                    BDFScheme.get_BDF_scheme(),
+                                                                    BDFScheme.get_NDF_scheme(),
+                                                                    RadauIIATableau.get_RadauIIA5_tableau(),
+                                                                    ExtrapolationScheme.get_linearly_implicit_Euler_scheme(),
+                                                                    PDIRKTableau.get_PDIRK_RadauIIA5_tableau()));
 
         Vector<Scheme> doubling_tableaux = new Vector(Arrays.asList(IMEXESDIRKButcherTableau.get_ARS232_tableau(),
                                                                     IMEXESDIRKButcherTableau.get_ARS233_tableau(),
@@ -0,0 +1,193 @@
+/* ./util/ComplexLUDecomposition.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.util;
+
+/**
+ * An LU decomposition with partial pivoting of the complex matrix
+ * I - sigma*A, where A is real and sigma is complex.
+ * <p>
+ * The real and imaginary parts are kept in separate arrays of doubles that
+ * are allocated once, as in LUDecomposition. Implicit Runge-Kutta methods
+ * whose coefficient matrix has complex eigenvalues need one of these for
+ * each complex conjugate pair.
+ * <p>
+ * Gene H. Golub and Charles F. Van Loan. "Matrix Computations, 3rd Edition", pg 112.
+ */
+public class ComplexLUDecomposition {
+    // the real and imaginary parts of the factors
+    private final double[][] lu_re, lu_im;
+    // the row permutation
+    private final int[] pivot;
+    private final int n;
+    private boolean singular;
+
+    /**
+     * Create the storage for decomposing matrices of the given size.
+     *
+     * @param n The number of rows and columns of the matrices to decompose.
+     */
+    public ComplexLUDecomposition(int n) {
+        this.n = n;
+        lu_re = new double[n][n];
+        lu_im = new double[n][n];
+        pivot = new int[n];
+        singular = true;
+    }
+
+    /**
+     * Get the number of rows and columns of the decomposed matrix.
+     *
+     * @return The dimension of the matrix.
+     */
+    public int get_size() {
+        return n;
+    }
+
+    /**
+     * Decompose the shifted matrix I - sigma*a without forming it separately.
+     *
+     * @param sigma_re The real part of the factor multiplying the matrix.
+     * @param sigma_im The imaginary part of the factor multiplying the matrix.
+     * @param a        The real matrix, typically a Jacobian.
+     *
+     * @return false if the matrix is numerically singular.
+     */
+    public boolean factor_shifted(double sigma_re, double sigma_im, double[][] a) {
+        for (int i = 0; i < n; i++) {
+            double[] re = lu_re[i];
+            double[] im = lu_im[i];
+            double[] arow = a[i];
+            for (int j = 0; j < n; j++) {
+                re[j] = -sigma_re * arow[j];
+                im[j] = -sigma_im * arow[j];
+            }
+            re[i] += 1.0;
+        }
+        return factor_in_place();
+    }
+
+    private boolean factor_in_place() {
+        singular = false;
+        for (int k = 0; k < n; k++) {
+            // find the pivot, using the 1-norm of the entries as LINPACK does
+            int p = k;
+            double max = Math.abs(lu_re[k][k]) + Math.abs(lu_im[k][k]);
+            for (int i = k + 1; i < n; i++) {
+                double value = Math.abs(lu_re[i][k]) + Math.abs(lu_im[i][k]);
+                if (value > max) {
+                    max = value;
+                    p = i;
+                }
+            }
+            pivot[k] = p;
+            if (max == 0.0) {
+                singular = true;
+                return false;
+            }
+            if (p != k) {
+                double[] temp = lu_re[p];
+                lu_re[p] = lu_re[k];
+                lu_re[k] = temp;
+                temp = lu_im[p];
+                lu_im[p] = lu_im[k];
+                lu_im[k] = temp;
+            }
+            double[] rowk_re = lu_re[k];
+            double[] rowk_im = lu_im[k];
+            // the reciprocal of the pivot
+            double denominator = rowk_re[k] * rowk_re[k] + rowk_im[k] * rowk_im[k];
+            double inverse_re = rowk_re[k] / denominator;
+            double inverse_im = -rowk_im[k] / denominator;
+            for (int i = k + 1; i < n; i++) {
+                double[] rowi_re = lu_re[i];
+                double[] rowi_im = lu_im[i];
+                double factor_re = rowi_re[k] * inverse_re - rowi_im[k] * inverse_im;
+                double factor_im = rowi_re[k] * inverse_im + rowi_im[k] * inverse_re;
+                rowi_re[k] = factor_re;
+                rowi_im[k] = factor_im;
+                if (factor_re != 0.0 || factor_im != 0.0) {
+                    for (int j = k + 1; j < n; j++) {
+                        rowi_re[j] -= factor_re * rowk_re[j] - factor_im * rowk_im[j];
+                        rowi_im[j] -= factor_re * rowk_im[j] + factor_im * rowk_re[j];
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if the last decomposition failed.
+     *
+     * @return true if the last decomposed matrix was numerically singular.
+     */
+    public boolean is_singular() {
+        return singular;
+    }
+
+    /**
+     * Solve the system with the last decomposed matrix, overwriting the right
+     * hand side with the solution.
+     *
+     * @param b_re The real part of the right hand side on entry and of the solution on exit.
+     * @param b_im The imaginary part of the right hand side on entry and of the solution on exit.
+     */
+    public void solve(double[] b_re, double[] b_im) {
+        if (singular) {
+            throw new IllegalStateException("Matrix is singular or has not been decomposed");
+        }
+        for (int k = 0; k < n; k++) {
+            int p = pivot[k];
+            if (p != k) {
+                double temp = b_re[p];
+                b_re[p] = b_re[k];
+                b_re[k] = temp;
+                temp = b_im[p];
+                b_im[p] = b_im[k];
+                b_im[k] = temp;
+            }
+        }
+        // forward substitution
+        for (int i = 1; i < n; i++) {
+            double[] row_re = lu_re[i];
+            double[] row_im = lu_im[i];
+            double sum_re = b_re[i];
+            double sum_im = b_im[i];
+            for (int j = 0; j < i; j++) {
+                sum_re -= row_re[j] * b_re[j] - row_im[j] * b_im[j];
+                sum_im -= row_re[j] * b_im[j] + row_im[j] * b_re[j];
+            }
+            b_re[i] = sum_re;
+            b_im[i] = sum_im;
+        }
+        // back substitution
+        for (int i = n - 1; i >= 0; i--) {
+            double[] row_re = lu_re[i];
+            double[] row_im = lu_im[i];
+            double sum_re = b_re[i];
+            double sum_im = b_im[i];
+            for (int j = i + 1; j < n; j++) {
+                sum_re -= row_re[j] * b_re[j] - row_im[j] * b_im[j];
+                sum_im -= row_re[j] * b_im[j] + row_im[j] * b_re[j];
+            }
+            double denominator = row_re[i] * row_re[i] + row_im[i] * row_im[i];
+            b_re[i] = (sum_re * row_re[i] + sum_im * row_im[i]) / denominator;
+            b_im[i] = (sum_im * row_re[i] - sum_re * row_im[i]) / denominator;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+/* ./util/KrylovPhi.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.util;
+
+import java.util.Arrays;
+
+/**
+ * Evaluates linear combinations of phi functions of a large operator acting
+ * on vectors, phi_0(hA)*b_0 + phi_1(hA)*b_1 + ... + phi_p(hA)*b_p, using only
+ * products with A.
+ * <p>
+ * The combination is the exponential of the augmented operator
+ * [[hA, B], [0, J]] applied to [b_0; e_p], where the columns of B are
+ * b_p, ..., b_1 and J shifts up by one, so a single Krylov subspace gives
+ * all the terms. The exponential is approximated in Arnoldi subspaces of at
+ * most a given dimension with the a posteriori error estimate of Saad, and
+ * the interval is divided into substeps when the subspace is not large enough,
+ * as in the exponential integrator of Expokit.
+ * <p>
+ * Awad H. Al-Mohy and Nicholas J. Higham. "Computing the action of the matrix exponential, with an application to exponential integrators", SIAM Journal on Scientific Computing, vol 33, pg 488-511, 2011.
+ * <p>
+ * Roger B. Sidje. "Expokit: A software package for computing matrix exponentials", ACM TOMS, vol 24, pg 130-156, 1998.
+ * <p>
+ * Yousef Saad. "Analysis of some Krylov subspace approximations to the matrix exponential operator", SIAM Journal on Numerical Analysis, vol 29, pg 209-228, 1992.
+ */
+public class KrylovPhi {
+    /**
+     * The default maximum dimension of the Krylov subspaces.
+     */
+    public static final int DEFAULT_MAX_DIMENSION = 30;
+
+    /**
+     * The default relative tolerance of the approximation.
+     */
+    public static final double DEFAULT_TOLERANCE = 1e-10;
+
+    // factors for changing the length of a substep
+    private static final double SAFETY = 0.9;
+    private static final double MIN_FACTOR = 0.2;
+    private static final double MAX_FACTOR = 5.0;
+
+    private final LinearOperator operator;
+    private final int n;
+    private int max_dimension;
+    private double tolerance;
+    private int products;
+    // work arrays, allocated for the largest combination seen so far
+    private double[][] basis;
+    private double[] x, ax, w;
+
+    /**
+     * Constructor that uses the default dimension and tolerance.
+     *
+     * @param operator The operator A.
+     */
+    public KrylovPhi(LinearOperator operator) {
+        this.operator = operator;
+        n = operator.get_size();
+        max_dimension = DEFAULT_MAX_DIMENSION;
+        tolerance = DEFAULT_TOLERANCE;
+        x = new double[n];
+        ax = new double[n];
+    }
+
+    /**
+     * Set the maximum dimension of the Krylov subspaces.
+     *
+     * @param dimension The maximum dimension.
+     */
+    public void set_max_dimension(int dimension) {
+        if (dimension < 2) {
+            throw new IllegalArgumentException("The dimension must be at least two");
+        }
+        max_dimension = dimension;
+        basis = null;
+    }
+
+    /**
+     * Set the tolerance relative to the norm of the vectors.
+     *
+     * @param tolerance The relative tolerance.
+     */
+    public void set_tolerance(double tolerance) {
+        if (tolerance <= 0.0) {
+            throw new IllegalArgumentException("The tolerance must be positive");
+        }
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Get the number of products with the operator so far.
+     *
+     * @return The number of products.
+     */
+    public int get_products() {
+        return products;
+    }
+
+    /**
+     * Evaluate phi_0(hA)*b[0] + ... + phi_p(hA)*b[p].
+     *
+     * @param h      The scaling of the operator.
+     * @param b      The vectors b_0, ..., b_p, where a null vector is taken as zero.
+     * @param p      The highest phi function in the combination.
+     * @param result The array that receives the combination.
+     */
+    public void evaluate(double h, double[][] b, int p, double[] result) {
+        int size = n + p;
+        if (basis == null || basis[0].length < size) {
+            basis = new double[max_dimension + 1][size];
+            w = new double[size];
+        }
+        // scale the columns of B so they are comparable to the unit vector
+        double bnorm = 0.0;
+        for (int k = 1; k <= p; k++) {
+            if (b[k] != null) {
+                bnorm = Math.max(bnorm, norm(b[k], n));
+            }
+        }
+        double eta = bnorm > 0.0 ? Math.pow(2.0, -Math.ceil(Math.log(bnorm) / Math.log(2.0))) : 1.0;
+        for (int i = 0; i < n; i++) {
+            w[i] = b[0] == null ? 0.0 : b[0][i];
+        }
+        for (int j = 0; j < p; j++) {
+            w[n + j] = 0.0;
+        }
+        if (p > 0) {
+            w[n + p - 1] = 1.0 / eta;
+        }
+        double tol = tolerance * Math.max(norm(w, n), bnorm);
+        if (tol == 0.0) {
+            // every vector is zero
+            for (int i = 0; i < n; i++) {
+                result[i] = 0.0;
+            }
+            return;
+        }
+
+        double t = 0.0;
+        double tau = 1.0;
+        int m = Math.min(max_dimension, size);
+        double[][] hessenberg = new double[m + 1][m];
+        while (t < 1.0) {
+            tau = Math.min(tau, 1.0 - t);
+            double beta = norm(w, size);
+            if (beta == 0.0) {
+                break;
+            }
+            for (int i = 0; i < size; i++) {
+                basis[0][i] = w[i] / beta;
+            }
+            for (int i = 0; i <= m; i++) {
+                Arrays.fill(hessenberg[i], 0.0);
+            }
+            // the Arnoldi process with modified Gram-Schmidt
+            int dim = m;
+            boolean breakdown = false;
+            for (int j = 0; j < m; j++) {
+                double[] v = basis[j];
+                double[] next = basis[j + 1];
+                apply(h, b, p, eta, v, next);
+                for (int i = 0; i <= j; i++) {
+                    double dot = 0.0;
+                    double[] vi = basis[i];
+                    for (int r = 0; r < size; r++) {
+                        dot += vi[r] * next[r];
+                    }
+                    hessenberg[i][j] = dot;
+                    for (int r = 0; r < size; r++) {
+                        next[r] -= dot * vi[r];
+                    }
+                }
+                double s = norm(next, size);
+                if (s <= 1e-12 * beta * (1.0 + Math.abs(hessenberg[j][j]))) {
+                    // the subspace is invariant and the approximation is exact
+                    dim = j + 1;
+                    breakdown = true;
+                    tau = 1.0 - t;
+                    break;
+                }
+                hessenberg[j + 1][j] = s;
+                for (int r = 0; r < size; r++) {
+                    next[r] /= s;
+                }
+            }
+
+            // find a substep that meets the tolerance in this subspace
+            double[][] small = new double[dim][dim];
+            double[][][] phi;
+            double accepted = tau;
+            while (true) {
+                for (int i = 0; i < dim; i++) {
+                    for (int j = 0; j < dim; j++) {
+                        small[i][j] = tau * hessenberg[i][j];
+                    }
+                }
+                phi = PhiFunctions.phi(small, 1);
+                accepted = tau;
+                if (breakdown) {
+                    break;
+                }
+                double error = beta * hessenberg[dim][dim - 1] * tau * Math.abs(phi[1][dim - 1][0]);
+                if (error <= tol * tau) {
+                    double factor = error > 0.0 ? SAFETY * Math.pow(tol * tau / error, 1.0 / dim) : MAX_FACTOR;
+                    tau *= Math.min(MAX_FACTOR, Math.max(1.0, factor));
+                    break;
+                }
+                tau *= Math.max(MIN_FACTOR, SAFETY * Math.pow(tol * tau / error, 1.0 / dim));
+            }
+            t = breakdown ? 1.0 : t + accepted;
+            for (int r = 0; r < size; r++) {
+                double sum = 0.0;
+                for (int j = 0; j < dim; j++) {
+                    sum += basis[j][r] * phi[0][j][0];
+                }
+                w[r] = beta * sum;
+            }
+        }
+        System.arraycopy(w, 0, result, 0, n);
+    }
+
+    /**
+     * The product with the augmented operator [[hA, eta*B], [0, J]].
+     */
+    private void apply(double h, double[][] b, int p, double eta, double[] v, double[] result) {
+        System.arraycopy(v, 0, x, 0, n);
+        operator.apply(x, ax);
+        products++;
+        for (int i = 0; i < n; i++) {
+            result[i] = h * ax[i];
+        }
+        // column j of B is b_(p - j)
+        for (int j = 0; j < p; j++) {
+            double[] bk = b[p - j];
+            double vj = eta * v[n + j];
+            if (bk != null && vj != 0.0) {
+                for (int i = 0; i < n; i++) {
+                    result[i] += vj * bk[i];
+                }
+            }
+        }
+        for (int j = 0; j < p - 1; j++) {
+            result[n + j] = v[n + j + 1];
+        }
+        if (p > 0) {
+            result[n + p - 1] = 0.0;
+        }
+    }
+
+    private static double norm(double[] v, int length) {
+        double sum = 0.0;
+        for (int i = 0; i < length; i++) {
+            sum += v[i] * v[i];
+        }
+        return Math.sqrt(sum);
+    }
+}
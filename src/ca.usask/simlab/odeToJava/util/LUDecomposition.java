@@ -0,0 +1,179 @@
+/* ./util/LUDecomposition.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.util;
+
+/**
+ * An LU decomposition with partial pivoting of a dense square matrix stored
+ * as an array of doubles.
+ * <p>
+ * The storage for the factors is allocated once, so a decomposition can be
+ * refactored and reused for many solves without creating garbage in the inner
+ * loops of implicit methods.
+ * <p>
+ * Gene H. Golub and Charles F. Van Loan. "Matrix Computations, 3rd Edition", pg 112.
+ */
+public class LUDecomposition {
+    // the factors, L below the diagonal and U on and above it
+    private final double[][] lu;
+    // the row permutation
+    private final int[] pivot;
+    private final int n;
+    private boolean singular;
+
+    /**
+     * Create the storage for decomposing matrices of the given size.
+     *
+     * @param n The number of rows and columns of the matrices to decompose.
+     */
+    public LUDecomposition(int n) {
+        this.n = n;
+        lu = new double[n][n];
+        pivot = new int[n];
+        singular = true;
+    }
+
+    /**
+     * Get the number of rows and columns of the decomposed matrix.
+     *
+     * @return The dimension of the matrix.
+     */
+    public int get_size() {
+        return n;
+    }
+
+    /**
+     * Decompose a matrix, the matrix itself is not modified.
+     *
+     * @param a The matrix to decompose.
+     *
+     * @return false if the matrix is numerically singular.
+     */
+    public boolean factor(double[][] a) {
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(a[i], 0, lu[i], 0, n);
+        }
+        return factor_in_place();
+    }
+
+    /**
+     * Decompose the shifted matrix I - gamma*a without forming it separately,
+     * which is the iteration matrix of most implicit methods.
+     *
+     * @param gamma The factor multiplying the matrix.
+     * @param a     The matrix, typically a Jacobian.
+     *
+     * @return false if the matrix is numerically singular.
+     */
+    public boolean factor_shifted(double gamma, double[][] a) {
+        for (int i = 0; i < n; i++) {
+            double[] row = lu[i];
+            double[] arow = a[i];
+            for (int j = 0; j < n; j++) {
+                row[j] = -gamma * arow[j];
+            }
+            row[i] += 1.0;
+        }
+        return factor_in_place();
+    }
+
+    private boolean factor_in_place() {
+        singular = false;
+        for (int k = 0; k < n; k++) {
+            // find the pivot
+            int p = k;
+            double max = Math.abs(lu[k][k]);
+            for (int i = k + 1; i < n; i++) {
+                double value = Math.abs(lu[i][k]);
+                if (value > max) {
+                    max = value;
+                    p = i;
+                }
+            }
+            pivot[k] = p;
+            if (max == 0.0) {
+                singular = true;
+                return false;
+            }
+            if (p != k) {
+                double[] temp = lu[p];
+                lu[p] = lu[k];
+                lu[k] = temp;
+            }
+            double[] rowk = lu[k];
+            double inverse = 1.0 / rowk[k];
+            for (int i = k + 1; i < n; i++) {
+                double[] rowi = lu[i];
+                double factor = rowi[k] * inverse;
+                rowi[k] = factor;
+                if (factor != 0.0) {
+                    for (int j = k + 1; j < n; j++) {
+                        rowi[j] -= factor * rowk[j];
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if the last decomposition failed.
+     *
+     * @return true if the last decomposed matrix was numerically singular.
+     */
+    public boolean is_singular() {
+        return singular;
+    }
+
+    /**
+     * Solve the system with the last decomposed matrix, overwriting the right
+     * hand side with the solution.
+     *
+     * @param b The right hand side on entry and the solution on exit.
+     */
+    public void solve(double[] b) {
+        if (singular) {
+            throw new IllegalStateException("Matrix is singular or has not been decomposed");
+        }
+        // forward substitution with the permuted right hand side
+        for (int k = 0; k < n; k++) {
+            int p = pivot[k];
+            if (p != k) {
+                double temp = b[p];
+                b[p] = b[k];
+                b[k] = temp;
+            }
+        }
+        for (int i = 1; i < n; i++) {
+            double[] row = lu[i];
+            double sum = b[i];
+            for (int j = 0; j < i; j++) {
+                sum -= row[j] * b[j];
+            }
+            b[i] = sum;
+        }
+        // back substitution
+        for (int i = n - 1; i >= 0; i--) {
+            double[] row = lu[i];
+            double sum = b[i];
+            for (int j = i + 1; j < n; j++) {
+                sum -= row[j] * b[j];
+            }
+            b[i] = sum / row[i];
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/* ./util/LinearOperator.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.util;
+
+/**
+ * A linear operator that is only available through its action on vectors,
+ * such as a sparse or matrix-free Jacobian.
+ */
+public interface LinearOperator {
+    /**
+     * Get the dimension of the vectors the operator acts on.
+     *
+     * @return The number of rows and columns of the operator.
+     */
+    public int get_size();
+
+    /**
+     * Apply the operator to a vector.
+     *
+     * @param x      The vector to apply the operator to, which is not modified.
+     * @param result The array that receives the product, distinct from x.
+     */
+    public void apply(double[] x, double[] result);
+}
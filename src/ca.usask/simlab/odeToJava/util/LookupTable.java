@@ -0,0 +1,193 @@
+/* ./util/LookupTable.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.util;
+
+import ca.usask.simlab.odeToJava.ode.RateFunctions;
+
+/**
+ * A table of functions of a single variable on equally spaced nodes that is
+ * evaluated by linear interpolation, which replaces the exponentials and
+ * powers of rate functions by a few arithmetic operations.
+ * <p>
+ * Every interval stores the value at its left node and the slope to its
+ * right node, where the limits from inside the interval are taken at
+ * breakpoints, so a function that jumps at a breakpoint is interpolated from
+ * the correct side. Outside the range of the table the functions are
+ * evaluated directly. The table is not changed after it is created, so it
+ * can be shared between threads.
+ * <p>
+ * The interpolation error of a function with a bounded second derivative in
+ * an interval of length dx is at most dx^2/8 times that bound, and it is
+ * largest near the middle of the interval, so the error bound of the table
+ * is measured at the midpoints of all intervals when it is created.
+ * <p>
+ * Jonathan Cooper, Steve McKeever, and Alan Garny. "On the application of partial evaluation to the optimisation of cardiac electrophysiological simulations", Proceedings of the ACM SIGPLAN Symposium on Partial Evaluation and Semantics-Based Program Manipulation, 2006.
+ */
+public class LookupTable {
+    private final RateFunctions functions;
+    private final int m;
+    private final double min, max, step;
+    private final int intervals;
+    // the value at the left node and the slope of each function in each
+    // interval, stored by interval so one interpolation reads adjacent entries
+    private final double[] value, slope;
+    private final double[] error_bound;
+
+    /**
+     * Tabulate the functions on [min, max] with nodes step apart.
+     *
+     * @param functions The functions to tabulate.
+     * @param min       The smallest node.
+     * @param max       The largest node, which is moved up to the next node if needed.
+     * @param step      The distance between the nodes.
+     */
+    public LookupTable(RateFunctions functions, double min, double max, double step) {
+        if (!(step > 0.0) || !(max > min)) {
+            throw new IllegalArgumentException("The table needs a positive step and a nonempty range");
+        }
+        this.functions = functions;
+        this.min = min;
+        this.step = step;
+        m = functions.get_number_rates();
+        intervals = (int) Math.ceil((max - min) / step - 1e-9);
+        this.max = min + intervals * step;
+        double[] breakpoints = functions.get_breakpoints();
+        boolean[] is_breakpoint = new boolean[intervals + 1];
+        for (int i = 0; i < breakpoints.length; i++) {
+            double position = (breakpoints[i] - min) / step;
+            if (breakpoints[i] >= min && breakpoints[i] <= this.max) {
+                if (Math.abs(position - Math.rint(position)) > 1e-9) {
+                    throw new IllegalArgumentException("The breakpoint " + breakpoints[i] + " is not a node of the table");
+                }
+                is_breakpoint[(int) Math.rint(position)] = true;
+            }
+        }
+
+        value = new double[intervals * m];
+        slope = new double[intervals * m];
+        error_bound = new double[m];
+        double[] left = new double[m];
+        double[] right = new double[m];
+        double[] middle = new double[m];
+        for (int k = 0; k < intervals; k++) {
+            double x = node(k);
+            double x_next = node(k + 1);
+            // the limits from inside the interval at breakpoints, for
+            // functions that jump there
+            functions.rates(is_breakpoint[k] ? x + Math.ulp(x) : x, left);
+            functions.rates(is_breakpoint[k + 1] ? x_next - Math.ulp(x_next) : x_next, right);
+            functions.rates(0.5 * (x + x_next), middle);
+            for (int j = 0; j < m; j++) {
+                if (Double.isNaN(left[j]) || Double.isInfinite(left[j])
+                        || Double.isNaN(right[j]) || Double.isInfinite(right[j])) {
+                    throw new IllegalArgumentException("The rate " + j + " is not finite near " + x);
+                }
+                value[k * m + j] = left[j];
+                slope[k * m + j] = (right[j] - left[j]) / step;
+                double error = Math.abs(0.5 * (left[j] + right[j]) - middle[j]);
+                error_bound[j] = Math.max(error_bound[j], error);
+            }
+        }
+    }
+
+    private double node(int k) {
+        return min + k * step;
+    }
+
+    /**
+     * Evaluate one function.
+     *
+     * @param function The index of the function.
+     * @param x        The variable.
+     *
+     * @return The interpolated value, or the value of the function itself outside the table.
+     */
+    public double evaluate(int function, double x) {
+        if (x >= min && x < max) {
+            double position = (x - min) / step;
+            int k = (int) position;
+            if (k >= intervals) {
+                k = intervals - 1;
+            }
+            int index = k * m + function;
+            return value[index] + slope[index] * (x - node(k));
+        }
+        double[] values = new double[m];
+        functions.rates(x, values);
+        return values[function];
+    }
+
+    /**
+     * Evaluate all the functions.
+     *
+     * @param x      The variable.
+     * @param values The array that receives the interpolated values, or the values of the functions outside the table.
+     */
+    public void evaluate(double x, double[] values) {
+        if (x >= min && x < max) {
+            int k = (int) ((x - min) / step);
+            if (k >= intervals) {
+                k = intervals - 1;
+            }
+            double dx = x - node(k);
+            int index = k * m;
+            for (int j = 0; j < m; j++) {
+                values[j] = value[index + j] + slope[index + j] * dx;
+            }
+        } else {
+            functions.rates(x, values);
+        }
+    }
+
+    /**
+     * Get the largest interpolation error of each function at the midpoints
+     * of the intervals.
+     *
+     * @return The absolute error bounds, one per function.
+     */
+    public double[] get_error_bound() {
+        return error_bound.clone();
+    }
+
+    /**
+     * Get the smallest node of the table.
+     *
+     * @return The lower end of the range.
+     */
+    public double get_min() {
+        return min;
+    }
+
+    /**
+     * Get the largest node of the table.
+     *
+     * @return The upper end of the range.
+     */
+    public double get_max() {
+        return max;
+    }
+
+    /**
+     * Get the distance between the nodes.
+     *
+     * @return The step of the table.
+     */
+    public double get_step() {
+        return step;
+    }
+}
@@ -0,0 +1,173 @@
+/* ./util/ParallelLoop.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a loop over independent items, such as the cells of a tissue or the
+ * blocks of a block-diagonal matrix, in contiguous ranges on several threads.
+ * <p>
+ * The calling thread takes the first range, and a range is only given to
+ * another thread when each thread has enough items to be worth it. The
+ * threads are daemons that end on their own when they have been idle for a
+ * while, since the loops of an RHS or a solver have no end.
+ */
+public class ParallelLoop {
+    /**
+     * The body of the loop, which must be safe to run for different ranges
+     * at the same time.
+     */
+    public interface Body {
+        /**
+         * Run the loop for a range of items.
+         *
+         * @param from The first item of the range.
+         * @param to   The item after the last item of the range.
+         */
+        public void run(int from, int to);
+    }
+
+    private final String name;
+    private int threads = 1;
+    private ThreadPoolExecutor executor;
+
+    /**
+     * Create a loop that runs in the calling thread only until more threads
+     * are set.
+     *
+     * @param name The name of the threads.
+     */
+    public ParallelLoop(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Set the number of threads that run the loop.
+     *
+     * @param threads The number of threads, 1 runs the loop in the calling thread only.
+     */
+    public void set_threads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed");
+        }
+        if (threads != this.threads && executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Get the number of threads that run the loop.
+     *
+     * @return The number of threads.
+     */
+    public int get_threads() {
+        return threads;
+    }
+
+    /**
+     * Run the loop over all items and wait for it to finish.
+     *
+     * @param count    The number of items.
+     * @param min_work The fewest items for each thread.
+     * @param body     The body of the loop.
+     */
+    public void run(int count, int min_work, final Body body) {
+        int workers = Math.min(threads, Math.max(1, count / Math.max(1, min_work)));
+        if (workers == 1) {
+            body.run(0, count);
+            return;
+        }
+        if (executor == null) {
+            executor = create_executor(name, threads - 1);
+        }
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        for (int w = 1; w < workers; w++) {
+            final int from = (int) ((long) count * w / workers);
+            final int to = (int) ((long) count * (w + 1) / workers);
+            futures.add(executor.submit(new Callable<Void>() {
+                public Void call() {
+                    body.run(from, to);
+                    return null;
+                }
+            }));
+        }
+        body.run(0, count / workers);
+        try {
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while running a parallel loop", e);
+        } catch (ExecutionException e) {
+            throw unchecked(e);
+        }
+    }
+
+    /**
+     * Create a pool of daemon threads for work that is not a loop over
+     * ranges, such as the stages of a method or the slices of an interval.
+     * The threads end on their own when they have been idle for a while, so
+     * the pool does not have to be shut down.
+     *
+     * @param name    The name of the threads.
+     * @param threads The number of threads.
+     * @return The pool of threads.
+     */
+    public static ThreadPoolExecutor create_executor(final String name, int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 1L, TimeUnit.SECONDS,
+                                                             new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Get the unchecked exception to throw in the waiting thread when a task
+     * failed. Errors are thrown directly, and checked exceptions are wrapped,
+     * so a caller that expects one must check the cause first.
+     *
+     * @param e The exception from waiting for the task.
+     * @return The exception to throw.
+     */
+    public static RuntimeException unchecked(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IllegalStateException(cause);
+    }
+}
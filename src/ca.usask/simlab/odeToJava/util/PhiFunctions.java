@@ -0,0 +1,393 @@
+/* ./util/PhiFunctions.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.util;
+
+/**
+ * Evaluates the functions phi_0(A) = exp(A) and
+ * phi_k(A) = sum_i A^i/(i + k)! of small dense matrices, as needed by
+ * exponential integrators.
+ * <p>
+ * The matrix is scaled by a power of two until its norm is at most 1/2,
+ * where the diagonal Pade approximants of degree 6 to each phi_k are
+ * accurate to rounding error, and the result is squared back with
+ * phi_k(2A) = 2^(-k)*(phi_0(A)*phi_k(A) + sum_(j=1..k) phi_j(A)/(k - j)!).
+ * This keeps all the phi_k consistent with each other. The approximants of
+ * every phi_k are polynomials in the same powers of the scaled matrix, so
+ * all of them take 5 products and p + 1 LU decompositions, where a Taylor
+ * series of the same accuracy takes 16 + p products.
+ * <p>
+ * The scaling and squaring is only accurate to about the unit roundoff times
+ * the norm of the matrix, which is far too little for the Jacobians of stiff
+ * chemistry, where a single rate may be 1e10 times the others. For such
+ * norms the phi functions are also evaluated as the contour integrals
+ * phi_k(A) = 1/(2*pi*i) * integral of e^z*z^(-k)*(zI - A)^(-1) dz
+ * with the Talbot contour and the midpoint rule, which only needs the
+ * resolvent and is accurate to near the unit roundoff whatever the norm, as
+ * long as the eigenvalues of A lie inside the contour or so far to its left
+ * that e^z is negligible there. Whether they do is not known in advance, so
+ * the contour integrals are only used if they agree with the scaling and
+ * squaring to within its own accuracy.
+ * <p>
+ * Cleve Moler and Charles Van Loan. "Nineteen dubious ways to compute the exponential of a matrix, twenty-five years later", SIAM Review, vol 45, pg 3-49, 2003.
+ * <p>
+ * Bard Skaflestad and Will M. Wright. "The scaling and modified squaring method for matrix functions related to the exponential", Applied Numerical Mathematics, vol 59, pg 783-799, 2009.
+ * <p>
+ * Lloyd N. Trefethen, J. A. C. Weideman, and Thomas Schmelzer. "Talbot quadratures and rational approximations", BIT Numerical Mathematics, vol 46, pg 653-670, 2006.
+ */
+public class PhiFunctions {
+    // the degree of the Pade approximants for norms up to 1/2
+    private static final int PADE_DEGREE = 6;
+    private static final double MAX_NORM = 0.5;
+    // the norm above which the contour integrals are tried
+    private static final double CONTOUR_NORM = 1e4;
+    // the number of nodes of the Talbot contour, half of them are needed for a real matrix
+    private static final int CONTOUR_NODES = 32;
+    // how far the contour integrals may differ from the scaling and squaring, relative to its accuracy
+    private static final double AGREEMENT = 10.0;
+    private static final double UNIT_ROUNDOFF = 2.220446049250313e-16;
+
+    private PhiFunctions() {
+    }
+
+    /**
+     * Evaluate phi_0(a), ..., phi_p(a).
+     *
+     * @param a The square matrix, which is not modified.
+     * @param p The highest phi function needed.
+     *
+     * @return An array holding the matrices phi_k(a) for k = 0..p.
+     */
+    public static double[][][] phi(double[][] a, int p) {
+        int n = a.length;
+        double norm = 0.0;
+        for (int i = 0; i < n; i++) {
+            double sum = 0.0;
+            for (int j = 0; j < n; j++) {
+                sum += Math.abs(a[i][j]);
+            }
+            norm = Math.max(norm, sum);
+        }
+        double[][][] phi = scaling_and_squaring(a, p, norm);
+        if (norm > CONTOUR_NORM) {
+            double[][][] contour = contour_integral(a, p);
+            if (contour != null) {
+                double largest = 1.0;
+                double difference = 0.0;
+                for (int k = 0; k <= p; k++) {
+                    for (int i = 0; i < n; i++) {
+                        for (int j = 0; j < n; j++) {
+                            largest = Math.max(largest, Math.abs(phi[k][i][j]));
+                            difference = Math.max(difference, Math.abs(phi[k][i][j] - contour[k][i][j]));
+                        }
+                    }
+                }
+                if (difference <= AGREEMENT * UNIT_ROUNDOFF * norm * largest) {
+                    return contour;
+                }
+            }
+        }
+        return phi;
+    }
+
+    /**
+     * Evaluate phi_0(a), ..., phi_p(a) by scaling and squaring.
+     */
+    private static double[][][] scaling_and_squaring(double[][] a, int p, double norm) {
+        int n = a.length;
+        // choose the scaling
+        int squarings = 0;
+        if (norm > MAX_NORM) {
+            squarings = (int) Math.ceil(Math.log(norm / MAX_NORM) / Math.log(2.0));
+        }
+        double scale = Math.pow(2.0, -squarings);
+        double[][] b = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                b[i][j] = scale * a[i][j];
+            }
+        }
+
+        // the powers of b, which the approximants of every phi_k share
+        double[][][] powers = new double[PADE_DEGREE + 1][][];
+        powers[1] = b;
+        for (int i = 2; i <= PADE_DEGREE; i++) {
+            powers[i] = multiply(b, powers[i - 1]);
+        }
+        double[][][] phi = new double[p + 1][][];
+        LUDecomposition lu = new LUDecomposition(n);
+        double[] column = new double[n];
+        for (int k = 0; k <= p; k++) {
+            // phi_k(b) = inverse(D(b))*N(b) with D normalized to D(0) = I
+            double scale_k = factorial(PADE_DEGREE) / factorial(2 * PADE_DEGREE + k);
+            double[][] numerator = identity(n, scale_k * pade_numerator(k, 0));
+            double[][] denominator = identity(n, 1.0);
+            for (int i = 1; i <= PADE_DEGREE; i++) {
+                double weight_n = scale_k * pade_numerator(k, i);
+                double weight_d = scale_k * pade_denominator(k, i);
+                double[][] power = powers[i];
+                for (int r = 0; r < n; r++) {
+                    for (int c = 0; c < n; c++) {
+                        numerator[r][c] += weight_n * power[r][c];
+                        denominator[r][c] += weight_d * power[r][c];
+                    }
+                }
+            }
+            if (!lu.factor(denominator)) {
+                throw new IllegalArgumentException("The matrix must be finite");
+            }
+            double[][] value = new double[n][n];
+            for (int c = 0; c < n; c++) {
+                for (int r = 0; r < n; r++) {
+                    column[r] = numerator[r][c];
+                }
+                lu.solve(column);
+                for (int r = 0; r < n; r++) {
+                    value[r][c] = column[r];
+                }
+            }
+            phi[k] = value;
+        }
+
+        // undo the scaling
+        for (int s = 0; s < squarings; s++) {
+            double[][][] doubled = new double[p + 1][][];
+            for (int k = 0; k <= p; k++) {
+                double[][] sum = multiply(phi[0], phi[k]);
+                for (int j = 1; j <= k; j++) {
+                    double weight = 1.0 / factorial(k - j);
+                    double[][] pj = phi[j];
+                    for (int r = 0; r < n; r++) {
+                        for (int c = 0; c < n; c++) {
+                            sum[r][c] += weight * pj[r][c];
+                        }
+                    }
+                }
+                double factor = Math.pow(2.0, -k);
+                for (int r = 0; r < n; r++) {
+                    for (int c = 0; c < n; c++) {
+                        sum[r][c] *= factor;
+                    }
+                }
+                doubled[k] = sum;
+            }
+            phi = doubled;
+        }
+        return phi;
+    }
+
+    /**
+     * Evaluate phi_0(a), ..., phi_p(a) as contour integrals over the Talbot
+     * contour z(theta) = N*(0.5017*theta*cot(0.6407*theta) - 0.6122 + 0.2645*i*theta).
+     * The nodes in the lower half plane are the conjugates of those in the
+     * upper half plane, so only these are evaluated.
+     *
+     * @return The phi functions, or null if the resolvent is singular at a node.
+     */
+    private static double[][][] contour_integral(double[][] a, int p) {
+        int n = a.length;
+        int nodes = CONTOUR_NODES;
+        double[][][] phi = new double[p + 1][n][n];
+        double[][] re = new double[n][n];
+        double[][] im = new double[n][n];
+        for (int node = 0; node < nodes / 2; node++) {
+            double theta = Math.PI * (2.0 * node + 1.0) / nodes;
+            double sine = Math.sin(0.6407 * theta);
+            double cotangent = Math.cos(0.6407 * theta) / sine;
+            double zr = nodes * (0.5017 * theta * cotangent - 0.6122);
+            double zi = nodes * 0.2645 * theta;
+            double dzr = nodes * (0.5017 * cotangent - 0.5017 * 0.6407 * theta / (sine * sine));
+            double dzi = nodes * 0.2645;
+            // the resolvent (zI - a)^(-1)
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    re[i][j] = -a[i][j];
+                    im[i][j] = 0.0;
+                }
+                re[i][i] += zr;
+                im[i][i] = zi;
+            }
+            if (!invert(re, im)) {
+                return null;
+            }
+            // the weight e^z*z'(theta), times z^(-k) for phi_k
+            double exponential = Math.exp(zr);
+            double wr = exponential * (Math.cos(zi) * dzr - Math.sin(zi) * dzi);
+            double wi = exponential * (Math.cos(zi) * dzi + Math.sin(zi) * dzr);
+            double modulus = zr * zr + zi * zi;
+            double inverse_r = zr / modulus;
+            double inverse_i = -zi / modulus;
+            for (int k = 0; k <= p; k++) {
+                // with the conjugate node, the sum is 2/N times the imaginary part
+                double cr = 2.0 * wr / nodes;
+                double ci = 2.0 * wi / nodes;
+                double[][] phik = phi[k];
+                for (int i = 0; i < n; i++) {
+                    double[] rer = re[i];
+                    double[] imr = im[i];
+                    double[] row = phik[i];
+                    for (int j = 0; j < n; j++) {
+                        row[j] += cr * imr[j] + ci * rer[j];
+                    }
+                }
+                double next_r = wr * inverse_r - wi * inverse_i;
+                wi = wr * inverse_i + wi * inverse_r;
+                wr = next_r;
+            }
+        }
+        return phi;
+    }
+
+    /**
+     * Invert a complex matrix in place by Gauss-Jordan elimination with
+     * partial pivoting.
+     *
+     * @return false if the matrix is singular.
+     */
+    private static boolean invert(double[][] re, double[][] im) {
+        int n = re.length;
+        int[] pivots = new int[n];
+        for (int c = 0; c < n; c++) {
+            int pivot = c;
+            double largest = Math.hypot(re[c][c], im[c][c]);
+            for (int i = c + 1; i < n; i++) {
+                double size = Math.hypot(re[i][c], im[i][c]);
+                if (size > largest) {
+                    largest = size;
+                    pivot = i;
+                }
+            }
+            if (largest == 0.0) {
+                return false;
+            }
+            pivots[c] = pivot;
+            double[] swap = re[c];
+            re[c] = re[pivot];
+            re[pivot] = swap;
+            swap = im[c];
+            im[c] = im[pivot];
+            im[pivot] = swap;
+            // scale the pivot row by the reciprocal of the pivot
+            double modulus = re[c][c] * re[c][c] + im[c][c] * im[c][c];
+            double pr = re[c][c] / modulus;
+            double pi = -im[c][c] / modulus;
+            re[c][c] = 1.0;
+            im[c][c] = 0.0;
+            double[] rc = re[c];
+            double[] ic = im[c];
+            for (int j = 0; j < n; j++) {
+                double xr = rc[j];
+                double xi = ic[j];
+                rc[j] = xr * pr - xi * pi;
+                ic[j] = xr * pi + xi * pr;
+            }
+            // eliminate the column from the other rows
+            for (int i = 0; i < n; i++) {
+                if (i == c) {
+                    continue;
+                }
+                double fr = re[i][c];
+                double fi = im[i][c];
+                if (fr == 0.0 && fi == 0.0) {
+                    continue;
+                }
+                re[i][c] = 0.0;
+                im[i][c] = 0.0;
+                double[] ri = re[i];
+                double[] ii = im[i];
+                for (int j = 0; j < n; j++) {
+                    ri[j] -= fr * rc[j] - fi * ic[j];
+                    ii[j] -= fr * ic[j] + fi * rc[j];
+                }
+            }
+        }
+        // undo the row interchanges as column interchanges of the inverse
+        for (int c = n - 1; c >= 0; c--) {
+            int pivot = pivots[c];
+            if (pivot != c) {
+                for (int i = 0; i < n; i++) {
+                    double swap = re[i][c];
+                    re[i][c] = re[i][pivot];
+                    re[i][pivot] = swap;
+                    swap = im[i][c];
+                    im[i][c] = im[i][pivot];
+                    im[i][pivot] = swap;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The coefficient of z^i in the numerator of the diagonal Pade
+     * approximant to phi_k, before dividing by (2d + k)!/d!.
+     */
+    private static double pade_numerator(int k, int i) {
+        int d = PADE_DEGREE;
+        double sum = 0.0;
+        for (int j = 0; j <= i; j++) {
+            double term = factorial(2 * d + k - j) / (factorial(j) * factorial(d - j) * factorial(k + i - j));
+            sum += j % 2 == 0 ? term : -term;
+        }
+        return sum;
+    }
+
+    /**
+     * The coefficient of z^i in the denominator of the diagonal Pade
+     * approximant to phi_k, before dividing by (2d + k)!/d!.
+     */
+    private static double pade_denominator(int k, int i) {
+        int d = PADE_DEGREE;
+        double term = factorial(2 * d + k - i) / (factorial(i) * factorial(d - i));
+        return i % 2 == 0 ? term : -term;
+    }
+
+    private static double[][] identity(int n, double value) {
+        double[][] result = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            result[i][i] = value;
+        }
+        return result;
+    }
+
+    private static double[][] multiply(double[][] x, double[][] y) {
+        int n = x.length;
+        double[][] product = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            double[] xi = x[i];
+            double[] pi = product[i];
+            for (int k = 0; k < n; k++) {
+                double xik = xi[k];
+                if (xik != 0.0) {
+                    double[] yk = y[k];
+                    for (int j = 0; j < n; j++) {
+                        pi[j] += xik * yk[j];
+                    }
+                }
+            }
+        }
+        return product;
+    }
+
+    private static double factorial(int k) {
+        double value = 1.0;
+        for (int i = 2; i <= k; i++) {
+            value *= i;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,341 @@
+/* ./util/SingularValueDecomposition.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.util;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * The singular values and left singular vectors of a matrix given by its
+ * columns as arrays of doubles, such as a matrix of snapshots of a solution.
+ * <p>
+ * The exact decomposition uses one-sided Jacobi rotations of the columns,
+ * which costs a few sweeps of n*m^2 operations for m columns of length n.
+ * For many columns the randomized decomposition projects the matrix onto
+ * the range of a few random combinations of the columns, sharpened by power
+ * iterations, and decomposes the small projected matrix instead.
+ * <p>
+ * James Demmel and Kresimir Veselic. "Jacobi's method is more accurate than QR", SIAM Journal on Matrix Analysis and Applications, vol 13, pg 1204-1245, 1992.
+ * <p>
+ * Nathan Halko, Per-Gunnar Martinsson and Joel Tropp. "Finding structure with randomness: probabilistic algorithms for constructing approximate matrix decompositions", SIAM Review, vol 53, pg 217-288, 2011.
+ */
+public class SingularValueDecomposition {
+    /**
+     * The default number of extra random vectors of the randomized decomposition.
+     */
+    public static final int DEFAULT_OVERSAMPLING = 10;
+
+    /**
+     * The default number of power iterations of the randomized decomposition.
+     */
+    public static final int DEFAULT_POWER_ITERATIONS = 2;
+
+    private static final int MAX_SWEEPS = 60;
+
+    // in decreasing order
+    private final double[] singular_values;
+    // the left singular vectors, one in each row
+    private final double[][] left_vectors;
+
+    /**
+     * Decompose the matrix with the given columns exactly.
+     *
+     * @param columns The columns of the matrix, all of the same length.
+     */
+    public SingularValueDecomposition(double[][] columns) {
+        double[][] work = new double[columns.length][];
+        for (int c = 0; c < columns.length; c++) {
+            work[c] = columns[c].clone();
+        }
+        rotate(work, null);
+        int count = Math.min(columns.length, columns[0].length);
+        singular_values = new double[count];
+        left_vectors = new double[count][];
+        Integer[] order = get_order(work);
+        for (int l = 0; l < count; l++) {
+            double[] column = work[order[l]];
+            singular_values[l] = norm(column);
+            left_vectors[l] = column;
+            scale(column, singular_values[l]);
+        }
+    }
+
+    private SingularValueDecomposition(double[] singular_values, double[][] left_vectors) {
+        this.singular_values = singular_values;
+        this.left_vectors = left_vectors;
+    }
+
+    /**
+     * Decompose the matrix with the given columns approximately with the
+     * default oversampling and power iterations.
+     *
+     * @param columns The columns of the matrix, all of the same length.
+     * @param rank    The number of singular values wanted.
+     * @param seed    The seed of the random vectors.
+     *
+     * @return The decomposition of the given rank.
+     */
+    public static SingularValueDecomposition randomized(double[][] columns, int rank, long seed) {
+        return randomized(columns, rank, DEFAULT_OVERSAMPLING, DEFAULT_POWER_ITERATIONS, seed);
+    }
+
+    /**
+     * Decompose the matrix with the given columns approximately.
+     *
+     * @param columns          The columns of the matrix, all of the same length.
+     * @param rank             The number of singular values wanted.
+     * @param oversampling     The number of random vectors beyond the rank.
+     * @param power_iterations The number of multiplications by the matrix and its transpose.
+     * @param seed             The seed of the random vectors.
+     *
+     * @return The decomposition of the given rank.
+     */
+    public static SingularValueDecomposition randomized(double[][] columns, int rank, int oversampling,
+                                                        int power_iterations, long seed) {
+        int m = columns.length;
+        int n = columns[0].length;
+        int k = Math.min(rank + oversampling, Math.min(m, n));
+        rank = Math.min(rank, k);
+        Random random = new Random(seed);
+        double[][] sample = new double[k][];
+        double[][] weights = new double[k][m];
+        for (int j = 0; j < k; j++) {
+            for (int i = 0; i < m; i++) {
+                weights[j][i] = random.nextGaussian();
+            }
+        }
+        // the range of the matrix, sharpened by multiplying with A A^T
+        for (int iteration = 0; iteration <= power_iterations; iteration++) {
+            for (int j = 0; j < k; j++) {
+                sample[j] = combine(columns, weights[j], n);
+            }
+            orthonormalize(sample);
+            if (iteration < power_iterations) {
+                for (int j = 0; j < k; j++) {
+                    for (int i = 0; i < m; i++) {
+                        weights[j][i] = dot(columns[i], sample[j]);
+                    }
+                }
+                orthonormalize(weights);
+            }
+        }
+        // the rows of the projection B = Q^T A are the columns of B^T, whose
+        // right singular vectors are the left singular vectors of B
+        double[][] projected = new double[k][m];
+        for (int j = 0; j < k; j++) {
+            for (int i = 0; i < m; i++) {
+                projected[j][i] = dot(sample[j], columns[i]);
+            }
+        }
+        double[][] v = new double[k][k];
+        for (int j = 0; j < k; j++) {
+            v[j][j] = 1.0;
+        }
+        rotate(projected, v);
+        Integer[] order = get_order(projected);
+        double[] values = new double[rank];
+        double[][] vectors = new double[rank][];
+        for (int l = 0; l < rank; l++) {
+            int c = order[l];
+            values[l] = norm(projected[c]);
+            vectors[l] = new double[n];
+            for (int j = 0; j < k; j++) {
+                double weight = v[c][j];
+                double[] q = sample[j];
+                double[] u = vectors[l];
+                for (int p = 0; p < n; p++) {
+                    u[p] += weight * q[p];
+                }
+            }
+        }
+        return new SingularValueDecomposition(values, vectors);
+    }
+
+    /**
+     * Get the singular values.
+     *
+     * @return The singular values in decreasing order.
+     */
+    public double[] get_singular_values() {
+        return singular_values.clone();
+    }
+
+    /**
+     * Get the left singular vectors of the largest singular values, the
+     * vectors of zero singular values are zero.
+     *
+     * @param rank The number of vectors.
+     *
+     * @return The vectors, one in each row.
+     */
+    public double[][] get_left_vectors(int rank) {
+        if (rank > left_vectors.length) {
+            throw new IllegalArgumentException("Only " + left_vectors.length + " singular vectors are known");
+        }
+        double[][] result = new double[rank][];
+        for (int l = 0; l < rank; l++) {
+            result[l] = left_vectors[l].clone();
+        }
+        return result;
+    }
+
+    /**
+     * Get the smallest rank whose left out singular values have a norm of
+     * at most the tolerance relative to the norm of all singular values.
+     *
+     * @param tolerance The relative tolerance.
+     *
+     * @return The rank.
+     */
+    public int get_rank(double tolerance) {
+        double total = 0.0;
+        for (double value : singular_values) {
+            total += value * value;
+        }
+        double left_out = total;
+        int rank = 0;
+        while (rank < singular_values.length && left_out > tolerance * tolerance * total) {
+            left_out -= singular_values[rank] * singular_values[rank];
+            rank++;
+        }
+        return rank;
+    }
+
+    /**
+     * Rotate pairs of columns until they are orthogonal, applying the same
+     * rotations to the columns of v if it is not null.
+     */
+    private static void rotate(double[][] a, double[][] v) {
+        double epsilon = Etc.get_epsilon().doubleValue();
+        boolean rotated = true;
+        for (int sweep = 0; sweep < MAX_SWEEPS && rotated; sweep++) {
+            rotated = false;
+            for (int p = 0; p < a.length - 1; p++) {
+                for (int q = p + 1; q < a.length; q++) {
+                    double alpha = dot(a[p], a[p]);
+                    double beta = dot(a[q], a[q]);
+                    double gamma = dot(a[p], a[q]);
+                    if (Math.abs(gamma) <= epsilon * Math.sqrt(alpha * beta) || gamma == 0.0) {
+                        continue;
+                    }
+                    rotated = true;
+                    double zeta = (beta - alpha) / (2.0 * gamma);
+                    double t = Math.signum(zeta) / (Math.abs(zeta) + Math.sqrt(1.0 + zeta * zeta));
+                    if (zeta == 0.0) {
+                        t = 1.0;
+                    }
+                    double c = 1.0 / Math.sqrt(1.0 + t * t);
+                    double s = c * t;
+                    apply_rotation(a[p], a[q], c, s);
+                    if (v != null) {
+                        apply_rotation(v[p], v[q], c, s);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void apply_rotation(double[] x, double[] y, double c, double s) {
+        for (int i = 0; i < x.length; i++) {
+            double first = x[i];
+            double second = y[i];
+            x[i] = c * first - s * second;
+            y[i] = s * first + c * second;
+        }
+    }
+
+    /**
+     * Orthonormalize vectors by modified Gram-Schmidt, twice for accuracy,
+     * setting the vectors in the span of the ones before to zero.
+     */
+    private static void orthonormalize(double[][] vectors) {
+        for (int j = 0; j < vectors.length; j++) {
+            double[] x = vectors[j];
+            double original = norm(x);
+            for (int pass = 0; pass < 2; pass++) {
+                for (int i = 0; i < j; i++) {
+                    double projection = dot(vectors[i], x);
+                    double[] y = vectors[i];
+                    for (int p = 0; p < x.length; p++) {
+                        x[p] -= projection * y[p];
+                    }
+                }
+            }
+            double length = norm(x);
+            if (length <= Etc.get_epsilon().doubleValue() * original || length == 0.0) {
+                Arrays.fill(x, 0.0);
+            } else {
+                scale(x, length);
+            }
+        }
+    }
+
+    /**
+     * The combination of the columns with the given weights.
+     */
+    private static double[] combine(double[][] columns, double[] weights, int n) {
+        double[] result = new double[n];
+        for (int i = 0; i < columns.length; i++) {
+            double weight = weights[i];
+            double[] column = columns[i];
+            for (int p = 0; p < n; p++) {
+                result[p] += weight * column[p];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The indices of the columns by decreasing norm.
+     */
+    private static Integer[] get_order(final double[][] columns) {
+        Integer[] order = new Integer[columns.length];
+        final double[] norms = new double[columns.length];
+        for (int c = 0; c < columns.length; c++) {
+            order[c] = c;
+            norms[c] = norm(columns[c]);
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Double.compare(norms[b], norms[a]);
+            }
+        });
+        return order;
+    }
+
+    private static void scale(double[] x, double length) {
+        if (length > 0.0) {
+            for (int p = 0; p < x.length; p++) {
+                x[p] /= length;
+            }
+        }
+    }
+
+    private static double dot(double[] x, double[] y) {
+        double sum = 0.0;
+        for (int p = 0; p < x.length; p++) {
+            sum += x[p] * y[p];
+        }
+        return sum;
+    }
+
+    private static double norm(double[] x) {
+        return Math.sqrt(dot(x, x));
+    }
+}
@@ -0,0 +1,198 @@
+/* ./util/SparseMatrix.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.util;
+
+/**
+ * A square sparse matrix in compressed sparse row format, such as the
+ * Jacobian of a method of lines discretization.
+ * <p>
+ * The matrix is built one row at a time in order with add and end_row, and
+ * entries added twice to the same position of a row are summed. The values
+ * of a built matrix can be refilled in place, keeping its pattern.
+ */
+public class SparseMatrix implements LinearOperator {
+    private final int n;
+    // the start of each row in columns and values, row i is row_start[i] to row_start[i + 1] - 1
+    private final int[] row_start;
+    private int[] columns;
+    private double[] values;
+    private int rows;
+    private int entries;
+
+    /**
+     * Create an empty matrix.
+     *
+     * @param n        The number of rows and columns.
+     * @param capacity The expected number of entries, the storage grows if there are more.
+     */
+    public SparseMatrix(int n, int capacity) {
+        this.n = n;
+        row_start = new int[n + 1];
+        columns = new int[Math.max(1, capacity)];
+        values = new double[Math.max(1, capacity)];
+    }
+
+    /**
+     * Add an entry to the current row.
+     *
+     * @param column The column of the entry.
+     * @param value  The value, which is added to any value already in the column.
+     */
+    public void add(int column, double value) {
+        if (rows == n) {
+            throw new IllegalStateException("All rows of the matrix have been ended");
+        }
+        for (int k = row_start[rows]; k < entries; k++) {
+            if (columns[k] == column) {
+                values[k] += value;
+                return;
+            }
+        }
+        if (entries == columns.length) {
+            int[] more_columns = new int[2 * entries];
+            double[] more_values = new double[2 * entries];
+            System.arraycopy(columns, 0, more_columns, 0, entries);
+            System.arraycopy(values, 0, more_values, 0, entries);
+            columns = more_columns;
+            values = more_values;
+        }
+        columns[entries] = column;
+        values[entries] = value;
+        entries++;
+    }
+
+    /**
+     * End the current row, the next entries go into the next row.
+     */
+    public void end_row() {
+        if (rows == n) {
+            throw new IllegalStateException("All rows of the matrix have been ended");
+        }
+        rows++;
+        row_start[rows] = entries;
+    }
+
+    public int get_size() {
+        return n;
+    }
+
+    /**
+     * Get the number of stored entries.
+     *
+     * @return The number of entries.
+     */
+    public int get_entries() {
+        return entries;
+    }
+
+    /**
+     * Get an entry of the matrix.
+     *
+     * @param i The row.
+     * @param j The column.
+     * @return The entry, 0 if it is not stored.
+     */
+    public double get(int i, int j) {
+        for (int k = row_start[i]; k < row_start[i + 1]; k++) {
+            if (columns[k] == j) {
+                return values[k];
+            }
+        }
+        return 0.0;
+    }
+
+    /**
+     * Get the position of an entry in the storage, so a matrix with a fixed
+     * pattern can be refilled with zero and add_to_entry.
+     *
+     * @param i The row.
+     * @param j The column.
+     * @return The position of the entry, -1 if it is not stored.
+     */
+    public int get_entry(int i, int j) {
+        for (int k = row_start[i]; k < row_start[i + 1]; k++) {
+            if (columns[k] == j) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Add to the value of a stored entry.
+     *
+     * @param entry The position of the entry from get_entry.
+     * @param value The value to add.
+     */
+    public void add_to_entry(int entry, double value) {
+        values[entry] += value;
+    }
+
+    /**
+     * Set the values of all stored entries to zero, keeping the pattern.
+     */
+    public void zero() {
+        for (int k = 0; k < entries; k++) {
+            values[k] = 0.0;
+        }
+    }
+
+    /**
+     * Get the number of diagonals above and below the main diagonal that hold
+     * all entries, for example to choose a banded solver.
+     *
+     * @return The half bandwidth.
+     */
+    public int get_bandwidth() {
+        int bandwidth = 0;
+        for (int i = 0; i < rows; i++) {
+            for (int k = row_start[i]; k < row_start[i + 1]; k++) {
+                bandwidth = Math.max(bandwidth, Math.abs(columns[k] - i));
+            }
+        }
+        return bandwidth;
+    }
+
+    public void apply(double[] x, double[] result) {
+        for (int i = 0; i < rows; i++) {
+            double sum = 0.0;
+            for (int k = row_start[i]; k < row_start[i + 1]; k++) {
+                sum += values[k] * x[columns[k]];
+            }
+            result[i] = sum;
+        }
+        for (int i = rows; i < n; i++) {
+            result[i] = 0.0;
+        }
+    }
+
+    /**
+     * Get the matrix as a dense array, which is only sensible for small matrices.
+     *
+     * @return The matrix as an array of doubles.
+     */
+    public double[][] to_dense() {
+        double[][] dense = new double[n][n];
+        for (int i = 0; i < rows; i++) {
+            for (int k = row_start[i]; k < row_start[i + 1]; k++) {
+                dense[i][columns[k]] += values[k];
+            }
+        }
+        return dense;
+    }
+}
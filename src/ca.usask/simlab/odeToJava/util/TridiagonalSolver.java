@@ -0,0 +1,103 @@
+/* ./util/TridiagonalSolver.java
+ * Copyright (C) 2002-2012 the odeToJava Team. All rights reserved.
+ * This file is part of odeToJava.
+ *
+ * odeToJava is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * odeToJava is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with odeToJava.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.usask.simlab.odeToJava.util;
+
+/**
+ * Solves tridiagonal systems, also with the corner entries of a periodic
+ * problem, without pivoting, which is stable for diagonally dominant
+ * matrices such as the iteration matrices of diffusion.
+ * <p>
+ * The storage is allocated once for the largest system, so one solver can
+ * be reused for many lines of a grid in the same thread.
+ * <p>
+ * Gene H. Golub and Charles F. Van Loan. "Matrix Computations, 3rd Edition".
+ */
+public class TridiagonalSolver {
+    private final double[] modified;
+    private final double[] diagonal;
+    private final double[] z;
+
+    /**
+     * Create the storage for systems up to the given size.
+     *
+     * @param n The largest number of unknowns.
+     */
+    public TridiagonalSolver(int n) {
+        modified = new double[n];
+        diagonal = new double[n];
+        z = new double[n];
+    }
+
+    /**
+     * Solve a tridiagonal system, overwriting the right hand side.
+     *
+     * @param n     The number of unknowns.
+     * @param lower The entries below the diagonal, lower[i] is in row i, lower[0] is not used.
+     * @param main  The entries of the diagonal.
+     * @param upper The entries above the diagonal, upper[i] is in row i, upper[n - 1] is not used.
+     * @param b     The right hand side on entry and the solution on exit.
+     */
+    public void solve(int n, double[] lower, double[] main, double[] upper, double[] b) {
+        // elimination below the diagonal, keeping the reduced upper entries
+        double pivot = main[0];
+        b[0] /= pivot;
+        for (int i = 1; i < n; i++) {
+            modified[i - 1] = upper[i - 1] / pivot;
+            pivot = main[i] - lower[i] * modified[i - 1];
+            b[i] = (b[i] - lower[i] * b[i - 1]) / pivot;
+        }
+        // back substitution
+        for (int i = n - 2; i >= 0; i--) {
+            b[i] -= modified[i] * b[i + 1];
+        }
+    }
+
+    /**
+     * Solve a periodic tridiagonal system, with the entry top in the last
+     * column of the first row and bottom in the first column of the last row,
+     * overwriting the right hand side. The corners are removed by the
+     * Sherman-Morrison formula, which costs a second tridiagonal solve.
+     *
+     * @param n      The number of unknowns, at least 3.
+     * @param lower  The entries below the diagonal, lower[i] is in row i.
+     * @param main   The entries of the diagonal.
+     * @param upper  The entries above the diagonal, upper[i] is in row i.
+     * @param top    The entry in the last column of the first row.
+     * @param bottom The entry in the first column of the last row.
+     * @param b      The right hand side on entry and the solution on exit.
+     */
+    public void solve_periodic(int n, double[] lower, double[] main, double[] upper,
+                               double top, double bottom, double[] b) {
+        // A = A' + u v^T with u = (g, 0, ..., 0, bottom) and v = (1, 0, ..., 0, top/g)
+        double g = -main[0];
+        System.arraycopy(main, 0, diagonal, 0, n);
+        diagonal[0] -= g;
+        diagonal[n - 1] -= bottom * top / g;
+        solve(n, lower, diagonal, upper, b);
+        for (int i = 0; i < n; i++) {
+            z[i] = 0.0;
+        }
+        z[0] = g;
+        z[n - 1] = bottom;
+        solve(n, lower, diagonal, upper, z);
+        double factor = (b[0] + top * b[n - 1] / g) / (1.0 + z[0] + top * z[n - 1] / g);
+        for (int i = 0; i < n; i++) {
+            b[i] -= factor * z[i];
+        }
+    }
+}
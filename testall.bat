@@ -25,3 +25,9 @@ call ant run > output\stiff.txt
 sleep 20
 call ant mol-jar
 call ant run > output\mol.txt 
+sleep 20
+call ant prothero-robinson-jar
+call ant run > output\prothero-robinson.txt
+sleep 20
+call ant low-storage-jar
+call ant run > output\low-storage.txt
@@ -24,3 +24,9 @@ ant run > output/stiff.txt
 sleep 20
 ant mol-jar
 ant run > output/mol.txt  
+sleep 20
+ant prothero-robinson-jar
+ant run > output/prothero-robinson.txt
+sleep 20
+ant low-storage-jar
+ant run > output/low-storage.txt